@@ -0,0 +1,86 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.processor.Configure;
+import ifesdjeen.stateless4j.processor.OnEntry;
+import ifesdjeen.stateless4j.processor.OnExit;
+import ifesdjeen.stateless4j.processor.Permit;
+import ifesdjeen.stateless4j.processor.StateMachineSpec;
+
+/// <summary>
+/// The parameterless part of <see cref="Machines"/> as a spec; <see cref="BenchMachine"/>
+/// is generated from it.
+/// </summary>
+@StateMachineSpec(states = BenchState.class, triggers = BenchTrigger.class, value = {
+        @Configure(state = "Idle",
+                   permit = {
+                           @Permit(trigger = "Start", destination = "Active"),
+                           @Permit(trigger = "Guarded", destination = "Active", guard = "alwaysTrue")}),
+        @Configure(state = "Active",
+                   permit = {
+                           @Permit(trigger = "Stop", destination = "Idle"),
+                           @Permit(trigger = "Guarded", destination = "Idle", guard = "alwaysTrue")}),
+        @Configure(state = "Root", ignore = "Stop"),
+        @Configure(state = "Level1", substateOf = "Root"),
+        @Configure(state = "Level2", substateOf = "Level1"),
+        @Configure(state = "Level3", substateOf = "Level2"),
+        @Configure(state = "Level4", substateOf = "Level3"),
+        @Configure(state = "Level5", substateOf = "Level4"),
+        @Configure(state = "Deep", substateOf = "Level5",
+                   permit = @Permit(trigger = "Ascend", destination = "Shallow")),
+        @Configure(state = "Shallow", substateOf = "Root",
+                   permit = @Permit(trigger = "Descend", destination = "Deep"))
+})
+public abstract class BenchSpec {
+
+  boolean alwaysTrue() {
+    return true;
+  }
+
+  @OnEntry(state = "Root")
+  @OnExit("Root")
+  void countRoot() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Level1")
+  @OnExit("Level1")
+  void countLevel1() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Level2")
+  @OnExit("Level2")
+  void countLevel2() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Level3")
+  @OnExit("Level3")
+  void countLevel3() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Level4")
+  @OnExit("Level4")
+  void countLevel4() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Level5")
+  @OnExit("Level5")
+  void countLevel5() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Deep")
+  @OnExit("Deep")
+  void countDeep() {
+    Machines.sink++;
+  }
+
+  @OnEntry(state = "Shallow")
+  @OnExit("Shallow")
+  void countShallow() {
+    Machines.sink++;
+  }
+}
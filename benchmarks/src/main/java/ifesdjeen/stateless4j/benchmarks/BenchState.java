@@ -0,0 +1,6 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+public enum BenchState {
+  Idle, Active,
+  Root, Level1, Level2, Level3, Level4, Level5, Deep, Shallow
+}
@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+public enum BenchTrigger {
+  Start, Stop, Guarded, Arg1, Arg2, Arg3, Descend, Ascend, Unhandled
+}
@@ -0,0 +1,20 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/// <summary>
+/// Runs the benchmarks selected on the command line (same options as JMH's own main),
+/// always with the GC profiler attached so allocation rates are reported.
+/// </summary>
+public class BenchmarkRunner {
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    new Runner(new OptionsBuilder()
+                       .parent(commandLine)
+                       .addProfiler(GCProfiler.class)
+                       .build()).run();
+  }
+}
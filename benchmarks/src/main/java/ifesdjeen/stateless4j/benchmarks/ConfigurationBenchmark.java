@@ -0,0 +1,51 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Cost of building machines: configuring a fresh definition through Configure, and
+/// creating a machine from an already frozen one.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConfigurationBenchmark {
+
+  Machines shared;
+
+  @Setup
+  public void setUp() {
+    shared = new Machines(false);
+  }
+
+  @Benchmark
+  public Machines configureDefinition() {
+    return new Machines(false);
+  }
+
+  @Benchmark
+  public Machines configureAndCompileDefinition() {
+    return new Machines(true);
+  }
+
+  @Benchmark
+  public StateMachine<BenchState, BenchTrigger> createFromSharedDefinition() {
+    return shared.definition.CreateMachine(BenchState.Idle);
+  }
+}
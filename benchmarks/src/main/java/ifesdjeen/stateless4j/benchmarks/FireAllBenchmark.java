@@ -0,0 +1,64 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.FireAllResult;
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// A burst of parameterised triggers fired one by one against the same burst passed
+/// to StateMachine.FireAll.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FireAllBenchmark {
+  static final int BURST = 32;
+
+  Machines machines;
+  StateMachine<BenchState, BenchTrigger> flat;
+  BenchTrigger[] triggers;
+  Object[][] args;
+
+  @Setup
+  public void setUp() {
+    machines = new Machines(true);
+    flat = machines.definition.CreateMachine(BenchState.Idle);
+    triggers = new BenchTrigger[BURST];
+    args = new Object[BURST][];
+    for (int i = 0; i < BURST; i++) {
+      triggers[i] = BenchTrigger.Arg1;
+      args[i] = new Object[]{i};
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST)
+  public BenchState fireEach() throws Exception {
+    for (int i = 0; i < BURST; i++) {
+      flat.Fire(machines.arg1, (Integer) args[i][0]);
+    }
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BURST)
+  public FireAllResult fireAll() throws Exception {
+    return flat.FireAll(triggers, args);
+  }
+}
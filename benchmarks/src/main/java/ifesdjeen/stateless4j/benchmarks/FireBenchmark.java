@@ -0,0 +1,110 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// StateMachine.Fire on flat and nested hierarchies, with and without guards and
+/// parameters. Each invocation fires two triggers so that the machine ends up back in
+/// the state it started from.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FireBenchmark {
+
+  @Param({"false", "true"})
+  boolean compiled;
+
+  Machines machines;
+  StateMachine<BenchState, BenchTrigger> flat;
+  StateMachine<BenchState, BenchTrigger> nested;
+
+  @Setup
+  public void setUp() {
+    machines = new Machines(compiled);
+    flat = machines.definition.CreateMachine(BenchState.Idle);
+    nested = machines.definition.CreateMachine(BenchState.Deep);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatUnguarded() throws Exception {
+    flat.Fire(BenchTrigger.Start);
+    flat.Fire(BenchTrigger.Stop);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatGuarded() throws Exception {
+    flat.Fire(BenchTrigger.Guarded);
+    flat.Fire(BenchTrigger.Guarded);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatOneParameter() throws Exception {
+    flat.Fire(machines.arg1, 1);
+    flat.Fire(machines.arg1, 2);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatTwoParameters() throws Exception {
+    flat.Fire(machines.arg2, 1, "a");
+    flat.Fire(machines.arg2, 2, "b");
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatThreeParameters() throws Exception {
+    flat.Fire(machines.arg3, 1, "a", 3L);
+    flat.Fire(machines.arg3, 2, "b", 4L);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nestedAcrossHierarchy() throws Exception {
+    nested.Fire(BenchTrigger.Ascend);
+    nested.Fire(BenchTrigger.Descend);
+    return nested.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nestedInheritedIgnore() throws Exception {
+    nested.Fire(BenchTrigger.Stop);
+    nested.Fire(BenchTrigger.Stop);
+    return nested.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState unhandled() throws Exception {
+    flat.Fire(BenchTrigger.Unhandled);
+    nested.Fire(BenchTrigger.Unhandled);
+    return flat.getState();
+  }
+}
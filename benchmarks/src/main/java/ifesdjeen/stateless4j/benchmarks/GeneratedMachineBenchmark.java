@@ -0,0 +1,119 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// The machine generated from <see cref="BenchSpec"/> against the interpreted one it
+/// mirrors, on the parameterless FireBenchmark cases, and the cost of creating each.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GeneratedMachineBenchmark {
+
+  Machines machines;
+  StateMachine<BenchState, BenchTrigger> flat;
+  StateMachine<BenchState, BenchTrigger> nested;
+  BenchMachine generatedFlat;
+  BenchMachine generatedNested;
+
+  @Setup
+  public void setUp() {
+    machines = new Machines(false);
+    flat = machines.definition.CreateMachine(BenchState.Idle);
+    nested = machines.definition.CreateMachine(BenchState.Deep);
+    generatedFlat = new BenchMachine(BenchState.Idle);
+    generatedNested = new BenchMachine(BenchState.Deep);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatUnguarded() throws Exception {
+    flat.Fire(BenchTrigger.Start);
+    flat.Fire(BenchTrigger.Stop);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState generatedFlatUnguarded() {
+    generatedFlat.Fire(BenchTrigger.Start);
+    generatedFlat.Fire(BenchTrigger.Stop);
+    return generatedFlat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatGuarded() throws Exception {
+    flat.Fire(BenchTrigger.Guarded);
+    flat.Fire(BenchTrigger.Guarded);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState generatedFlatGuarded() {
+    generatedFlat.Fire(BenchTrigger.Guarded);
+    generatedFlat.Fire(BenchTrigger.Guarded);
+    return generatedFlat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nestedAcrossHierarchy() throws Exception {
+    nested.Fire(BenchTrigger.Ascend);
+    nested.Fire(BenchTrigger.Descend);
+    return nested.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState generatedNestedAcrossHierarchy() {
+    generatedNested.Fire(BenchTrigger.Ascend);
+    generatedNested.Fire(BenchTrigger.Descend);
+    return generatedNested.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nestedInheritedIgnore() throws Exception {
+    nested.Fire(BenchTrigger.Stop);
+    nested.Fire(BenchTrigger.Stop);
+    return nested.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState generatedNestedInheritedIgnore() {
+    generatedNested.Fire(BenchTrigger.Stop);
+    generatedNested.Fire(BenchTrigger.Stop);
+    return generatedNested.getState();
+  }
+
+  @Benchmark
+  public Object create() {
+    return new Machines(false).definition.CreateMachine(BenchState.Idle);
+  }
+
+  @Benchmark
+  public Object generatedCreate() {
+    return new BenchMachine(BenchState.Idle);
+  }
+}
@@ -0,0 +1,78 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// CanFire, IsInState and getPermittedTriggers on flat and nested hierarchies.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IntrospectionBenchmark {
+
+  @Param({"false", "true"})
+  boolean compiled;
+
+  StateMachine<BenchState, BenchTrigger> flat;
+  StateMachine<BenchState, BenchTrigger> nested;
+
+  @Setup
+  public void setUp() {
+    Machines machines = new Machines(compiled);
+    flat = machines.definition.CreateMachine(BenchState.Idle);
+    nested = machines.definition.CreateMachine(BenchState.Deep);
+  }
+
+  @Benchmark
+  public Boolean canFireFlat() {
+    return flat.CanFire(BenchTrigger.Start);
+  }
+
+  @Benchmark
+  public Boolean canFireGuarded() {
+    return flat.CanFire(BenchTrigger.Guarded);
+  }
+
+  @Benchmark
+  public Boolean canFireInherited() {
+    return nested.CanFire(BenchTrigger.Stop);
+  }
+
+  @Benchmark
+  public Boolean canFireUnhandled() {
+    return nested.CanFire(BenchTrigger.Unhandled);
+  }
+
+  @Benchmark
+  public Boolean isInStateNested() {
+    return nested.IsInState(BenchState.Root);
+  }
+
+  @Benchmark
+  public List<BenchTrigger> permittedTriggersFlat() {
+    return flat.getPermittedTriggers();
+  }
+
+  @Benchmark
+  public List<BenchTrigger> permittedTriggersNested() {
+    return nested.getPermittedTriggers();
+  }
+}
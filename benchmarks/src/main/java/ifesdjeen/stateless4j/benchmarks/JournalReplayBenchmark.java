@@ -0,0 +1,72 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.codec.ArgumentsCodec;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.journal.TransitionJournal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Restoring the last state of many machines from a journal of parameterised transitions.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalReplayBenchmark {
+  static final int RECORDS = 1 << 20;
+  static final int MACHINES = 1024;
+
+  File directory;
+  TransitionJournal<BenchState, BenchTrigger> journal;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("journal").toFile();
+    journal = new TransitionJournal<BenchState, BenchTrigger>(directory,
+                                                              new EnumCodec<BenchState>(BenchState.class),
+                                                              new EnumCodec<BenchTrigger>(BenchTrigger.class),
+                                                              new ArgumentsCodec(),
+                                                              TransitionJournal.DEFAULT_SEGMENT_SIZE,
+                                                              TransitionJournal.DEFAULT_FLUSH_INTERVAL_MILLIS);
+    Object[] args = new Object[]{42};
+    for (int i = 0; i < RECORDS; i++) {
+      journal.append(i % MACHINES, BenchState.Idle, BenchState.Active, BenchTrigger.Arg1, args);
+    }
+    journal.sync();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    journal.close();
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RECORDS)
+  public Map<Long, BenchState> replayStates() throws IOException {
+    return journal.replayStates();
+  }
+}
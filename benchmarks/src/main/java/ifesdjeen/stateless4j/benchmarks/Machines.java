@@ -0,0 +1,124 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachineDefinition;
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.delegates.Action3;
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
+
+/// <summary>
+/// Definitions shared by the benchmarks.
+/// </summary>
+/// <remarks>
+/// Flat: Idle and Active, toggled by Start/Stop, Guarded (guard always true) and the
+/// parameterised Arg1..Arg3 triggers.
+/// Nested: Deep sits five superstates below Root, Shallow directly below it; Ascend and
+/// Descend move between the two, exiting or entering every level with an action on each.
+/// </remarks>
+public final class Machines {
+
+  public static volatile long sink;
+
+  public static final Func<Boolean> alwaysTrue = new Func<Boolean>() {
+    public Boolean call() {
+      return true;
+    }
+  };
+
+  static final Action count = new Action() {
+    public void doIt() {
+      sink++;
+    }
+  };
+
+  public final StateMachineDefinition<BenchState, BenchTrigger> definition = new StateMachineDefinition<BenchState, BenchTrigger>();
+  public final TriggerWithParameters1<Integer, BenchState, BenchTrigger> arg1;
+  public final TriggerWithParameters2<Integer, String, BenchState, BenchTrigger> arg2;
+  public final TriggerWithParameters3<Integer, String, Long, BenchState, BenchTrigger> arg3;
+
+  public Machines(boolean compiled) {
+    this(compiled, false);
+  }
+
+  public Machines(boolean compiled, boolean metrics) {
+    definition.setMetricsEnabled(metrics);
+    try {
+      arg1 = definition.SetTriggerParameters(BenchTrigger.Arg1, Integer.class);
+      arg2 = definition.SetTriggerParameters(BenchTrigger.Arg2, Integer.class, String.class);
+      arg3 = definition.SetTriggerParameters(BenchTrigger.Arg3, Integer.class, String.class, Long.class);
+      configureFlat();
+      configureNested();
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    if (compiled) {
+      definition.compile(BenchState.class, BenchTrigger.class);
+    } else {
+      definition.freeze();
+    }
+  }
+
+  void configureFlat() throws Exception {
+    definition.Configure(BenchState.Idle)
+            .Permit(BenchTrigger.Start, BenchState.Active)
+            .PermitIf(BenchTrigger.Guarded, BenchState.Active, alwaysTrue)
+            .Permit(BenchTrigger.Arg1, BenchState.Active)
+            .Permit(BenchTrigger.Arg2, BenchState.Active)
+            .Permit(BenchTrigger.Arg3, BenchState.Active);
+
+    definition.Configure(BenchState.Active)
+            .OnEntryFrom(arg1, new Action1<Integer>() {
+              public void doIt(Integer a0) {
+                sink += a0;
+              }
+            }, Integer.class)
+            .OnEntryFrom(arg2, new Action2<Integer, String>() {
+              public void doIt(Integer a0, String a1) {
+                sink += a0;
+              }
+            }, Integer.class, String.class)
+            .OnEntryFrom(arg3, new Action3<Integer, String, Long>() {
+              public void doIt(Integer a0, String a1, Long a2) {
+                sink += a0;
+              }
+            }, Integer.class, String.class, Long.class)
+            .Permit(BenchTrigger.Stop, BenchState.Idle)
+            .PermitIf(BenchTrigger.Guarded, BenchState.Idle, alwaysTrue)
+            .Permit(BenchTrigger.Arg1, BenchState.Idle)
+            .Permit(BenchTrigger.Arg2, BenchState.Idle)
+            .Permit(BenchTrigger.Arg3, BenchState.Idle);
+  }
+
+  void configureNested() throws Exception {
+    BenchState[] chain = {BenchState.Root, BenchState.Level1, BenchState.Level2,
+                          BenchState.Level3, BenchState.Level4, BenchState.Level5};
+    for (int i = 0; i < chain.length; i++) {
+      definition.Configure(chain[i])
+              .OnEntry(count)
+              .OnExit(count);
+      if (i > 0) {
+        definition.Configure(chain[i]).SubstateOf(chain[i - 1]);
+      }
+    }
+
+    definition.Configure(BenchState.Deep)
+            .SubstateOf(BenchState.Level5)
+            .OnEntry(count)
+            .OnExit(count)
+            .Permit(BenchTrigger.Ascend, BenchState.Shallow);
+
+    definition.Configure(BenchState.Shallow)
+            .SubstateOf(BenchState.Root)
+            .OnEntry(count)
+            .OnExit(count)
+            .Permit(BenchTrigger.Descend, BenchState.Deep);
+
+    // handled by the root, five levels above Deep
+    definition.Configure(BenchState.Root)
+            .Ignore(BenchTrigger.Stop);
+  }
+}
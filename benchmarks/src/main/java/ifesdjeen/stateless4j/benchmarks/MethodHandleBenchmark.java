@@ -0,0 +1,88 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// StateMachine.Fire through the method handles of StateMachineDefinition.compileHandles
+/// against the interpreter, on the FireBenchmark cases they support.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MethodHandleBenchmark {
+
+  @Param({"false", "true"})
+  boolean handles;
+
+  Machines machines;
+  StateMachine<BenchState, BenchTrigger> flat;
+  StateMachine<BenchState, BenchTrigger> nested;
+
+  @Setup
+  public void setUp() {
+    machines = new Machines(false);
+    if (handles) {
+      machines.definition.compileHandles(BenchState.class, BenchTrigger.class);
+    }
+    flat = machines.definition.CreateMachine(BenchState.Idle);
+    nested = machines.definition.CreateMachine(BenchState.Deep);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatUnguarded() throws Exception {
+    flat.Fire(BenchTrigger.Start);
+    flat.Fire(BenchTrigger.Stop);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatGuarded() throws Exception {
+    flat.Fire(BenchTrigger.Guarded);
+    flat.Fire(BenchTrigger.Guarded);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flatOneParameter() throws Exception {
+    flat.Fire(machines.arg1, 1);
+    flat.Fire(machines.arg1, 2);
+    return flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nestedAcrossHierarchy() throws Exception {
+    nested.Fire(BenchTrigger.Ascend);
+    nested.Fire(BenchTrigger.Descend);
+    return nested.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nestedInheritedIgnore() throws Exception {
+    nested.Fire(BenchTrigger.Stop);
+    nested.Fire(BenchTrigger.Stop);
+    return nested.getState();
+  }
+}
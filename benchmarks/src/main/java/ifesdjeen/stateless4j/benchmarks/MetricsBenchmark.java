@@ -0,0 +1,71 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// The cost of collecting metrics: flat and nested fires on a definition with metrics
+/// disabled and enabled, from four threads sharing the definition.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+  @Param({"false", "true"})
+  boolean metrics;
+
+  Machines machines;
+
+  @State(Scope.Thread)
+  public static class Machine {
+    StateMachine<BenchState, BenchTrigger> flat;
+    StateMachine<BenchState, BenchTrigger> nested;
+
+    @Setup
+    public void setUp(MetricsBenchmark benchmark) {
+      flat = benchmark.machines.definition.CreateMachine(BenchState.Idle);
+      nested = benchmark.machines.definition.CreateMachine(BenchState.Deep);
+    }
+  }
+
+  @Setup
+  public void setUp() {
+    machines = new Machines(true, metrics);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState flat(Machine machine) throws Exception {
+    machine.flat.Fire(BenchTrigger.Start);
+    machine.flat.Fire(BenchTrigger.Stop);
+    return machine.flat.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState nested(Machine machine) throws Exception {
+    machine.nested.Fire(BenchTrigger.Ascend);
+    machine.nested.Fire(BenchTrigger.Descend);
+    return machine.nested.getState();
+  }
+}
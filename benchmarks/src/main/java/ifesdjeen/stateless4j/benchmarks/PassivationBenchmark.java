@@ -0,0 +1,135 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachineRegistry;
+import ifesdjeen.stateless4j.codec.Codec;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.passivation.EvictionPolicy;
+import ifesdjeen.stateless4j.passivation.FilePassivationStore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Firing triggers across a million entities of which a working set of 64K is fired most,
+/// in a StateMachineRegistry holding every entity in memory and in one passivating all but
+/// 128K of them to a directory of files. hot fires only the working set; skewed fires one
+/// entity in sixteen outside of it, mostly from the files.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PassivationBenchmark {
+  static final int ENTITIES = 1 << 20;
+  static final int WORKING_SET = 1 << 16;
+  static final int RESIDENT = 1 << 17;
+  static final int STRIDE = 1000003;
+
+  static final Codec<Long> LONG_CODEC = new Codec<Long>() {
+    public int sizeOf(Long value) {
+      return 8;
+    }
+
+    public void write(Long value, ByteBuffer buffer) {
+      buffer.putLong(value);
+    }
+
+    public Long read(ByteBuffer buffer) {
+      return buffer.getLong();
+    }
+  };
+
+  File directory;
+  FilePassivationStore<Long, BenchState> store;
+  StateMachineRegistry<Long, BenchState, BenchTrigger> unbounded;
+  StateMachineRegistry<Long, BenchState, BenchTrigger> passivating;
+  int entity;
+  int fires;
+
+  @Setup
+  public void setUp() throws IOException {
+    Machines definitions = new Machines(true);
+    directory = File.createTempFile("passivation", ".states");
+    directory.delete();
+    store = new FilePassivationStore<Long, BenchState>(directory, LONG_CODEC, new EnumCodec<BenchState>(BenchState.class));
+    unbounded = new StateMachineRegistry<Long, BenchState, BenchTrigger>(definitions.definition, BenchState.Idle);
+    passivating = new StateMachineRegistry<Long, BenchState, BenchTrigger>(definitions.definition,
+                                                                          BenchState.Idle,
+                                                                          4 * Runtime.getRuntime().availableProcessors(),
+                                                                          store,
+                                                                          EvictionPolicy.lru(RESIDENT));
+    for (long i = 0; i < ENTITIES; i++) {
+      unbounded.setState(i, BenchState.Idle);
+      passivating.setState(i, BenchState.Idle);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    store.close();
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  long hot() {
+    entity = (entity + STRIDE) & (WORKING_SET - 1);
+    return entity;
+  }
+
+  long skewed() {
+    if ((++fires & 15) != 0) {
+      return hot();
+    }
+    return (fires * (long) STRIDE) & (ENTITIES - 1);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState hotUnbounded() throws Exception {
+    return fire(unbounded, hot());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState hotPassivating() throws Exception {
+    return fire(passivating, hot());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState skewedUnbounded() throws Exception {
+    return fire(unbounded, skewed());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState skewedPassivating() throws Exception {
+    return fire(passivating, skewed());
+  }
+
+  static BenchState fire(StateMachineRegistry<Long, BenchState, BenchTrigger> registry, long entity) throws Exception {
+    Long id = entity;
+    registry.Fire(id, BenchTrigger.Start);
+    registry.Fire(id, BenchTrigger.Stop);
+    return registry.getState(id);
+  }
+}
@@ -0,0 +1,79 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.snapshot.SnapshotHandler;
+import ifesdjeen.stateless4j.snapshot.StateSnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Writing and reading back a snapshot of a million enum-state machines.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SnapshotBenchmark {
+  static final int MACHINES = 1 << 20;
+
+  File file;
+  StateSnapshot<BenchState> snapshot;
+  List<StateMachine<BenchState, BenchTrigger>> machines;
+  SnapshotHandler<BenchState> count;
+  long states;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = File.createTempFile("snapshot", ".bin");
+    snapshot = new StateSnapshot<BenchState>(new EnumCodec<BenchState>(BenchState.class));
+    Machines definitions = new Machines(true);
+    BenchState[] values = BenchState.values();
+    machines = new ArrayList<StateMachine<BenchState, BenchTrigger>>(MACHINES);
+    for (int i = 0; i < MACHINES; i++) {
+      machines.add(definitions.definition.CreateMachine(values[i % values.length]));
+    }
+    snapshot.write(file, machines);
+    count = new SnapshotHandler<BenchState>() {
+      public void onState(long index, BenchState state) {
+        states++;
+      }
+    };
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MACHINES)
+  public long write() throws IOException {
+    return snapshot.write(file, machines);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(MACHINES)
+  public long read() throws IOException {
+    return snapshot.read(file, count);
+  }
+}
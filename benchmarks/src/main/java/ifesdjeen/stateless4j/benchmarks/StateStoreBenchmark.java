@@ -0,0 +1,87 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.OffHeapStateStore;
+import ifesdjeen.stateless4j.StateMachine;
+import ifesdjeen.stateless4j.StateMachineRegistry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Firing triggers across a population of four million entities, held as one StateMachine
+/// each, as ordinals in an OffHeapStateStore or as map entries in a StateMachineRegistry.
+/// Entities are visited in a scattered order.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StateStoreBenchmark {
+  static final int ENTITIES = 1 << 22;
+  static final int STRIDE = 1000003;
+
+  StateMachine<BenchState, BenchTrigger>[] machines;
+  OffHeapStateStore<BenchState, BenchTrigger> store;
+  StateMachineRegistry<Long, BenchState, BenchTrigger> registry;
+  int entity;
+
+  @Setup
+  @SuppressWarnings("unchecked")
+  public void setUp() {
+    Machines definitions = new Machines(true);
+    machines = new StateMachine[ENTITIES];
+    for (int i = 0; i < ENTITIES; i++) {
+      machines[i] = definitions.definition.CreateMachine(BenchState.Idle);
+    }
+    store = new OffHeapStateStore<BenchState, BenchTrigger>(definitions.definition, BenchState.class, ENTITIES, BenchState.Idle);
+    registry = new StateMachineRegistry<Long, BenchState, BenchTrigger>(definitions.definition, BenchState.Idle);
+    for (long i = 0; i < ENTITIES; i++) {
+      registry.setState(i, BenchState.Idle);
+    }
+  }
+
+  int next() {
+    entity = (entity + STRIDE) & (ENTITIES - 1);
+    return entity;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState heapMachines() throws Exception {
+    StateMachine<BenchState, BenchTrigger> machine = machines[next()];
+    machine.Fire(BenchTrigger.Start);
+    machine.Fire(BenchTrigger.Stop);
+    return machine.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState offHeapStore() throws Exception {
+    int id = next();
+    store.Fire(id, BenchTrigger.Start);
+    store.Fire(id, BenchTrigger.Stop);
+    return store.getState(id);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState registry() throws Exception {
+    Long id = (long) next();
+    registry.Fire(id, BenchTrigger.Start);
+    registry.Fire(id, BenchTrigger.Stop);
+    return registry.getState(id);
+  }
+}
@@ -0,0 +1,107 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+import ifesdjeen.stateless4j.StateMachineDefinition;
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
+import ifesdjeen.stateless4j.timer.Timeout;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// The cost of timed transitions: toggling between Idle and Active with and without a
+/// timeout declared on Active, and scheduling then cancelling a timeout directly, against a
+/// timer already holding <c>pending</c> timeouts.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimeoutBenchmark {
+
+  @Param({"0", "1000000"})
+  int pending;
+
+  HashedWheelTimer timer;
+  StateMachine<BenchState, BenchTrigger> untimed;
+  StateMachine<BenchState, BenchTrigger> timed;
+
+  // the hour-long timeout of Active never expires during a run
+  static final Executor INLINE = new Executor() {
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  static final class Noop extends Timeout {
+    protected void expired() {
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    timer = new HashedWheelTimer();
+    for (int i = 0; i < pending; i++) {
+      timer.schedule(new Noop(), 1 + i % 3600, TimeUnit.SECONDS);
+    }
+    untimed = definition(false).CreateMachine(BenchState.Idle);
+    timed = definition(true).CreateMachine(BenchState.Idle, INLINE);
+  }
+
+  StateMachineDefinition<BenchState, BenchTrigger> definition(boolean timeout) throws Exception {
+    StateMachineDefinition<BenchState, BenchTrigger> definition = new StateMachineDefinition<BenchState, BenchTrigger>()
+            .setTimer(timer);
+    definition.Configure(BenchState.Idle)
+            .Permit(BenchTrigger.Start, BenchState.Active);
+    definition.Configure(BenchState.Active)
+            .Permit(BenchTrigger.Stop, BenchState.Idle);
+    if (timeout) {
+      definition.Configure(BenchState.Active)
+              .FireAfter(1, TimeUnit.HOURS, BenchTrigger.Stop);
+    }
+    return definition;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    timer.close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState untimedFire() throws Exception {
+    untimed.Fire(BenchTrigger.Start);
+    untimed.Fire(BenchTrigger.Stop);
+    return untimed.getState();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  public BenchState timedFire() throws Exception {
+    timed.Fire(BenchTrigger.Start);
+    timed.Fire(BenchTrigger.Stop);
+    return timed.getState();
+  }
+
+  @Benchmark
+  public boolean scheduleAndCancel() {
+    return timer.schedule(new Noop(), 1, TimeUnit.HOURS).cancel();
+  }
+}
@@ -0,0 +1,74 @@
+package ifesdjeen.stateless4j.benchmarks;
+
+import ifesdjeen.stateless4j.StateMachine;
+import ifesdjeen.stateless4j.delegates.Action2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// <summary>
+/// Trigger lookups that miss the current state: triggers that are not handled at all,
+/// and triggers inherited from a superstate <c>depth</c> levels up.
+/// </summary>
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TriggerLookupBenchmark {
+
+  @Param({"1", "4"})
+  int depth;
+
+  StateMachine<Integer, String> machine;
+
+  @Setup
+  public void setUp() throws Exception {
+    // state 0 is the leaf, state `depth` the root which owns the "inherited" trigger
+    machine = new StateMachine<Integer, String>(0);
+    for (int state = 0; state < depth; state++) {
+      machine.Configure(state)
+              .SubstateOf(state + 1);
+    }
+    machine.Configure(depth)
+            .Permit("inherited", 0);
+    machine.OnUnhandledTrigger(new Action2<Integer, String>() {
+      public void doIt(Integer state, String trigger) {
+      }
+    });
+  }
+
+  @Benchmark
+  public Integer fireUnhandled() throws Exception {
+    machine.Fire("unhandled");
+    return machine.getState();
+  }
+
+  @Benchmark
+  public Integer fireInherited() throws Exception {
+    machine.Fire("inherited");
+    return machine.getState();
+  }
+
+  @Benchmark
+  public Boolean canFireUnhandled() {
+    return machine.CanFire("unhandled");
+  }
+
+  @Benchmark
+  public Boolean canFireInherited() {
+    return machine.CanFire("inherited");
+  }
+}
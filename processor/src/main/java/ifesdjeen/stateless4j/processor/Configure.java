@@ -0,0 +1,38 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// <summary>
+/// The configuration of one state in a <see cref="StateMachineSpec"/>, the counterpart of
+/// <c>StateConfiguration</c>.
+/// </summary>
+@Retention(RetentionPolicy.SOURCE)
+@Target({})
+public @interface Configure {
+  /// <summary>
+  /// The state configured.
+  /// </summary>
+  String state();
+
+  /// <summary>
+  /// The superstate of the configured state, if any.
+  /// </summary>
+  String substateOf() default "";
+
+  /// <summary>
+  /// The triggers accepted, with the states they transition to.
+  /// </summary>
+  Permit[] permit() default {};
+
+  /// <summary>
+  /// The triggers that exit and re-enter the configured state.
+  /// </summary>
+  String[] permitReentry() default {};
+
+  /// <summary>
+  /// The triggers ignored in the configured state.
+  /// </summary>
+  String[] ignore() default {};
+}
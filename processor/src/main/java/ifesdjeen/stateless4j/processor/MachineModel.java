@@ -0,0 +1,123 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// <summary>
+/// The machine declared by a <see cref="StateMachineSpec"/>, as read by the processor.
+/// </summary>
+final class MachineModel {
+  final String _packageName; // empty for the unnamed package
+  final String _className;
+  final String _specName; // canonical
+  final String _stateType; // canonical
+  final String _triggerType; // canonical
+  final List<String> _states; // every constant, in ordinal order
+  final List<String> _triggers; // every constant, in ordinal order
+
+  final Map<String, StateModel> _configured = new LinkedHashMap<String, StateModel>();
+  final List<Behaviour> _behaviours = new ArrayList<Behaviour>();
+
+  MachineModel(String packageName,
+               String className,
+               String specName,
+               String stateType,
+               String triggerType,
+               List<String> states,
+               List<String> triggers) {
+    _packageName = packageName;
+    _className = className;
+    _specName = specName;
+    _stateType = stateType;
+    _triggerType = triggerType;
+    _states = states;
+    _triggers = triggers;
+  }
+
+  /// <returns>The state, recorded on first use.</returns>
+  StateModel state(String name) {
+    StateModel state = _configured.get(name);
+    if (state == null) {
+      state = new StateModel(name);
+      _configured.put(name, state);
+    }
+    return state;
+  }
+
+  void addBehaviour(StateModel state, String trigger, String destination, String guard) {
+    Behaviour behaviour = new Behaviour(_behaviours.size(), trigger, destination, guard);
+    _behaviours.add(behaviour);
+    List<Behaviour> behaviours = state._behaviours.get(trigger);
+    if (behaviours == null) {
+      behaviours = new ArrayList<Behaviour>();
+      state._behaviours.put(trigger, behaviours);
+    }
+    behaviours.add(behaviour);
+  }
+
+  /// <returns>The state followed by its superstates, or nothing if it was not configured.</returns>
+  List<StateModel> chain(String name) {
+    List<StateModel> chain = new ArrayList<StateModel>();
+    for (StateModel state = _configured.get(name); state != null; state = state._superstate) {
+      chain.add(state);
+    }
+    return chain;
+  }
+
+  static final class StateModel {
+    final String _name;
+    StateModel _superstate;
+    final List<StateModel> _substates = new ArrayList<StateModel>();
+    // in declaration order, as StateRepresentation keeps them
+    final Map<String, List<Behaviour>> _behaviours = new LinkedHashMap<String, List<Behaviour>>();
+    final List<Action> _entryActions = new ArrayList<Action>();
+    final List<Action> _exitActions = new ArrayList<Action>();
+
+    StateModel(String name) {
+      _name = name;
+    }
+
+    void collectDescendants(List<String> result) {
+      result.add(_name);
+      for (StateModel substate : _substates) {
+        substate.collectDescendants(result);
+      }
+    }
+
+    boolean hasEntryActions() {
+      return !_entryActions.isEmpty() || (_superstate != null && _superstate.hasEntryActions());
+    }
+
+    boolean hasExitActions() {
+      return !_exitActions.isEmpty() || (_superstate != null && _superstate.hasExitActions());
+    }
+  }
+
+  static final class Behaviour {
+    final int _id;
+    final String _trigger;
+    final String _destination; // null if the trigger is ignored
+    final String _guard; // null if unguarded
+
+    Behaviour(int id, String trigger, String destination, String guard) {
+      _id = id;
+      _trigger = trigger;
+      _destination = destination;
+      _guard = guard;
+    }
+  }
+
+  static final class Action {
+    final String _method;
+    final boolean _takesTransition;
+    final String _from; // null: run whatever the trigger
+
+    Action(String method, boolean takesTransition, String from) {
+      _method = method;
+      _takesTransition = takesTransition;
+      _from = from;
+    }
+  }
+}
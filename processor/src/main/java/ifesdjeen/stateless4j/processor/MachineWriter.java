@@ -0,0 +1,470 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import ifesdjeen.stateless4j.processor.MachineModel.Action;
+import ifesdjeen.stateless4j.processor.MachineModel.Behaviour;
+import ifesdjeen.stateless4j.processor.MachineModel.StateModel;
+
+/// <summary>
+/// Writes the source of the machine generated for a <see cref="MachineModel"/>.
+/// </summary>
+/// <remarks>
+/// Handlers are resolved by a switch on the state then on the trigger, with the superstates'
+/// behaviours and guards laid out in the order <c>StateRepresentation.TryFindHandler</c>
+/// visits them, and ancestor checks are switches over the known descendants. Exit and entry
+/// follow <c>StateRepresentation.Exit</c> and <c>Enter</c>, one method per state.
+/// </remarks>
+final class MachineWriter {
+  static final List<String> IMPORTED = Arrays.asList("ArrayList", "List", "Action2", "UnhandledTriggerActionException", "Transition");
+
+  final MachineModel _model;
+  final StringBuilder _out = new StringBuilder();
+  int _indent;
+
+  // how the generated class refers to the types, imported unless their simple names clash
+  final List<String> _imports = new ArrayList<String>();
+  final String _spec;
+  final String _state;
+  final String _trigger;
+
+  MachineWriter(MachineModel model) {
+    _model = model;
+    _spec = reference(model._specName);
+    _state = reference(model._stateType);
+    _trigger = reference(model._triggerType);
+  }
+
+  String reference(String canonicalName) {
+    String simpleName = canonicalName.substring(canonicalName.lastIndexOf('.') + 1);
+    if (simpleName.equals(_model._className) || IMPORTED.contains(simpleName)) {
+      return canonicalName;
+    }
+    for (String imported : _imports) {
+      if (imported.endsWith("." + simpleName)) {
+        return canonicalName;
+      }
+    }
+    if (!canonicalName.equals(simpleName)) {
+      _imports.add(canonicalName);
+    }
+    return simpleName;
+  }
+
+  String write() {
+    String s = _state;
+    String t = _trigger;
+
+    if (!_model._packageName.isEmpty()) {
+      line("package %s;", _model._packageName);
+      line("");
+    }
+    line("import java.util.ArrayList;");
+    line("import java.util.List;");
+    line("");
+    line("import ifesdjeen.stateless4j.delegates.Action2;");
+    line("import ifesdjeen.stateless4j.exceptions.UnhandledTriggerActionException;");
+    line("import ifesdjeen.stateless4j.transitions.Transition;");
+    for (String imported : _imports) {
+      line("import %s;", imported);
+    }
+    line("");
+    line("/// <summary>");
+    line("/// Generated by StateMachineProcessor from <see cref=\"%s\"/>; do not edit.", _spec);
+    line("/// </summary>");
+    open("public class %s extends %s", _model._className, _spec);
+    line("static final int UNHANDLED = -1;");
+    line("");
+    line("%s _state;", s);
+    line("Action2<%s, %s> _unhandledTriggerAction; // null: unhandled triggers are ignored", s, t);
+    line("");
+    open("public %s(%s initialState)", _model._className, s);
+    line("_state = initialState;");
+    close();
+    line("");
+    open("public %s getState()", s);
+    line("return _state;");
+    close();
+    line("");
+    writeFire();
+    line("");
+    open("public boolean CanFire(%s trigger)", t);
+    line("return FindHandler(_state, trigger) != UNHANDLED;");
+    close();
+    line("");
+    open("public boolean IsInState(%s state)", s);
+    line("return Includes(state, _state);");
+    close();
+    line("");
+    writePermittedTriggers();
+    line("");
+    open("public void OnUnhandledTrigger(Action2<%s, %s> unhandledTriggerAction) throws UnhandledTriggerActionException", s, t);
+    line("if (unhandledTriggerAction == null) throw new UnhandledTriggerActionException();");
+    line("_unhandledTriggerAction = unhandledTriggerAction;");
+    close();
+    line("");
+    writeFindHandler();
+    for (StateModel state : _model._configured.values()) {
+      writeExit(state);
+      writeEnter(state);
+    }
+    line("");
+    writeIncludes();
+    close();
+    return _out.toString();
+  }
+
+  void writeFire() {
+    String s = _state;
+    String t = _trigger;
+    open("public void Fire(%s trigger)", t);
+    line("%s source = _state;", s);
+    line("%s destination;", s);
+    open("switch (FindHandler(source, trigger))");
+    line("case UNHANDLED:");
+    _indent++;
+    open("if (_unhandledTriggerAction != null)");
+    line("_unhandledTriggerAction.doIt(source, trigger);");
+    close();
+    line("return;");
+    _indent--;
+    for (Behaviour behaviour : _model._behaviours) {
+      line("case %d:", behaviour._id);
+      _indent++;
+      if (behaviour._destination == null) {
+        line("return; // ignored");
+      } else {
+        line("destination = %s.%s;", s, behaviour._destination);
+        line("break;");
+      }
+      _indent--;
+    }
+    line("default:");
+    _indent++;
+    line("throw new AssertionError();");
+    _indent--;
+    close();
+    line("Transition<%s, %s> transition = new Transition<%s, %s>(source, destination, trigger);", s, t, s, t);
+    open("try");
+    line("Exit(source, transition);");
+    line("_state = destination;");
+    line("Enter(destination, transition);");
+    _indent--;
+    open("} catch (Exception e)");
+    line("// as in StateMachine, a failing action ends the transition where it stands");
+    close();
+    close();
+  }
+
+  void writePermittedTriggers() {
+    String t = _trigger;
+    open("public List<%s> getPermittedTriggers()", t);
+    line("List<%s> permitted = new ArrayList<%s>();", t, t);
+    open("switch (_state)");
+    for (String state : _model._states) {
+      List<StateModel> chain = _model.chain(state);
+      List<String> lines = new ArrayList<String>();
+      for (String trigger : _model._triggers) {
+        List<String> guards = new ArrayList<String>();
+        boolean unguarded = false;
+        for (StateModel level : chain) {
+          List<Behaviour> behaviours = level._behaviours.get(trigger);
+          if (behaviours == null) {
+            continue;
+          }
+          for (Behaviour behaviour : behaviours) {
+            if (behaviour._guard == null) {
+              unguarded = true;
+            } else {
+              guards.add(behaviour._guard + "()");
+            }
+          }
+        }
+        if (unguarded) {
+          lines.add(String.format("permitted.add(%s.%s);", t, trigger));
+        } else if (!guards.isEmpty()) {
+          lines.add(String.format("if (%s) permitted.add(%s.%s);", join(guards, " || "), t, trigger));
+        }
+      }
+      if (lines.isEmpty()) {
+        continue;
+      }
+      line("case %s:", state);
+      _indent++;
+      for (String permitted : lines) {
+        line(permitted);
+      }
+      line("break;");
+      _indent--;
+    }
+    line("default:");
+    _indent++;
+    line("break;");
+    _indent--;
+    close();
+    line("return permitted;");
+    close();
+  }
+
+  void writeFindHandler() {
+    open("int FindHandler(%s state, %s trigger)", _state, _trigger);
+    open("switch (state)");
+    for (String state : _model._states) {
+      List<StateModel> chain = _model.chain(state);
+      Set<String> handled = new LinkedHashSet<String>();
+      for (String trigger : _model._triggers) {
+        for (StateModel level : chain) {
+          if (level._behaviours.containsKey(trigger)) {
+            handled.add(trigger);
+          }
+        }
+      }
+      if (handled.isEmpty()) {
+        continue;
+      }
+      line("case %s:", state);
+      _indent++;
+      open("switch (trigger)");
+      for (String trigger : handled) {
+        line("case %s:", trigger);
+        _indent++;
+        writeLevels(chain, trigger);
+        _indent--;
+      }
+      line("default:");
+      _indent++;
+      line("return UNHANDLED;");
+      _indent--;
+      close();
+      _indent--;
+    }
+    line("default:");
+    _indent++;
+    line("return UNHANDLED;");
+    _indent--;
+    close();
+    close();
+  }
+
+  /// <summary>
+  /// The handler of the trigger: the single behaviour whose guard is met in the first state
+  /// of the chain having one, as in <c>StateRepresentation.TryFindLocalHandler</c>.
+  /// </summary>
+  void writeLevels(List<StateModel> chain, String trigger) {
+    for (StateModel level : chain) {
+      List<Behaviour> behaviours = level._behaviours.get(trigger);
+      if (behaviours == null) {
+        continue;
+      }
+      if (behaviours.size() == 1) {
+        Behaviour behaviour = behaviours.get(0);
+        if (behaviour._guard == null) {
+          line("return %d;", behaviour._id);
+          return;
+        }
+        line("if (%s()) return %d;", behaviour._guard, behaviour._id);
+        continue;
+      }
+      // several behaviours: ambiguous, and deferred to the superstate, if more than one is met
+      String label = "in" + level._name;
+      open("%s:", label);
+      line("int handler = UNHANDLED;");
+      for (int i = 0; i < behaviours.size(); i++) {
+        Behaviour behaviour = behaviours.get(i);
+        if (behaviour._guard != null) {
+          open("if (%s())", behaviour._guard);
+        }
+        if (i > 0) {
+          line("if (handler != UNHANDLED) break %s;", label);
+        }
+        line("handler = %d;", behaviour._id);
+        if (behaviour._guard != null) {
+          close();
+        }
+      }
+      line("if (handler != UNHANDLED) return handler;");
+      close();
+    }
+    line("return UNHANDLED;");
+  }
+
+  void writeExit(StateModel state) {
+    if (!state.hasExitActions()) {
+      return;
+    }
+    String s = _state;
+    line("");
+    open("void Exit%s(Transition<%s, %s> transition)", state._name, s, _trigger);
+    if (state._exitActions.isEmpty()) {
+      open("if (!transition.isReentry() && !Includes(%s.%s, transition.getDestination()))", s, state._name);
+    } else {
+      open("if (transition.isReentry())");
+      writeActions(state._exitActions);
+      _indent--;
+      open("} else if (!Includes(%s.%s, transition.getDestination()))", s, state._name);
+      writeActions(state._exitActions);
+    }
+    if (state._superstate != null && state._superstate.hasExitActions()) {
+      line("Exit%s(transition);", state._superstate._name);
+    }
+    close();
+    close();
+  }
+
+  void writeEnter(StateModel state) {
+    if (!state.hasEntryActions()) {
+      return;
+    }
+    String s = _state;
+    line("");
+    open("void Enter%s(Transition<%s, %s> transition)", state._name, s, _trigger);
+    if (state._entryActions.isEmpty()) {
+      open("if (!transition.isReentry() && !Includes(%s.%s, transition.getSource()))", s, state._name);
+    } else {
+      open("if (transition.isReentry())");
+      writeEntryActions(state);
+      _indent--;
+      open("} else if (!Includes(%s.%s, transition.getSource()))", s, state._name);
+    }
+    if (state._superstate != null && state._superstate.hasEntryActions()) {
+      line("Enter%s(transition);", state._superstate._name);
+    }
+    writeEntryActions(state);
+    close();
+    close();
+  }
+
+  /// <summary>
+  /// The entry actions of the state for the trigger of the transition, in declaration order.
+  /// </summary>
+  void writeEntryActions(StateModel state) {
+    Set<String> specific = new LinkedHashSet<String>();
+    List<Action> agnostic = new ArrayList<Action>();
+    for (Action action : state._entryActions) {
+      if (action._from != null) {
+        specific.add(action._from);
+      } else {
+        agnostic.add(action);
+      }
+    }
+    if (specific.isEmpty()) {
+      writeActions(agnostic);
+      return;
+    }
+    open("switch (transition.getTrigger())");
+    for (String trigger : specific) {
+      line("case %s:", trigger);
+      _indent++;
+      List<Action> actions = new ArrayList<Action>();
+      for (Action action : state._entryActions) {
+        if (action._from == null || action._from.equals(trigger)) {
+          actions.add(action);
+        }
+      }
+      writeActions(actions);
+      line("break;");
+      _indent--;
+    }
+    line("default:");
+    _indent++;
+    writeActions(agnostic);
+    line("break;");
+    _indent--;
+    close();
+  }
+
+  void writeActions(List<Action> actions) {
+    for (Action action : actions) {
+      line("%s(%s);", action._method, action._takesTransition ? "transition" : "");
+    }
+  }
+
+  void writeIncludes() {
+    String s = _state;
+    line("/// <returns>True if the state is the ancestor or one of its substates, at any depth.</returns>");
+    open("static boolean Includes(%s ancestor, %s state)", s, s);
+    open("switch (ancestor)");
+    for (StateModel state : _model._configured.values()) {
+      if (state._substates.isEmpty()) {
+        continue;
+      }
+      List<String> descendants = new ArrayList<String>();
+      state.collectDescendants(descendants);
+      List<String> tests = new ArrayList<String>();
+      for (String descendant : descendants) {
+        tests.add(String.format("state == %s.%s", s, descendant));
+      }
+      line("case %s:", state._name);
+      _indent++;
+      line("return %s;", join(tests, " || "));
+      _indent--;
+    }
+    line("default:");
+    _indent++;
+    line("return ancestor == state;");
+    _indent--;
+    close();
+    close();
+    line("");
+    writeDispatch("Exit", "source", true);
+    line("");
+    writeDispatch("Enter", "destination", false);
+  }
+
+  void writeDispatch(String name, String parameter, boolean exit) {
+    String s = _state;
+    open("void %s(%s %s, Transition<%s, %s> transition)", name, s, parameter, s, _trigger);
+    open("switch (%s)", parameter);
+    for (StateModel state : _model._configured.values()) {
+      if (exit ? !state.hasExitActions() : !state.hasEntryActions()) {
+        continue;
+      }
+      line("case %s:", state._name);
+      _indent++;
+      line("%s%s(transition);", name, state._name);
+      line("break;");
+      _indent--;
+    }
+    line("default:");
+    _indent++;
+    line("break;");
+    _indent--;
+    close();
+    close();
+  }
+
+  static String join(List<String> parts, String separator) {
+    StringBuilder result = new StringBuilder();
+    for (String part : parts) {
+      if (result.length() > 0) {
+        result.append(separator);
+      }
+      result.append(part);
+    }
+    return result.toString();
+  }
+
+  void open(String format, Object... args) {
+    line(format + " {", args);
+    _indent++;
+  }
+
+  void close() {
+    _indent--;
+    line("}");
+  }
+
+  void line(String format, Object... args) {
+    if (!format.isEmpty()) {
+      for (int i = 0; i < _indent; i++) {
+        _out.append("  ");
+      }
+      _out.append(args.length == 0 ? format : String.format(format, args));
+    }
+    _out.append('\n');
+  }
+}
@@ -0,0 +1,25 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// <summary>
+/// Marks a method of a <see cref="StateMachineSpec"/> run when the state is entered, the
+/// counterpart of <c>StateConfiguration.OnEntry</c> and <c>OnEntryFrom</c>. The method takes
+/// no parameters or the <c>Transition</c>.
+/// </summary>
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface OnEntry {
+  /// <summary>
+  /// The state entered.
+  /// </summary>
+  String state();
+
+  /// <summary>
+  /// If set, the action only runs when the state is entered through this trigger.
+  /// </summary>
+  String from() default "";
+}
@@ -0,0 +1,20 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// <summary>
+/// Marks a method of a <see cref="StateMachineSpec"/> run when the state is exited, the
+/// counterpart of <c>StateConfiguration.OnExit</c>. The method takes no parameters or the
+/// <c>Transition</c>.
+/// </summary>
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface OnExit {
+  /// <summary>
+  /// The state exited.
+  /// </summary>
+  String value();
+}
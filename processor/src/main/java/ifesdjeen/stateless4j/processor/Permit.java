@@ -0,0 +1,29 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// <summary>
+/// A trigger accepted by a configured state, the counterpart of
+/// <c>StateConfiguration.Permit</c> and <c>PermitIf</c>.
+/// </summary>
+@Retention(RetentionPolicy.SOURCE)
+@Target({})
+public @interface Permit {
+  /// <summary>
+  /// The accepted trigger.
+  /// </summary>
+  String trigger();
+
+  /// <summary>
+  /// The state the trigger transitions to; it must differ from the configured state.
+  /// </summary>
+  String destination();
+
+  /// <summary>
+  /// The name of a method of the spec, without parameters and returning a boolean, that must
+  /// return true for the trigger to be accepted.
+  /// </summary>
+  String guard() default "";
+}
@@ -0,0 +1,262 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+import ifesdjeen.stateless4j.processor.MachineModel.Action;
+import ifesdjeen.stateless4j.processor.MachineModel.StateModel;
+
+/// <summary>
+/// Generates a machine for each class annotated with <see cref="StateMachineSpec"/>.
+/// </summary>
+/// <remarks>
+/// Names of unknown states, triggers or guards, actions with unsupported parameters, self
+/// transitions declared through <see cref="Permit"/>, conflicting superstates and cycles
+/// are reported as compilation errors on the spec.
+/// </remarks>
+public class StateMachineProcessor extends AbstractProcessor {
+  static final String TRANSITION = "ifesdjeen.stateless4j.transitions.Transition";
+
+  @Override
+  public Set<String> getSupportedAnnotationTypes() {
+    return Collections.singleton(StateMachineSpec.class.getCanonicalName());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+    for (Element element : round.getElementsAnnotatedWith(StateMachineSpec.class)) {
+      if (element.getKind() != ElementKind.CLASS
+              || element.getModifiers().contains(Modifier.FINAL)
+              || element.getModifiers().contains(Modifier.PRIVATE)) {
+        error(element, "@StateMachineSpec must annotate a class that can be extended");
+        continue;
+      }
+      TypeElement spec = (TypeElement) element;
+      MachineModel model = read(spec);
+      if (model != null) {
+        write(spec, model);
+      }
+    }
+    return true;
+  }
+
+  /// <returns>The model, or null if the spec is invalid.</returns>
+  MachineModel read(TypeElement spec) {
+    StateMachineSpec annotation = spec.getAnnotation(StateMachineSpec.class);
+    TypeElement stateType = enumType(annotation, true);
+    TypeElement triggerType = enumType(annotation, false);
+    if (stateType == null || triggerType == null) {
+      error(spec, "states and triggers must be enums");
+      return null;
+    }
+
+    String packageName = processingEnv.getElementUtils().getPackageOf(spec).getQualifiedName().toString();
+    String className = annotation.name();
+    if (className.isEmpty()) {
+      String specName = spec.getSimpleName().toString();
+      className = (specName.endsWith("Spec") && specName.length() > 4
+              ? specName.substring(0, specName.length() - 4)
+              : specName) + "Machine";
+    }
+    MachineModel model = new MachineModel(packageName,
+                                          className,
+                                          spec.getQualifiedName().toString(),
+                                          stateType.getQualifiedName().toString(),
+                                          triggerType.getQualifiedName().toString(),
+                                          constants(stateType),
+                                          constants(triggerType));
+    boolean valid = true;
+
+    for (Configure configure : annotation.value()) {
+      if (!isState(spec, model, configure.state())) {
+        valid = false;
+        continue;
+      }
+      StateModel state = model.state(configure.state());
+      if (!configure.substateOf().isEmpty() && isState(spec, model, configure.substateOf())) {
+        StateModel superstate = model.state(configure.substateOf());
+        if (state._superstate != null && state._superstate != superstate) {
+          error(spec, "state " + state._name + " is given two superstates");
+          valid = false;
+        } else if (state._superstate == null) {
+          state._superstate = superstate;
+          superstate._substates.add(state);
+        }
+      } else if (!configure.substateOf().isEmpty()) {
+        valid = false;
+      }
+      for (Permit permit : configure.permit()) {
+        valid &= isTrigger(spec, model, permit.trigger()) && isState(spec, model, permit.destination());
+        if (permit.destination().equals(state._name)) {
+          error(spec, "permit of " + permit.trigger() + " in " + state._name + " transitions to itself: use permitReentry");
+          valid = false;
+        }
+        String guard = permit.guard().isEmpty() ? null : permit.guard();
+        valid &= guard == null || isGuard(spec, guard);
+        model.addBehaviour(state, permit.trigger(), permit.destination(), guard);
+      }
+      for (String trigger : configure.permitReentry()) {
+        valid &= isTrigger(spec, model, trigger);
+        model.addBehaviour(state, trigger, state._name, null);
+      }
+      for (String trigger : configure.ignore()) {
+        valid &= isTrigger(spec, model, trigger);
+        model.addBehaviour(state, trigger, null, null);
+      }
+    }
+
+    for (StateModel state : model._configured.values()) {
+      int depth = 0;
+      for (StateModel superstate = state._superstate; superstate != null; superstate = superstate._superstate) {
+        if (++depth > model._configured.size()) {
+          error(spec, "state " + state._name + " is its own superstate");
+          return null;
+        }
+      }
+    }
+
+    for (ExecutableElement method : ElementFilter.methodsIn(spec.getEnclosedElements())) {
+      OnEntry onEntry = method.getAnnotation(OnEntry.class);
+      OnExit onExit = method.getAnnotation(OnExit.class);
+      if (onEntry == null && onExit == null) {
+        continue;
+      }
+      Boolean takesTransition = takesTransition(method);
+      if (takesTransition == null || method.getModifiers().contains(Modifier.PRIVATE)) {
+        error(method, "actions must not be private and take no parameters or the Transition");
+        valid = false;
+        continue;
+      }
+      String name = method.getSimpleName().toString();
+      if (onEntry != null && isState(method, model, onEntry.state())) {
+        String from = onEntry.from().isEmpty() ? null : onEntry.from();
+        valid &= from == null || isTrigger(method, model, from);
+        model.state(onEntry.state())._entryActions.add(new Action(name, takesTransition, from));
+      } else if (onEntry != null) {
+        valid = false;
+      }
+      if (onExit != null && isState(method, model, onExit.value())) {
+        model.state(onExit.value())._exitActions.add(new Action(name, takesTransition, null));
+      } else if (onExit != null) {
+        valid = false;
+      }
+    }
+    return valid ? model : null;
+  }
+
+  static TypeElement enumType(StateMachineSpec annotation, boolean states) {
+    TypeMirror type;
+    try {
+      if (states) {
+        annotation.states();
+      } else {
+        annotation.triggers();
+      }
+      return null;
+    } catch (MirroredTypeException e) {
+      // classes named in annotations are not loaded while compiling
+      type = e.getTypeMirror();
+    }
+    if (type.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+    return element.getKind() == ElementKind.ENUM ? element : null;
+  }
+
+  static List<String> constants(TypeElement enumType) {
+    List<String> constants = new ArrayList<String>();
+    for (Element element : enumType.getEnclosedElements()) {
+      if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+        constants.add(element.getSimpleName().toString());
+      }
+    }
+    return constants;
+  }
+
+  /// <returns>Whether the action takes the transition, or null if its parameters are not supported.</returns>
+  Boolean takesTransition(ExecutableElement method) {
+    if (method.getParameters().isEmpty()) {
+      return false;
+    }
+    if (method.getParameters().size() == 1) {
+      TypeMirror type = processingEnv.getTypeUtils().erasure(method.getParameters().get(0).asType());
+      if (type.toString().equals(TRANSITION)) {
+        return true;
+      }
+    }
+    return null;
+  }
+
+  boolean isGuard(TypeElement spec, String name) {
+    for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(spec))) {
+      if (method.getSimpleName().contentEquals(name)
+              && method.getParameters().isEmpty()
+              && !method.getModifiers().contains(Modifier.PRIVATE)
+              && (method.getReturnType().getKind() == TypeKind.BOOLEAN
+                          || method.getReturnType().toString().equals(Boolean.class.getName()))) {
+        return true;
+      }
+    }
+    error(spec, "guard " + name + " must be a method without parameters returning a boolean");
+    return false;
+  }
+
+  boolean isState(Element element, MachineModel model, String name) {
+    if (model._states.contains(name)) {
+      return true;
+    }
+    error(element, "unknown state " + name);
+    return false;
+  }
+
+  boolean isTrigger(Element element, MachineModel model, String name) {
+    if (model._triggers.contains(name)) {
+      return true;
+    }
+    error(element, "unknown trigger " + name);
+    return false;
+  }
+
+  void write(TypeElement spec, MachineModel model) {
+    String name = model._packageName.isEmpty() ? model._className : model._packageName + "." + model._className;
+    try {
+      Writer writer = processingEnv.getFiler().createSourceFile(name, spec).openWriter();
+      try {
+        writer.write(new MachineWriter(model).write());
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      error(spec, "cannot write " + name + ": " + e.getMessage());
+    }
+  }
+
+  void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}
@@ -0,0 +1,48 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/// <summary>
+/// Declares a state machine over enum states and triggers, from which
+/// <see cref="StateMachineProcessor"/> generates a subclass of the annotated class with
+/// switch-based dispatch.
+/// </summary>
+/// <remarks>
+/// The configurations mirror <c>StateMachineDefinition.Configure</c>: each names a state and
+/// what it permits, ignores or re-enters, and may make it a substate of another. Entry and
+/// exit actions are methods of the annotated class marked with <see cref="OnEntry"/> and
+/// <see cref="OnExit"/>, run in declaration order; guards are methods named by
+/// <see cref="Permit.guard"/>. States and triggers are given by the names of their constants.
+/// <para/>
+/// The generated class is named after the annotated one, with a <c>Spec</c> suffix replaced
+/// by <c>Machine</c>, unless <see cref="name"/> is set. It behaves as a
+/// <c>StateMachine</c> running the same configuration in <c>FiringMode.Immediate</c>, but
+/// needs no configuration at run time. Parameterised triggers and dynamic destinations are
+/// not supported.
+/// </remarks>
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface StateMachineSpec {
+  /// <summary>
+  /// The enum of the states.
+  /// </summary>
+  Class<? extends Enum<?>> states();
+
+  /// <summary>
+  /// The enum of the triggers.
+  /// </summary>
+  Class<? extends Enum<?>> triggers();
+
+  /// <summary>
+  /// The configuration of each state; a state may be configured more than once.
+  /// </summary>
+  Configure[] value();
+
+  /// <summary>
+  /// The simple name of the generated class.
+  /// </summary>
+  String name() default "";
+}
@@ -0,0 +1,189 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.StateMachine;
+import ifesdjeen.stateless4j.StateMachineDefinition;
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.transitions.Transition;
+
+
+public class ConformanceFixtureTest {
+  // runs the actions and guards of the interpreted machine, so that both log the same way
+  final JobMachine host = new JobMachine(JobState.Idle);
+
+  final Func<Boolean> left = new Func<Boolean>() {
+    public Boolean call() {
+      return host.left();
+    }
+  };
+
+  final Func<Boolean> right = new Func<Boolean>() {
+    public Boolean call() {
+      return host.right();
+    }
+  };
+
+  StateMachineDefinition<JobState, JobTrigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<JobState, JobTrigger> definition = new StateMachineDefinition<JobState, JobTrigger>();
+    definition.Configure(JobState.Idle)
+            .Permit(JobTrigger.Start, JobState.Running)
+            .PermitIf(JobTrigger.Reset, JobState.Stopped, left)
+            .PermitIf(JobTrigger.Reset, JobState.Paused, right)
+            .Ignore(JobTrigger.Tick);
+    definition.Configure(JobState.Active)
+            .Permit(JobTrigger.Stop, JobState.Stopped)
+            .PermitIf(JobTrigger.Reset, JobState.Idle, left)
+            .PermitReentry(JobTrigger.Tick);
+    definition.Configure(JobState.Running)
+            .SubstateOf(JobState.Active)
+            .Permit(JobTrigger.Pause, JobState.Paused)
+            .PermitIf(JobTrigger.Stop, JobState.Idle, right)
+            .PermitIf(JobTrigger.Resume, JobState.Paused, left)
+            .PermitIf(JobTrigger.Resume, JobState.Idle, right)
+            .Permit(JobTrigger.Fail, JobState.Orphan);
+    definition.Configure(JobState.Paused)
+            .SubstateOf(JobState.Active)
+            .Permit(JobTrigger.Resume, JobState.Running)
+            .Permit(JobTrigger.Start, JobState.Running)
+            .Permit(JobTrigger.Start, JobState.Idle)
+            .PermitReentry(JobTrigger.Pause);
+    definition.Configure(JobState.Stopped)
+            .Permit(JobTrigger.Reset, JobState.Idle)
+            .Permit(JobTrigger.Fail, JobState.Active);
+
+    definition.Configure(JobState.Idle)
+            .OnEntry(new Action() {
+              public void doIt() {
+                host.enterIdle();
+              }
+            })
+            .OnExit(new Action1<Transition<JobState, JobTrigger>>() {
+              public void doIt(Transition<JobState, JobTrigger> transition) {
+                host.exitIdle(transition);
+              }
+            });
+    definition.Configure(JobState.Active)
+            .OnEntry(new Action1<Transition<JobState, JobTrigger>>() {
+              public void doIt(Transition<JobState, JobTrigger> transition) {
+                host.enterActive(transition);
+              }
+            })
+            .OnExit(new Action() {
+              public void doIt() {
+                host.exitActive();
+              }
+            });
+    definition.Configure(JobState.Running)
+            .OnEntry(new Action() {
+              public void doIt() {
+                host.enterRunning();
+              }
+            })
+            .OnEntryFrom(JobTrigger.Resume, new Action() {
+              public void doIt() {
+                host.resumeRunning();
+              }
+            })
+            .OnExit(new Action() {
+              public void doIt() {
+                host.exitRunning();
+              }
+            });
+    definition.Configure(JobState.Paused)
+            .OnEntryFrom(JobTrigger.Pause, new Action() {
+              public void doIt() {
+                host.pausePaused();
+              }
+            })
+            .OnEntry(new Action1<Transition<JobState, JobTrigger>>() {
+              public void doIt(Transition<JobState, JobTrigger> transition) {
+                host.enterPaused(transition);
+              }
+            });
+    definition.Configure(JobState.Stopped)
+            .OnEntry(new Action() {
+              public void doIt() {
+                host.enterStopped();
+              }
+            });
+    definition.Configure(JobState.Orphan)
+            .OnEntry(new Action() {
+              public void doIt() {
+                host.enterOrphan();
+              }
+            });
+    return definition;
+  }
+
+  static Action2<JobState, JobTrigger> Recording(final List<String> unhandled) {
+    return new Action2<JobState, JobTrigger>() {
+      public void doIt(JobState state, JobTrigger trigger) {
+        unhandled.add(trigger + " in " + state);
+      }
+    };
+  }
+
+  @Test
+  public void GeneratedMachineBehavesAsTheInterpretedOne() throws Exception {
+    StateMachineDefinition<JobState, JobTrigger> definition = CreateDefinition();
+    Random random = new Random(42);
+
+    for (JobState initial : JobState.values()) {
+      JobMachine generated = new JobMachine(initial);
+      StateMachine<JobState, JobTrigger> interpreted = definition.CreateMachine(initial);
+      List<String> generatedUnhandled = new ArrayList<String>();
+      List<String> interpretedUnhandled = new ArrayList<String>();
+      generated.OnUnhandledTrigger(Recording(generatedUnhandled));
+      interpreted.OnUnhandledTrigger(Recording(interpretedUnhandled));
+
+      for (int step = 0; step < 2000; step++) {
+        generated.left = host.left = random.nextBoolean();
+        generated.right = host.right = random.nextBoolean();
+        generated.failing = host.failing = random.nextInt(4) == 0;
+        JobTrigger trigger = JobTrigger.values()[random.nextInt(JobTrigger.values().length)];
+
+        generated.Fire(trigger);
+        interpreted.Fire(trigger);
+
+        String at = initial + ", step " + step + ", " + trigger;
+        Assert.assertEquals(at, interpreted.getState(), generated.getState());
+        Assert.assertEquals(at, host.log, generated.log);
+        Assert.assertEquals(at, interpretedUnhandled, generatedUnhandled);
+        Assert.assertEquals(at,
+                            new HashSet<JobTrigger>(interpreted.getPermittedTriggers()),
+                            new HashSet<JobTrigger>(generated.getPermittedTriggers()));
+        for (JobTrigger candidate : JobTrigger.values()) {
+          Assert.assertEquals(at, interpreted.CanFire(candidate), generated.CanFire(candidate));
+        }
+        for (JobState state : JobState.values()) {
+          Assert.assertEquals(at, interpreted.IsInState(state), generated.IsInState(state));
+        }
+      }
+      host.log.clear();
+    }
+  }
+
+  @Test
+  public void GeneratedMachineNeedsNoConfiguration() {
+    JobMachine machine = new JobMachine(JobState.Idle);
+
+    machine.Fire(JobTrigger.Start);
+    machine.Fire(JobTrigger.Pause);
+    machine.Fire(JobTrigger.Pause);
+
+    Assert.assertEquals(JobState.Paused, machine.getState());
+    Assert.assertTrue(machine.IsInState(JobState.Active));
+    Assert.assertEquals(8, machine.log.size());
+    Assert.assertEquals("pause Paused", machine.log.get(4));
+  }
+}
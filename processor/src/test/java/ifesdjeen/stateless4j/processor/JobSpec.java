@@ -0,0 +1,116 @@
+package ifesdjeen.stateless4j.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ifesdjeen.stateless4j.transitions.Transition;
+
+/// <summary>
+/// A machine exercising hierarchy, guards, ambiguous behaviours, reentry, ignored triggers,
+/// trigger-specific entry actions and failing actions; <see cref="JobMachine"/> is generated
+/// from it and <see cref="ConformanceFixtureTest"/> configures the same machine through the DSL.
+/// </summary>
+@StateMachineSpec(states = JobState.class, triggers = JobTrigger.class, value = {
+        @Configure(state = "Idle",
+                   permit = {
+                           @Permit(trigger = "Start", destination = "Running"),
+                           @Permit(trigger = "Reset", destination = "Stopped", guard = "left"),
+                           @Permit(trigger = "Reset", destination = "Paused", guard = "right")},
+                   ignore = "Tick"),
+        @Configure(state = "Active",
+                   permit = {
+                           @Permit(trigger = "Stop", destination = "Stopped"),
+                           @Permit(trigger = "Reset", destination = "Idle", guard = "left")},
+                   permitReentry = "Tick"),
+        @Configure(state = "Running",
+                   substateOf = "Active",
+                   permit = {
+                           @Permit(trigger = "Pause", destination = "Paused"),
+                           @Permit(trigger = "Stop", destination = "Idle", guard = "right"),
+                           @Permit(trigger = "Resume", destination = "Paused", guard = "left"),
+                           @Permit(trigger = "Resume", destination = "Idle", guard = "right"),
+                           @Permit(trigger = "Fail", destination = "Orphan")}),
+        @Configure(state = "Paused",
+                   substateOf = "Active",
+                   permit = {
+                           @Permit(trigger = "Resume", destination = "Running"),
+                           @Permit(trigger = "Start", destination = "Running"),
+                           @Permit(trigger = "Start", destination = "Idle")},
+                   permitReentry = "Pause"),
+        @Configure(state = "Stopped",
+                   permit = {
+                           @Permit(trigger = "Reset", destination = "Idle"),
+                           @Permit(trigger = "Fail", destination = "Active")})
+})
+public abstract class JobSpec {
+  final List<String> log = new ArrayList<String>();
+  boolean left;
+  boolean right;
+  boolean failing;
+
+  boolean left() {
+    return left;
+  }
+
+  boolean right() {
+    return right;
+  }
+
+  @OnEntry(state = "Idle")
+  void enterIdle() {
+    log.add("enter Idle");
+  }
+
+  @OnExit("Idle")
+  void exitIdle(Transition<JobState, JobTrigger> transition) {
+    log.add("exit Idle to " + transition.getDestination());
+  }
+
+  @OnEntry(state = "Active")
+  void enterActive(Transition<JobState, JobTrigger> transition) {
+    log.add("enter Active from " + transition.getSource());
+  }
+
+  @OnExit("Active")
+  void exitActive() {
+    log.add("exit Active");
+  }
+
+  @OnEntry(state = "Running")
+  void enterRunning() {
+    log.add("enter Running");
+  }
+
+  @OnEntry(state = "Running", from = "Resume")
+  void resumeRunning() {
+    log.add("resume Running");
+  }
+
+  @OnExit("Running")
+  void exitRunning() {
+    log.add("exit Running");
+  }
+
+  @OnEntry(state = "Paused", from = "Pause")
+  void pausePaused() {
+    log.add("pause Paused");
+  }
+
+  @OnEntry(state = "Paused")
+  void enterPaused(Transition<JobState, JobTrigger> transition) {
+    log.add("enter Paused by " + transition.getTrigger());
+  }
+
+  @OnEntry(state = "Stopped")
+  void enterStopped() {
+    log.add("enter Stopped");
+    if (failing) {
+      throw new IllegalStateException("failing");
+    }
+  }
+
+  @OnEntry(state = "Orphan")
+  void enterOrphan() {
+    log.add("enter Orphan");
+  }
+}
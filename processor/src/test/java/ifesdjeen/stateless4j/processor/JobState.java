@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.processor;
+
+public enum JobState {
+  Idle, Active, Running, Paused, Stopped, Orphan, Unconfigured
+}
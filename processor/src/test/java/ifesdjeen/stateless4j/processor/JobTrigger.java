@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.processor;
+
+public enum JobTrigger {
+  Start, Pause, Resume, Stop, Reset, Tick, Fail, Unknown
+}
@@ -0,0 +1,26 @@
+package ifesdjeen.stateless4j;
+
+import ifesdjeen.stateless4j.timer.Timeout;
+
+/// <summary>
+/// A <see cref="StateTimeout"/> pending for one machine, since it entered the state that
+/// declares it.
+/// </summary>
+final class ArmedTimeout<TState, TTrigger> extends Timeout {
+  final StateMachine<TState, TTrigger> _machine;
+  final StateRepresentation<TState, TTrigger> _representation;
+  final TTrigger _trigger;
+  ArmedTimeout<TState, TTrigger> _sibling; // the next timeout armed for the machine
+
+  ArmedTimeout(StateMachine<TState, TTrigger> machine,
+               StateRepresentation<TState, TTrigger> representation,
+               TTrigger trigger) {
+    _machine = machine;
+    _representation = representation;
+    _trigger = trigger;
+  }
+
+  protected void expired() {
+    _machine.TimedOut(this);
+  }
+}
@@ -0,0 +1,28 @@
+package ifesdjeen.stateless4j;
+
+/// <summary>
+/// What a <see cref="ConcurrentStateMachine"/> does when another thread changes the
+/// state between reading it and committing a transition.
+/// </summary>
+public enum ConcurrentFirePolicy {
+  /// <summary>
+  /// Re-evaluate the trigger against the new state until a transition commits.
+  /// </summary>
+  Retry,
+
+  /// <summary>
+  /// Drop the trigger and report it through the unhandled-trigger action, with the
+  /// state it was fired from.
+  /// </summary>
+  Reject,
+
+  /// <summary>
+  /// Serialise every fire: triggers are appended to a lock-free queue and drained by
+  /// whichever thread finds the machine idle, so transitions and their actions never
+  /// overlap and run in the order the triggers were queued. Fire returns the outcome of the
+  /// caller's trigger if its thread drained it, QUEUED otherwise. An exception thrown by the
+  /// unhandled-trigger action or a listener while draining does not stop the drain; the
+  /// first one is thrown to the draining thread once the queue is empty.
+  /// </summary>
+  Queue
+}
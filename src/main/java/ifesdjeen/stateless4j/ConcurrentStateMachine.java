@@ -0,0 +1,215 @@
+package ifesdjeen.stateless4j;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import ifesdjeen.stateless4j.exceptions.TriggerIgnoredException;
+import ifesdjeen.stateless4j.metrics.StateMetrics;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.triggers.IgnoredTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerWithPrimitiveParameter;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// A state machine that may be fired from several threads at once without external locking.
+/// </summary>
+/// <remarks>
+/// The current state lives in an atomic reference. A fire reads it, resolves the destination,
+/// and commits with a compare-and-set before running exit and entry actions; if another
+/// thread committed first, the <see cref="ConcurrentFirePolicy"/> decides what happens.
+/// With <see cref="ConcurrentFirePolicy.Retry"/> and <see cref="ConcurrentFirePolicy.Reject"/>
+/// the actions of consecutive transitions may overlap on different threads; use
+/// <see cref="ConcurrentFirePolicy.Queue"/> when they must not.
+/// </remarks>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public class ConcurrentStateMachine<TState, TTrigger> extends StateMachine<TState, TTrigger> {
+  static final int LOST = -1;
+
+  final AtomicReference<TState> _current;
+  final ConcurrentFirePolicy _policy;
+
+  // fires are thread-safe, so timeouts are fired on the timer's thread
+  static final Executor TIMER_THREAD = new Executor() {
+    @Override
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  // Queue policy only
+  final ConcurrentLinkedQueue<Object[]> _pending;
+  final AtomicInteger _wip;
+
+  /// <summary>
+  /// Construct a thread-safe state machine.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  /// <param name="policy">What to do when a concurrent fire commits first.</param>
+  public ConcurrentStateMachine(TState initialState,
+                                @Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                                @Nonnull ConcurrentFirePolicy policy) {
+    super(initialState, definition, TIMER_THREAD, false);
+    _current = new AtomicReference<TState>(initialState);
+    _policy = policy;
+    if (policy == ConcurrentFirePolicy.Queue) {
+      _pending = new ConcurrentLinkedQueue<Object[]>();
+      _wip = new AtomicInteger();
+    } else {
+      _pending = null;
+      _wip = null;
+    }
+    if (_definition._timed) {
+      RestartTimeouts();
+    }
+  }
+
+  /// <summary>
+  /// The policy applied when a concurrent fire commits first.
+  /// </summary>
+  public ConcurrentFirePolicy getPolicy() {
+    return _policy;
+  }
+
+  @Override
+  public TState getState() {
+    return _current.get();
+  }
+
+  @Override
+  void setState(TState value) {
+    _current.set(value);
+  }
+
+  @Override
+  int FireValidated(StateRepresentation<TState, TTrigger> representation, TTrigger trigger, Object[] args) {
+    // the representation is ignored: another thread may have moved the state since it was looked up
+    if (_policy == ConcurrentFirePolicy.Queue) {
+      Object[] own = new Object[]{trigger, args};
+      _pending.offer(own);
+      if (_wip.getAndIncrement() != 0) {
+        return FireAllResult.QUEUED;
+      }
+      // a thread that queued its trigger before this one but has not counted it yet leaves
+      // it to this one, and may be left this one's: its outcome is only known if drained here
+      int outcome = FireAllResult.QUEUED;
+      RuntimeException failure = null;
+      do {
+        Object[] next = _pending.poll();
+        @SuppressWarnings("unchecked")
+        TTrigger queued = (TTrigger) next[0];
+        try {
+          int committed = TryCommit(_current.get(), queued, (Object[]) next[1]);
+          if (next == own) {
+            outcome = committed;
+          }
+        } catch (RuntimeException e) {
+          // thrown by the unhandled-trigger action or a listener: the queue is still drained,
+          // so that it is not left to a thread that will never come
+          if (failure == null) {
+            failure = e;
+          }
+        }
+      } while (_wip.decrementAndGet() != 0);
+      if (failure != null) {
+        throw failure;
+      }
+      return outcome;
+    }
+
+    TState source = _current.get();
+    int outcome;
+    while ((outcome = TryCommit(source, trigger, args)) == LOST) {
+      if (_policy == ConcurrentFirePolicy.Reject) {
+        Unhandled(source, trigger);
+        return FireAllResult.UNHANDLED;
+      }
+      source = _current.get();
+    }
+    return outcome;
+  }
+
+  @Override
+  int FirePrimitive(TriggerWithPrimitiveParameter<TState, TTrigger> trigger, long bits) {
+    // transitions are committed through the boxed path
+    return FireValidated(null, trigger.getTrigger(), new Object[]{trigger.box(bits)});
+  }
+
+  /// <returns><see cref="LOST"/> if another thread changed the state away from source first,
+  /// the FireAllResult outcome code otherwise.</returns>
+  int TryCommit(TState source, TTrigger trigger, Object[] args) {
+    StateRepresentation<TState, TTrigger> representation = _definition.GetRepresentation(source);
+    // a fire retried after losing a race is counted again, against the state it retries from
+    StateMetrics<TState, TTrigger> metrics = _definition.MetricsFor(representation);
+    if (metrics != null) {
+      metrics.fired(trigger);
+    }
+    TriggerBehaviour<TState, TTrigger> triggerBehaviour = _definition.FindHandler(representation, trigger);
+    if (triggerBehaviour == null) {
+      RecordUnhandled(metrics, representation, trigger);
+      Unhandled(source, trigger);
+      return FireAllResult.UNHANDLED;
+    }
+    if (triggerBehaviour instanceof IgnoredTriggerBehaviour) {
+      if (metrics != null) {
+        metrics.ignored();
+      }
+      return FireAllResult.IGNORED;
+    }
+
+    Transition<TState, TTrigger> transition;
+    try {
+      TState destination = triggerBehaviour.ResultsInTransitionFrom(source, args);
+      if (!_current.compareAndSet(source, destination)) {
+        return LOST;
+      }
+      if (_definition._timed) {
+        // before the entry actions, which may fire further transitions
+        Retime(new Transition<TState, TTrigger>(source, destination, trigger));
+      }
+      long started = SampleLatency(metrics); // racy count: sampling tolerates lost updates
+
+      StateRepresentation<TState, TTrigger> next = _definition.GetRepresentation(destination);
+      TransitionPath<TState, TTrigger> path = representation.PathTo(next);
+      if (path != null) {
+        transition = path.TransitionFor(source, destination, trigger);
+        path.Exit(transition);
+        if (started != 0) {
+          started = metrics.exited(started);
+        }
+        path.Enter(transition, args);
+      } else {
+        transition = new Transition<TState, TTrigger>(source, destination, trigger);
+        representation.Exit(transition);
+        if (started != 0) {
+          started = metrics.exited(started);
+        }
+        next.Enter(transition, args);
+      }
+      if (metrics != null) {
+        if (started != 0) {
+          _definition.MetricsFor(next).entered(started);
+        }
+        metrics.transitioned(destination);
+      }
+
+    } catch (TriggerIgnoredException e) {
+      if (metrics != null) {
+        metrics.ignored();
+      }
+      return FireAllResult.IGNORED;
+    } catch (Exception e) {
+      if (metrics != null) {
+        metrics.failed();
+      }
+      return FireAllResult.FAILED;
+    }
+    Transitioned(transition, args);
+    return FireAllResult.TRANSITIONED;
+  }
+}
@@ -0,0 +1,96 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ifesdjeen.stateless4j.triggers.TriggerBehaviour;
+
+/// <summary>
+/// Dense dispatch table for a frozen definition whose states and triggers are enums.
+/// </summary>
+/// <remarks>
+/// Every (state, trigger) pair is resolved once, superstates included, to one of:
+/// the index of the unguarded behaviour handling it, <see cref="UNHANDLED"/>, or, when
+/// a guard has to be evaluated at fire time, the encoded ordinal of the state from which
+/// the regular lookup resumes.
+/// </remarks>
+final class EnumTransitionTable<TState, TTrigger> {
+  static final int UNHANDLED = -1;
+
+  final StateRepresentation<TState, TTrigger>[] _representations;
+  final TriggerBehaviour<TState, TTrigger>[] _behaviours;
+  final int[][] _handlers;
+
+  @SuppressWarnings("unchecked")
+  EnumTransitionTable(StateMachineDefinition<TState, TTrigger> definition,
+                      TState[] states,
+                      TTrigger[] triggers) {
+    _representations = new StateRepresentation[states.length];
+    for (TState state : states) {
+      _representations[ordinal(state)] = definition.GetRepresentation(state);
+    }
+
+    List<TriggerBehaviour<TState, TTrigger>> behaviours = new ArrayList<TriggerBehaviour<TState, TTrigger>>();
+    _handlers = new int[states.length][triggers.length];
+    for (int s = 0; s < states.length; s++) {
+      for (TTrigger trigger : triggers) {
+        _handlers[s][ordinal(trigger)] = resolve(_representations[s], trigger, behaviours);
+      }
+    }
+    _behaviours = behaviours.toArray(new TriggerBehaviour[behaviours.size()]);
+  }
+
+  int resolve(StateRepresentation<TState, TTrigger> representation,
+              TTrigger trigger,
+              List<TriggerBehaviour<TState, TTrigger>> behaviours) {
+    for (; representation != null; representation = representation.getSuperstate()) {
+      List<TriggerBehaviour<TState, TTrigger>> possible = representation._triggerBehaviours.get(trigger);
+      if (possible == null) {
+        continue;
+      }
+      for (TriggerBehaviour<TState, TTrigger> behaviour : possible) {
+        if (behaviour.getGuard() != StateConfiguration.NoGuard) {
+          return encodeGuarded(representation);
+        }
+      }
+      // several unguarded behaviours are always ambiguous: keep looking in the superstate,
+      // as StateRepresentation.TryFindLocalHandler does
+      if (possible.size() == 1) {
+        int index = behaviours.indexOf(possible.get(0));
+        if (index < 0) {
+          index = behaviours.size();
+          behaviours.add(possible.get(0));
+        }
+        return index;
+      }
+    }
+    return UNHANDLED;
+  }
+
+  StateRepresentation<TState, TTrigger> GetRepresentation(TState state) {
+    return _representations[ordinal(state)];
+  }
+
+  TriggerBehaviour<TState, TTrigger> FindHandler(TState state, TTrigger trigger) {
+    int handler = _handlers[ordinal(state)][ordinal(trigger)];
+    if (handler >= 0) {
+      return _behaviours[handler];
+    }
+    if (handler == UNHANDLED) {
+      return null;
+    }
+    return _representations[decodeGuarded(handler)].TryFindHandler(trigger);
+  }
+
+  int encodeGuarded(StateRepresentation<TState, TTrigger> representation) {
+    return -2 - ordinal(representation.getUnderlyingState());
+  }
+
+  static int decodeGuarded(int handler) {
+    return -2 - handler;
+  }
+
+  static int ordinal(Object value) {
+    return ((Enum<?>) value).ordinal();
+  }
+}
@@ -0,0 +1,78 @@
+package ifesdjeen.stateless4j;
+
+/// <summary>
+/// What became of the triggers passed to <see cref="StateMachine.FireAll"/>.
+/// </summary>
+public class FireAllResult {
+  static final int TRANSITIONED = 0;
+  static final int IGNORED = 1;
+  static final int UNHANDLED = 2;
+  static final int FAILED = 3;
+  static final int QUEUED = 4;
+
+  int _transitioned;
+  int _ignored;
+  int _unhandled;
+  int _failed;
+  int _queued;
+
+  void add(int outcome) {
+    switch (outcome) {
+      case TRANSITIONED:
+        _transitioned++;
+        break;
+      case IGNORED:
+        _ignored++;
+        break;
+      case UNHANDLED:
+        _unhandled++;
+        break;
+      case FAILED:
+        _failed++;
+        break;
+      default:
+        _queued++;
+    }
+  }
+
+  /// <summary>
+  /// Triggers that led to a transition, reentrant ones included.
+  /// </summary>
+  public int getTransitioned() {
+    return _transitioned;
+  }
+
+  /// <summary>
+  /// Triggers the current state was configured to ignore.
+  /// </summary>
+  public int getIgnored() {
+    return _ignored;
+  }
+
+  /// <summary>
+  /// Triggers passed to the unhandled trigger action.
+  /// </summary>
+  public int getUnhandled() {
+    return _unhandled;
+  }
+
+  /// <summary>
+  /// Triggers whose transition threw from a guard, selector or action.
+  /// </summary>
+  public int getFailed() {
+    return _failed;
+  }
+
+  /// <summary>
+  /// Triggers deferred because the machine was already firing, with
+  /// <see cref="FiringMode.Queued"/> or <see cref="ConcurrentFirePolicy.Queue"/>.
+  /// </summary>
+  public int getQueued() {
+    return _queued;
+  }
+
+  public String toString() {
+    return String.format("FireAllResult { Transitioned = %d, Ignored = %d, Unhandled = %d, Failed = %d, Queued = %d }",
+                         _transitioned, _ignored, _unhandled, _failed, _queued);
+  }
+}
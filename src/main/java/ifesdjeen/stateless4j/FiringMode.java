@@ -0,0 +1,20 @@
+package ifesdjeen.stateless4j;
+
+/// <summary>
+/// How a <see cref="StateMachine"/> handles a trigger fired while it is already
+/// running a transition, typically from an entry or exit action.
+/// </summary>
+public enum FiringMode {
+  /// <summary>
+  /// Run the nested transition immediately, in the middle of the current one.
+  /// </summary>
+  Immediate,
+
+  /// <summary>
+  /// Queue the trigger and run it once the current transition has completed,
+  /// so that every transition runs to completion before the next one starts. A trigger
+  /// that throws does not stop the queue: the remaining triggers still run, and the first
+  /// exception is thrown once they have.
+  /// </summary>
+  Queued
+}
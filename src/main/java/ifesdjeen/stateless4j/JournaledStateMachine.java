@@ -0,0 +1,125 @@
+package ifesdjeen.stateless4j;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import ifesdjeen.stateless4j.journal.TransitionJournal;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.triggers.TriggerWithPrimitiveParameter;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// A state machine recording each of its transitions in a <see cref="TransitionJournal"/>,
+/// from which it can be restored after a restart.
+/// </summary>
+/// <remarks>
+/// A transition is recorded as soon as it changes the state, before the entry actions run:
+/// transitions fired by entry actions are recorded after the one that entered the state, and
+/// a transition whose entry actions fail, leaving the machine in its destination, is recorded
+/// as well.
+/// </remarks>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public class JournaledStateMachine<TState, TTrigger> extends StateMachine<TState, TTrigger> {
+  final long _id;
+  final TransitionJournal<TState, TTrigger> _journal;
+  final boolean _synchronous;
+
+  /// <summary>
+  /// Construct a journaled state machine. Fire returns once the transition has been
+  /// appended to the journal, not once it is durable.
+  /// </summary>
+  /// <param name="id">Identifies the machine in the journal.</param>
+  /// <param name="journal">The journal, possibly shared with other machines.</param>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  public JournaledStateMachine(long id,
+                               @Nonnull TransitionJournal<TState, TTrigger> journal,
+                               TState initialState,
+                               @Nonnull StateMachineDefinition<TState, TTrigger> definition) {
+    this(id, journal, initialState, definition, false);
+  }
+
+  /// <summary>
+  /// Construct a journaled state machine.
+  /// </summary>
+  /// <param name="synchronous">If true, Fire waits until the transition is durable,
+  /// sharing the fsync with concurrent writers to the same journal.</param>
+  public JournaledStateMachine(long id,
+                               @Nonnull TransitionJournal<TState, TTrigger> journal,
+                               TState initialState,
+                               @Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                               boolean synchronous) {
+    this(id, journal, initialState, definition, synchronous, null);
+  }
+
+  /// <summary>
+  /// Construct a journaled state machine.
+  /// </summary>
+  /// <param name="timeoutExecutor">Fires the triggers of expired timeouts, one at a time
+  /// with the other fires of the machine. Required if the definition declares timeouts.</param>
+  public JournaledStateMachine(long id,
+                               @Nonnull TransitionJournal<TState, TTrigger> journal,
+                               TState initialState,
+                               @Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                               boolean synchronous,
+                               Executor timeoutExecutor) {
+    super(initialState, definition, timeoutExecutor);
+    _id = id;
+    _journal = journal;
+    _synchronous = synchronous;
+  }
+
+  /// <summary>
+  /// Recreate the machines recorded in the journal, each in the state its last recorded
+  /// transition left it in. No trigger is fired, so no guard, selector or action runs.
+  /// </summary>
+  /// <returns>The machines, by id.</returns>
+  public static <TState, TTrigger> Map<Long, JournaledStateMachine<TState, TTrigger>> restore(@Nonnull TransitionJournal<TState, TTrigger> journal,
+                                                                                             @Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                                                                                             boolean synchronous) throws IOException {
+    return restore(journal, definition, synchronous, null);
+  }
+
+  /// <summary>
+  /// Recreate the machines recorded in the journal, each in the state its last recorded
+  /// transition left it in, with the timeouts of that state armed afresh.
+  /// </summary>
+  /// <param name="timeoutExecutor">Fires the triggers of expired timeouts for every restored
+  /// machine. Required if the definition declares timeouts.</param>
+  /// <returns>The machines, by id.</returns>
+  public static <TState, TTrigger> Map<Long, JournaledStateMachine<TState, TTrigger>> restore(@Nonnull TransitionJournal<TState, TTrigger> journal,
+                                                                                             @Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                                                                                             boolean synchronous,
+                                                                                             Executor timeoutExecutor) throws IOException {
+    Map<Long, JournaledStateMachine<TState, TTrigger>> machines = new HashMap<Long, JournaledStateMachine<TState, TTrigger>>();
+    for (Map.Entry<Long, TState> entry : journal.replayStates().entrySet()) {
+      machines.put(entry.getKey(), new JournaledStateMachine<TState, TTrigger>(entry.getKey(), journal, entry.getValue(), definition, synchronous, timeoutExecutor));
+    }
+    return machines;
+  }
+
+  /// <summary>
+  /// Identifies the machine in the journal.
+  /// </summary>
+  public long getId() {
+    return _id;
+  }
+
+  @Override
+  int FirePrimitive(TriggerWithPrimitiveParameter<TState, TTrigger> trigger, long bits) {
+    // the journal records boxed arguments
+    return FireValidated(null, trigger.getTrigger(), new Object[]{trigger.box(bits)});
+  }
+
+  @Override
+  void Committed(Transition<TState, TTrigger> transition, Object[] args) {
+    long sequence = _journal.append(_id, transition.getSource(), transition.getDestination(), transition.getTrigger(), args);
+    if (_synchronous) {
+      _journal.sync(sequence);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package ifesdjeen.stateless4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.transitions.TransitioningTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.IgnoredTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerBehaviour;
+
+/// <summary>
+/// A frozen definition whose states and triggers are enums, compiled into one method handle
+/// per (state, trigger) pair.
+/// </summary>
+/// <remarks>
+/// Each handle takes the machine and the trigger arguments and returns a FireAllResult outcome
+/// code. It evaluates the guards in the order <see cref="StateRepresentation.TryFindHandler"/>
+/// does, superstates included, and runs the exit actions, the state change and the entry
+/// actions of the selected transition, bound to a constant <see cref="Transition"/>.
+/// Pairs that may select a dynamic destination have no handle and are left to the interpreter,
+/// as are triggers with primitive arguments.
+/// </remarks>
+final class MethodHandleDispatch<TState, TTrigger> {
+  static final MethodType FIRE = MethodType.methodType(int.class, StateMachine.class, Object[].class);
+
+  static final MethodHandle GUARD;
+  static final MethodHandle EXIT_ACTION;
+  static final MethodHandle ENTRY_ACTION;
+  static final MethodHandle COMMIT;
+  static final MethodHandle FAILED;
+  static final MethodHandle TRANSITIONED;
+
+  static {
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    try {
+      GUARD = lookup.findVirtual(Func.class, "call", MethodType.methodType(Object.class));
+      EXIT_ACTION = lookup.findVirtual(Action1.class, "doIt", MethodType.methodType(void.class, Object.class));
+      ENTRY_ACTION = lookup.findVirtual(Action2.class, "doIt", MethodType.methodType(void.class, Object.class, Object.class));
+      COMMIT = lookup.findVirtual(StateMachine.class,
+                                  "Commit",
+                                  MethodType.methodType(void.class, Transition.class, Object.class, Object[].class));
+      FAILED = lookup.findStatic(MethodHandleDispatch.class, "Failed", MethodType.methodType(int.class, Exception.class));
+      TRANSITIONED = lookup.findStatic(MethodHandleDispatch.class,
+                                       "Transitioned",
+                                       MethodType.methodType(int.class, int.class, StateMachine.class, Transition.class, Object[].class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  final MethodHandle[][] _handles; // by state and trigger ordinals; null: interpret
+
+  @SuppressWarnings("unchecked")
+  MethodHandleDispatch(StateMachineDefinition<TState, TTrigger> definition, TState[] states, TTrigger[] triggers) {
+    _handles = new MethodHandle[states.length][triggers.length];
+    for (TState state : states) {
+      StateRepresentation<TState, TTrigger> representation = definition.GetRepresentation(state);
+      for (TTrigger trigger : triggers) {
+        _handles[ordinal(state)][ordinal(trigger)] = Resolve(definition, representation, representation, trigger);
+      }
+    }
+  }
+
+  /// <returns>The handle firing the trigger in the state, or null if it has to be interpreted.</returns>
+  MethodHandle HandleFor(TState state, TTrigger trigger) {
+    return _handles[ordinal(state)][ordinal(trigger)];
+  }
+
+  /// <returns>The outcome of firing through the handle.</returns>
+  static int Invoke(MethodHandle handle, StateMachine<?, ?> machine, Object[] args) {
+    try {
+      return (int) handle.invokeExact((StateMachine) machine, args);
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      // exceptions thrown by actions are caught in the handle
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /// <summary>
+  /// The handle for the trigger in the current state, looking in the representation and
+  /// then in its superstates.
+  /// </summary>
+  MethodHandle Resolve(StateMachineDefinition<TState, TTrigger> definition,
+                       StateRepresentation<TState, TTrigger> current,
+                       StateRepresentation<TState, TTrigger> representation,
+                       TTrigger trigger) {
+    if (representation == null) {
+      return Outcome(FireAllResult.UNHANDLED);
+    }
+    List<TriggerBehaviour<TState, TTrigger>> possible = representation._triggerBehaviours.get(trigger);
+    if (possible == null) {
+      return Resolve(definition, current, representation._superstate, trigger);
+    }
+    MethodHandle superstate = Resolve(definition, current, representation._superstate, trigger);
+    if (superstate == null) {
+      return null;
+    }
+    return Select(definition, current, possible, 0, null, superstate);
+  }
+
+  /// <summary>
+  /// As <see cref="StateRepresentation.TryFindLocalHandler"/>: the behaviour whose guard is the
+  /// only one met, or the superstate's handle if none or several are.
+  /// </summary>
+  /// <param name="selected">The handle of the behaviour met before the index, or null.</param>
+  MethodHandle Select(StateMachineDefinition<TState, TTrigger> definition,
+                      StateRepresentation<TState, TTrigger> current,
+                      List<TriggerBehaviour<TState, TTrigger>> possible,
+                      int index,
+                      MethodHandle selected,
+                      MethodHandle superstate) {
+    if (index == possible.size()) {
+      return selected != null ? selected : superstate;
+    }
+    TriggerBehaviour<TState, TTrigger> behaviour = possible.get(index);
+    MethodHandle met;
+    if (selected != null) {
+      met = superstate;
+    } else {
+      MethodHandle handle = Behaviour(definition, current, behaviour);
+      if (handle == null) {
+        return null;
+      }
+      met = Select(definition, current, possible, index + 1, handle, superstate);
+    }
+    if (behaviour.getGuard() == StateConfiguration.NoGuard) {
+      return met;
+    }
+    MethodHandle unmet = Select(definition, current, possible, index + 1, selected, superstate);
+    if (met == null || unmet == null) {
+      return null;
+    }
+    MethodHandle guard = GUARD.bindTo(behaviour.getGuard()).asType(MethodType.methodType(boolean.class));
+    return MethodHandles.guardWithTest(MethodHandles.dropArguments(guard, 0, FIRE.parameterList()), met, unmet);
+  }
+
+  /// <returns>The handle running the behaviour, or null if its destination is dynamic.</returns>
+  MethodHandle Behaviour(StateMachineDefinition<TState, TTrigger> definition,
+                         StateRepresentation<TState, TTrigger> current,
+                         TriggerBehaviour<TState, TTrigger> behaviour) {
+    if (behaviour instanceof IgnoredTriggerBehaviour) {
+      return Outcome(FireAllResult.IGNORED);
+    }
+    if (!(behaviour instanceof TransitioningTriggerBehaviour)) {
+      return null;
+    }
+    TState source = current.getUnderlyingState();
+    TState destination = ((TransitioningTriggerBehaviour<TState, TTrigger>) behaviour).ResultsInTransitionFrom(source);
+    TTrigger trigger = behaviour.getTrigger();
+    StateRepresentation<TState, TTrigger> next = definition.GetRepresentation(destination);
+    // built directly, as unconfigured destinations have no cached paths
+    TransitionPath<TState, TTrigger> path = new TransitionPath<TState, TTrigger>(current, next);
+    Transition<TState, TTrigger> transition = new Transition<TState, TTrigger>(source, destination, trigger);
+
+    // built backwards: each step is folded in front of the ones after it
+    MethodHandle actions = Outcome(FireAllResult.TRANSITIONED);
+    Action2<Transition<TState, TTrigger>, Object[]>[] entryActions = path.EntryActionsFor(trigger);
+    for (int i = entryActions.length - 1; i >= 0; i--) {
+      MethodHandle entry = MethodHandles.insertArguments(ENTRY_ACTION.bindTo(entryActions[i]), 0, transition)
+              .asType(MethodType.methodType(void.class, Object[].class));
+      actions = MethodHandles.foldArguments(actions, MethodHandles.dropArguments(entry, 0, StateMachine.class));
+    }
+    actions = MethodHandles.foldArguments(actions, MethodHandles.insertArguments(COMMIT, 1, transition, destination));
+    for (int i = path._exitActions.length - 1; i >= 0; i--) {
+      MethodHandle exit = MethodHandles.insertArguments(EXIT_ACTION.bindTo(path._exitActions[i]), 0, transition);
+      actions = MethodHandles.foldArguments(actions, MethodHandles.dropArguments(exit, 0, FIRE.parameterList()));
+    }
+
+    // as in StateMachine.InternalFire, exceptions thrown by actions make the fire fail, but
+    // those thrown once the transition is complete, by listeners, are not caught
+    MethodHandle failed = MethodHandles.dropArguments(FAILED, 1, FIRE.parameterList());
+    MethodHandle attempt = MethodHandles.catchException(actions, Exception.class, failed);
+    return MethodHandles.foldArguments(MethodHandles.insertArguments(TRANSITIONED, 2, transition), attempt);
+  }
+
+  static MethodHandle Outcome(int outcome) {
+    return MethodHandles.dropArguments(MethodHandles.constant(int.class, outcome), 0, FIRE.parameterList());
+  }
+
+  static int Failed(Exception e) {
+    if (e instanceof StateMachine.CommitFailure) {
+      throw (RuntimeException) e.getCause();
+    }
+    return FireAllResult.FAILED;
+  }
+
+  @SuppressWarnings("unchecked")
+  static int Transitioned(int outcome, StateMachine machine, Transition transition, Object[] args) {
+    if (outcome == FireAllResult.TRANSITIONED) {
+      machine.Transitioned(transition, args);
+    }
+    return outcome;
+  }
+
+  static int ordinal(Object value) {
+    return ((Enum<?>) value).ordinal();
+  }
+}
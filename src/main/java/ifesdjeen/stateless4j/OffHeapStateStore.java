@@ -0,0 +1,336 @@
+package ifesdjeen.stateless4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.exceptions.StateMachineConfigurationException;
+import ifesdjeen.stateless4j.exceptions.UnhandledTriggerActionException;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.triggers.TriggerWithDoubleParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// The states of a large population of entities sharing one definition, kept outside the
+/// heap as enum ordinals indexed by entity id.
+/// </summary>
+/// <remarks>
+/// Each entity takes one byte, or two when the state enum has more than 256 constants, in a
+/// direct buffer or in a memory-mapped file, and no Java object. Firing a trigger for an
+/// entity loads its state into a single machine owned by the store, fires it there, with the
+/// usual guards, actions and firing mode, and writes the resulting state back.
+/// <para/>
+/// Like <see cref="StateMachine"/>, a store is not thread-safe. Actions may fire further
+/// triggers for the entity being fired, but not for other entities of the same store.
+/// </remarks>
+/// <typeparam name="TState">The enum type of the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public class OffHeapStateStore<TState, TTrigger> {
+  final StateMachine<TState, TTrigger> _cursor;
+  final TState[] _states;
+  final ByteBuffer _region;
+  final int _width;
+  final long _capacity;
+
+  // the entity whose state is in the cursor, while a fire is in progress
+  long _entity;
+  boolean _firing;
+
+  /// <summary>
+  /// Create a store of entities held in a direct buffer, all in the initial state.
+  /// </summary>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  /// <param name="stateType">The enum type of the states.</param>
+  /// <param name="capacity">The number of entities, identified from 0.</param>
+  /// <param name="initialState">The state every entity starts in.</param>
+  public OffHeapStateStore(@Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                           @Nonnull Class<TState> stateType,
+                           int capacity,
+                           @Nonnull TState initialState) {
+    this(definition, stateType, capacity, ByteBuffer.allocateDirect(size(stateType, capacity)));
+    fill(0, initialState);
+  }
+
+  /// <summary>
+  /// Create a store of entities held in a memory-mapped file, which survives the process.
+  /// Entities already in the file keep their states; the file is extended as needed and
+  /// the entities added start in the initial state. Changes reach the file as the
+  /// operating system writes the mapping back, or on <see cref="force"/>.
+  /// </summary>
+  /// <param name="file">The file holding the states.</param>
+  public OffHeapStateStore(@Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                           @Nonnull Class<TState> stateType,
+                           int capacity,
+                           @Nonnull TState initialState,
+                           @Nonnull File file) throws IOException {
+    this(definition, stateType, capacity, initialState, file, file.length());
+  }
+
+  OffHeapStateStore(StateMachineDefinition<TState, TTrigger> definition,
+                    Class<TState> stateType,
+                    int capacity,
+                    TState initialState,
+                    File file,
+                    long existing) throws IOException {
+    this(definition, stateType, capacity, map(file, size(stateType, capacity)));
+    fill(existing / _width, initialState);
+  }
+
+  OffHeapStateStore(StateMachineDefinition<TState, TTrigger> definition,
+                    Class<TState> stateType,
+                    int capacity,
+                    ByteBuffer region) {
+    if (definition.freeze()._timed) {
+      // the cursor cannot hold a timeout for each entity
+      throw new IllegalArgumentException(StateMachineResources.StoreTimeoutsUnsupported);
+    }
+    _states = stateType.getEnumConstants();
+    _cursor = new StateMachine<TState, TTrigger>(_states[0], definition);
+    _width = width(stateType);
+    _capacity = capacity;
+    _region = region;
+  }
+
+  static int size(Class<?> stateType, int capacity) {
+    if (!stateType.isEnum()) {
+      throw new IllegalArgumentException(StateMachineResources.CompiledModeRequiresEnums);
+    }
+    long size = (long) capacity * width(stateType);
+    if (capacity < 0 || size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("capacity");
+    }
+    return (int) size;
+  }
+
+  static int width(Class<?> stateType) {
+    int states = stateType.getEnumConstants().length;
+    if (states > 1 << 16) {
+      throw new IllegalArgumentException(stateType.getName());
+    }
+    return states <= 1 << 8 ? 1 : 2;
+  }
+
+  static ByteBuffer map(File file, long size) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } finally {
+      raf.close();
+    }
+  }
+
+  void fill(long from, TState initialState) {
+    for (long entity = from; entity < _capacity; entity++) {
+      write(entity, initialState);
+    }
+  }
+
+  /// <summary>
+  /// The number of entities in the store.
+  /// </summary>
+  public long getCapacity() {
+    return _capacity;
+  }
+
+  /// <summary>
+  /// The definition the entities run.
+  /// </summary>
+  public StateMachineDefinition<TState, TTrigger> getDefinition() {
+    return _cursor.getDefinition();
+  }
+
+  /// <summary>
+  /// The current state of the entity.
+  /// </summary>
+  public TState getState(long entityId) {
+    if (_firing && entityId == _entity) {
+      return _cursor.getState();
+    }
+    return read(entityId);
+  }
+
+  /// <summary>
+  /// Put the entity in the state, without running any action.
+  /// </summary>
+  public void setState(long entityId, @Nonnull TState state) {
+    if (_firing && entityId == _entity) {
+      _cursor.setState(state);
+    } else {
+      write(entityId, state);
+    }
+  }
+
+  /// <summary>
+  /// The triggers currently permitted for the entity.
+  /// </summary>
+  public List<TTrigger> getPermittedTriggers(long entityId) {
+    return getDefinition().GetRepresentation(getState(entityId)).getPermittedTriggers();
+  }
+
+  /// <summary>
+  /// Override the definition's action for triggers the entities' states do not handle.
+  /// </summary>
+  public void OnUnhandledTrigger(Action2<TState, TTrigger> unhandledTriggerAction) throws UnhandledTriggerActionException {
+    _cursor.OnUnhandledTrigger(unhandledTriggerAction);
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger, as
+  /// <see cref="StateMachine.Fire"/> does.
+  /// </summary>
+  public void Fire(long entityId, TTrigger trigger) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger.
+  /// </summary>
+  public <TArg0> void Fire(long entityId,
+                           @Nonnull TriggerWithParameters1<TArg0, TState, TTrigger> trigger,
+                           TArg0 arg0) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger, arg0);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger.
+  /// </summary>
+  public <TArg0, TArg1> void Fire(long entityId,
+                                  @Nonnull TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> trigger,
+                                  TArg0 arg0,
+                                  TArg1 arg1) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger, arg0, arg1);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger.
+  /// </summary>
+  public <TArg0, TArg1, TArg2> void Fire(long entityId,
+                                         @Nonnull TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> trigger,
+                                         TArg0 arg0,
+                                         TArg1 arg1,
+                                         TArg2 arg2) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger, arg0, arg1, arg2);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger, without
+  /// boxing its argument.
+  /// </summary>
+  public void Fire(long entityId, @Nonnull TriggerWithIntParameter<TState, TTrigger> trigger, int arg0) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger, arg0);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger, without
+  /// boxing its argument.
+  /// </summary>
+  public void Fire(long entityId, @Nonnull TriggerWithLongParameter<TState, TTrigger> trigger, long arg0) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger, arg0);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Transition the entity from its current state via the specified trigger, without
+  /// boxing its argument.
+  /// </summary>
+  public void Fire(long entityId, @Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger, double arg0) throws StateMachineConfigurationException {
+    boolean outer = load(entityId);
+    try {
+      _cursor.Fire(trigger, arg0);
+    } finally {
+      store(outer);
+    }
+  }
+
+  /// <summary>
+  /// Write the states of a store backed by a file to disk.
+  /// </summary>
+  public void force() {
+    if (_region instanceof MappedByteBuffer) {
+      ((MappedByteBuffer) _region).force();
+    }
+  }
+
+  // returns false for a nested fire of the entity already loaded in the cursor
+  boolean load(long entityId) {
+    if (_firing) {
+      if (entityId != _entity) {
+        throw new IllegalStateException(StateMachineResources.StoreFireInProgress);
+      }
+      return false;
+    }
+    _cursor.setState(read(entityId));
+    _entity = entityId;
+    _firing = true;
+    return true;
+  }
+
+  void store(boolean outer) {
+    if (outer) {
+      _firing = false;
+      write(_entity, _cursor.getState());
+    }
+  }
+
+  TState read(long entityId) {
+    int index = index(entityId);
+    return _states[_width == 1 ? _region.get(index) & 0xff : _region.getShort(index) & 0xffff];
+  }
+
+  void write(long entityId, TState state) {
+    int index = index(entityId);
+    int ordinal = ((Enum<?>) state).ordinal();
+    if (_width == 1) {
+      _region.put(index, (byte) ordinal);
+    } else {
+      _region.putShort(index, (short) ordinal);
+    }
+  }
+
+  int index(long entityId) {
+    if (entityId < 0 || entityId >= _capacity) {
+      throw new IndexOutOfBoundsException(String.valueOf(entityId));
+    }
+    return (int) entityId * _width;
+  }
+}
@@ -0,0 +1,12 @@
+package ifesdjeen.stateless4j;
+
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.transitions.Transition;
+
+/// <summary>
+/// An entry action for a <see cref="ifesdjeen.stateless4j.triggers.TriggerWithPrimitiveParameter"/>,
+/// which takes the argument either boxed, in the argument array, or as the bits of a <c>long</c>.
+/// </summary>
+interface PrimitiveEntryAction<TState, TTrigger> extends Action2<Transition<TState, TTrigger>, Object[]> {
+  void doIt(Transition<TState, TTrigger> transition, long bits);
+}
@@ -9,21 +9,38 @@ import ifesdjeen.stateless4j.delegates.Func;
 import ifesdjeen.stateless4j.delegates.Func2;
 import ifesdjeen.stateless4j.delegates.Func3;
 import ifesdjeen.stateless4j.delegates.Func4;
+import ifesdjeen.stateless4j.delegates.DoubleAction1;
+import ifesdjeen.stateless4j.delegates.DoubleAction2;
+import ifesdjeen.stateless4j.delegates.DoubleFunc2;
+import ifesdjeen.stateless4j.delegates.IntAction1;
+import ifesdjeen.stateless4j.delegates.IntAction2;
+import ifesdjeen.stateless4j.delegates.IntFunc2;
+import ifesdjeen.stateless4j.delegates.LongAction1;
+import ifesdjeen.stateless4j.delegates.LongAction2;
+import ifesdjeen.stateless4j.delegates.LongFunc2;
 import ifesdjeen.stateless4j.exceptions.SelfTransitionIgnoredOrReentrant;
+import ifesdjeen.stateless4j.resources.StateConfigurationResources;
 import ifesdjeen.stateless4j.transitions.Transition;
 import ifesdjeen.stateless4j.transitions.TransitioningTriggerBehaviour;
 import ifesdjeen.stateless4j.triggers.DynamicTriggerBehaviour;
 import ifesdjeen.stateless4j.triggers.IgnoredTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.PrimitiveDynamicTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerWithDoubleParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.Nonnull;
 
 public class StateConfiguration<TState, TTrigger> {
   final StateRepresentation<TState, TTrigger> representation;
   final Func2<TState, StateRepresentation<TState, TTrigger>> lookup;
-  final Func<Boolean> NoGuard = new Func<Boolean>() {
+  final StateMachineDefinition<TState, TTrigger> definition; // null unless obtained from one
+  static final Func<Boolean> NoGuard = new Func<Boolean>() {
     public Boolean call() {
       return true;
     }
@@ -31,8 +48,15 @@ public class StateConfiguration<TState, TTrigger> {
 
   public StateConfiguration(StateRepresentation<TState, TTrigger> representation,
                             @Nonnull Func2<TState, StateRepresentation<TState, TTrigger>> lookup) {
+    this(representation, lookup, null);
+  }
+
+  StateConfiguration(StateRepresentation<TState, TTrigger> representation,
+                     Func2<TState, StateRepresentation<TState, TTrigger>> lookup,
+                     StateMachineDefinition<TState, TTrigger> definition) {
     this.representation = representation;
     this.lookup = lookup;
+    this.definition = definition;
   }
 
   /// <summary>
@@ -321,6 +345,117 @@ public class StateConfiguration<TState, TTrigger> {
     return this;
   }
 
+  /// <summary>
+  /// Specify an action that will execute when transitioning into
+  /// the configured state. The argument is passed without boxing.
+  /// </summary>
+  /// <param name="entryAction">Action to execute.</param>
+  /// <param name="trigger">The trigger by which the state must be entered in order for the action to execute.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> OnEntryFrom(@Nonnull TriggerWithIntParameter<TState, TTrigger> trigger,
+                                                          @Nonnull final IntAction1 entryAction) {
+    return OnEntryFrom(trigger, new IntAction2<Transition<TState, TTrigger>>() {
+      public void doIt(int arg1, Transition<TState, TTrigger> arg2) {
+        entryAction.doIt(arg1);
+      }
+    });
+  }
+
+  /// <summary>
+  /// Specify an action that will execute when transitioning into
+  /// the configured state. The argument is passed without boxing.
+  /// </summary>
+  /// <param name="entryAction">Action to execute, providing details of the transition.</param>
+  /// <param name="trigger">The trigger by which the state must be entered in order for the action to execute.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> OnEntryFrom(@Nonnull TriggerWithIntParameter<TState, TTrigger> trigger,
+                                                          @Nonnull final IntAction2<Transition<TState, TTrigger>> entryAction) {
+    representation.AddEntryAction(trigger.getTrigger(), new PrimitiveEntryAction<TState, TTrigger>() {
+      public void doIt(Transition<TState, TTrigger> t, long bits) {
+        entryAction.doIt((int) bits, t);
+      }
+
+      public void doIt(Transition<TState, TTrigger> t, Object[] args) {
+        entryAction.doIt((Integer) args[0], t);
+      }
+    });
+    return this;
+  }
+
+  /// <summary>
+  /// Specify an action that will execute when transitioning into
+  /// the configured state. The argument is passed without boxing.
+  /// </summary>
+  /// <param name="entryAction">Action to execute.</param>
+  /// <param name="trigger">The trigger by which the state must be entered in order for the action to execute.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> OnEntryFrom(@Nonnull TriggerWithLongParameter<TState, TTrigger> trigger,
+                                                          @Nonnull final LongAction1 entryAction) {
+    return OnEntryFrom(trigger, new LongAction2<Transition<TState, TTrigger>>() {
+      public void doIt(long arg1, Transition<TState, TTrigger> arg2) {
+        entryAction.doIt(arg1);
+      }
+    });
+  }
+
+  /// <summary>
+  /// Specify an action that will execute when transitioning into
+  /// the configured state. The argument is passed without boxing.
+  /// </summary>
+  /// <param name="entryAction">Action to execute, providing details of the transition.</param>
+  /// <param name="trigger">The trigger by which the state must be entered in order for the action to execute.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> OnEntryFrom(@Nonnull TriggerWithLongParameter<TState, TTrigger> trigger,
+                                                          @Nonnull final LongAction2<Transition<TState, TTrigger>> entryAction) {
+    representation.AddEntryAction(trigger.getTrigger(), new PrimitiveEntryAction<TState, TTrigger>() {
+      public void doIt(Transition<TState, TTrigger> t, long bits) {
+        entryAction.doIt(bits, t);
+      }
+
+      public void doIt(Transition<TState, TTrigger> t, Object[] args) {
+        entryAction.doIt((Long) args[0], t);
+      }
+    });
+    return this;
+  }
+
+  /// <summary>
+  /// Specify an action that will execute when transitioning into
+  /// the configured state. The argument is passed without boxing.
+  /// </summary>
+  /// <param name="entryAction">Action to execute.</param>
+  /// <param name="trigger">The trigger by which the state must be entered in order for the action to execute.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> OnEntryFrom(@Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger,
+                                                          @Nonnull final DoubleAction1 entryAction) {
+    return OnEntryFrom(trigger, new DoubleAction2<Transition<TState, TTrigger>>() {
+      public void doIt(double arg1, Transition<TState, TTrigger> arg2) {
+        entryAction.doIt(arg1);
+      }
+    });
+  }
+
+  /// <summary>
+  /// Specify an action that will execute when transitioning into
+  /// the configured state. The argument is passed without boxing.
+  /// </summary>
+  /// <param name="entryAction">Action to execute, providing details of the transition.</param>
+  /// <param name="trigger">The trigger by which the state must be entered in order for the action to execute.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> OnEntryFrom(@Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger,
+                                                          @Nonnull final DoubleAction2<Transition<TState, TTrigger>> entryAction) {
+    representation.AddEntryAction(trigger.getTrigger(), new PrimitiveEntryAction<TState, TTrigger>() {
+      public void doIt(Transition<TState, TTrigger> t, long bits) {
+        entryAction.doIt(Double.longBitsToDouble(bits), t);
+      }
+
+      public void doIt(Transition<TState, TTrigger> t, Object[] args) {
+        entryAction.doIt((Double) args[0], t);
+      }
+    });
+    return this;
+  }
+
   /// <summary>
   /// Specify an action that will execute when transitioning from
   /// the configured state.
@@ -347,6 +482,32 @@ public class StateConfiguration<TState, TTrigger> {
     return this;
   }
 
+  /// <summary>
+  /// Fire the specified trigger once the machine has stayed in the configured state,
+  /// substates included, for the delay.
+  /// </summary>
+  /// <remarks>
+  /// The timeout is armed on the definition's timer when the machine enters the state and
+  /// cancelled when it leaves it; a reentry restarts it, and a machine created in the state
+  /// arms it at once. The trigger is fired through the timeout executor of the machine, which
+  /// must serialise it with the other fires, such as the mailbox of a
+  /// <see cref="StateMachineDispatcher"/> or the thread firing the machine; a
+  /// <see cref="ConcurrentStateMachine"/> fires it on the thread advancing the timer.
+  /// </remarks>
+  /// <param name="delay">Time to spend in the state before the trigger is fired.</param>
+  /// <param name="trigger">The trigger to fire; it cannot take parameters.</param>
+  /// <returns>The receiver.</returns>
+  public StateConfiguration<TState, TTrigger> FireAfter(long delay, @Nonnull TimeUnit unit, @Nonnull TTrigger trigger) {
+    if (delay < 0) {
+      throw new IllegalArgumentException(StateConfigurationResources.TimeoutDelayNegative);
+    }
+    representation.AddTimeout(new StateTimeout<TState, TTrigger>(unit.toNanos(delay), trigger));
+    if (definition != null) {
+      definition._timed = true;
+    }
+    return this;
+  }
+
   /// <summary>
   /// Sets the superstate that the configured state is a substate of.
   /// </summary>
@@ -521,14 +682,122 @@ public class StateConfiguration<TState, TTrigger> {
     }, guard);
   }
 
-  StateConfiguration<TState, TTrigger> publicPermit(TTrigger trigger, TState destinationState) {
-    return publicPermitIf(trigger, destinationState, new Func<Boolean>() {
+  /// <summary>
+  /// Accept the specified trigger and transition to the destination state, calculated
+  /// dynamically by the supplied function from the unboxed trigger argument.
+  /// </summary>
+  /// <param name="trigger">The accepted trigger.</param>
+  /// <param name="destinationStateSelector">Function to calculate the state
+  /// that the trigger will cause a transition to.</param>
+  /// <returns>The reciever.</returns>
+  public StateConfiguration<TState, TTrigger> PermitDynamic(@Nonnull TriggerWithIntParameter<TState, TTrigger> trigger,
+                                                            @Nonnull IntFunc2<TState> destinationStateSelector) {
+    return PermitDynamicIf(trigger, destinationStateSelector, NoGuard);
+  }
 
+  /// <summary>
+  /// Accept the specified trigger and transition to the destination state, calculated
+  /// dynamically by the supplied function from the unboxed trigger argument.
+  /// </summary>
+  /// <param name="trigger">The accepted trigger.</param>
+  /// <param name="destinationStateSelector">Function to calculate the state
+  /// that the trigger will cause a transition to.</param>
+  /// <param name="guard">Function that must return true in order for the
+  /// trigger to be accepted.</param>
+  /// <returns>The reciever.</returns>
+  public StateConfiguration<TState, TTrigger> PermitDynamicIf(@Nonnull TriggerWithIntParameter<TState, TTrigger> trigger,
+                                                              @Nonnull final IntFunc2<TState> destinationStateSelector,
+                                                              Func<Boolean> guard) {
+    representation.AddTriggerBehaviour(new PrimitiveDynamicTriggerBehaviour<TState, TTrigger>(trigger.getTrigger(), guard) {
+      public TState ResultsInTransitionFrom(TState source, long bits) {
+        return destinationStateSelector.call((int) bits);
+      }
 
-      public Boolean call() {
-        return true;
+      public TState ResultsInTransitionFrom(TState source, Object... args) {
+        return destinationStateSelector.call((Integer) args[0]);
       }
     });
+    return this;
+  }
+
+  /// <summary>
+  /// Accept the specified trigger and transition to the destination state, calculated
+  /// dynamically by the supplied function from the unboxed trigger argument.
+  /// </summary>
+  /// <param name="trigger">The accepted trigger.</param>
+  /// <param name="destinationStateSelector">Function to calculate the state
+  /// that the trigger will cause a transition to.</param>
+  /// <returns>The reciever.</returns>
+  public StateConfiguration<TState, TTrigger> PermitDynamic(@Nonnull TriggerWithLongParameter<TState, TTrigger> trigger,
+                                                            @Nonnull LongFunc2<TState> destinationStateSelector) {
+    return PermitDynamicIf(trigger, destinationStateSelector, NoGuard);
+  }
+
+  /// <summary>
+  /// Accept the specified trigger and transition to the destination state, calculated
+  /// dynamically by the supplied function from the unboxed trigger argument.
+  /// </summary>
+  /// <param name="trigger">The accepted trigger.</param>
+  /// <param name="destinationStateSelector">Function to calculate the state
+  /// that the trigger will cause a transition to.</param>
+  /// <param name="guard">Function that must return true in order for the
+  /// trigger to be accepted.</param>
+  /// <returns>The reciever.</returns>
+  public StateConfiguration<TState, TTrigger> PermitDynamicIf(@Nonnull TriggerWithLongParameter<TState, TTrigger> trigger,
+                                                              @Nonnull final LongFunc2<TState> destinationStateSelector,
+                                                              Func<Boolean> guard) {
+    representation.AddTriggerBehaviour(new PrimitiveDynamicTriggerBehaviour<TState, TTrigger>(trigger.getTrigger(), guard) {
+      public TState ResultsInTransitionFrom(TState source, long bits) {
+        return destinationStateSelector.call(bits);
+      }
+
+      public TState ResultsInTransitionFrom(TState source, Object... args) {
+        return destinationStateSelector.call((Long) args[0]);
+      }
+    });
+    return this;
+  }
+
+  /// <summary>
+  /// Accept the specified trigger and transition to the destination state, calculated
+  /// dynamically by the supplied function from the unboxed trigger argument.
+  /// </summary>
+  /// <param name="trigger">The accepted trigger.</param>
+  /// <param name="destinationStateSelector">Function to calculate the state
+  /// that the trigger will cause a transition to.</param>
+  /// <returns>The reciever.</returns>
+  public StateConfiguration<TState, TTrigger> PermitDynamic(@Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger,
+                                                            @Nonnull DoubleFunc2<TState> destinationStateSelector) {
+    return PermitDynamicIf(trigger, destinationStateSelector, NoGuard);
+  }
+
+  /// <summary>
+  /// Accept the specified trigger and transition to the destination state, calculated
+  /// dynamically by the supplied function from the unboxed trigger argument.
+  /// </summary>
+  /// <param name="trigger">The accepted trigger.</param>
+  /// <param name="destinationStateSelector">Function to calculate the state
+  /// that the trigger will cause a transition to.</param>
+  /// <param name="guard">Function that must return true in order for the
+  /// trigger to be accepted.</param>
+  /// <returns>The reciever.</returns>
+  public StateConfiguration<TState, TTrigger> PermitDynamicIf(@Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger,
+                                                              @Nonnull final DoubleFunc2<TState> destinationStateSelector,
+                                                              Func<Boolean> guard) {
+    representation.AddTriggerBehaviour(new PrimitiveDynamicTriggerBehaviour<TState, TTrigger>(trigger.getTrigger(), guard) {
+      public TState ResultsInTransitionFrom(TState source, long bits) {
+        return destinationStateSelector.call(Double.longBitsToDouble(bits));
+      }
+
+      public TState ResultsInTransitionFrom(TState source, Object... args) {
+        return destinationStateSelector.call((Double) args[0]);
+      }
+    });
+    return this;
+  }
+
+  StateConfiguration<TState, TTrigger> publicPermit(TTrigger trigger, TState destinationState) {
+    return publicPermitIf(trigger, destinationState, NoGuard);
   }
 
   StateConfiguration<TState, TTrigger> publicPermitIf(TTrigger trigger,
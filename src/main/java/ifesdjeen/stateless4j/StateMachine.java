@@ -1,31 +1,33 @@
 package ifesdjeen.stateless4j;
 
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandle;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
-import ifesdjeen.stateless4j.delegates.Action1;
 import ifesdjeen.stateless4j.delegates.Action2;
-import ifesdjeen.stateless4j.delegates.Func;
-import ifesdjeen.stateless4j.delegates.Func2;
 import ifesdjeen.stateless4j.exceptions.CannotReconfigureParameters;
 import ifesdjeen.stateless4j.exceptions.StateMachineConfigurationException;
 import ifesdjeen.stateless4j.exceptions.TriggerIgnoredException;
 import ifesdjeen.stateless4j.exceptions.UnhandledTriggerActionException;
+import ifesdjeen.stateless4j.metrics.StateMetrics;
 import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
 import ifesdjeen.stateless4j.transitions.Transition;
-import ifesdjeen.stateless4j.transitions.TransitioningTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.IgnoredTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.PrimitiveDynamicTriggerBehaviour;
 import ifesdjeen.stateless4j.triggers.TriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerWithDoubleParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
+import ifesdjeen.stateless4j.triggers.TriggerWithPrimitiveParameter;
 
 import javax.annotation.Nonnull;
 
@@ -37,50 +39,107 @@ import javax.annotation.Nonnull;
 /// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
 public class StateMachine<TState, TTrigger> {
 
-  final Map<TState, StateRepresentation<TState, TTrigger>> _stateConfiguration = new HashMap<TState, StateRepresentation<TState, TTrigger>>();
-  final Map<TTrigger, TriggerWithParameters<TState, TTrigger>> _triggerConfiguration = new HashMap<TTrigger, TriggerWithParameters<TState, TTrigger>>();
-  final Func<TState> _stateAccessor;
-  final Action1<TState> _stateMutator;
+  static final Object[] NoArguments = new Object[0];
 
-  Action2<TState, TTrigger> _unhandledTriggerAction = new Action2<TState, TTrigger>() {
-    public void doIt(TState state, TTrigger trigger) {
-//      throw new Exception(String.format(StateMachineResources.NoTransitionsPermitted,
-//                                        trigger, state));
-    }
+  // with metrics enabled, one fire in this many is timed, as reading the clock costs more
+  // than a plain transition
+  static final int LATENCY_SAMPLE_INTERVAL = 16;
+
+  final StateMachineDefinition<TState, TTrigger> _definition;
+  TState _state;
+  Action2<TState, TTrigger> _unhandledTriggerAction; // null: use the definition's
+
+  // FiringMode.Queued only
+  boolean _firing;
+  TriggerQueue<TTrigger> _queue; // allocated on the first nested fire
+
+  int _fires; // counts fires with metrics enabled, to sample latencies
 
-  };
+  // the timeouts of the states the machine is in, guarded by this
+  ArmedTimeout<TState, TTrigger> _armed;
+  // fires the triggers of expired timeouts, one at a time with the other fires
+  final Executor _timeoutExecutor;
 
   /// <summary>
-  /// Construct a state machine.
+  /// Construct a state machine with its own, unshared definition.
   /// </summary>
   /// <param name="initialState">The initial state.</param>
   public StateMachine(TState initialState) {
-    final StateReference<TState, TTrigger> reference = new StateReference<TState, TTrigger>();
-    reference.setState(initialState);
-    _stateAccessor = new Func<TState>() {
-      public TState call() {
-        return reference.getState();
+    this(initialState, (Executor) null);
+  }
+
+  /// <summary>
+  /// Construct a state machine with its own, unshared definition.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="timeoutExecutor">Fires the triggers of expired timeouts, as for a shared
+  /// definition. Required if a state is configured with a timeout.</param>
+  public StateMachine(TState initialState, Executor timeoutExecutor) {
+    _definition = new StateMachineDefinition<TState, TTrigger>();
+    _state = initialState;
+    _timeoutExecutor = timeoutExecutor;
+  }
+
+  /// <summary>
+  /// Construct a state machine sharing a definition with other machines.
+  /// The definition is frozen if it was not already.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="definition">The shared definition.</param>
+  public StateMachine(TState initialState, @Nonnull StateMachineDefinition<TState, TTrigger> definition) {
+    this(initialState, definition, null);
+  }
+
+  /// <summary>
+  /// Construct a state machine sharing a definition with other machines, and arm the
+  /// timeouts of the initial state and its superstates.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  /// <param name="timeoutExecutor">Fires the triggers of expired timeouts. The machine is
+  /// not thread-safe, so it must run them one at a time with the other fires of the machine,
+  /// as the mailbox of a <see cref="StateMachineDispatcher"/> does. Required if the
+  /// definition declares timeouts.</param>
+  public StateMachine(TState initialState,
+                      @Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                      Executor timeoutExecutor) {
+    this(initialState, definition, timeoutExecutor, true);
+  }
+
+  /// <param name="arm">False if the subclass arms the timeouts once it is constructed.</param>
+  StateMachine(TState initialState,
+               StateMachineDefinition<TState, TTrigger> definition,
+               Executor timeoutExecutor,
+               boolean arm) {
+    _definition = definition.freeze();
+    _state = initialState;
+    _timeoutExecutor = timeoutExecutor;
+    if (_definition._timed) {
+      if (timeoutExecutor == null) {
+        throw new IllegalArgumentException(StateMachineResources.TimeoutsRequireExecutor);
       }
-    };
-    _stateMutator = new Action1<TState>() {
-      public void doIt(TState s) {
-        reference.setState(s);
+      if (arm) {
+        RestartTimeouts();
       }
+    }
+  }
 
-      ;
-
-    };
+  /// <summary>
+  /// The definition this machine runs.
+  /// </summary>
+  public StateMachineDefinition<TState, TTrigger> getDefinition() {
+    return _definition;
   }
 
   /// <summary>
   /// The current state.
   /// </summary>
   public TState getState() {
-    return _stateAccessor.call();
+    return _state;
   }
 
-  private void setState(TState value) {
-    _stateMutator.doIt(value);
+  void setState(TState value) {
+    _state = value;
   }
 
   /// <summary>
@@ -91,17 +150,7 @@ public class StateMachine<TState, TTrigger> {
   }
 
   StateRepresentation<TState, TTrigger> getCurrentRepresentation() {
-    return GetRepresentation(getState());
-  }
-
-  StateRepresentation<TState, TTrigger> GetRepresentation(TState state) {
-
-    if (!_stateConfiguration.containsKey(state)) {
-      StateRepresentation<TState, TTrigger> result = new StateRepresentation<TState, TTrigger>(state);
-      _stateConfiguration.put(state, result);
-    }
-
-    return _stateConfiguration.get(state);
+    return _definition.GetRepresentation(getState());
   }
 
   /// <summary>
@@ -111,12 +160,7 @@ public class StateMachine<TState, TTrigger> {
   /// <param name="state">The state to configure.</param>
   /// <returns>A configuration object through which the state can be configured.</returns>
   public StateConfiguration<TState, TTrigger> Configure(TState state) {
-    return new StateConfiguration<TState, TTrigger>(GetRepresentation(state), new Func2<TState, StateRepresentation<TState, TTrigger>>() {
-
-      public StateRepresentation<TState, TTrigger> call(TState arg0) {
-        return GetRepresentation(arg0);
-      }
-    });
+    return _definition.Configure(state);
   }
 
   /// <summary>
@@ -129,7 +173,7 @@ public class StateMachine<TState, TTrigger> {
   /// <exception cref="System.InvalidOperationException">The current state does
   /// not allow the trigger to be fired.</exception>
   public void Fire(TTrigger trigger) throws StateMachineConfigurationException {
-    publicFire(trigger, new Object[0]);
+    publicFire(trigger, NoArguments);
   }
 
   /// <summary>
@@ -145,7 +189,7 @@ public class StateMachine<TState, TTrigger> {
   /// not allow the trigger to be fired.</exception>
   public <TArg0> void Fire(@Nonnull TriggerWithParameters1<TArg0, TState, TTrigger> trigger,
                            TArg0 arg0) throws StateMachineConfigurationException {
-    publicFire(trigger.getTrigger(), arg0);
+    typedFire(trigger, arg0);
   }
 
   /// <summary>
@@ -164,7 +208,7 @@ public class StateMachine<TState, TTrigger> {
   public <TArg0, TArg1> void Fire(@Nonnull TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> trigger,
                                   TArg0 arg0,
                                   TArg1 arg1) throws StateMachineConfigurationException {
-    publicFire(trigger.getTrigger(), arg0, arg1);
+    typedFire(trigger, arg0, arg1);
   }
 
   /// <summary>
@@ -186,49 +230,554 @@ public class StateMachine<TState, TTrigger> {
                                          TArg0 arg0,
                                          TArg1 arg1,
                                          TArg2 arg2) throws StateMachineConfigurationException {
-    publicFire(trigger.getTrigger(), arg0, arg1, arg2);
+    typedFire(trigger, arg0, arg1, arg2);
+  }
+
+  /// <summary>
+  /// Transition from the current state via the specified trigger, passing its
+  /// argument to entry actions and selectors without boxing.
+  /// </summary>
+  /// <param name="trigger">The trigger to fire.</param>
+  /// <param name="arg0">The argument.</param>
+  /// <exception cref="System.InvalidOperationException">The current state does
+  /// not allow the trigger to be fired.</exception>
+  public void Fire(@Nonnull TriggerWithIntParameter<TState, TTrigger> trigger, int arg0) throws StateMachineConfigurationException {
+    primitiveFire(trigger, arg0);
+  }
+
+  /// <summary>
+  /// Transition from the current state via the specified trigger, passing its
+  /// argument to entry actions and selectors without boxing.
+  /// </summary>
+  /// <param name="trigger">The trigger to fire.</param>
+  /// <param name="arg0">The argument.</param>
+  /// <exception cref="System.InvalidOperationException">The current state does
+  /// not allow the trigger to be fired.</exception>
+  public void Fire(@Nonnull TriggerWithLongParameter<TState, TTrigger> trigger, long arg0) throws StateMachineConfigurationException {
+    primitiveFire(trigger, arg0);
+  }
+
+  /// <summary>
+  /// Transition from the current state via the specified trigger, passing its
+  /// argument to entry actions and selectors without boxing.
+  /// </summary>
+  /// <param name="trigger">The trigger to fire.</param>
+  /// <param name="arg0">The argument.</param>
+  /// <exception cref="System.InvalidOperationException">The current state does
+  /// not allow the trigger to be fired.</exception>
+  public void Fire(@Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger, double arg0) throws StateMachineConfigurationException {
+    primitiveFire(trigger, Double.doubleToRawLongBits(arg0));
   }
 
   void publicFire(TTrigger trigger, Object... args) throws StateMachineConfigurationException {
-    TriggerWithParameters<TState, TTrigger> configuration;
-    if (_triggerConfiguration.containsKey(trigger)) {
-      configuration = _triggerConfiguration.get(trigger);
-      configuration.ValidateParameters(args);
+    ValidateParameters(trigger, args);
+    FireValidated(null, trigger, args);
+  }
+
+  void typedFire(TriggerWithParameters<TState, TTrigger> trigger, Object... args) throws StateMachineConfigurationException {
+    if (_definition._trustedParameters && _definition.GetTriggerConfiguration(trigger.getTrigger()) == trigger) {
+      FireValidated(null, trigger.getTrigger(), args);
+      return;
     }
+    publicFire(trigger.getTrigger(), args);
+  }
 
-    TriggerBehaviour<TState, TTrigger> triggerBehaviour;
+  void primitiveFire(TriggerWithPrimitiveParameter<TState, TTrigger> trigger, long bits) throws StateMachineConfigurationException {
+    if (_definition.GetTriggerConfiguration(trigger.getTrigger()) != trigger) {
+      // not the configuration of this definition: validate the boxed argument against it
+      publicFire(trigger.getTrigger(), trigger.box(bits));
+      return;
+    }
+    FirePrimitive(trigger, bits);
+  }
+
+  /// <summary>
+  /// Fire each trigger in turn, as if by <see cref="Fire"/>. The current representation is
+  /// kept across the batch.
+  /// </summary>
+  /// <param name="triggers">The triggers to fire.</param>
+  /// <param name="args">The arguments of each trigger; the array, or any of its elements,
+  /// may be null for triggers without arguments.</param>
+  /// <returns>How many triggers led to a transition, were ignored, and so on.</returns>
+  /// <exception cref="StateMachineConfigurationException">A trigger's arguments are not valid.
+  /// The triggers before it have been fired.</exception>
+  public FireAllResult FireAll(@Nonnull TTrigger[] triggers, Object[][] args) throws StateMachineConfigurationException {
+    FireAllResult result = new FireAllResult();
+    StateRepresentation<TState, TTrigger> representation = null;
+
+    for (int i = 0; i < triggers.length; i++) {
+      TTrigger trigger = triggers[i];
+      Object[] arguments = args == null || args[i] == null ? NoArguments : args[i];
+
+      ValidateParameters(trigger, arguments);
+
+      if (representation == null || representation.getUnderlyingState() != getState()) {
+        representation = getCurrentRepresentation();
+      }
+      result.add(FireValidated(representation, trigger, arguments));
+    }
+    return result;
+  }
+
+  /// <summary>
+  /// Fire each trigger in turn, as if by <see cref="Fire"/>.
+  /// </summary>
+  /// <param name="triggers">The triggers to fire; none may require arguments.</param>
+  /// <returns>How many triggers led to a transition, were ignored, and so on.</returns>
+  public FireAllResult FireAll(@Nonnull Iterable<TTrigger> triggers) throws StateMachineConfigurationException {
+    FireAllResult result = new FireAllResult();
+    StateRepresentation<TState, TTrigger> representation = null;
+
+    for (TTrigger trigger : triggers) {
+      ValidateParameters(trigger, NoArguments);
+      if (representation == null || representation.getUnderlyingState() != getState()) {
+        representation = getCurrentRepresentation();
+      }
+      result.add(FireValidated(representation, trigger, NoArguments));
+    }
+    return result;
+  }
+
+  /// <summary>
+  /// Fire a trigger whose arguments have already been validated, honouring the firing mode.
+  /// </summary>
+  /// <param name="representation">The representation of the current state, or null to look it up.</param>
+  /// <returns>One of the FireAllResult outcome codes.</returns>
+  int FireValidated(StateRepresentation<TState, TTrigger> representation, TTrigger trigger, Object[] args) {
+    if (_definition._firingMode == FiringMode.Immediate) {
+      return InternalFire(representation, trigger, args, null, 0);
+    }
+
+    if (_firing) {
+      if (_queue == null) {
+        _queue = new TriggerQueue<TTrigger>();
+      }
+      _queue.offer(trigger, args);
+      return FireAllResult.QUEUED;
+    }
+
+    _firing = true;
+    try {
+      int outcome;
+      try {
+        outcome = InternalFire(representation, trigger, args, null, 0);
+      } catch (RuntimeException e) {
+        DrainQueue(e);
+        throw e;
+      }
+      DrainQueue(null);
+      return outcome;
+    } finally {
+      _firing = false;
+    }
+  }
+
+  /// <summary>
+  /// Fire a trigger with a primitive argument, carried by the bits, honouring the firing mode.
+  /// The argument is only boxed if the trigger has to be queued.
+  /// </summary>
+  /// <returns>One of the FireAllResult outcome codes.</returns>
+  int FirePrimitive(TriggerWithPrimitiveParameter<TState, TTrigger> trigger, long bits) {
+    if (_definition._firingMode == FiringMode.Immediate) {
+      return InternalFire(null, trigger.getTrigger(), null, trigger, bits);
+    }
+
+    if (_firing) {
+      return FireValidated(null, trigger.getTrigger(), new Object[]{trigger.box(bits)});
+    }
+
+    _firing = true;
+    try {
+      int outcome;
+      try {
+        outcome = InternalFire(null, trigger.getTrigger(), null, trigger, bits);
+      } catch (RuntimeException e) {
+        DrainQueue(e);
+        throw e;
+      }
+      DrainQueue(null);
+      return outcome;
+    } finally {
+      _firing = false;
+    }
+  }
+
+  /// <summary>
+  /// Run the queued triggers until none is left, even if some throw, so that none is left to
+  /// run before the triggers of the next fire, possibly against another entity's state in a
+  /// registry or store.
+  /// </summary>
+  /// <param name="failure">The exception thrown by the fire that queued them, if any.</param>
+  /// <exception cref="RuntimeException">The first exception thrown, rethrown once the queue
+  /// is empty.</exception>
+  void DrainQueue(RuntimeException failure) {
+    while (_queue != null && !_queue.isEmpty()) {
+      TTrigger queued = _queue.peekTrigger();
+      Object[] args = _queue.pollArgs();
+      try {
+        InternalFire(null, queued, args, null, 0);
+      } catch (RuntimeException e) {
+        // thrown by the unhandled-trigger action, a listener or the journal
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /// <param name="args">The arguments of the trigger, or null when its single primitive
+  /// argument is carried by the bits instead.</param>
+  /// <param name="primitive">The configuration of the trigger when args is null.</param>
+  int InternalFire(StateRepresentation<TState, TTrigger> representation,
+                   TTrigger trigger,
+                   Object[] args,
+                   TriggerWithPrimitiveParameter<TState, TTrigger> primitive,
+                   long bits) {
+    if (representation == null) {
+      representation = getCurrentRepresentation();
+    }
+    MethodHandleDispatch<TState, TTrigger> handles = _definition._handles;
+    if (handles != null && args != null) {
+      MethodHandle handle = handles.HandleFor(representation.getUnderlyingState(), trigger);
+      if (handle != null) {
+        int outcome = MethodHandleDispatch.Invoke(handle, this, args);
+        if (outcome == FireAllResult.UNHANDLED) {
+          Unhandled(representation.getUnderlyingState(), trigger);
+        }
+        return outcome;
+      }
+    }
+
+    StateMetrics<TState, TTrigger> metrics = _definition.MetricsFor(representation);
+    if (metrics != null) {
+      metrics.fired(trigger);
+    }
+    TriggerBehaviour<TState, TTrigger> triggerBehaviour = _definition.FindHandler(representation, trigger);
+    if (triggerBehaviour == null) {
+      RecordUnhandled(metrics, representation, trigger);
+      Unhandled(representation.getUnderlyingState(), trigger);
+      return FireAllResult.UNHANDLED;
+    }
+
+    if (triggerBehaviour instanceof IgnoredTriggerBehaviour) {
+      if (metrics != null) {
+        metrics.ignored();
+      }
+      return FireAllResult.IGNORED;
+    }
+
+    TState source = getState();
+    Transition<TState, TTrigger> transition;
+    long started = SampleLatency(metrics);
     try {
-      triggerBehaviour = getCurrentRepresentation().TryFindHandler(trigger);
+      TState destination;
+      if (args != null) {
+        destination = triggerBehaviour.ResultsInTransitionFrom(source, args);
+      } else if (triggerBehaviour instanceof PrimitiveDynamicTriggerBehaviour) {
+        destination = ((PrimitiveDynamicTriggerBehaviour<TState, TTrigger>) triggerBehaviour).ResultsInTransitionFrom(source, bits);
+      } else {
+        destination = triggerBehaviour.ResultsInTransitionFrom(source, NoArguments);
+      }
+      StateRepresentation<TState, TTrigger> next = _definition.GetRepresentation(destination);
+      TransitionPath<TState, TTrigger> path = representation.PathTo(next);
+      if (path != null) {
+        transition = path.TransitionFor(source, destination, trigger);
+        path.Exit(transition);
+        if (started != 0) {
+          started = metrics.exited(started);
+        }
+        Commit(transition, destination, args);
+        if (args != null) {
+          path.Enter(transition, args);
+        } else {
+          path.Enter(transition, bits);
+        }
+      } else {
+        transition = new Transition<TState, TTrigger>(source, destination, trigger);
+        representation.Exit(transition);
+        if (started != 0) {
+          started = metrics.exited(started);
+        }
+        Commit(transition, destination, args);
+        next.Enter(transition, args != null ? args : new Object[]{primitive.box(bits)});
+      }
+      if (metrics != null) {
+        if (started != 0) {
+          _definition.MetricsFor(next).entered(started);
+        }
+        metrics.transitioned(destination);
+      }
+
+    } catch (TriggerIgnoredException e) {
+      if (metrics != null) {
+        metrics.ignored();
+      }
+      return FireAllResult.IGNORED;
+    } catch (CommitFailure e) {
+      throw (RuntimeException) e.getCause();
     } catch (Exception e) {
-      _unhandledTriggerAction.doIt(getCurrentRepresentation().getUnderlyingState(), trigger);
+      if (metrics != null) {
+        metrics.failed();
+      }
+      return FireAllResult.FAILED;
+    }
+    Transitioned(transition, args);
+    return FireAllResult.TRANSITIONED;
+  }
+
+  /// <summary>
+  /// Change the state to the destination of the transition, once the exit actions have run,
+  /// move the timeouts along and let <see cref="Committed"/> record it, all before the entry
+  /// actions fire any further trigger.
+  /// </summary>
+  void Commit(Transition<TState, TTrigger> transition, TState destination, Object[] args) {
+    setState(destination);
+    try {
+      if (_definition._timed) {
+        Retime(transition);
+      }
+      Committed(transition, args);
+    } catch (RuntimeException e) {
+      // not an action failing: passed on to the caller of Fire
+      throw new CommitFailure(e);
+    }
+  }
+
+  /// <summary>
+  /// Called as soon as a transition changes the state, before the entry actions run, so
+  /// before any trigger they fire, and whether or not they fail. Exceptions thrown here
+  /// propagate to the caller of Fire.
+  /// </summary>
+  /// <param name="args">The arguments of the trigger, or null if it was fired with a
+  /// primitive argument that was not boxed.</param>
+  void Committed(Transition<TState, TTrigger> transition, Object[] args) {
+  }
+
+  /// <summary>
+  /// Carries an exception thrown by <see cref="Committed"/> past the handlers of action failures.
+  /// </summary>
+  static final class CommitFailure extends RuntimeException {
+    CommitFailure(RuntimeException cause) {
+      super(cause);
+    }
+  }
+
+  /// <returns>The current <c>System.nanoTime()</c> if this fire's actions are to be timed,
+  /// zero otherwise.</returns>
+  long SampleLatency(StateMetrics<TState, TTrigger> metrics) {
+    if (metrics == null || _fires++ % LATENCY_SAMPLE_INTERVAL != 0) {
+      return 0;
+    }
+    return System.nanoTime();
+  }
+
+  static <TState, TTrigger> void RecordUnhandled(StateMetrics<TState, TTrigger> metrics,
+                                                 StateRepresentation<TState, TTrigger> representation,
+                                                 TTrigger trigger) {
+    if (metrics == null) {
       return;
     }
+    if (representation.HasBehaviourFor(trigger)) {
+      metrics.guardRejected();
+    } else {
+      metrics.unhandled();
+    }
+  }
 
-    TState source = getState();
-    TState destination;
+  void Transitioned(Transition<TState, TTrigger> transition, Object[] args) {
+    onTransitioned(transition, args);
+    TransitionListener<TState, TTrigger>[] listeners = _definition._listeners;
+    if (listeners != null) {
+      for (TransitionListener<TState, TTrigger> listener : listeners) {
+        listener.onTransitioned(transition);
+      }
+    }
+  }
+
+  void Unhandled(TState state, TTrigger trigger) {
+    TransitionListener<TState, TTrigger>[] listeners = _definition._listeners;
+    if (listeners != null) {
+      for (TransitionListener<TState, TTrigger> listener : listeners) {
+        listener.onUnhandled(state, trigger);
+      }
+    }
+    getUnhandledTriggerAction().doIt(state, trigger);
+  }
+
+  /// <summary>
+  /// Called after each transition, once the entry actions have run. Exceptions thrown
+  /// here propagate to the caller of Fire.
+  /// </summary>
+  /// <param name="transition">The transition.</param>
+  /// <param name="args">The arguments of the trigger, or null if it was fired with a
+  /// primitive argument that was not boxed.</param>
+  protected void onTransitioned(Transition<TState, TTrigger> transition, Object[] args) {
+  }
+
+  /// <summary>
+  /// Cancel the timeouts of the states exited by the transition and arm those of the
+  /// states entered, mirroring the exit and entry actions. Called as soon as the state
+  /// changes, so that transitions fired by entry actions are retimed after their cause.
+  /// </summary>
+  synchronized void Retime(Transition<TState, TTrigger> transition) {
+    StateRepresentation<TState, TTrigger> source = _definition.GetRepresentation(transition.getSource());
+    StateRepresentation<TState, TTrigger> destination = _definition.GetRepresentation(transition.getDestination());
+    boolean reentry = transition.isReentry();
+
+    ArmedTimeout<TState, TTrigger> previous = null;
+    for (ArmedTimeout<TState, TTrigger> armed = _armed; armed != null; armed = armed._sibling) {
+      StateRepresentation<TState, TTrigger> state = armed._representation;
+      if (reentry ? state == source : !state.Includes(destination.getUnderlyingState())) {
+        armed.cancel();
+        if (previous == null) {
+          _armed = armed._sibling;
+        } else {
+          previous._sibling = armed._sibling;
+        }
+      } else {
+        previous = armed;
+      }
+    }
+
+    for (StateRepresentation<TState, TTrigger> entered = destination; entered != null; entered = entered.getSuperstate()) {
+      if (!reentry && entered.Includes(source.getUnderlyingState())) {
+        break;
+      }
+      Arm(entered);
+      if (reentry) {
+        break;
+      }
+    }
+  }
+
+  void Arm(StateRepresentation<TState, TTrigger> representation) {
+    List<StateTimeout<TState, TTrigger>> timeouts = representation._timeouts;
+    if (timeouts == null) {
+      return;
+    }
+    if (_timeoutExecutor == null) {
+      // an unshared definition configured with timeouts after construction
+      throw new IllegalStateException(StateMachineResources.TimeoutsRequireExecutor);
+    }
+    HashedWheelTimer timer = _definition.getTimer();
+    for (StateTimeout<TState, TTrigger> timeout : timeouts) {
+      ArmedTimeout<TState, TTrigger> armed = new ArmedTimeout<TState, TTrigger>(this, representation, timeout._trigger);
+      // listed before it is scheduled, as it may expire at once on the timer's thread
+      armed._sibling = _armed;
+      _armed = armed;
+      timer.schedule(armed, timeout._delayNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /// <returns>True if the timeout was armed; false if a transition cancelled it.</returns>
+  synchronized boolean Disarm(ArmedTimeout<TState, TTrigger> timeout) {
+    ArmedTimeout<TState, TTrigger> previous = null;
+    for (ArmedTimeout<TState, TTrigger> armed = _armed; armed != null; armed = armed._sibling) {
+      if (armed == timeout) {
+        if (previous == null) {
+          _armed = armed._sibling;
+        } else {
+          previous._sibling = armed._sibling;
+        }
+        return true;
+      }
+      previous = armed;
+    }
+    return false;
+  }
+
+  void TimedOut(final ArmedTimeout<TState, TTrigger> timeout) {
+    _timeoutExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        Expire(timeout);
+      }
+    });
+  }
+
+  void Expire(ArmedTimeout<TState, TTrigger> timeout) {
+    if (!Disarm(timeout) || !getCurrentRepresentation().IsIncludedIn(timeout._representation.getUnderlyingState())) {
+      return;
+    }
     try {
-      destination = triggerBehaviour.ResultsInTransitionFrom(source, args);
-      Transition<TState, TTrigger> transition = new Transition<TState, TTrigger>(source, destination, trigger);
+      publicFire(timeout._trigger, NoArguments);
+    } catch (StateMachineConfigurationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 
-      getCurrentRepresentation().Exit(transition);
-      setState(transition.getDestination());
-      getCurrentRepresentation().Enter(transition, args);
+  /// <summary>
+  /// Cancel the pending timeouts of the machine, typically before discarding it.
+  /// </summary>
+  public synchronized void CancelTimeouts() {
+    for (ArmedTimeout<TState, TTrigger> armed = _armed; armed != null; armed = armed._sibling) {
+      armed.cancel();
+    }
+    _armed = null;
+  }
 
-    } catch (Exception e) {
+  /// <summary>
+  /// Arm the timeouts of the current state and its superstates afresh, as if they had just
+  /// been entered, typically after <see cref="CancelTimeouts"/>. Timeouts are otherwise
+  /// armed when the machine is constructed and by transitions.
+  /// </summary>
+  public synchronized void RestartTimeouts() {
+    CancelTimeouts();
+    for (StateRepresentation<TState, TTrigger> representation = getCurrentRepresentation();
+         representation != null;
+         representation = representation.getSuperstate()) {
+      Arm(representation);
+    }
+  }
 
+  void ValidateParameters(TTrigger trigger, Object[] args) throws StateMachineConfigurationException {
+    TriggerWithParameters<TState, TTrigger> configuration = _definition.GetTriggerConfiguration(trigger);
+    if (configuration != null) {
+      configuration.ValidateParameters(args);
     }
   }
 
+  /// <summary>
+  /// Add a listener notified of transitions and unhandled triggers.
+  /// </summary>
+  /// <remarks>
+  /// Listeners belong to the definition: the listener also observes every other machine
+  /// sharing it. See <see cref="StateMachineDefinition.AddTransitionListener"/>.
+  /// </remarks>
+  /// <param name="listener">The listener.</param>
+  public void AddTransitionListener(@Nonnull TransitionListener<TState, TTrigger> listener) {
+    _definition.AddTransitionListener(listener);
+  }
+
+  /// <summary>
+  /// Remove a listener added by <see cref="AddTransitionListener"/>.
+  /// </summary>
+  /// <returns>True if the listener was registered.</returns>
+  public boolean RemoveTransitionListener(@Nonnull TransitionListener<TState, TTrigger> listener) {
+    return _definition.RemoveTransitionListener(listener);
+  }
+
   /// <summary>
   /// Override the default behaviour of throwing an exception when an unhandled trigger
   /// is fired.
   /// </summary>
   /// <param name="unhandledTriggerAction">An action to call when an unhandled trigger is fired.</param>
+  /// <remarks>
+  /// Applies to this machine only; see <see cref="StateMachineDefinition.OnUnhandledTrigger"/>
+  /// to change the behaviour of every machine sharing a definition.
+  /// </remarks>
   public void OnUnhandledTrigger(Action2<TState, TTrigger> unhandledTriggerAction) throws UnhandledTriggerActionException {
     if (unhandledTriggerAction == null) throw new UnhandledTriggerActionException();
     _unhandledTriggerAction = unhandledTriggerAction;
   }
 
+  Action2<TState, TTrigger> getUnhandledTriggerAction() {
+    return _unhandledTriggerAction != null ? _unhandledTriggerAction : _definition._unhandledTriggerAction;
+  }
+
   /// <summary>
   /// Determine if the state machine is in the supplied state.
   /// </summary>
@@ -246,7 +795,7 @@ public class StateMachine<TState, TTrigger> {
   /// <param name="trigger">Trigger to test.</param>
   /// <returns>True if the trigger can be fired, false otherwise.</returns>
   public Boolean CanFire(TTrigger trigger) {
-    return getCurrentRepresentation().CanHandle(trigger);
+    return _definition.FindHandler(getCurrentRepresentation(), trigger) != null;
   }
 
   /// <summary>
@@ -274,9 +823,7 @@ public class StateMachine<TState, TTrigger> {
   /// <returns>An object that can be passed to the Fire() method in order to
   /// fire the parameterised trigger.</returns>
   public <TArg0> TriggerWithParameters1<TArg0, TState, TTrigger> SetTriggerParameters(TTrigger trigger, Class<TArg0> classe0) throws CannotReconfigureParameters {
-    TriggerWithParameters1<TArg0, TState, TTrigger> configuration = new TriggerWithParameters1<TArg0, TState, TTrigger>(trigger, classe0);
-    SaveTriggerConfiguration(configuration);
-    return configuration;
+    return _definition.SetTriggerParameters(trigger, classe0);
   }
 
   /// <summary>
@@ -288,9 +835,7 @@ public class StateMachine<TState, TTrigger> {
   /// <returns>An object that can be passed to the Fire() method in order to
   /// fire the parameterised trigger.</returns>
   public <TArg0, TArg1> TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> SetTriggerParameters(TTrigger trigger, Class<TArg0> classe0, Class<TArg1> classe1) throws CannotReconfigureParameters {
-    TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> configuration = new TriggerWithParameters2<TArg0, TArg1, TState, TTrigger>(trigger, classe0, classe1);
-    SaveTriggerConfiguration(configuration);
-    return configuration;
+    return _definition.SetTriggerParameters(trigger, classe0, classe1);
   }
 
   /// <summary>
@@ -305,33 +850,40 @@ public class StateMachine<TState, TTrigger> {
   public <TArg0, TArg1, TArg2> TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> SetTriggerParameters(TTrigger trigger, Class<TArg0> classe0, Class<TArg1> classe1, Class<TArg2> classe2)
           throws CannotReconfigureParameters
   {
-    TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> configuration = new TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger>(trigger, classe0, classe1, classe2);
-    SaveTriggerConfiguration(configuration);
-    return configuration;
+    return _definition.SetTriggerParameters(trigger, classe0, classe1, classe2);
   }
 
-  void SaveTriggerConfiguration(TriggerWithParameters<TState, TTrigger> trigger) throws CannotReconfigureParameters {
-    if (_triggerConfiguration.containsKey(trigger.getTrigger()))
-      throw new CannotReconfigureParameters();
+  /// <summary>
+  /// Specify that a trigger takes a single <c>int</c> argument, passed without boxing.
+  /// </summary>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public TriggerWithIntParameter<TState, TTrigger> SetIntTriggerParameter(TTrigger trigger) throws CannotReconfigureParameters {
+    return _definition.SetIntTriggerParameter(trigger);
+  }
 
-    _triggerConfiguration.put(trigger.getTrigger(), trigger);
+  /// <summary>
+  /// Specify that a trigger takes a single <c>long</c> argument, passed without boxing.
+  /// </summary>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public TriggerWithLongParameter<TState, TTrigger> SetLongTriggerParameter(TTrigger trigger) throws CannotReconfigureParameters {
+    return _definition.SetLongTriggerParameter(trigger);
+  }
+
+  /// <summary>
+  /// Specify that a trigger takes a single <c>double</c> argument, passed without boxing.
+  /// </summary>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public TriggerWithDoubleParameter<TState, TTrigger> SetDoubleTriggerParameter(TTrigger trigger) throws CannotReconfigureParameters {
+    return _definition.SetDoubleTriggerParameter(trigger);
   }
 
   public void GenerateDotFileInto(OutputStream dotFile) throws UnsupportedEncodingException, TriggerIgnoredException {
-    OutputStreamWriter w = new OutputStreamWriter(dotFile, "UTF-8");
-    PrintWriter writer = new PrintWriter(w);
-    writer.write("digraph G {\n");
-    for (Entry<TState, StateRepresentation<TState, TTrigger>> entry : this._stateConfiguration.entrySet()) {
-      Map<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> behaviours = entry.getValue()._triggerBehaviours;
-      for (Entry<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> behaviour : behaviours.entrySet()) {
-        for (TriggerBehaviour<TState, TTrigger> triggerBehaviour : behaviour.getValue()) {
-          if (triggerBehaviour instanceof TransitioningTriggerBehaviour) {
-            writer.write(String.format("\t%s -> %s;\n", entry.getKey(), triggerBehaviour.ResultsInTransitionFrom(null)));
-          }
-        }
-      }
-    }
-    writer.write("}");
-    writer.close();
+    _definition.GenerateDotFileInto(dotFile);
   }
 }
@@ -0,0 +1,493 @@
+package ifesdjeen.stateless4j;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.delegates.Func2;
+import ifesdjeen.stateless4j.exceptions.CannotReconfigureParameters;
+import ifesdjeen.stateless4j.exceptions.TriggerIgnoredException;
+import ifesdjeen.stateless4j.exceptions.UnhandledTriggerActionException;
+import ifesdjeen.stateless4j.metrics.StateMetrics;
+import ifesdjeen.stateless4j.metrics.TransitionMetrics;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
+import ifesdjeen.stateless4j.transitions.TransitioningTriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerBehaviour;
+import ifesdjeen.stateless4j.triggers.TriggerWithDoubleParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// The states, triggers and actions of a state machine, shared by any number of
+/// <see cref="StateMachine"/> instances.
+/// </summary>
+/// <remarks>
+/// A definition is configured through <see cref="Configure"/> and then frozen, either
+/// explicitly with <see cref="freeze"/> or by creating the first machine from it. Once
+/// frozen it can no longer be modified and may be used from any number of threads;
+/// each machine created from it only holds its own current state.
+/// </remarks>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public class StateMachineDefinition<TState, TTrigger> {
+
+  final Map<TState, StateRepresentation<TState, TTrigger>> _stateConfiguration = new HashMap<TState, StateRepresentation<TState, TTrigger>>();
+  final Map<TTrigger, TriggerWithParameters<TState, TTrigger>> _triggerConfiguration = new HashMap<TTrigger, TriggerWithParameters<TState, TTrigger>>();
+
+  Action2<TState, TTrigger> _unhandledTriggerAction = new Action2<TState, TTrigger>() {
+    public void doIt(TState state, TTrigger trigger) {
+//      throw new Exception(String.format(StateMachineResources.NoTransitionsPermitted,
+//                                        trigger, state));
+    }
+  };
+
+  FiringMode _firingMode = FiringMode.Immediate;
+  boolean _trustedParameters;
+  TransitionMetrics<TState, TTrigger> _metrics; // null unless enabled
+  // copy-on-write, null when there are none; may change once frozen
+  volatile TransitionListener<TState, TTrigger>[] _listeners;
+  HashedWheelTimer _timer; // null: the shared timer
+  boolean _timed; // a state declares a timeout
+
+  volatile boolean _frozen;
+  EnumTransitionTable<TState, TTrigger> _table; // null unless compiled
+  MethodHandleDispatch<TState, TTrigger> _handles; // null unless compiled to method handles
+
+  /// <summary>
+  /// Create a machine in the supplied state, sharing this definition.
+  /// The definition is frozen if it was not already.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  public StateMachine<TState, TTrigger> CreateMachine(TState initialState) {
+    return new StateMachine<TState, TTrigger>(initialState, this);
+  }
+
+  /// <summary>
+  /// Create a machine in the supplied state, sharing this definition, whose timeouts are
+  /// fired through the executor.
+  /// The definition is frozen if it was not already.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="timeoutExecutor">Fires the triggers of expired timeouts, one at a time with
+  /// the other fires of the machine.</param>
+  public StateMachine<TState, TTrigger> CreateMachine(TState initialState, Executor timeoutExecutor) {
+    return new StateMachine<TState, TTrigger>(initialState, this, timeoutExecutor);
+  }
+
+  /// <summary>
+  /// Prevent any further configuration. Safe to call more than once.
+  /// </summary>
+  /// <returns>The receiver.</returns>
+  public StateMachineDefinition<TState, TTrigger> freeze() {
+    if (!_frozen) {
+      synchronized (this) {
+        if (!_frozen) {
+          // destinations never configured are frozen with the rest, rather than given a
+          // throwaway representation, without paths or ancestry, on each transition to them
+          for (StateRepresentation<TState, TTrigger> representation : new ArrayList<StateRepresentation<TState, TTrigger>>(_stateConfiguration.values())) {
+            for (List<TriggerBehaviour<TState, TTrigger>> behaviours : representation._triggerBehaviours.values()) {
+              for (TriggerBehaviour<TState, TTrigger> behaviour : behaviours) {
+                if (behaviour instanceof TransitioningTriggerBehaviour) {
+                  GetRepresentation(((TransitioningTriggerBehaviour<TState, TTrigger>) behaviour).getDestination());
+                }
+              }
+            }
+          }
+          Map<TState, Integer> ids = new HashMap<TState, Integer>();
+          for (TState state : _stateConfiguration.keySet()) {
+            ids.put(state, ids.size());
+          }
+          for (StateRepresentation<TState, TTrigger> representation : _stateConfiguration.values()) {
+            representation.freeze(ids);
+            if (_metrics != null) {
+              representation._metrics = _metrics.forState(representation.getUnderlyingState());
+            }
+          }
+          _frozen = true;
+        }
+      }
+    }
+    return this;
+  }
+
+  /// <summary>
+  /// Freeze the definition and flatten it into a dense transition table indexed by
+  /// state and trigger ordinals, with handlers inherited from superstates resolved
+  /// up front. Unguarded transitions are then dispatched without any map lookup;
+  /// guarded ones still evaluate their guards when fired.
+  /// </summary>
+  /// <param name="stateType">The enum type of the states.</param>
+  /// <param name="triggerType">The enum type of the triggers.</param>
+  /// <returns>The receiver.</returns>
+  public synchronized StateMachineDefinition<TState, TTrigger> compile(@Nonnull Class<TState> stateType,
+                                                                      @Nonnull Class<TTrigger> triggerType) {
+    if (!stateType.isEnum() || !triggerType.isEnum()) {
+      throw new IllegalArgumentException(StateMachineResources.CompiledModeRequiresEnums);
+    }
+    if (_table == null) {
+      EnumTransitionTable<TState, TTrigger> table = new EnumTransitionTable<TState, TTrigger>(this,
+                                                                                             stateType.getEnumConstants(),
+                                                                                             triggerType.getEnumConstants());
+      _table = table;
+      freeze();
+    }
+    return this;
+  }
+
+  /// <summary>
+  /// Freeze the definition and compile it into a method handle for each state and trigger,
+  /// which evaluates the guards, superstates included, and runs the exit actions, the state
+  /// change and the entry actions of the selected transition without consulting the
+  /// configuration. Triggers that may select a dynamic destination, triggers fired with
+  /// primitive arguments and <see cref="ConcurrentStateMachine"/> instances are still
+  /// interpreted. The handles do not collect metrics, so a definition collecting them is
+  /// rejected, and left unfrozen.
+  /// </summary>
+  /// <param name="stateType">The enum type of the states.</param>
+  /// <param name="triggerType">The enum type of the triggers.</param>
+  /// <returns>The receiver.</returns>
+  /// <exception cref="IllegalStateException">Metrics are enabled.</exception>
+  public synchronized StateMachineDefinition<TState, TTrigger> compileHandles(@Nonnull Class<TState> stateType,
+                                                                             @Nonnull Class<TTrigger> triggerType) {
+    if (!stateType.isEnum() || !triggerType.isEnum()) {
+      throw new IllegalArgumentException(StateMachineResources.CompiledModeRequiresEnums);
+    }
+    if (_metrics != null) {
+      throw new IllegalStateException(StateMachineResources.CompiledHandlesCollectNoMetrics);
+    }
+    freeze();
+    if (_handles == null) {
+      _handles = new MethodHandleDispatch<TState, TTrigger>(this,
+                                                            stateType.getEnumConstants(),
+                                                            triggerType.getEnumConstants());
+    }
+    return this;
+  }
+
+  /// <summary>
+  /// True once the definition can no longer be configured.
+  /// </summary>
+  public boolean isFrozen() {
+    return _frozen;
+  }
+
+  /// <summary>
+  /// Begin configuration of the entry/exit actions and allowed transitions
+  /// when the state machine is in a particular state.
+  /// </summary>
+  /// <param name="state">The state to configure.</param>
+  /// <returns>A configuration object through which the state can be configured.</returns>
+  public StateConfiguration<TState, TTrigger> Configure(TState state) {
+    enforceNotFrozen();
+    return new StateConfiguration<TState, TTrigger>(GetRepresentation(state), new Func2<TState, StateRepresentation<TState, TTrigger>>() {
+
+      public StateRepresentation<TState, TTrigger> call(TState arg0) {
+        return GetRepresentation(arg0);
+      }
+    }, this);
+  }
+
+  /// <summary>
+  /// Override the default behaviour of throwing an exception when an unhandled trigger
+  /// is fired, for every machine sharing this definition.
+  /// </summary>
+  /// <param name="unhandledTriggerAction">An action to call when an unhandled trigger is fired.</param>
+  public void OnUnhandledTrigger(Action2<TState, TTrigger> unhandledTriggerAction) throws UnhandledTriggerActionException {
+    if (unhandledTriggerAction == null) throw new UnhandledTriggerActionException();
+    enforceNotFrozen();
+    _unhandledTriggerAction = unhandledTriggerAction;
+  }
+
+  /// <summary>
+  /// How machines sharing this definition handle triggers fired from within a transition.
+  /// Defaults to <see cref="FiringMode.Immediate"/>.
+  /// </summary>
+  public FiringMode getFiringMode() {
+    return _firingMode;
+  }
+
+  /// <summary>
+  /// Set how machines sharing this definition handle triggers fired from within a transition.
+  /// </summary>
+  /// <param name="firingMode">The firing mode.</param>
+  /// <returns>The receiver.</returns>
+  public StateMachineDefinition<TState, TTrigger> setFiringMode(@Nonnull FiringMode firingMode) {
+    enforceNotFrozen();
+    _firingMode = firingMode;
+    return this;
+  }
+
+  /// <summary>
+  /// True if arguments passed to the typed Fire overloads are trusted.
+  /// </summary>
+  public boolean isTrustedParameters() {
+    return _trustedParameters;
+  }
+
+  /// <summary>
+  /// Trust the arguments of triggers fired through the typed Fire overloads, such as
+  /// <c>Fire(TriggerWithParameters1, TArg0)</c>, and skip their validation. The compiler
+  /// already checks them, unless raw types or unchecked casts are involved. Triggers
+  /// fired with untyped arguments are still validated.
+  /// </summary>
+  /// <param name="trusted">Whether to skip validation.</param>
+  /// <returns>The receiver.</returns>
+  public StateMachineDefinition<TState, TTrigger> setTrustedParameters(boolean trusted) {
+    enforceNotFrozen();
+    _trustedParameters = trusted;
+    return this;
+  }
+
+  /// <summary>
+  /// Add a listener notified of the transitions and unhandled triggers of every machine
+  /// sharing this definition. Listeners may be added and removed at any time, including
+  /// while machines are firing on other threads.
+  /// </summary>
+  /// <param name="listener">The listener.</param>
+  @SuppressWarnings("unchecked")
+  public synchronized void AddTransitionListener(@Nonnull TransitionListener<TState, TTrigger> listener) {
+    TransitionListener<TState, TTrigger>[] listeners = _listeners;
+    if (listeners == null) {
+      _listeners = new TransitionListener[]{listener};
+    } else {
+      TransitionListener<TState, TTrigger>[] added = Arrays.copyOf(listeners, listeners.length + 1);
+      added[listeners.length] = listener;
+      _listeners = added;
+    }
+  }
+
+  /// <summary>
+  /// Remove a listener added by <see cref="AddTransitionListener"/>.
+  /// </summary>
+  /// <returns>True if the listener was registered.</returns>
+  @SuppressWarnings("unchecked")
+  public synchronized boolean RemoveTransitionListener(@Nonnull TransitionListener<TState, TTrigger> listener) {
+    TransitionListener<TState, TTrigger>[] listeners = _listeners;
+    if (listeners == null) {
+      return false;
+    }
+    for (int i = 0; i < listeners.length; i++) {
+      if (listeners[i] == listener) {
+        if (listeners.length == 1) {
+          _listeners = null;
+        } else {
+          TransitionListener<TState, TTrigger>[] removed = new TransitionListener[listeners.length - 1];
+          System.arraycopy(listeners, 0, removed, 0, i);
+          System.arraycopy(listeners, i + 1, removed, i, listeners.length - i - 1);
+          _listeners = removed;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /// <summary>
+  /// The metrics collected for machines sharing this definition, or null if they are
+  /// not collected.
+  /// </summary>
+  public TransitionMetrics<TState, TTrigger> getMetrics() {
+    return _metrics;
+  }
+
+  /// <summary>
+  /// Collect metrics for machines sharing this definition: fires by state and trigger,
+  /// transitions by edge, unhandled and ignored triggers, guard rejections, failures and
+  /// the duration of entry and exit actions, sampled. Off by default, in which case firing
+  /// pays no more than a null check.
+  /// </summary>
+  /// <param name="enabled">Whether to collect metrics.</param>
+  /// <returns>The receiver.</returns>
+  public StateMachineDefinition<TState, TTrigger> setMetricsEnabled(boolean enabled) {
+    enforceNotFrozen();
+    if (!enabled) {
+      _metrics = null;
+    } else if (_metrics == null) {
+      _metrics = new TransitionMetrics<TState, TTrigger>();
+    }
+    return this;
+  }
+
+  /// <summary>
+  /// The timer arming the timeouts declared through <see cref="StateConfiguration.FireAfter"/>.
+  /// </summary>
+  public HashedWheelTimer getTimer() {
+    return _timer != null ? _timer : HashedWheelTimer.shared();
+  }
+
+  /// <summary>
+  /// Arm the timeouts of machines sharing this definition on the supplied timer instead of
+  /// the shared one, for instance to tune its resolution or to drive it from a virtual clock.
+  /// </summary>
+  /// <returns>The receiver.</returns>
+  public StateMachineDefinition<TState, TTrigger> setTimer(@Nonnull HashedWheelTimer timer) {
+    enforceNotFrozen();
+    _timer = timer;
+    return this;
+  }
+
+  /// <summary>
+  /// Specify the arguments that must be supplied when a specific trigger is fired.
+  /// </summary>
+  /// <typeparam name="TArg0">Type of the first trigger argument.</typeparam>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public <TArg0> TriggerWithParameters1<TArg0, TState, TTrigger> SetTriggerParameters(TTrigger trigger, Class<TArg0> classe0) throws CannotReconfigureParameters {
+    TriggerWithParameters1<TArg0, TState, TTrigger> configuration = new TriggerWithParameters1<TArg0, TState, TTrigger>(trigger, classe0);
+    SaveTriggerConfiguration(configuration);
+    return configuration;
+  }
+
+  /// <summary>
+  /// Specify the arguments that must be supplied when a specific trigger is fired.
+  /// </summary>
+  /// <typeparam name="TArg0">Type of the first trigger argument.</typeparam>
+  /// <typeparam name="TArg1">Type of the second trigger argument.</typeparam>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public <TArg0, TArg1> TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> SetTriggerParameters(TTrigger trigger, Class<TArg0> classe0, Class<TArg1> classe1) throws CannotReconfigureParameters {
+    TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> configuration = new TriggerWithParameters2<TArg0, TArg1, TState, TTrigger>(trigger, classe0, classe1);
+    SaveTriggerConfiguration(configuration);
+    return configuration;
+  }
+
+  /// <summary>
+  /// Specify the arguments that must be supplied when a specific trigger is fired.
+  /// </summary>
+  /// <typeparam name="TArg0">Type of the first trigger argument.</typeparam>
+  /// <typeparam name="TArg1">Type of the second trigger argument.</typeparam>
+  /// <typeparam name="TArg2">Type of the third trigger argument.</typeparam>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public <TArg0, TArg1, TArg2> TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> SetTriggerParameters(TTrigger trigger, Class<TArg0> classe0, Class<TArg1> classe1, Class<TArg2> classe2)
+          throws CannotReconfigureParameters
+  {
+    TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> configuration = new TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger>(trigger, classe0, classe1, classe2);
+    SaveTriggerConfiguration(configuration);
+    return configuration;
+  }
+
+  /// <summary>
+  /// Specify that a trigger takes a single <c>int</c> argument, passed without boxing.
+  /// </summary>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public TriggerWithIntParameter<TState, TTrigger> SetIntTriggerParameter(TTrigger trigger) throws CannotReconfigureParameters {
+    TriggerWithIntParameter<TState, TTrigger> configuration = new TriggerWithIntParameter<TState, TTrigger>(trigger);
+    SaveTriggerConfiguration(configuration);
+    return configuration;
+  }
+
+  /// <summary>
+  /// Specify that a trigger takes a single <c>long</c> argument, passed without boxing.
+  /// </summary>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public TriggerWithLongParameter<TState, TTrigger> SetLongTriggerParameter(TTrigger trigger) throws CannotReconfigureParameters {
+    TriggerWithLongParameter<TState, TTrigger> configuration = new TriggerWithLongParameter<TState, TTrigger>(trigger);
+    SaveTriggerConfiguration(configuration);
+    return configuration;
+  }
+
+  /// <summary>
+  /// Specify that a trigger takes a single <c>double</c> argument, passed without boxing.
+  /// </summary>
+  /// <param name="trigger">The underlying trigger value.</param>
+  /// <returns>An object that can be passed to the Fire() method in order to
+  /// fire the parameterised trigger.</returns>
+  public TriggerWithDoubleParameter<TState, TTrigger> SetDoubleTriggerParameter(TTrigger trigger) throws CannotReconfigureParameters {
+    TriggerWithDoubleParameter<TState, TTrigger> configuration = new TriggerWithDoubleParameter<TState, TTrigger>(trigger);
+    SaveTriggerConfiguration(configuration);
+    return configuration;
+  }
+
+  void SaveTriggerConfiguration(TriggerWithParameters<TState, TTrigger> trigger) throws CannotReconfigureParameters {
+    enforceNotFrozen();
+    if (_triggerConfiguration.containsKey(trigger.getTrigger()))
+      throw new CannotReconfigureParameters();
+
+    _triggerConfiguration.put(trigger.getTrigger(), trigger);
+  }
+
+  TriggerWithParameters<TState, TTrigger> GetTriggerConfiguration(TTrigger trigger) {
+    return _triggerConfiguration.get(trigger);
+  }
+
+  StateRepresentation<TState, TTrigger> GetRepresentation(TState state) {
+    if (_table != null) {
+      return _table.GetRepresentation(state);
+    }
+    StateRepresentation<TState, TTrigger> result = _stateConfiguration.get(state);
+    if (result == null) {
+      result = new StateRepresentation<TState, TTrigger>(state);
+      // a frozen definition is shared between threads, so an unconfigured
+      // state gets a throwaway representation instead of being recorded
+      if (!_frozen) {
+        _stateConfiguration.put(state, result);
+      }
+    }
+    return result;
+  }
+
+  /// <returns>The metrics of the state, or null if metrics are not collected.</returns>
+  StateMetrics<TState, TTrigger> MetricsFor(StateRepresentation<TState, TTrigger> representation) {
+    if (_metrics == null) {
+      return null;
+    }
+    StateMetrics<TState, TTrigger> metrics = representation._metrics;
+    // unconfigured states have throwaway representations
+    return metrics != null ? metrics : _metrics.forState(representation.getUnderlyingState());
+  }
+
+  TriggerBehaviour<TState, TTrigger> FindHandler(StateRepresentation<TState, TTrigger> representation, TTrigger trigger) {
+    if (_table != null) {
+      return _table.FindHandler(representation.getUnderlyingState(), trigger);
+    }
+    return representation.TryFindHandler(trigger);
+  }
+
+  void enforceNotFrozen() {
+    if (_frozen) {
+      throw new IllegalStateException(StateMachineResources.DefinitionFrozen);
+    }
+  }
+
+  public void GenerateDotFileInto(OutputStream dotFile) throws UnsupportedEncodingException, TriggerIgnoredException {
+    OutputStreamWriter w = new OutputStreamWriter(dotFile, "UTF-8");
+    PrintWriter writer = new PrintWriter(w);
+    writer.write("digraph G {\n");
+    for (Entry<TState, StateRepresentation<TState, TTrigger>> entry : this._stateConfiguration.entrySet()) {
+      Map<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> behaviours = entry.getValue()._triggerBehaviours;
+      for (Entry<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> behaviour : behaviours.entrySet()) {
+        for (TriggerBehaviour<TState, TTrigger> triggerBehaviour : behaviour.getValue()) {
+          if (triggerBehaviour instanceof TransitioningTriggerBehaviour) {
+            writer.write(String.format("\t%s -> %s;\n", entry.getKey(), triggerBehaviour.ResultsInTransitionFrom(null)));
+          }
+        }
+      }
+    }
+    writer.write("}");
+    writer.close();
+  }
+}
@@ -0,0 +1,229 @@
+package ifesdjeen.stateless4j;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// Drives many state machines from a shared executor, one mailbox per machine.
+/// </summary>
+/// <remarks>
+/// Triggers submitted for a machine are appended to its mailbox, a lock-free queue, and run
+/// one at a time, in submission order, on whichever executor thread picks the mailbox up.
+/// Different machines run in parallel and no machine is ever locked, so plain
+/// <see cref="StateMachine"/> instances can be shared between threads as long as every
+/// fire goes through the dispatcher. A mailbox hands its thread back to the executor after
+/// <c>throughput</c> triggers so that busy machines do not starve the others. If the executor
+/// rejects a mailbox, the futures of the triggers queued in it fail with the
+/// RejectedExecutionException, and the next trigger submitted schedules it again.
+/// </remarks>
+public class StateMachineDispatcher {
+  static final int DEFAULT_THROUGHPUT = 64;
+
+  final Executor _executor;
+  final int _throughput;
+  final ConcurrentMap<StateMachine<?, ?>, Mailbox> _mailboxes = new ConcurrentHashMap<StateMachine<?, ?>, Mailbox>();
+
+  /// <summary>
+  /// Create a dispatcher running mailboxes on the supplied executor.
+  /// </summary>
+  /// <param name="executor">Runs the mailboxes, typically a fixed thread pool.</param>
+  public StateMachineDispatcher(@Nonnull Executor executor) {
+    this(executor, DEFAULT_THROUGHPUT);
+  }
+
+  /// <summary>
+  /// Create a dispatcher running mailboxes on the supplied executor.
+  /// </summary>
+  /// <param name="executor">Runs the mailboxes, typically a fixed thread pool.</param>
+  /// <param name="throughput">Maximum number of triggers a mailbox runs before
+  /// yielding its thread.</param>
+  public StateMachineDispatcher(@Nonnull Executor executor, int throughput) {
+    if (throughput < 1) {
+      throw new IllegalArgumentException("throughput");
+    }
+    _executor = executor;
+    _throughput = throughput;
+  }
+
+  /// <summary>
+  /// Create a machine whose timeouts are fired through its mailbox, one at a time with the
+  /// triggers submitted for it. The machine keeps its mailbox for good, even once released,
+  /// and can only be fired through this dispatcher.
+  /// </summary>
+  /// <param name="initialState">The initial state.</param>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  public <TState, TTrigger> StateMachine<TState, TTrigger> CreateMachine(TState initialState,
+                                                                         @Nonnull StateMachineDefinition<TState, TTrigger> definition) {
+    Mailbox mailbox = new Mailbox();
+    StateMachine<TState, TTrigger> machine = new StateMachine<TState, TTrigger>(initialState, definition, mailbox);
+    _mailboxes.put(machine, mailbox);
+    return machine;
+  }
+
+  /// <summary>
+  /// Fire the trigger on the machine asynchronously.
+  /// </summary>
+  /// <returns>A future completing once the transition has run; it fails with the
+  /// exception Fire would have thrown.</returns>
+  public <TState, TTrigger> Future<Void> Fire(@Nonnull StateMachine<TState, TTrigger> machine,
+                                              TTrigger trigger) {
+    return Submit(machine, trigger);
+  }
+
+  /// <summary>
+  /// Fire the parameterised trigger on the machine asynchronously.
+  /// </summary>
+  /// <returns>A future completing once the transition has run.</returns>
+  public <TArg0, TState, TTrigger> Future<Void> Fire(@Nonnull StateMachine<TState, TTrigger> machine,
+                                                     @Nonnull TriggerWithParameters1<TArg0, TState, TTrigger> trigger,
+                                                     TArg0 arg0) {
+    return Submit(machine, trigger.getTrigger(), arg0);
+  }
+
+  /// <summary>
+  /// Fire the parameterised trigger on the machine asynchronously.
+  /// </summary>
+  /// <returns>A future completing once the transition has run.</returns>
+  public <TArg0, TArg1, TState, TTrigger> Future<Void> Fire(@Nonnull StateMachine<TState, TTrigger> machine,
+                                                            @Nonnull TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> trigger,
+                                                            TArg0 arg0,
+                                                            TArg1 arg1) {
+    return Submit(machine, trigger.getTrigger(), arg0, arg1);
+  }
+
+  /// <summary>
+  /// Fire the parameterised trigger on the machine asynchronously.
+  /// </summary>
+  /// <returns>A future completing once the transition has run.</returns>
+  public <TArg0, TArg1, TArg2, TState, TTrigger> Future<Void> Fire(@Nonnull StateMachine<TState, TTrigger> machine,
+                                                                   @Nonnull TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> trigger,
+                                                                   TArg0 arg0,
+                                                                   TArg1 arg1,
+                                                                   TArg2 arg2) {
+    return Submit(machine, trigger.getTrigger(), arg0, arg1, arg2);
+  }
+
+  /// <summary>
+  /// Fire the trigger with untyped arguments on the machine asynchronously. The arguments
+  /// are validated against the trigger's configured parameters when the trigger runs.
+  /// </summary>
+  /// <returns>A future completing once the transition has run.</returns>
+  public <TState, TTrigger> Future<Void> Submit(@Nonnull final StateMachine<TState, TTrigger> machine,
+                                                final TTrigger trigger,
+                                                final Object... args) {
+    Task task = new Task(new Callable<Void>() {
+      public Void call() throws Exception {
+        machine.publicFire(trigger, args);
+        return null;
+      }
+    });
+    mailbox(machine).enqueue(task);
+    return task;
+  }
+
+  /// <summary>
+  /// Forget the mailbox of a machine that will no longer be used. Triggers submitted for it
+  /// must have completed; submitting to it again afterwards creates a new mailbox, unless
+  /// the machine was created by <see cref="CreateMachine"/>: it then gets back the mailbox
+  /// its timeouts fire through. Its pending timeouts are cancelled.
+  /// </summary>
+  public void Release(@Nonnull StateMachine<?, ?> machine) {
+    machine.CancelTimeouts();
+    _mailboxes.remove(machine);
+  }
+
+  Mailbox mailbox(StateMachine<?, ?> machine) {
+    Mailbox mailbox = _mailboxes.get(machine);
+    if (mailbox == null) {
+      Mailbox created;
+      if (machine._timeoutExecutor instanceof Mailbox) {
+        // created by CreateMachine, and maybe released since: its timeouts still fire
+        // through that mailbox, so must its triggers
+        created = (Mailbox) machine._timeoutExecutor;
+        if (created.getDispatcher() != this) {
+          throw new IllegalArgumentException(StateMachineResources.DispatcherForeignMachine);
+        }
+      } else {
+        created = new Mailbox();
+      }
+      mailbox = _mailboxes.putIfAbsent(machine, created);
+      if (mailbox == null) {
+        mailbox = created;
+      }
+    }
+    return mailbox;
+  }
+
+  static final class Task extends FutureTask<Void> {
+    Task(Callable<Void> callable) {
+      super(callable);
+    }
+
+    Task(Runnable runnable) {
+      super(runnable, null);
+    }
+
+    void reject(RejectedExecutionException e) {
+      setException(e);
+    }
+  }
+
+  final class Mailbox implements Runnable, Executor {
+    final ConcurrentLinkedQueue<Task> _queue = new ConcurrentLinkedQueue<Task>();
+    // number of queued triggers; the submitter taking it from zero schedules the mailbox
+    final AtomicInteger _pending = new AtomicInteger();
+
+    void enqueue(Task task) {
+      _queue.offer(task);
+      if (_pending.getAndIncrement() == 0) {
+        schedule();
+      }
+    }
+
+    StateMachineDispatcher getDispatcher() {
+      return StateMachineDispatcher.this;
+    }
+
+    // runs the trigger of an expired timeout; like the timer, drops its failure
+    public void execute(Runnable command) {
+      enqueue(new Task(command));
+    }
+
+    public void run() {
+      for (int i = 0; i < _throughput; i++) {
+        _queue.poll().run();
+        if (_pending.decrementAndGet() == 0) {
+          return;
+        }
+      }
+      schedule();
+    }
+
+    // called by the thread owning the mailbox, which holds at least one queued trigger
+    void schedule() {
+      try {
+        _executor.execute(this);
+      } catch (RejectedExecutionException e) {
+        // fail the triggers queued until the count drops to zero, so that the next one
+        // submitted schedules the mailbox again
+        do {
+          _queue.poll().reject(e);
+        } while (_pending.decrementAndGet() != 0);
+      }
+    }
+  }
+}
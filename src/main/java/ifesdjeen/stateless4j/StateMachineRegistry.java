@@ -0,0 +1,646 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.exceptions.StateMachineConfigurationException;
+import ifesdjeen.stateless4j.exceptions.UnhandledTriggerActionException;
+import ifesdjeen.stateless4j.passivation.EvictionPolicy;
+import ifesdjeen.stateless4j.passivation.PassivationStore;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.triggers.TriggerWithDoubleParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters3;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// The machines of any number of entities sharing one definition, keyed by entity id and
+/// safe to fire from any number of threads.
+/// </summary>
+/// <remarks>
+/// A key starts in the initial state the first time it is fired and only its current state is
+/// kept, in a concurrent map. Keys are spread over lock stripes, each with a single machine
+/// owned by the stripe: firing a trigger for a key locks its stripe, loads the key's state into
+/// the stripe's machine, fires it there, with the usual guards, actions and firing mode, and
+/// stores the resulting state. Fires for the same key are serialised, fires for keys of
+/// different stripes run in parallel.
+/// <para/>
+/// Actions may fire further triggers for the key being fired, but not for other keys of the
+/// same registry, as the two stripes could then be locked in opposite orders by two threads:
+/// such fires, and the other calls locking a stripe, throw IllegalStateException.
+/// <para/>
+/// With a <see cref="PassivationStore"/>, keys the <see cref="EvictionPolicy"/> selects are
+/// passivated: their state is written to the store and dropped from memory, and read back,
+/// without running any action, the next time they are fired. The map then holds an entry per
+/// resident key, with its state, and each stripe queues the entries of its keys in the order
+/// they came into memory, approximating the least recently fired ones by giving a second
+/// chance, at the back of the queue, to the keys fired since they were queued (CLOCK). A fire
+/// of a resident key thus only marks its entry, under the stripe's lock it holds anyway, and
+/// only the eviction of a few of the eldest keys past the policy's bounds, when the fire
+/// completes, moves any of them. The resident bound is split over the stripes, each bounding
+/// its own keys, so that it holds across the registry; it must not be less than the number of
+/// stripes, and fewer keys stay in memory when they are not spread evenly.
+/// <see cref="evict"/> applies the policy to stripes that are not fired.
+/// </remarks>
+/// <typeparam name="K">The type of the entity ids.</typeparam>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public class StateMachineRegistry<K, TState, TTrigger> {
+  final StateMachineDefinition<TState, TTrigger> _definition;
+  final TState _initialState;
+  final ConcurrentMap<K, TState> _states; // null if passivating
+  final ConcurrentMap<K, Resident> _residents; // null if not
+  final Stripe<TState, TTrigger>[] _stripes;
+  final int _mask;
+  final PassivationStore<K, TState> _store; // null: every key stays in memory
+  final EvictionPolicy _policy;
+  final boolean _idle; // keys may be evicted for idleness
+  // the stripe whose key the thread is firing, if any
+  final ThreadLocal<Stripe<TState, TTrigger>> _fired = new ThreadLocal<Stripe<TState, TTrigger>>();
+
+  // the most keys a fire passivates, keeping the cost of idle evictions off any single fire
+  static final int EVICTION_BATCH = 8;
+
+  /// <summary>
+  /// Create a registry with four lock stripes per available processor.
+  /// </summary>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  /// <param name="initialState">The state every key starts in.</param>
+  public StateMachineRegistry(@Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                              @Nonnull TState initialState) {
+    this(definition, initialState, 4 * Runtime.getRuntime().availableProcessors());
+  }
+
+  /// <summary>
+  /// Create a registry.
+  /// </summary>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  /// <param name="initialState">The state every key starts in.</param>
+  /// <param name="stripes">The number of lock stripes, rounded up to a power of two.</param>
+  public StateMachineRegistry(@Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                              @Nonnull TState initialState,
+                              int stripes) {
+    this(definition, initialState, stripes, null, null);
+  }
+
+  /// <summary>
+  /// Create a registry passivating the keys the policy evicts to the store.
+  /// </summary>
+  /// <param name="definition">The shared definition; frozen if it was not already.</param>
+  /// <param name="initialState">The state every key starts in.</param>
+  /// <param name="stripes">The number of lock stripes, rounded up to a power of two.</param>
+  /// <param name="store">Where passivated states are kept, or null to keep every key in memory.</param>
+  /// <param name="policy">Which keys to passivate; null if, and only if, the store is. Its
+  /// resident bound must not be less than the number of stripes.</param>
+  @SuppressWarnings("unchecked")
+  public StateMachineRegistry(@Nonnull StateMachineDefinition<TState, TTrigger> definition,
+                              @Nonnull TState initialState,
+                              int stripes,
+                              PassivationStore<K, TState> store,
+                              EvictionPolicy policy) {
+    if ((store == null) != (policy == null)) {
+      throw new IllegalArgumentException("policy");
+    }
+    if (stripes < 1 || stripes > 1 << 16) {
+      throw new IllegalArgumentException("stripes");
+    }
+    if (definition.freeze()._timed) {
+      // a stripe's machine cannot hold a timeout for each key
+      throw new IllegalArgumentException(StateMachineResources.RegistryTimeoutsUnsupported);
+    }
+    int size = 1;
+    while (size < stripes) {
+      size <<= 1;
+    }
+    int maxResident = policy == null ? Integer.MAX_VALUE : policy.getMaxResident();
+    if (maxResident < size) {
+      // a stripe bounding its keys to none would passivate every key it fires
+      throw new IllegalArgumentException(StateMachineResources.RegistryMaxResidentBelowStripes);
+    }
+    _definition = definition;
+    _initialState = initialState;
+    _states = store == null ? new ConcurrentHashMap<K, TState>(16, 0.75f, size) : null;
+    _residents = store != null ? new ConcurrentHashMap<K, Resident>(16, 0.75f, size) : null;
+    _stripes = new Stripe[size];
+    for (int i = 0; i < size; i++) {
+      // the remainder goes to the first stripes, so that the bounds add up to the policy's
+      int bound = maxResident == Integer.MAX_VALUE ? maxResident : maxResident / size + (i < maxResident % size ? 1 : 0);
+      _stripes[i] = new Stripe<TState, TTrigger>(new StateMachine<TState, TTrigger>(initialState, definition), store != null, bound);
+    }
+    _mask = size - 1;
+    _store = store;
+    _policy = policy;
+    _idle = policy != null && policy.getMaxIdleNanos() != Long.MAX_VALUE;
+  }
+
+  /// <summary>
+  /// A lock stripe and the machine in which the triggers of its keys are fired.
+  /// </summary>
+  static final class Stripe<TState, TTrigger> {
+    final StateMachine<TState, TTrigger> _cursor;
+
+    // the key whose state is in the cursor, while a fire is in progress, and the state it
+    // was loaded in, null if it had not been fired
+    Object _key;
+    Object _loaded;
+    boolean _firing;
+    boolean _rehydrated; // the loaded state was read from the store
+    Resident _entry; // the entry of the loaded key, if it was resident
+
+    // the entries of the stripe's resident keys, and of some removed since, in queue order;
+    // null if not passivating
+    final ArrayDeque<Resident> _queue;
+    int _resident;
+    final int _maxResident; // the stripe's share of the resident bound
+
+    Stripe(StateMachine<TState, TTrigger> cursor, boolean passivating, int maxResident) {
+      _cursor = cursor;
+      _queue = passivating ? new ArrayDeque<Resident>() : null;
+      _maxResident = maxResident;
+    }
+  }
+
+  /// <summary>
+  /// A key in memory, in a passivating registry.
+  /// </summary>
+  /// <remarks>
+  /// The state is written under the stripe's lock and read without it, by getState.
+  /// </remarks>
+  static final class Resident {
+    final Object _key;
+    volatile Object _state;
+    long _firedAt;
+    boolean _referenced; // fired since it was queued
+    boolean _dropped; // removed from the map, left in the queue
+
+    Resident(Object key, Object state) {
+      _key = key;
+      _state = state;
+    }
+  }
+
+  /// <summary>
+  /// The definition the keys run.
+  /// </summary>
+  public StateMachineDefinition<TState, TTrigger> getDefinition() {
+    return _definition;
+  }
+
+  /// <summary>
+  /// The number of lock stripes.
+  /// </summary>
+  public int getStripes() {
+    return _stripes.length;
+  }
+
+  /// <summary>
+  /// The number of keys fired and not removed since, passivated ones included.
+  /// </summary>
+  public int size() {
+    if (_store == null) {
+      return _states.size();
+    }
+    return (int) Math.min(_residents.size() + _store.size(), Integer.MAX_VALUE);
+  }
+
+  /// <summary>
+  /// The number of keys held in memory.
+  /// </summary>
+  public int getResident() {
+    return _store == null ? _states.size() : _residents.size();
+  }
+
+  /// <summary>
+  /// True if the key has been fired and not removed since.
+  /// </summary>
+  public boolean contains(@Nonnull K key) {
+    return lookup(key) != null;
+  }
+
+  /// <summary>
+  /// The current state of the key: the initial state if it has not been fired, and, from
+  /// the actions of a fire for the key, the state reached so far.
+  /// </summary>
+  public TState getState(@Nonnull K key) {
+    Stripe<TState, TTrigger> stripe = StripeOf(key);
+    if (Thread.holdsLock(stripe) && stripe._firing && stripe._key.equals(key)) {
+      return stripe._cursor.getState();
+    }
+    TState state = lookup(key);
+    return state != null ? state : _initialState;
+  }
+
+  // the state of a key fired, in memory or passivated; null if it was not fired
+  @SuppressWarnings("unchecked")
+  TState lookup(K key) {
+    if (_store == null) {
+      return _states.get(key);
+    }
+    Resident resident = _residents.get(key);
+    if (resident != null) {
+      return (TState) resident._state;
+    }
+    TState state = _store.read(key);
+    if (state != null) {
+      return state;
+    }
+    // a fire may have rehydrated the key in between, putting it back before removing it
+    // from the store
+    resident = _residents.get(key);
+    return resident != null ? (TState) resident._state : null;
+  }
+
+  /// <summary>
+  /// Put the key in the state, without running any action.
+  /// </summary>
+  public void setState(@Nonnull K key, @Nonnull TState state) {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      if (stripe._firing && stripe._key.equals(key)) {
+        stripe._cursor.setState(state);
+      } else if (_store == null) {
+        _states.put(key, state);
+      } else {
+        Resident resident = _residents.get(key);
+        if (resident != null) {
+          resident._state = state;
+          touch(stripe, resident);
+        } else {
+          admit(stripe, key, state, true);
+        }
+      }
+    }
+  }
+
+  /// <summary>
+  /// Forget the key, which starts in the initial state again if it is fired later.
+  /// </summary>
+  /// <returns>The state of the key, or null if it had not been fired.</returns>
+  @SuppressWarnings("unchecked")
+  public TState remove(@Nonnull K key) {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      if (stripe._firing && stripe._key.equals(key)) {
+        throw new IllegalStateException(StateMachineResources.RegistryFireInProgress);
+      }
+      if (_store == null) {
+        return _states.remove(key);
+      }
+      Resident resident = _residents.remove(key);
+      if (resident != null) {
+        resident._dropped = true;
+        stripe._resident--;
+        // dropped entries are otherwise only polled once they reach the head
+        if (stripe._queue.size() > 2 * stripe._resident + 16) {
+          for (int i = stripe._queue.size(); i > 0; i--) {
+            Resident queued = stripe._queue.pollFirst();
+            if (!queued._dropped) {
+              stripe._queue.addLast(queued);
+            }
+          }
+        }
+        return (TState) resident._state;
+      }
+      TState state = _store.read(key);
+      if (state != null) {
+        _store.remove(key);
+      }
+      return state;
+    }
+  }
+
+  /// <summary>
+  /// Passivate the keys the policy evicts, in every stripe not being fired. Fires only evict
+  /// keys of their own stripe, so this is to be called periodically when idle keys are to be
+  /// passivated regardless of further fires.
+  /// </summary>
+  /// <returns>The number of keys passivated.</returns>
+  public int evict() {
+    ensureNotFiring();
+    int evicted = 0;
+    if (_store != null) {
+      for (Stripe<TState, TTrigger> stripe : _stripes) {
+        synchronized (stripe) {
+          if (!stripe._firing) {
+            evicted += evict(stripe, stripe._maxResident, Integer.MAX_VALUE);
+          }
+        }
+      }
+    }
+    return evicted;
+  }
+
+  /// <summary>
+  /// Passivate every key in memory not being fired, typically before closing the store.
+  /// </summary>
+  /// <returns>The number of keys passivated.</returns>
+  public int passivateAll() {
+    ensureNotFiring();
+    int evicted = 0;
+    if (_store != null) {
+      for (Stripe<TState, TTrigger> stripe : _stripes) {
+        synchronized (stripe) {
+          if (!stripe._firing) {
+            evicted += evict(stripe, 0, Integer.MAX_VALUE);
+          }
+        }
+      }
+    }
+    return evicted;
+  }
+
+  /// <summary>
+  /// The triggers currently permitted for the key.
+  /// </summary>
+  public List<TTrigger> getPermittedTriggers(@Nonnull K key) {
+    return _definition.GetRepresentation(getState(key)).getPermittedTriggers();
+  }
+
+  /// <summary>
+  /// Override the definition's action for triggers the keys' states do not handle.
+  /// </summary>
+  public void OnUnhandledTrigger(Action2<TState, TTrigger> unhandledTriggerAction) throws UnhandledTriggerActionException {
+    ensureNotFiring();
+    for (Stripe<TState, TTrigger> stripe : _stripes) {
+      synchronized (stripe) {
+        stripe._cursor.OnUnhandledTrigger(unhandledTriggerAction);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger, as
+  /// <see cref="StateMachine.Fire"/> does.
+  /// </summary>
+  /// <param name="args">The arguments of the trigger, validated against its configured parameters.</param>
+  public void Fire(@Nonnull K key, TTrigger trigger, Object... args) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.publicFire(trigger, args);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger.
+  /// </summary>
+  public <TArg0> void Fire(@Nonnull K key,
+                           @Nonnull TriggerWithParameters1<TArg0, TState, TTrigger> trigger,
+                           TArg0 arg0) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.Fire(trigger, arg0);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger.
+  /// </summary>
+  public <TArg0, TArg1> void Fire(@Nonnull K key,
+                                  @Nonnull TriggerWithParameters2<TArg0, TArg1, TState, TTrigger> trigger,
+                                  TArg0 arg0,
+                                  TArg1 arg1) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.Fire(trigger, arg0, arg1);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger.
+  /// </summary>
+  public <TArg0, TArg1, TArg2> void Fire(@Nonnull K key,
+                                         @Nonnull TriggerWithParameters3<TArg0, TArg1, TArg2, TState, TTrigger> trigger,
+                                         TArg0 arg0,
+                                         TArg1 arg1,
+                                         TArg2 arg2) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.Fire(trigger, arg0, arg1, arg2);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger, without
+  /// boxing its argument.
+  /// </summary>
+  public void Fire(@Nonnull K key, @Nonnull TriggerWithIntParameter<TState, TTrigger> trigger, int arg0) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.Fire(trigger, arg0);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger, without
+  /// boxing its argument.
+  /// </summary>
+  public void Fire(@Nonnull K key, @Nonnull TriggerWithLongParameter<TState, TTrigger> trigger, long arg0) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.Fire(trigger, arg0);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  /// <summary>
+  /// Transition the key from its current state via the specified trigger, without
+  /// boxing its argument.
+  /// </summary>
+  public void Fire(@Nonnull K key, @Nonnull TriggerWithDoubleParameter<TState, TTrigger> trigger, double arg0) throws StateMachineConfigurationException {
+    Stripe<TState, TTrigger> stripe = StripeToLock(key);
+    synchronized (stripe) {
+      boolean outer = load(stripe, key);
+      try {
+        stripe._cursor.Fire(trigger, arg0);
+      } finally {
+        store(stripe, outer);
+      }
+    }
+  }
+
+  Stripe<TState, TTrigger> StripeOf(K key) {
+    int h = key.hashCode();
+    return _stripes[(h ^ (h >>> 16)) & _mask];
+  }
+
+  // the stripe of the key, for the thread to lock; throws if the thread is firing another
+  // key, as it would then hold two stripes, which another thread may lock in the opposite
+  // order, whether they are the same stripe or not
+  Stripe<TState, TTrigger> StripeToLock(K key) {
+    Stripe<TState, TTrigger> stripe = StripeOf(key);
+    Stripe<TState, TTrigger> fired = _fired.get();
+    if (fired != null && (fired != stripe || !stripe._key.equals(key))) {
+      throw new IllegalStateException(StateMachineResources.RegistryFireInProgress);
+    }
+    return stripe;
+  }
+
+  void ensureNotFiring() {
+    if (_fired.get() != null) {
+      throw new IllegalStateException(StateMachineResources.RegistryFireInProgress);
+    }
+  }
+
+  // called with the stripe locked; returns false for a nested fire of the key already loaded
+  @SuppressWarnings("unchecked")
+  boolean load(Stripe<TState, TTrigger> stripe, K key) {
+    if (stripe._firing) {
+      // a fire of another key was rejected by StripeToLock
+      return false;
+    }
+    TState state;
+    Resident resident = null;
+    boolean rehydrated = false;
+    if (_store == null) {
+      state = _states.get(key);
+    } else {
+      resident = _residents.get(key);
+      if (resident != null) {
+        state = (TState) resident._state;
+      } else {
+        // left in the store until the key is back in the map, for getState
+        state = _store.read(key);
+        rehydrated = state != null;
+      }
+    }
+    stripe._cursor.setState(state != null ? state : _initialState);
+    stripe._key = key;
+    stripe._loaded = state;
+    stripe._rehydrated = rehydrated;
+    stripe._entry = resident;
+    stripe._firing = true;
+    _fired.set(stripe);
+    return true;
+  }
+
+  // called with the stripe locked
+  @SuppressWarnings("unchecked")
+  void store(Stripe<TState, TTrigger> stripe, boolean outer) {
+    if (outer) {
+      stripe._firing = false;
+      _fired.set(null);
+      K key = (K) stripe._key;
+      TState state = stripe._cursor.getState();
+      Object loaded = stripe._loaded;
+      Resident resident = stripe._entry;
+      boolean rehydrated = stripe._rehydrated;
+      stripe._key = null;
+      stripe._loaded = null;
+      stripe._entry = null;
+      stripe._rehydrated = false;
+      if (_store == null) {
+        // most fires of a key already in the map leave it where it was
+        if (state != loaded) {
+          _states.put(key, state);
+        }
+      } else if (resident != null) {
+        if (state != loaded) {
+          resident._state = state;
+        }
+        resident._referenced = true;
+        touch(stripe, resident);
+      } else {
+        admit(stripe, key, state, rehydrated);
+      }
+    }
+  }
+
+  // called with the stripe locked: puts a key not in memory in the map and the queue, then
+  // removes it from the store, so that getState always finds it
+  void admit(Stripe<TState, TTrigger> stripe, K key, TState state, boolean passivated) {
+    Resident resident = new Resident(key, state);
+    _residents.put(key, resident);
+    stripe._queue.addLast(resident);
+    stripe._resident++;
+    if (passivated) {
+      _store.remove(key);
+    }
+    touch(stripe, resident);
+  }
+
+  // called with the stripe locked, once the key's entry is up to date
+  void touch(Stripe<TState, TTrigger> stripe, Resident resident) {
+    if (_idle) {
+      resident._firedAt = _policy.getClock().nanoTime();
+    }
+    // the entry of the key being fired, if any, is not up to date yet
+    if (!stripe._firing) {
+      evict(stripe, stripe._maxResident, EVICTION_BATCH);
+    }
+  }
+
+  // called with the stripe locked and not firing; passivates up to the limit of the eldest
+  // keys that are idle, or not fired since they were queued while the stripe is over the
+  // resident bound, queueing the others again
+  @SuppressWarnings("unchecked")
+  int evict(Stripe<TState, TTrigger> stripe, int maxResident, int limit) {
+    ArrayDeque<Resident> queue = stripe._queue;
+    long now = _idle ? _policy.getClock().nanoTime() : 0;
+    int evicted = 0;
+    // second chances given while only looking for idle keys
+    int chances = limit;
+    while (evicted < limit && !queue.isEmpty()) {
+      Resident resident = queue.peekFirst();
+      if (resident._dropped) {
+        queue.pollFirst();
+        continue;
+      }
+      boolean over = stripe._resident > maxResident;
+      if (!over && !_idle) {
+        break;
+      }
+      if (_idle && now - resident._firedAt >= _policy.getMaxIdleNanos() || over && !resident._referenced) {
+        K key = (K) resident._key;
+        // written before it leaves the map, so that getState always finds it
+        _store.write(key, (TState) resident._state);
+        _residents.remove(key);
+        queue.pollFirst();
+        stripe._resident--;
+        evicted++;
+        continue;
+      }
+      if (!resident._referenced || !over && chances-- == 0) {
+        break;
+      }
+      resident._referenced = false;
+      queue.addLast(queue.pollFirst());
+    }
+    return evicted;
+  }
+}
@@ -4,7 +4,8 @@ import java.util.*;
 
 import ifesdjeen.stateless4j.delegates.Action1;
 import ifesdjeen.stateless4j.delegates.Action2;
-import ifesdjeen.stateless4j.resources.StateRepresentationResources;
+import ifesdjeen.stateless4j.metrics.StateMetrics;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
 import ifesdjeen.stateless4j.transitions.Transition;
 import ifesdjeen.stateless4j.triggers.TriggerBehaviour;
 
@@ -15,77 +16,144 @@ public class StateRepresentation<TState, TTrigger> {
 
   final Map<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> _triggerBehaviours = new HashMap<>();
 
+  // run on entry whatever the trigger
   final List<Action2<Transition<TState, TTrigger>, Object[]>> _entryActions = new ArrayList<>();
+  // for each trigger with actions of its own: every action run on entry through that
+  // trigger, in registration order, those in _entryActions included
+  final Map<TTrigger, List<Action2<Transition<TState, TTrigger>, Object[]>>> _entryActionsByTrigger = new HashMap<>();
   final List<Action1<Transition<TState, TTrigger>>> _exitActions = new ArrayList<>();
+  List<StateTimeout<TState, TTrigger>> _timeouts; // null unless declared
 
   StateRepresentation<TState, TTrigger> _superstate; // null
 
   final List<StateRepresentation<TState, TTrigger>> _substates = new ArrayList<>();
 
+  boolean _frozen;
+
+  // computed on freeze, for Includes and IsIncludedIn: bitsets indexed by the state ids
+  // of the owning definition, both containing this state's own id
+  Map<TState, Integer> _ids;
+  int _id = -1;
+  long[] _ancestors;
+  long[] _descendants;
+
+  // filled in lazily once frozen, indexed by destination id
+  TransitionPath<TState, TTrigger>[] _paths;
+
+  // computed on freeze, for getPermittedTriggers
+  List<TTrigger> _unguardedPermittedTriggers;
+  List<TTrigger> _guardedTriggers;
+  List<List<TriggerBehaviour<TState, TTrigger>>> _guardedBehaviours;
+
+  // set on freeze when the definition collects metrics
+  StateMetrics<TState, TTrigger> _metrics;
+
   public StateRepresentation(TState state) {
     _state = state;
   }
 
   public Boolean CanHandle(TTrigger trigger) {
-    try {
-      TryFindHandler(trigger);
-      return true;
-    } catch (Exception e) {
-    }
-    return false;
+    return TryFindHandler(trigger) != null;
   }
 
+  /// <summary>
+  /// Find the behaviour handling the trigger in this state or in one of its superstates.
+  /// </summary>
+  /// <returns>The handler, or null if the trigger is not handled.</returns>
   public TriggerBehaviour<TState, TTrigger> TryFindHandler(TTrigger trigger) {
-    try {
-      return TryFindLocalHandler(trigger);
-    } catch (Exception e) {
-      return getSuperstate().TryFindHandler(trigger);
+    StateRepresentation<TState, TTrigger> representation = this;
+    while (representation != null) {
+      TriggerBehaviour<TState, TTrigger> handler = representation.TryFindLocalHandler(trigger);
+      if (handler != null) {
+        return handler;
+      }
+      representation = representation._superstate;
     }
+    return null;
   }
 
-  TriggerBehaviour<TState, TTrigger> TryFindLocalHandler(TTrigger trigger/*, out TriggerBehaviour handler*/) throws Exception {
-    List<TriggerBehaviour<TState, TTrigger>> possible;
-    if (!_triggerBehaviours.containsKey(trigger)) {
-      throw new Exception();
+  /// <summary>
+  /// Find the behaviour handling the trigger in this state only.
+  /// </summary>
+  /// <returns>The single behaviour whose guard is met, or null if there is none,
+  /// or more than one.</returns>
+  TriggerBehaviour<TState, TTrigger> TryFindLocalHandler(TTrigger trigger) {
+    List<TriggerBehaviour<TState, TTrigger>> possible = _triggerBehaviours.get(trigger);
+    if (possible == null) {
+      return null;
     }
-    possible = _triggerBehaviours.get(trigger);
 
-    List<TriggerBehaviour<TState, TTrigger>> actual = new ArrayList<>();
-    for (TriggerBehaviour<TState, TTrigger> triggerBehaviour : possible) {
+    TriggerBehaviour<TState, TTrigger> handler = null;
+    for (int i = 0; i < possible.size(); i++) {
+      TriggerBehaviour<TState, TTrigger> triggerBehaviour = possible.get(i);
       if (triggerBehaviour.isGuardConditionMet()) {
-        actual.add(triggerBehaviour);
+        if (handler != null) {
+          // MultipleTransitionsPermitted: ambiguous locally, defer to the superstate
+          return null;
+        }
+        handler = triggerBehaviour;
       }
     }
+    return handler;
+  }
 
-    if (actual.size() > 1)
-      throw new Exception(String.format(StateRepresentationResources.MultipleTransitionsPermitted,
-                                        trigger, _state));
-
-    TriggerBehaviour<TState, TTrigger> handler = actual.get(0);
-    if (handler == null) {
-      throw new Exception();
+  /// <summary>
+  /// True if this state or one of its superstates has a behaviour for the trigger,
+  /// whether or not its guard is met.
+  /// </summary>
+  boolean HasBehaviourFor(TTrigger trigger) {
+    for (StateRepresentation<TState, TTrigger> representation = this; representation != null; representation = representation._superstate) {
+      if (representation._triggerBehaviours.containsKey(trigger)) {
+        return true;
+      }
     }
-    return handler;
+    return false;
   }
 
   public void AddEntryAction(final TTrigger trigger,
                              @Nonnull final Action2<Transition<TState, TTrigger>, Object[]> action) {
-    _entryActions.add(new Action2<Transition<TState, TTrigger>, Object[]>() {
-      public void doIt(Transition<TState, TTrigger> t, Object[] args) {
-        if (t.getTrigger().equals(trigger))
-          action.doIt(t, args);
-      }
-    });
+    enforceNotFrozen();
+    List<Action2<Transition<TState, TTrigger>, Object[]>> actions = _entryActionsByTrigger.get(trigger);
+    if (actions == null) {
+      // the actions registered so far for any trigger run first
+      actions = new ArrayList<>(_entryActions);
+      _entryActionsByTrigger.put(trigger, actions);
+    }
+    actions.add(action);
   }
 
   public void AddEntryAction(@Nonnull Action2<Transition<TState, TTrigger>, Object[]> action) {
+    enforceNotFrozen();
     _entryActions.add(action);
+    for (List<Action2<Transition<TState, TTrigger>, Object[]>> actions : _entryActionsByTrigger.values()) {
+      actions.add(action);
+    }
+  }
+
+  /// <summary>
+  /// The actions run on entering this state through the trigger, in registration order.
+  /// </summary>
+  List<Action2<Transition<TState, TTrigger>, Object[]>> EntryActionsFor(TTrigger trigger) {
+    if (_entryActionsByTrigger.isEmpty()) {
+      return _entryActions;
+    }
+    List<Action2<Transition<TState, TTrigger>, Object[]>> actions = _entryActionsByTrigger.get(trigger);
+    return actions != null ? actions : _entryActions;
   }
 
   public void AddExitAction(@Nonnull Action1<Transition<TState, TTrigger>> action) {
+    enforceNotFrozen();
     _exitActions.add(action);
   }
 
+  void AddTimeout(@Nonnull StateTimeout<TState, TTrigger> timeout) {
+    enforceNotFrozen();
+    if (_timeouts == null) {
+      _timeouts = new ArrayList<>();
+    }
+    _timeouts.add(timeout);
+  }
+
   public void Enter(@Nonnull Transition<TState, TTrigger> transition, Object... entryArgs) {
     if (transition.isReentry()) {
       ExecuteEntryActions(transition, entryArgs);
@@ -109,16 +177,18 @@ public class StateRepresentation<TState, TTrigger> {
 
   void ExecuteEntryActions(@Nonnull Transition<TState, TTrigger> transition,
                            @Nonnull Object[] entryArgs) {
-    for (Action2<Transition<TState, TTrigger>, Object[]> action : _entryActions)
-      action.doIt(transition, entryArgs);
+    List<Action2<Transition<TState, TTrigger>, Object[]>> actions = EntryActionsFor(transition.getTrigger());
+    for (int i = 0; i < actions.size(); i++)
+      actions.get(i).doIt(transition, entryArgs);
   }
 
   void ExecuteExitActions(@Nonnull Transition<TState, TTrigger> transition) {
-    for (Action1<Transition<TState, TTrigger>> action : _exitActions)
-      action.doIt(transition);
+    for (int i = 0; i < _exitActions.size(); i++)
+      _exitActions.get(i).doIt(transition);
   }
 
   public void AddTriggerBehaviour(TriggerBehaviour<TState, TTrigger> triggerBehaviour) {
+    enforceNotFrozen();
     List<TriggerBehaviour<TState, TTrigger>> allowed;
     if (!_triggerBehaviours.containsKey(triggerBehaviour.getTrigger())) {
       allowed = new ArrayList<TriggerBehaviour<TState, TTrigger>>();
@@ -133,6 +203,7 @@ public class StateRepresentation<TState, TTrigger> {
   }
 
   public void setSuperstate(StateRepresentation<TState, TTrigger> value) {
+    enforceNotFrozen();
     _superstate = value;
   }
 
@@ -141,44 +212,168 @@ public class StateRepresentation<TState, TTrigger> {
   }
 
   public void AddSubstate(@Nonnull StateRepresentation<TState, TTrigger> substate) {
+    enforceNotFrozen();
     _substates.add(substate);
   }
 
+  /// <summary>
+  /// Called by the owning definition when it is frozen; the representation
+  /// can no longer be modified afterwards.
+  /// </summary>
+  /// <param name="ids">A distinct id, from 0, for each state of the definition.</param>
+  void freeze(Map<TState, Integer> ids) {
+    _frozen = true;
+
+    _ids = ids;
+    _id = ids.get(_state);
+    _ancestors = new long[(ids.size() + 63) >>> 6];
+    for (StateRepresentation<TState, TTrigger> representation = this; representation != null; representation = representation._superstate) {
+      set(_ancestors, ids.get(representation._state));
+    }
+    _descendants = new long[_ancestors.length];
+    AddDescendants(this, ids);
+
+    // triggers with an unguarded behaviour here or in a superstate are always permitted;
+    // the guards of the others are evaluated on each call, as they may depend on anything
+    Set<TTrigger> unguarded = new LinkedHashSet<TTrigger>();
+    Map<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> guarded = new LinkedHashMap<TTrigger, List<TriggerBehaviour<TState, TTrigger>>>();
+    for (StateRepresentation<TState, TTrigger> representation = this; representation != null; representation = representation._superstate) {
+      for (Map.Entry<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> entry : representation._triggerBehaviours.entrySet()) {
+        for (TriggerBehaviour<TState, TTrigger> behaviour : entry.getValue()) {
+          if (behaviour.getGuard() == StateConfiguration.NoGuard) {
+            unguarded.add(entry.getKey());
+          } else {
+            List<TriggerBehaviour<TState, TTrigger>> behaviours = guarded.get(entry.getKey());
+            if (behaviours == null) {
+              behaviours = new ArrayList<TriggerBehaviour<TState, TTrigger>>();
+              guarded.put(entry.getKey(), behaviours);
+            }
+            behaviours.add(behaviour);
+          }
+        }
+      }
+    }
+    guarded.keySet().removeAll(unguarded);
+
+    _unguardedPermittedTriggers = Collections.unmodifiableList(new ArrayList<TTrigger>(unguarded));
+    _guardedTriggers = new ArrayList<TTrigger>(guarded.keySet());
+    _guardedBehaviours = new ArrayList<List<TriggerBehaviour<TState, TTrigger>>>(guarded.values());
+  }
+
+  /// <summary>
+  /// The flattened exit and entry actions of a transition from this state to the destination.
+  /// </summary>
+  /// <returns>The path, built on first use, or null unless both representations belong to
+  /// the same frozen definition.</returns>
+  @SuppressWarnings("unchecked")
+  TransitionPath<TState, TTrigger> PathTo(StateRepresentation<TState, TTrigger> destination) {
+    if (_ids == null || destination._ids != _ids) {
+      return null;
+    }
+    // racing threads may each build the same immutable path; any of them will do
+    TransitionPath<TState, TTrigger>[] paths = _paths;
+    if (paths == null) {
+      paths = new TransitionPath[_ids.size()];
+      _paths = paths;
+    }
+    TransitionPath<TState, TTrigger> path = paths[destination._id];
+    if (path == null) {
+      path = new TransitionPath<TState, TTrigger>(this, destination);
+      paths[destination._id] = path;
+    }
+    return path;
+  }
+
+  void AddDescendants(StateRepresentation<TState, TTrigger> representation, Map<TState, Integer> ids) {
+    set(_descendants, ids.get(representation._state));
+    for (StateRepresentation<TState, TTrigger> substate : representation._substates) {
+      AddDescendants(substate, ids);
+    }
+  }
+
+  static void set(long[] bits, int id) {
+    bits[id >>> 6] |= 1L << id;
+  }
+
+  static boolean get(long[] bits, Integer id) {
+    return id != null && (bits[id >>> 6] & (1L << id)) != 0;
+  }
+
+  void enforceNotFrozen() {
+    if (_frozen) {
+      throw new IllegalStateException(StateMachineResources.DefinitionFrozen);
+    }
+  }
+
+  /// <summary>
+  /// True if the state is this state or one of its substates, at any depth.
+  /// </summary>
   public Boolean Includes(TState state) {
-    Boolean isIncluded = false;
-    for (StateRepresentation<TState, TTrigger> s : _substates) {
-      if (s.Includes(state)) {
-        isIncluded = true;
+    if (_descendants != null) {
+      return get(_descendants, _ids.get(state));
+    }
+    if (_state.equals(state)) {
+      return true;
+    }
+    for (int i = 0; i < _substates.size(); i++) {
+      if (_substates.get(i).Includes(state)) {
+        return true;
       }
     }
-    return _state.equals(state) || isIncluded;
+    return false;
   }
 
+  /// <summary>
+  /// True if the state is this state or one of its superstates.
+  /// </summary>
   public Boolean IsIncludedIn(TState state) {
+    if (_ancestors != null) {
+      return get(_ancestors, _ids.get(state));
+    }
     return _state.equals(state) ||
                    (_superstate != null && _superstate.IsIncludedIn(state));
   }
 
-  @SuppressWarnings("unchecked")
+  /// <summary>
+  /// The triggers permitted in this state, superstates included.
+  /// </summary>
+  /// <returns>The permitted triggers. Once frozen, the list is unmodifiable and,
+  /// for a state without guarded triggers, the same instance on every call.</returns>
   public List<TTrigger> getPermittedTriggers() {
-    Set result = new HashSet<TTrigger>();
+    if (!_frozen) {
+      return new ArrayList<TTrigger>(CollectPermittedTriggers(new LinkedHashSet<TTrigger>()));
+    }
+    if (_guardedTriggers.isEmpty()) {
+      return _unguardedPermittedTriggers;
+    }
 
-    for (TTrigger t : _triggerBehaviours.keySet()) {
-      Boolean isOk = false;
-      for (TriggerBehaviour<TState, TTrigger> v : _triggerBehaviours.get(t)) {
-        if (v.isGuardConditionMet()) {
-          isOk = true;
+    List<TTrigger> result = new ArrayList<TTrigger>(_unguardedPermittedTriggers.size() + _guardedTriggers.size());
+    result.addAll(_unguardedPermittedTriggers);
+    for (int i = 0; i < _guardedTriggers.size(); i++) {
+      List<TriggerBehaviour<TState, TTrigger>> behaviours = _guardedBehaviours.get(i);
+      for (int j = 0; j < behaviours.size(); j++) {
+        if (behaviours.get(j).isGuardConditionMet()) {
+          result.add(_guardedTriggers.get(i));
+          break;
         }
       }
-      if (isOk) {
-        result.add(t);
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  Set<TTrigger> CollectPermittedTriggers(Set<TTrigger> result) {
+    for (Map.Entry<TTrigger, List<TriggerBehaviour<TState, TTrigger>>> entry : _triggerBehaviours.entrySet()) {
+      for (TriggerBehaviour<TState, TTrigger> behaviour : entry.getValue()) {
+        if (behaviour.isGuardConditionMet()) {
+          result.add(entry.getKey());
+          break;
+        }
       }
     }
 
     if (getSuperstate() != null) {
-      result.addAll(getSuperstate().getPermittedTriggers());
+      getSuperstate().CollectPermittedTriggers(result);
     }
-
-    return new ArrayList<TTrigger>(result);
+    return result;
   }
 }
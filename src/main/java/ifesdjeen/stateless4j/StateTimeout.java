@@ -0,0 +1,15 @@
+package ifesdjeen.stateless4j;
+
+/// <summary>
+/// A trigger fired when a machine stays in a state for a given time, declared through
+/// <see cref="StateConfiguration.FireAfter"/>.
+/// </summary>
+final class StateTimeout<TState, TTrigger> {
+  final long _delayNanos;
+  final TTrigger _trigger;
+
+  StateTimeout(long delayNanos, TTrigger trigger) {
+    _delayNanos = delayNanos;
+    _trigger = trigger;
+  }
+}
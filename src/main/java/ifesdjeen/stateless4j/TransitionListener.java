@@ -0,0 +1,27 @@
+package ifesdjeen.stateless4j;
+
+import ifesdjeen.stateless4j.transitions.Transition;
+
+/// <summary>
+/// Observes the transitions and unhandled triggers of every machine sharing a definition.
+/// </summary>
+/// <remarks>
+/// Listeners are called on the thread that fired the trigger, after the entry actions have
+/// run, in the order they were added. Exceptions they throw propagate to the caller of Fire.
+/// The transition passed may be reused for later transitions between the same states, so
+/// copy what is needed rather than keeping it.
+/// </remarks>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public interface TransitionListener<TState, TTrigger> {
+  /// <summary>
+  /// A machine completed a transition.
+  /// </summary>
+  void onTransitioned(Transition<TState, TTrigger> transition);
+
+  /// <summary>
+  /// A trigger was fired in a state that does not handle it, before the unhandled trigger
+  /// action runs.
+  /// </summary>
+  void onUnhandled(TState state, TTrigger trigger);
+}
@@ -0,0 +1,127 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.transitions.Transition;
+
+/// <summary>
+/// The exit and entry actions run by a transition between two states of a frozen
+/// definition, flattened in execution order.
+/// </summary>
+/// <remarks>
+/// Equivalent to <see cref="StateRepresentation.Exit"/> on the source followed by
+/// <see cref="StateRepresentation.Enter"/> on the destination, without walking the
+/// hierarchy. Immutable, so paths can be shared by all machines of a definition.
+/// </remarks>
+final class TransitionPath<TState, TTrigger> {
+  final Action1<Transition<TState, TTrigger>>[] _exitActions;
+  final Action2<Transition<TState, TTrigger>, Object[]>[] _entryActions;
+  // for the triggers with entry actions of their own along the path; null if there are none
+  final Map<TTrigger, Action2<Transition<TState, TTrigger>, Object[]>[]> _entryActionsByTrigger;
+
+  // the last transition along this path; transitions are immutable, so a racing
+  // thread seeing a stale or missing one at worst allocates another
+  Transition<TState, TTrigger> _transition;
+
+  @SuppressWarnings("unchecked")
+  TransitionPath(StateRepresentation<TState, TTrigger> source, StateRepresentation<TState, TTrigger> destination) {
+    List<Action1<Transition<TState, TTrigger>>> exitActions = new ArrayList<Action1<Transition<TState, TTrigger>>>();
+    List<StateRepresentation<TState, TTrigger>> entered = new ArrayList<StateRepresentation<TState, TTrigger>>();
+
+    if (source == destination) {
+      exitActions.addAll(source._exitActions);
+      entered.add(destination);
+    } else {
+      for (StateRepresentation<TState, TTrigger> exited = source;
+           exited != null && !exited.Includes(destination.getUnderlyingState());
+           exited = exited._superstate) {
+        exitActions.addAll(exited._exitActions);
+      }
+      for (StateRepresentation<TState, TTrigger> representation = destination;
+           representation != null && !representation.Includes(source.getUnderlyingState());
+           representation = representation._superstate) {
+        entered.add(representation);
+      }
+    }
+
+    _exitActions = exitActions.toArray(new Action1[exitActions.size()]);
+    _entryActions = EntryActions(entered, null);
+
+    Map<TTrigger, Action2<Transition<TState, TTrigger>, Object[]>[]> byTrigger = new HashMap<TTrigger, Action2<Transition<TState, TTrigger>, Object[]>[]>();
+    for (StateRepresentation<TState, TTrigger> representation : entered) {
+      for (TTrigger trigger : representation._entryActionsByTrigger.keySet()) {
+        if (!byTrigger.containsKey(trigger)) {
+          byTrigger.put(trigger, EntryActions(entered, trigger));
+        }
+      }
+    }
+    _entryActionsByTrigger = byTrigger.isEmpty() ? null : byTrigger;
+  }
+
+  /// <param name="trigger">The trigger, or null for the actions run whatever the trigger.</param>
+  @SuppressWarnings("unchecked")
+  static <TState, TTrigger> Action2<Transition<TState, TTrigger>, Object[]>[] EntryActions(List<StateRepresentation<TState, TTrigger>> entered,
+                                                                                         TTrigger trigger) {
+    // superstates are entered before their substates
+    List<Action2<Transition<TState, TTrigger>, Object[]>> entryActions = new ArrayList<Action2<Transition<TState, TTrigger>, Object[]>>();
+    for (int i = entered.size() - 1; i >= 0; i--) {
+      StateRepresentation<TState, TTrigger> representation = entered.get(i);
+      entryActions.addAll(trigger == null ? representation._entryActions : representation.EntryActionsFor(trigger));
+    }
+    return entryActions.toArray(new Action2[entryActions.size()]);
+  }
+
+  Action2<Transition<TState, TTrigger>, Object[]>[] EntryActionsFor(TTrigger trigger) {
+    if (_entryActionsByTrigger == null) {
+      return _entryActions;
+    }
+    Action2<Transition<TState, TTrigger>, Object[]>[] actions = _entryActionsByTrigger.get(trigger);
+    return actions != null ? actions : _entryActions;
+  }
+
+  /// <summary>
+  /// A transition along this path, reusing the previous one when the trigger is the same.
+  /// </summary>
+  Transition<TState, TTrigger> TransitionFor(TState source, TState destination, TTrigger trigger) {
+    Transition<TState, TTrigger> transition = _transition;
+    if (transition == null || !transition.getTrigger().equals(trigger)) {
+      transition = new Transition<TState, TTrigger>(source, destination, trigger);
+      _transition = transition;
+    }
+    return transition;
+  }
+
+  void Exit(Transition<TState, TTrigger> transition) {
+    for (int i = 0; i < _exitActions.length; i++) {
+      _exitActions[i].doIt(transition);
+    }
+  }
+
+  void Enter(Transition<TState, TTrigger> transition, Object[] entryArgs) {
+    Action2<Transition<TState, TTrigger>, Object[]>[] actions = EntryActionsFor(transition.getTrigger());
+    for (int i = 0; i < actions.length; i++) {
+      actions[i].doIt(transition, entryArgs);
+    }
+  }
+
+  /// <summary>
+  /// Run the entry actions for a trigger with a primitive argument, carried by the bits.
+  /// Actions not registered for primitive arguments receive no arguments.
+  /// </summary>
+  void Enter(Transition<TState, TTrigger> transition, long bits) {
+    Action2<Transition<TState, TTrigger>, Object[]>[] actions = EntryActionsFor(transition.getTrigger());
+    for (int i = 0; i < actions.length; i++) {
+      Action2<Transition<TState, TTrigger>, Object[]> action = actions[i];
+      if (action instanceof PrimitiveEntryAction) {
+        ((PrimitiveEntryAction<TState, TTrigger>) action).doIt(transition, bits);
+      } else {
+        action.doIt(transition, StateMachine.NoArguments);
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package ifesdjeen.stateless4j;
+
+/// <summary>
+/// Ring buffer of pending (trigger, arguments) pairs for <see cref="FiringMode.Queued"/>
+/// machines. Grows by doubling only when full; never shrinks.
+/// </summary>
+final class TriggerQueue<TTrigger> {
+  Object[] _triggers;
+  Object[][] _args;
+  int _head;
+  int _size;
+
+  TriggerQueue() {
+    _triggers = new Object[4];
+    _args = new Object[4][];
+  }
+
+  boolean isEmpty() {
+    return _size == 0;
+  }
+
+  void offer(TTrigger trigger, Object[] args) {
+    if (_size == _triggers.length) {
+      grow();
+    }
+    int tail = (_head + _size) & (_triggers.length - 1);
+    _triggers[tail] = trigger;
+    _args[tail] = args;
+    _size++;
+  }
+
+  /// <summary>
+  /// The trigger at the head of the queue; call <see cref="pollArgs"/> next to remove it.
+  /// </summary>
+  @SuppressWarnings("unchecked")
+  TTrigger peekTrigger() {
+    return (TTrigger) _triggers[_head];
+  }
+
+  Object[] pollArgs() {
+    Object[] args = _args[_head];
+    _triggers[_head] = null;
+    _args[_head] = null;
+    _head = (_head + 1) & (_triggers.length - 1);
+    _size--;
+    return args;
+  }
+
+  void grow() {
+    int capacity = _triggers.length;
+    Object[] triggers = new Object[capacity * 2];
+    Object[][] args = new Object[capacity * 2][];
+    for (int i = 0; i < _size; i++) {
+      int from = (_head + i) & (capacity - 1);
+      triggers[i] = _triggers[from];
+      args[i] = _args[from];
+    }
+    _triggers = triggers;
+    _args = args;
+    _head = 0;
+  }
+}
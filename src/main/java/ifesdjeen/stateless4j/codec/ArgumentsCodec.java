@@ -0,0 +1,104 @@
+package ifesdjeen.stateless4j.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/// <summary>
+/// Writes trigger arguments that are null, booleans, ints, longs, doubles or strings,
+/// each prefixed by a one-byte tag, after a one-byte count.
+/// </summary>
+/// <remarks>
+/// Supply your own <see cref="Codec"/> for triggers taking other argument types.
+/// </remarks>
+public class ArgumentsCodec implements Codec<Object[]> {
+  static final Object[] NoArguments = new Object[0];
+  static final Charset UTF8 = Charset.forName("UTF-8");
+
+  static final byte NULL = 0;
+  static final byte FALSE = 1;
+  static final byte TRUE = 2;
+  static final byte INT = 3;
+  static final byte LONG = 4;
+  static final byte DOUBLE = 5;
+  static final byte STRING = 6;
+
+  public int sizeOf(Object[] args) {
+    int size = 1;
+    for (Object arg : args) {
+      size += 1;
+      if (arg instanceof Integer) {
+        size += 4;
+      } else if (arg instanceof Long || arg instanceof Double) {
+        size += 8;
+      } else if (arg instanceof String) {
+        size += 4 + ((String) arg).getBytes(UTF8).length;
+      } else if (arg != null && !(arg instanceof Boolean)) {
+        throw new IllegalArgumentException(arg.getClass().getName());
+      }
+    }
+    return size;
+  }
+
+  public void write(Object[] args, ByteBuffer buffer) {
+    if (args.length > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException(Integer.toString(args.length));
+    }
+    buffer.put((byte) args.length);
+    for (Object arg : args) {
+      if (arg == null) {
+        buffer.put(NULL);
+      } else if (arg instanceof Boolean) {
+        buffer.put((Boolean) arg ? TRUE : FALSE);
+      } else if (arg instanceof Integer) {
+        buffer.put(INT).putInt((Integer) arg);
+      } else if (arg instanceof Long) {
+        buffer.put(LONG).putLong((Long) arg);
+      } else if (arg instanceof Double) {
+        buffer.put(DOUBLE).putDouble((Double) arg);
+      } else if (arg instanceof String) {
+        byte[] bytes = ((String) arg).getBytes(UTF8);
+        buffer.put(STRING).putInt(bytes.length).put(bytes);
+      } else {
+        throw new IllegalArgumentException(arg.getClass().getName());
+      }
+    }
+  }
+
+  public Object[] read(ByteBuffer buffer) {
+    int count = buffer.get();
+    if (count == 0) {
+      return NoArguments;
+    }
+    Object[] args = new Object[count];
+    for (int i = 0; i < count; i++) {
+      byte tag = buffer.get();
+      switch (tag) {
+        case NULL:
+          break;
+        case FALSE:
+          args[i] = false;
+          break;
+        case TRUE:
+          args[i] = true;
+          break;
+        case INT:
+          args[i] = buffer.getInt();
+          break;
+        case LONG:
+          args[i] = buffer.getLong();
+          break;
+        case DOUBLE:
+          args[i] = buffer.getDouble();
+          break;
+        case STRING:
+          byte[] bytes = new byte[buffer.getInt()];
+          buffer.get(bytes);
+          args[i] = new String(bytes, UTF8);
+          break;
+        default:
+          throw new IllegalArgumentException(Byte.toString(tag));
+      }
+    }
+    return args;
+  }
+}
@@ -0,0 +1,24 @@
+package ifesdjeen.stateless4j.codec;
+
+import java.nio.ByteBuffer;
+
+/// <summary>
+/// Converts values to and from a compact binary form, for the journal and snapshots.
+/// </summary>
+/// <typeparam name="T">The type of the values.</typeparam>
+public interface Codec<T> {
+  /// <summary>
+  /// The number of bytes <see cref="write"/> puts for the value.
+  /// </summary>
+  int sizeOf(T value);
+
+  /// <summary>
+  /// Write the value at the buffer's position, advancing it by <see cref="sizeOf"/> bytes.
+  /// </summary>
+  void write(T value, ByteBuffer buffer);
+
+  /// <summary>
+  /// Read a value written by <see cref="write"/> at the buffer's position, advancing it.
+  /// </summary>
+  T read(ByteBuffer buffer);
+}
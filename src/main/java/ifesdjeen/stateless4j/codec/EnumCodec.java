@@ -0,0 +1,42 @@
+package ifesdjeen.stateless4j.codec;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// Writes enum constants as their ordinal, in two bytes.
+/// </summary>
+/// <remarks>
+/// Ordinals are only stable as long as constants are not reordered or removed; add new
+/// constants at the end of the enum to keep existing journals and snapshots readable.
+/// </remarks>
+public class EnumCodec<E extends Enum<E>> implements Codec<E> {
+  final E[] _constants;
+
+  public EnumCodec(@Nonnull Class<E> type) {
+    _constants = type.getEnumConstants();
+    if (_constants.length > Short.MAX_VALUE) {
+      throw new IllegalArgumentException(type.getName());
+    }
+  }
+
+  /// <summary>
+  /// The constants of the enum, indexed by ordinal.
+  /// </summary>
+  public E[] getConstants() {
+    return _constants.clone();
+  }
+
+  public int sizeOf(E value) {
+    return 2;
+  }
+
+  public void write(E value, ByteBuffer buffer) {
+    buffer.putShort((short) value.ordinal());
+  }
+
+  public E read(ByteBuffer buffer) {
+    return _constants[buffer.getShort()];
+  }
+}
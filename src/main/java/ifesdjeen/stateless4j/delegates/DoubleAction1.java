@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface DoubleAction1 {
+  public void doIt(double arg1);
+}
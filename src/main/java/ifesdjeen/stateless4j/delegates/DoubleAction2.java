@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface DoubleAction2<T1> {
+  public void doIt(double arg1, T1 arg2);
+}
@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface DoubleFunc2<T> {
+  public T call(double arg0);
+}
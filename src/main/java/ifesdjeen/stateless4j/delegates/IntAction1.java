@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface IntAction1 {
+  public void doIt(int arg1);
+}
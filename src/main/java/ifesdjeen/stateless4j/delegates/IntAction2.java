@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface IntAction2<T1> {
+  public void doIt(int arg1, T1 arg2);
+}
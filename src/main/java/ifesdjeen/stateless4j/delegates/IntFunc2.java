@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface IntFunc2<T> {
+  public T call(int arg0);
+}
@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface LongAction1 {
+  public void doIt(long arg1);
+}
@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface LongAction2<T1> {
+  public void doIt(long arg1, T1 arg2);
+}
@@ -0,0 +1,5 @@
+package ifesdjeen.stateless4j.delegates;
+
+public interface LongFunc2<T> {
+  public T call(long arg0);
+}
@@ -0,0 +1,15 @@
+package ifesdjeen.stateless4j.journal;
+
+/// <summary>
+/// Thrown when a transition could not be written to, or made durable in, the journal.
+/// Unchecked, as it surfaces from Fire.
+/// </summary>
+public class JournalException extends RuntimeException {
+  public JournalException(String message) {
+    super(message);
+  }
+
+  public JournalException(Throwable cause) {
+    super(cause);
+  }
+}
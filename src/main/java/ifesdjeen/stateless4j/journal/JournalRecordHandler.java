@@ -0,0 +1,13 @@
+package ifesdjeen.stateless4j.journal;
+
+/// <summary>
+/// Receives the records of a journal, in the order they were appended.
+/// </summary>
+public interface JournalRecordHandler<TState, TTrigger> {
+  void onRecord(long machineId,
+                long timestamp,
+                TState source,
+                TState destination,
+                TTrigger trigger,
+                Object[] args);
+}
@@ -0,0 +1,407 @@
+package ifesdjeen.stateless4j.journal;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import ifesdjeen.stateless4j.codec.Codec;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// A durable, append-only log of state machine transitions.
+/// </summary>
+/// <remarks>
+/// Records are appended to memory-mapped segment files of a fixed size in a directory,
+/// named by their sequence number. Each record holds the machine id, a timestamp, the source
+/// and destination states, the trigger and its arguments, encoded by the supplied codecs, and
+/// is prefixed by its length and a CRC32 of its body. The length is written last, so that
+/// readers in the process never see a partial record; after a crash, as the pages of a
+/// segment may have reached the disk in any order, the checksum tells complete records from
+/// torn ones. Replaying, and appending to an existing journal, stop at the first record whose
+/// checksum does not match.
+/// <para/>
+/// Appending only writes to memory. A background thread forces written segments to disk
+/// every <c>flushIntervalMillis</c>, or as soon as a thread waits in <see cref="sync"/>, so
+/// that one fsync covers every record appended since the previous one (group commit).
+/// <para/>
+/// Appends are serialised; the journal may be shared by any number of machines and threads.
+/// </remarks>
+public class TransitionJournal<TState, TTrigger> implements Closeable {
+  public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+  public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+
+  static final String SUFFIX = ".journal";
+  static final int LENGTH_SIZE = 4;
+  static final int CHECKSUM_SIZE = 4;
+  static final int HEADER_SIZE = 8 + 8; // machine id, timestamp
+
+  final File _directory;
+  final Codec<TState> _stateCodec;
+  final Codec<TTrigger> _triggerCodec;
+  final Codec<Object[]> _argumentsCodec;
+  final int _segmentSize;
+  final long _flushIntervalMillis;
+
+  // guarded by this
+  int _segmentIndex;
+  RandomAccessFile _file;
+  MappedByteBuffer _segment;
+  long _appended;
+  boolean _syncRequested;
+  boolean _closed;
+  RuntimeException _flushFailure; // stops the flusher
+  final CRC32 _crc = new CRC32();
+  final byte[] _scratch = new byte[256];
+
+  volatile long _durable;
+  final Thread _flusher;
+
+  /// <summary>
+  /// Open the journal in the directory, creating it if needed, with default segment size
+  /// and flush interval. New records are appended after the existing ones.
+  /// </summary>
+  public TransitionJournal(@Nonnull File directory,
+                           @Nonnull Codec<TState> stateCodec,
+                           @Nonnull Codec<TTrigger> triggerCodec,
+                           @Nonnull Codec<Object[]> argumentsCodec) throws IOException {
+    this(directory, stateCodec, triggerCodec, argumentsCodec, DEFAULT_SEGMENT_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+  }
+
+  /// <summary>
+  /// Open the journal in the directory, creating it if needed. New records are appended
+  /// after the existing ones.
+  /// </summary>
+  /// <param name="segmentSize">The size of each segment file; bounds the size of a record.</param>
+  /// <param name="flushIntervalMillis">How often appended records are forced to disk when
+  /// nobody waits for them.</param>
+  public TransitionJournal(@Nonnull File directory,
+                           @Nonnull Codec<TState> stateCodec,
+                           @Nonnull Codec<TTrigger> triggerCodec,
+                           @Nonnull Codec<Object[]> argumentsCodec,
+                           int segmentSize,
+                           long flushIntervalMillis) throws IOException {
+    if (segmentSize < 64 || flushIntervalMillis < 1) {
+      throw new IllegalArgumentException();
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(directory.getPath());
+    }
+    _directory = directory;
+    _stateCodec = stateCodec;
+    _triggerCodec = triggerCodec;
+    _argumentsCodec = argumentsCodec;
+    _segmentSize = segmentSize;
+    _flushIntervalMillis = flushIntervalMillis;
+
+    File[] segments = segments(directory);
+    if (segments.length == 0) {
+      openSegment(0);
+    } else {
+      openSegment(segments.length - 1);
+      // skip the records already there
+      while (true) {
+        int length = recordLength(_segment, _crc, _scratch);
+        if (length == 0) {
+          break;
+        }
+        _segment.position(_segment.position() + LENGTH_SIZE + CHECKSUM_SIZE + length);
+      }
+      // drop a record torn by a crash, and whatever follows it, before appending over it
+      if (torn(_segment)) {
+        for (int i = _segment.position(); i < _segment.limit(); i++) {
+          _segment.put(i, (byte) 0);
+        }
+      }
+    }
+
+    _flusher = new Thread(new Runnable() {
+      public void run() {
+        flushLoop();
+      }
+    }, "transition-journal-flusher");
+    _flusher.setDaemon(true);
+    _flusher.start();
+  }
+
+  /// <summary>
+  /// Append a transition. The record is visible to readers on return but only durable once
+  /// <see cref="sync"/> returns for the returned sequence number.
+  /// </summary>
+  /// <returns>The sequence number of the record in this session, from 1.</returns>
+  public long append(long machineId, TState source, TState destination, TTrigger trigger, Object[] args) {
+    int length = HEADER_SIZE
+            + _stateCodec.sizeOf(source)
+            + _stateCodec.sizeOf(destination)
+            + _triggerCodec.sizeOf(trigger)
+            + _argumentsCodec.sizeOf(args);
+    if (LENGTH_SIZE + CHECKSUM_SIZE + length + LENGTH_SIZE > _segmentSize) {
+      throw new JournalException(StateMachineResources.JournalRecordTooLarge);
+    }
+
+    synchronized (this) {
+      if (_closed) {
+        throw new JournalException(StateMachineResources.JournalClosed);
+      }
+      // keep room for the terminating zero length
+      if (_segment.remaining() < LENGTH_SIZE + CHECKSUM_SIZE + length + LENGTH_SIZE) {
+        try {
+          _segment.force();
+          _file.close();
+          openSegment(_segmentIndex + 1);
+        } catch (IOException e) {
+          throw new JournalException(e);
+        }
+      }
+
+      MappedByteBuffer segment = _segment;
+      int start = segment.position();
+      segment.position(start + LENGTH_SIZE + CHECKSUM_SIZE);
+      segment.putLong(machineId);
+      segment.putLong(System.currentTimeMillis());
+      _stateCodec.write(source, segment);
+      _stateCodec.write(destination, segment);
+      _triggerCodec.write(trigger, segment);
+      _argumentsCodec.write(args, segment);
+      segment.putInt(start + LENGTH_SIZE, checksum(segment, start + LENGTH_SIZE + CHECKSUM_SIZE, length, _crc, _scratch));
+      segment.putInt(start, length);
+      return ++_appended;
+    }
+  }
+
+  /// <summary>
+  /// Wait until the record with the sequence number, and every record before it, is durable.
+  /// Threads waiting at the same time share a single fsync.
+  /// </summary>
+  public void sync(long sequence) {
+    if (_durable >= sequence) {
+      return;
+    }
+    synchronized (this) {
+      _syncRequested = true;
+      notifyAll();
+      boolean interrupted = false;
+      while (_durable < sequence) {
+        if (_flushFailure != null) {
+          throw new JournalException(_flushFailure);
+        }
+        if (_closed && _durable < _appended) {
+          throw new JournalException(StateMachineResources.JournalClosed);
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /// <summary>
+  /// Make every appended record durable.
+  /// </summary>
+  public void sync() {
+    long appended;
+    synchronized (this) {
+      appended = _appended;
+    }
+    sync(appended);
+  }
+
+  void flushLoop() {
+    while (true) {
+      MappedByteBuffer segment;
+      long target;
+      synchronized (this) {
+        if (!_syncRequested && !_closed) {
+          try {
+            wait(_flushIntervalMillis);
+          } catch (InterruptedException e) {
+            // closing
+          }
+        }
+        if (_durable == _appended && _closed) {
+          return;
+        }
+        _syncRequested = false;
+        segment = _segment;
+        target = _appended;
+      }
+      if (target == _durable) {
+        continue;
+      }
+      // earlier segments were forced when the journal moved past them
+      try {
+        segment.force();
+      } catch (RuntimeException e) {
+        synchronized (this) {
+          _flushFailure = e;
+          notifyAll();
+        }
+        return;
+      }
+      synchronized (this) {
+        _durable = target;
+        notifyAll();
+      }
+    }
+  }
+
+  /// <summary>
+  /// Make every appended record durable and release the journal.
+  /// </summary>
+  public void close() throws IOException {
+    synchronized (this) {
+      if (_closed) {
+        return;
+      }
+      _closed = true;
+      notifyAll();
+    }
+    try {
+      _flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      _segment.force();
+      _durable = _appended;
+      _file.close();
+    }
+  }
+
+  /// <summary>
+  /// Pass every record of the journal to the handler, in order.
+  /// </summary>
+  public void replay(@Nonnull JournalRecordHandler<TState, TTrigger> handler) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] scratch = new byte[256];
+    for (File file : segments(_directory)) {
+      ByteBuffer segment = map(file);
+      while (true) {
+        int length = recordLength(segment, crc, scratch);
+        if (length == 0) {
+          if (torn(segment)) {
+            return; // torn by a crash: the end of the journal
+          }
+          break;
+        }
+        segment.position(segment.position() + LENGTH_SIZE + CHECKSUM_SIZE);
+        long machineId = segment.getLong();
+        long timestamp = segment.getLong();
+        TState source = _stateCodec.read(segment);
+        TState destination = _stateCodec.read(segment);
+        TTrigger trigger = _triggerCodec.read(segment);
+        Object[] args = _argumentsCodec.read(segment);
+        handler.onRecord(machineId, timestamp, source, destination, trigger, args);
+      }
+    }
+  }
+
+  /// <summary>
+  /// The state each machine of the journal was left in by its last transition. Only the
+  /// machine ids and destination states are decoded.
+  /// </summary>
+  public Map<Long, TState> replayStates() throws IOException {
+    Map<Long, TState> states = new HashMap<Long, TState>();
+    CRC32 crc = new CRC32();
+    byte[] scratch = new byte[256];
+    for (File file : segments(_directory)) {
+      ByteBuffer segment = map(file);
+      while (true) {
+        int length = recordLength(segment, crc, scratch);
+        if (length == 0) {
+          if (torn(segment)) {
+            return states; // torn by a crash: the end of the journal
+          }
+          break;
+        }
+        segment.position(segment.position() + LENGTH_SIZE + CHECKSUM_SIZE);
+        int end = segment.position() + length;
+        long machineId = segment.getLong();
+        segment.position(segment.position() + 8);
+        _stateCodec.read(segment);
+        states.put(machineId, _stateCodec.read(segment));
+        segment.position(end);
+      }
+    }
+    return states;
+  }
+
+  /// <returns>The length of the body of the record at the position of the segment, or 0 if
+  /// there is none, or it is incomplete or fails its checksum.</returns>
+  static int recordLength(ByteBuffer segment, CRC32 crc, byte[] scratch) {
+    int start = segment.position();
+    if (segment.limit() - start < LENGTH_SIZE + CHECKSUM_SIZE) {
+      return 0;
+    }
+    int length = segment.getInt(start);
+    if (length <= 0 || length > segment.limit() - start - LENGTH_SIZE - CHECKSUM_SIZE) {
+      return 0;
+    }
+    int checksum = segment.getInt(start + LENGTH_SIZE);
+    return checksum(segment, start + LENGTH_SIZE + CHECKSUM_SIZE, length, crc, scratch) == checksum ? length : 0;
+  }
+
+  /// <returns>True if a record starts at the position of the segment, which
+  /// <see cref="recordLength"/> rejected.</returns>
+  static boolean torn(ByteBuffer segment) {
+    return segment.remaining() >= LENGTH_SIZE && segment.getInt(segment.position()) != 0;
+  }
+
+  /// <returns>The CRC32 of the bytes of the buffer from the offset, leaving its position as it was.</returns>
+  static int checksum(ByteBuffer buffer, int offset, int length, CRC32 crc, byte[] scratch) {
+    int position = buffer.position();
+    buffer.position(offset);
+    crc.reset();
+    while (length > 0) {
+      int chunk = Math.min(length, scratch.length);
+      buffer.get(scratch, 0, chunk);
+      crc.update(scratch, 0, chunk);
+      length -= chunk;
+    }
+    buffer.position(position);
+    return (int) crc.getValue();
+  }
+
+  void openSegment(int index) throws IOException {
+    _segmentIndex = index;
+    _file = new RandomAccessFile(new File(_directory, String.format("%016d%s", index, SUFFIX)), "rw");
+    _segment = _file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, _segmentSize);
+  }
+
+  static ByteBuffer map(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+    } finally {
+      raf.close();
+    }
+  }
+
+  static File[] segments(File directory) {
+    File[] segments = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SUFFIX);
+      }
+    });
+    if (segments == null) {
+      return new File[0];
+    }
+    Arrays.sort(segments);
+    return segments;
+  }
+}
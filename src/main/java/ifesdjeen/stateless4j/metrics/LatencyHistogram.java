@@ -0,0 +1,38 @@
+package ifesdjeen.stateless4j.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/// <summary>
+/// Counts durations in power-of-two buckets of nanoseconds, without locking.
+/// </summary>
+/// <remarks>
+/// Bucket <c>i</c> counts the durations below <c>2^i</c> nanoseconds and at least
+/// <c>2^(i-1)</c>, so percentiles are accurate to within a factor of two, which is enough
+/// to tell a microsecond action from a millisecond one. Like <see cref="StripedCounter"/>,
+/// each stripe of threads updates its own copy of the buckets.
+/// </remarks>
+public final class LatencyHistogram {
+  static final int BUCKETS = 64;
+
+  final AtomicLongArray _buckets = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+
+  public void record(long nanos) {
+    _buckets.getAndIncrement(stripe() + bucket(nanos));
+  }
+
+  public LatencySnapshot snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < _buckets.length(); i++) {
+      counts[i % BUCKETS] += _buckets.get(i);
+    }
+    return new LatencySnapshot(counts);
+  }
+
+  static int stripe() {
+    return ((int) Thread.currentThread().getId() & (StripedCounter.STRIPES - 1)) * BUCKETS;
+  }
+
+  static int bucket(long nanos) {
+    return nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+  }
+}
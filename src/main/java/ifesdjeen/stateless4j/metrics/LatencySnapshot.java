@@ -0,0 +1,63 @@
+package ifesdjeen.stateless4j.metrics;
+
+/// <summary>
+/// The counts of a <see cref="LatencyHistogram"/> at one point in time.
+/// </summary>
+public final class LatencySnapshot {
+  final long[] _counts;
+  final long _count;
+
+  LatencySnapshot(long[] counts) {
+    _counts = counts;
+    long count = 0;
+    for (long c : counts) {
+      count += c;
+    }
+    _count = count;
+  }
+
+  /// <summary>
+  /// The number of durations recorded.
+  /// </summary>
+  public long getCount() {
+    return _count;
+  }
+
+  /// <summary>
+  /// An upper bound of the durations below which the fraction of recorded durations lies,
+  /// in nanoseconds; 0 if nothing was recorded.
+  /// </summary>
+  /// <param name="fraction">Between 0 and 1, for instance 0.99.</param>
+  public long getPercentileNanos(double fraction) {
+    long rank = (long) Math.ceil(fraction * _count);
+    long seen = 0;
+    for (int i = 0; i < _counts.length; i++) {
+      seen += _counts[i];
+      if (seen >= rank && seen > 0) {
+        return upperBound(i);
+      }
+    }
+    return 0;
+  }
+
+  /// <summary>
+  /// An upper bound of the longest recorded duration, in nanoseconds.
+  /// </summary>
+  public long getMaxNanos() {
+    for (int i = _counts.length - 1; i >= 0; i--) {
+      if (_counts[i] > 0) {
+        return upperBound(i);
+      }
+    }
+    return 0;
+  }
+
+  static long upperBound(int bucket) {
+    return bucket >= 63 ? Long.MAX_VALUE : 1L << bucket;
+  }
+
+  @Override
+  public String toString() {
+    return "count=" + _count + " p50=" + getPercentileNanos(0.5) + "ns p99=" + getPercentileNanos(0.99) + "ns max=" + getMaxNanos() + "ns";
+  }
+}
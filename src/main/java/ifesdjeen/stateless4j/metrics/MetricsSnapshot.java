@@ -0,0 +1,100 @@
+package ifesdjeen.stateless4j.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/// <summary>
+/// The metrics of a definition at one point in time, as plain maps keyed by state.
+/// </summary>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public final class MetricsSnapshot<TState, TTrigger> {
+  final Map<TState, Map<TTrigger, Long>> _fires;
+  final Map<TState, Map<TState, Long>> _transitions;
+  final Map<TState, Long> _unhandled;
+  final Map<TState, Long> _ignored;
+  final Map<TState, Long> _guardRejections;
+  final Map<TState, Long> _failures;
+  final Map<TState, LatencySnapshot> _entryLatency;
+  final Map<TState, LatencySnapshot> _exitLatency;
+
+  MetricsSnapshot(Map<TState, Map<TTrigger, Long>> fires,
+                  Map<TState, Map<TState, Long>> transitions,
+                  Map<TState, Long> unhandled,
+                  Map<TState, Long> ignored,
+                  Map<TState, Long> guardRejections,
+                  Map<TState, Long> failures,
+                  Map<TState, LatencySnapshot> entryLatency,
+                  Map<TState, LatencySnapshot> exitLatency) {
+    _fires = Collections.unmodifiableMap(fires);
+    _transitions = Collections.unmodifiableMap(transitions);
+    _unhandled = Collections.unmodifiableMap(unhandled);
+    _ignored = Collections.unmodifiableMap(ignored);
+    _guardRejections = Collections.unmodifiableMap(guardRejections);
+    _failures = Collections.unmodifiableMap(failures);
+    _entryLatency = Collections.unmodifiableMap(entryLatency);
+    _exitLatency = Collections.unmodifiableMap(exitLatency);
+  }
+
+  /// <summary>
+  /// Triggers fired, by state and trigger.
+  /// </summary>
+  public Map<TState, Map<TTrigger, Long>> getFires() {
+    return _fires;
+  }
+
+  /// <summary>
+  /// Transitions completed, by source and destination.
+  /// </summary>
+  public Map<TState, Map<TState, Long>> getTransitions() {
+    return _transitions;
+  }
+
+  /// <summary>
+  /// Triggers fired that no behaviour handled, by state.
+  /// </summary>
+  public Map<TState, Long> getUnhandled() {
+    return _unhandled;
+  }
+
+  /// <summary>
+  /// Triggers fired that the state ignores, by state.
+  /// </summary>
+  public Map<TState, Long> getIgnored() {
+    return _ignored;
+  }
+
+  /// <summary>
+  /// Triggers fired whose behaviours all had failing guards, by state.
+  /// </summary>
+  public Map<TState, Long> getGuardRejections() {
+    return _guardRejections;
+  }
+
+  /// <summary>
+  /// Transitions abandoned because an action or selector threw, by source state.
+  /// </summary>
+  public Map<TState, Long> getFailures() {
+    return _failures;
+  }
+
+  /// <summary>
+  /// Duration of the entry actions run on entering each state, for the sampled transitions.
+  /// </summary>
+  public Map<TState, LatencySnapshot> getEntryLatency() {
+    return _entryLatency;
+  }
+
+  /// <summary>
+  /// Duration of the exit actions run on leaving each state, for the sampled transitions.
+  /// </summary>
+  public Map<TState, LatencySnapshot> getExitLatency() {
+    return _exitLatency;
+  }
+
+  @Override
+  public String toString() {
+    return "fires=" + _fires + " transitions=" + _transitions + " unhandled=" + _unhandled
+            + " ignored=" + _ignored + " guardRejections=" + _guardRejections + " failures=" + _failures;
+  }
+}
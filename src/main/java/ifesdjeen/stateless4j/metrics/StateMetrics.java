@@ -0,0 +1,102 @@
+package ifesdjeen.stateless4j.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/// <summary>
+/// What happened to triggers fired while machines were in one state.
+/// </summary>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public final class StateMetrics<TState, TTrigger> {
+  final TState _state;
+  final ConcurrentMap<TTrigger, StripedCounter> _fires = new ConcurrentHashMap<TTrigger, StripedCounter>();
+  final ConcurrentMap<TState, StripedCounter> _transitions = new ConcurrentHashMap<TState, StripedCounter>();
+  final StripedCounter _unhandled = new StripedCounter();
+  final StripedCounter _ignored = new StripedCounter();
+  final StripedCounter _guardRejections = new StripedCounter();
+  final StripedCounter _failures = new StripedCounter();
+  final LatencyHistogram _entryLatency = new LatencyHistogram();
+  final LatencyHistogram _exitLatency = new LatencyHistogram();
+
+  StateMetrics(TState state) {
+    _state = state;
+  }
+
+  public TState getState() {
+    return _state;
+  }
+
+  /// <summary>
+  /// A trigger was fired in the state.
+  /// </summary>
+  public void fired(TTrigger trigger) {
+    counter(_fires, trigger).increment();
+  }
+
+  /// <summary>
+  /// A trigger fired in the state led to the destination.
+  /// </summary>
+  public void transitioned(TState destination) {
+    counter(_transitions, destination).increment();
+  }
+
+  /// <summary>
+  /// No behaviour of the state or its superstates handles a trigger fired in it.
+  /// </summary>
+  public void unhandled() {
+    _unhandled.increment();
+  }
+
+  /// <summary>
+  /// A trigger fired in the state is ignored.
+  /// </summary>
+  public void ignored() {
+    _ignored.increment();
+  }
+
+  /// <summary>
+  /// The state has behaviours for a trigger fired in it, but all their guards failed.
+  /// </summary>
+  public void guardRejected() {
+    _guardRejections.increment();
+  }
+
+  /// <summary>
+  /// An action or selector threw while a trigger fired in the state was handled.
+  /// </summary>
+  public void failed() {
+    _failures.increment();
+  }
+
+  /// <summary>
+  /// The exit actions of a transition from the state, started at the supplied
+  /// <c>System.nanoTime()</c>, have completed.
+  /// </summary>
+  /// <returns>The current <c>System.nanoTime()</c>.</returns>
+  public long exited(long started) {
+    long now = System.nanoTime();
+    _exitLatency.record(now - started);
+    return now;
+  }
+
+  /// <summary>
+  /// The entry actions of a transition to the state, started at the supplied
+  /// <c>System.nanoTime()</c>, have completed.
+  /// </summary>
+  public void entered(long started) {
+    _entryLatency.record(System.nanoTime() - started);
+  }
+
+  static <K> StripedCounter counter(ConcurrentMap<K, StripedCounter> counters, K key) {
+    StripedCounter counter = counters.get(key);
+    if (counter == null) {
+      StripedCounter created = new StripedCounter();
+      counter = counters.putIfAbsent(key, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    return counter;
+  }
+}
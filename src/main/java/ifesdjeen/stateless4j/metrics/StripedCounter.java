@@ -0,0 +1,46 @@
+package ifesdjeen.stateless4j.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/// <summary>
+/// A counter updated by many threads at once.
+/// </summary>
+/// <remarks>
+/// Increments go to one of several cells, chosen by thread id and each on its own cache
+/// line, so that threads firing concurrently do not contend on a single word. Reading the
+/// count sums the cells; it is exact once updates have stopped.
+/// </remarks>
+public final class StripedCounter {
+  static final int PADDING = 8; // longs per 64-byte cache line
+  static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+  final AtomicLongArray _cells = new AtomicLongArray(STRIPES * PADDING);
+
+  static int stripes(int processors) {
+    int stripes = 1;
+    while (stripes < processors && stripes < 16) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+
+  public void increment() {
+    _cells.getAndIncrement(cell());
+  }
+
+  public void add(long delta) {
+    _cells.getAndAdd(cell(), delta);
+  }
+
+  public long sum() {
+    long sum = 0;
+    for (int i = 0; i < _cells.length(); i += PADDING) {
+      sum += _cells.get(i);
+    }
+    return sum;
+  }
+
+  static int cell() {
+    return ((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING;
+  }
+}
@@ -0,0 +1,183 @@
+package ifesdjeen.stateless4j.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/// <summary>
+/// Counts the fires, transitions, misses and action durations of every machine sharing a
+/// definition.
+/// </summary>
+/// <remarks>
+/// Collected only when enabled on the definition before it is frozen; a definition without
+/// metrics pays a single null check per fire. Counters are striped and histograms are
+/// updated without locking, so machines on many threads can share one definition. Reading
+/// the clock costs more than a plain transition, so action durations are only measured for
+/// one transition in sixteen of each machine.
+/// <para/>
+/// Read the metrics as a <see cref="MetricsSnapshot"/>, or register them with the platform
+/// MBean server to expose them through JMX.
+/// </remarks>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+/// <typeparam name="TTrigger">The type used to represent the triggers that cause state transitions.</typeparam>
+public class TransitionMetrics<TState, TTrigger> implements TransitionMetricsMXBean {
+  final ConcurrentMap<TState, StateMetrics<TState, TTrigger>> _states = new ConcurrentHashMap<TState, StateMetrics<TState, TTrigger>>();
+
+  /// <summary>
+  /// The metrics of triggers fired in the state.
+  /// </summary>
+  public StateMetrics<TState, TTrigger> forState(@Nonnull TState state) {
+    StateMetrics<TState, TTrigger> metrics = _states.get(state);
+    if (metrics == null) {
+      StateMetrics<TState, TTrigger> created = new StateMetrics<TState, TTrigger>(state);
+      metrics = _states.putIfAbsent(state, created);
+      if (metrics == null) {
+        metrics = created;
+      }
+    }
+    return metrics;
+  }
+
+  /// <summary>
+  /// Copy the current values of all the metrics.
+  /// </summary>
+  public MetricsSnapshot<TState, TTrigger> snapshot() {
+    Map<TState, Map<TTrigger, Long>> fires = new HashMap<TState, Map<TTrigger, Long>>();
+    Map<TState, Map<TState, Long>> transitions = new HashMap<TState, Map<TState, Long>>();
+    Map<TState, Long> unhandled = new HashMap<TState, Long>();
+    Map<TState, Long> ignored = new HashMap<TState, Long>();
+    Map<TState, Long> guardRejections = new HashMap<TState, Long>();
+    Map<TState, Long> failures = new HashMap<TState, Long>();
+    Map<TState, LatencySnapshot> entryLatency = new HashMap<TState, LatencySnapshot>();
+    Map<TState, LatencySnapshot> exitLatency = new HashMap<TState, LatencySnapshot>();
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      TState state = metrics._state;
+      fires.put(state, sums(metrics._fires));
+      transitions.put(state, sums(metrics._transitions));
+      unhandled.put(state, metrics._unhandled.sum());
+      ignored.put(state, metrics._ignored.sum());
+      guardRejections.put(state, metrics._guardRejections.sum());
+      failures.put(state, metrics._failures.sum());
+      entryLatency.put(state, metrics._entryLatency.snapshot());
+      exitLatency.put(state, metrics._exitLatency.snapshot());
+    }
+    return new MetricsSnapshot<TState, TTrigger>(fires, transitions, unhandled, ignored, guardRejections, failures, entryLatency, exitLatency);
+  }
+
+  /// <summary>
+  /// Register the metrics with the platform MBean server.
+  /// </summary>
+  public void register(@Nonnull ObjectName name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+  }
+
+  /// <summary>
+  /// Remove the metrics registered under the name from the platform MBean server.
+  /// </summary>
+  public void unregister(@Nonnull ObjectName name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+  }
+
+  static <K> Map<K, Long> sums(Map<K, StripedCounter> counters) {
+    Map<K, Long> sums = new HashMap<K, Long>();
+    for (Map.Entry<K, StripedCounter> entry : counters.entrySet()) {
+      sums.put(entry.getKey(), entry.getValue().sum());
+    }
+    return sums;
+  }
+
+  public long getFires() {
+    long total = 0;
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      for (StripedCounter counter : metrics._fires.values()) {
+        total += counter.sum();
+      }
+    }
+    return total;
+  }
+
+  public long getTransitions() {
+    long total = 0;
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      for (StripedCounter counter : metrics._transitions.values()) {
+        total += counter.sum();
+      }
+    }
+    return total;
+  }
+
+  public long getUnhandled() {
+    long total = 0;
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      total += metrics._unhandled.sum();
+    }
+    return total;
+  }
+
+  public long getIgnored() {
+    long total = 0;
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      total += metrics._ignored.sum();
+    }
+    return total;
+  }
+
+  public long getGuardRejections() {
+    long total = 0;
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      total += metrics._guardRejections.sum();
+    }
+    return total;
+  }
+
+  public long getFailures() {
+    long total = 0;
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      total += metrics._failures.sum();
+    }
+    return total;
+  }
+
+  public Map<String, Long> getFiresByStateAndTrigger() {
+    Map<String, Long> fires = new LinkedHashMap<String, Long>();
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      for (Map.Entry<TTrigger, StripedCounter> entry : metrics._fires.entrySet()) {
+        fires.put(metrics._state + "/" + entry.getKey(), entry.getValue().sum());
+      }
+    }
+    return fires;
+  }
+
+  public Map<String, Long> getTransitionsByEdge() {
+    Map<String, Long> transitions = new LinkedHashMap<String, Long>();
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      for (Map.Entry<TState, StripedCounter> entry : metrics._transitions.entrySet()) {
+        transitions.put(metrics._state + "->" + entry.getKey(), entry.getValue().sum());
+      }
+    }
+    return transitions;
+  }
+
+  public Map<String, Long> getEntryLatencyP99Nanos() {
+    Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      latencies.put(String.valueOf(metrics._state), metrics._entryLatency.snapshot().getPercentileNanos(0.99));
+    }
+    return latencies;
+  }
+
+  public Map<String, Long> getExitLatencyP99Nanos() {
+    Map<String, Long> latencies = new LinkedHashMap<String, Long>();
+    for (StateMetrics<TState, TTrigger> metrics : _states.values()) {
+      latencies.put(String.valueOf(metrics._state), metrics._exitLatency.snapshot().getPercentileNanos(0.99));
+    }
+    return latencies;
+  }
+}
@@ -0,0 +1,41 @@
+package ifesdjeen.stateless4j.metrics;
+
+import java.util.Map;
+
+/// <summary>
+/// The JMX view of a <see cref="TransitionMetrics"/>. States and triggers are shown by
+/// their string form.
+/// </summary>
+public interface TransitionMetricsMXBean {
+  long getFires();
+
+  long getTransitions();
+
+  long getUnhandled();
+
+  long getIgnored();
+
+  long getGuardRejections();
+
+  long getFailures();
+
+  /// <summary>
+  /// Fires by "state/trigger".
+  /// </summary>
+  Map<String, Long> getFiresByStateAndTrigger();
+
+  /// <summary>
+  /// Transitions by "source->destination".
+  /// </summary>
+  Map<String, Long> getTransitionsByEdge();
+
+  /// <summary>
+  /// The 99th percentile duration of the entry actions of each state, in nanoseconds.
+  /// </summary>
+  Map<String, Long> getEntryLatencyP99Nanos();
+
+  /// <summary>
+  /// The 99th percentile duration of the exit actions of each state, in nanoseconds.
+  /// </summary>
+  Map<String, Long> getExitLatencyP99Nanos();
+}
@@ -0,0 +1,90 @@
+package ifesdjeen.stateless4j.passivation;
+
+import java.util.concurrent.TimeUnit;
+
+import ifesdjeen.stateless4j.timer.TimerClock;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// Which keys a <see cref="ifesdjeen.stateless4j.StateMachineRegistry"/> passivates: the least
+/// recently fired ones beyond a number of keys held in memory, those not fired for some time,
+/// or both.
+/// </summary>
+/// <remarks>
+/// Immutable; the <c>with</c> methods return a new policy.
+/// </remarks>
+public final class EvictionPolicy {
+  static final TimerClock SYSTEM_CLOCK = new TimerClock() {
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  final int _maxResident;
+  final long _maxIdleNanos;
+  final TimerClock _clock;
+
+  EvictionPolicy(int maxResident, long maxIdleNanos, TimerClock clock) {
+    _maxResident = maxResident;
+    _maxIdleNanos = maxIdleNanos;
+    _clock = clock;
+  }
+
+  /// <summary>
+  /// Keep at most the given number of keys in memory, passivating the least recently fired.
+  /// </summary>
+  /// <remarks>
+  /// A registry splits the bound over its lock stripes, so it must be at least the number of
+  /// stripes, and is only reached when the keys are spread evenly over them.
+  /// </remarks>
+  public static EvictionPolicy lru(int maxResident) {
+    return new EvictionPolicy(Integer.MAX_VALUE, Long.MAX_VALUE, SYSTEM_CLOCK).withMaxResident(maxResident);
+  }
+
+  /// <summary>
+  /// Passivate the keys not fired for the given time.
+  /// </summary>
+  public static EvictionPolicy idle(long maxIdle, @Nonnull TimeUnit unit) {
+    return new EvictionPolicy(Integer.MAX_VALUE, Long.MAX_VALUE, SYSTEM_CLOCK).withMaxIdle(maxIdle, unit);
+  }
+
+  public EvictionPolicy withMaxResident(int maxResident) {
+    if (maxResident < 1) {
+      throw new IllegalArgumentException("maxResident");
+    }
+    return new EvictionPolicy(maxResident, _maxIdleNanos, _clock);
+  }
+
+  public EvictionPolicy withMaxIdle(long maxIdle, @Nonnull TimeUnit unit) {
+    if (maxIdle < 1) {
+      throw new IllegalArgumentException("maxIdle");
+    }
+    return new EvictionPolicy(_maxResident, unit.toNanos(maxIdle), _clock);
+  }
+
+  /// <summary>
+  /// Measure idle times with the clock rather than <c>System.nanoTime()</c>.
+  /// </summary>
+  public EvictionPolicy withClock(@Nonnull TimerClock clock) {
+    return new EvictionPolicy(_maxResident, _maxIdleNanos, clock);
+  }
+
+  /// <summary>
+  /// The number of keys held in memory, Integer.MAX_VALUE if unbounded.
+  /// </summary>
+  public int getMaxResident() {
+    return _maxResident;
+  }
+
+  /// <summary>
+  /// The time after which a key not fired is passivated, Long.MAX_VALUE if never.
+  /// </summary>
+  public long getMaxIdleNanos() {
+    return _maxIdleNanos;
+  }
+
+  public TimerClock getClock() {
+    return _clock;
+  }
+}
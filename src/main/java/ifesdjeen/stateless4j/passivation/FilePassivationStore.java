@@ -0,0 +1,583 @@
+package ifesdjeen.stateless4j.passivation;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import ifesdjeen.stateless4j.codec.Codec;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// A <see cref="PassivationStore"/> holding the states in a directory of segment files, each
+/// an open-addressing hash table of fixed-size slots, so that passivated keys take no heap.
+/// </summary>
+/// <remarks>
+/// Each slot holds a status byte, the length of the encoded key and the key and state encoded
+/// by the supplied codecs. A key is assigned a segment, and a slot within it by linear probing,
+/// from a hash of the encoded key, which does not depend on the process, so a store written by
+/// one registry can be reopened by another. A segment is rebuilt in a file twice as large, then
+/// moved over the original, once it is half full of keys and removed slots.
+/// <para/>
+/// Calls for keys of different segments run in parallel: each segment has its own lock, and a
+/// rebuild only holds up the keys of its segment. Slots are read and written with positional
+/// I/O and are not forced to disk; the store holds the passivated states across a clean
+/// <see cref="close"/>, not across a crash.
+/// </remarks>
+/// <typeparam name="K">The type of the keys.</typeparam>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+public class FilePassivationStore<K, TState> implements PassivationStore<K, TState> {
+  public static final int DEFAULT_SLOT_SIZE = 32;
+  public static final int DEFAULT_INITIAL_SLOTS = 1 << 12;
+  public static final int DEFAULT_SEGMENTS = 16;
+
+  static final String SUFFIX = ".slots";
+  static final int MAGIC = 0x534d5031; // SMP1
+  static final int HEADER_SIZE = 4 + 4 + 8; // magic, slot size, slots
+  static final int SLOT_HEADER_SIZE = 1 + 2; // status, key length
+  static final byte EMPTY = 0;
+  static final byte USED = 1;
+  static final byte REMOVED = 2;
+  static final int SCAN_SIZE = 1 << 20;
+
+  final File _directory;
+  final Codec<K> _keyCodec;
+  final Codec<TState> _stateCodec;
+  final Segment[] _segments;
+  final int _mask;
+
+  /// <summary>
+  /// Open the store in the directory, creating it if needed, with the default slot size and
+  /// number of segments. The states already in the directory are kept.
+  /// </summary>
+  public FilePassivationStore(@Nonnull File directory,
+                              @Nonnull Codec<K> keyCodec,
+                              @Nonnull Codec<TState> stateCodec) throws IOException {
+    this(directory, keyCodec, stateCodec, DEFAULT_SLOT_SIZE, DEFAULT_INITIAL_SLOTS);
+  }
+
+  /// <summary>
+  /// Open the store in the directory, creating it if needed, with the default number of
+  /// segments. The states already in the directory are kept, and its slot size wins over
+  /// the one given.
+  /// </summary>
+  /// <param name="slotSize">The size of a slot; bounds the size of an encoded key and state.</param>
+  /// <param name="initialSlots">The number of slots of a new store, shared between its segments.</param>
+  public FilePassivationStore(@Nonnull File directory,
+                              @Nonnull Codec<K> keyCodec,
+                              @Nonnull Codec<TState> stateCodec,
+                              int slotSize,
+                              int initialSlots) throws IOException {
+    this(directory, keyCodec, stateCodec, slotSize, initialSlots, DEFAULT_SEGMENTS);
+  }
+
+  /// <summary>
+  /// Open the store in the directory, creating it if needed. The states already in the
+  /// directory are kept, and its slot size and number of segments win over the ones given.
+  /// </summary>
+  /// <param name="slotSize">The size of a slot; bounds the size of an encoded key and state.</param>
+  /// <param name="initialSlots">The number of slots of a new store, shared between its segments.</param>
+  /// <param name="segments">The number of segments of a new store, rounded up to a power of
+  /// two; bounds the number of calls running in parallel.</param>
+  public FilePassivationStore(@Nonnull File directory,
+                              @Nonnull Codec<K> keyCodec,
+                              @Nonnull Codec<TState> stateCodec,
+                              int slotSize,
+                              int initialSlots,
+                              int segments) throws IOException {
+    if (slotSize < SLOT_HEADER_SIZE + 2 || slotSize > 0xffff || initialSlots < 1 || segments < 1 || segments > 1 << 16) {
+      throw new IllegalArgumentException(StateMachineResources.PassivationLayoutInvalid);
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException(directory.getPath());
+    }
+    _directory = directory;
+    _keyCodec = keyCodec;
+    _stateCodec = stateCodec;
+
+    File[] existing = files(directory);
+    int count = existing.length;
+    if (count == 0) {
+      count = 1;
+      while (count < segments) {
+        count <<= 1;
+      }
+    } else if (Integer.bitCount(count) != 1) {
+      throw new PassivationException(StateMachineResources.PassivationCorrupt);
+    }
+    long slots = 1;
+    while (slots * count < initialSlots) {
+      slots <<= 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    Segment[] created = new FilePassivationStore.Segment[count];
+    _segments = created;
+    _mask = count - 1;
+    try {
+      for (int i = 0; i < count; i++) {
+        File file = new File(directory, String.format("%04d%s", i, SUFFIX));
+        if (existing.length > 0 && !file.equals(existing[i])) {
+          throw new PassivationException(StateMachineResources.PassivationCorrupt);
+        }
+        _segments[i] = new Segment(file, slotSize, slots);
+      }
+    } catch (IOException e) {
+      closeQuietly();
+      throw e;
+    } catch (RuntimeException e) {
+      closeQuietly();
+      throw e;
+    }
+  }
+
+  /// <summary>
+  /// The directory the states are held in.
+  /// </summary>
+  public File getDirectory() {
+    return _directory;
+  }
+
+  public long size() {
+    long size = 0;
+    for (Segment segment : _segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  /// <summary>
+  /// The number of slots of the segments.
+  /// </summary>
+  public long getSlots() {
+    long slots = 0;
+    for (Segment segment : _segments) {
+      slots += segment.getSlots();
+    }
+    return slots;
+  }
+
+  /// <summary>
+  /// The number of segments.
+  /// </summary>
+  public int getSegments() {
+    return _segments.length;
+  }
+
+  public TState read(@Nonnull K key) {
+    ByteBuffer encoded = encode(key);
+    long hash = hash(encoded);
+    return segment(hash).read(encoded, hash);
+  }
+
+  public void write(@Nonnull K key, @Nonnull TState state) {
+    ByteBuffer encoded = encode(key);
+    long hash = hash(encoded);
+    segment(hash).write(encoded, hash, state);
+  }
+
+  public void remove(@Nonnull K key) {
+    ByteBuffer encoded = encode(key);
+    long hash = hash(encoded);
+    segment(hash).remove(encoded, hash);
+  }
+
+  /// <summary>
+  /// Force the written states to disk.
+  /// </summary>
+  public void flush() {
+    for (Segment segment : _segments) {
+      segment.flush();
+    }
+  }
+
+  /// <summary>
+  /// Force the written states to disk and release the files.
+  /// </summary>
+  public void close() throws IOException {
+    IOException failure = null;
+    for (Segment segment : _segments) {
+      try {
+        segment.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  void closeQuietly() {
+    for (Segment segment : _segments) {
+      if (segment != null) {
+        try {
+          segment.close();
+        } catch (IOException e) {
+          // already failing
+        }
+      }
+    }
+  }
+
+  ByteBuffer encode(K key) {
+    ByteBuffer encoded = ByteBuffer.allocate(_keyCodec.sizeOf(key));
+    _keyCodec.write(key, encoded);
+    encoded.flip();
+    return encoded;
+  }
+
+  Segment segment(long hash) {
+    // the low bits pick the slot
+    return _segments[(int) (hash >>> 32) & _mask];
+  }
+
+  /// <summary>
+  /// One file of the store: a hash table of its own, guarded by its monitor.
+  /// </summary>
+  final class Segment {
+    final File _file;
+    final int _slotSize;
+    final ByteBuffer _slot;
+
+    // guarded by this
+    RandomAccessFile _raf;
+    FileChannel _channel;
+    long _slots;
+    long _used;
+    long _removed;
+    boolean _closed;
+
+    Segment(File file, int slotSize, long initialSlots) throws IOException {
+      _file = file;
+      _raf = new RandomAccessFile(file, "rw");
+      _channel = _raf.getChannel();
+      try {
+        if (_channel.size() == 0) {
+          _slotSize = slotSize;
+          _slots = initialSlots;
+          writeHeader(_channel, _slotSize, _slots);
+        } else {
+          ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+          readFully(_channel, header, 0);
+          header.flip();
+          if (header.getInt() != MAGIC) {
+            throw new PassivationException(StateMachineResources.PassivationCorrupt);
+          }
+          _slotSize = header.getInt();
+          _slots = header.getLong();
+          if (_slotSize < SLOT_HEADER_SIZE + 2 || _slotSize > 0xffff || _slots < 1 || Long.bitCount(_slots) != 1) {
+            throw new PassivationException(StateMachineResources.PassivationCorrupt);
+          }
+          count();
+        }
+      } catch (IOException e) {
+        _raf.close();
+        throw e;
+      } catch (RuntimeException e) {
+        _raf.close();
+        throw e;
+      }
+      _slot = ByteBuffer.allocate(_slotSize);
+    }
+
+    synchronized long size() {
+      return _used;
+    }
+
+    synchronized long getSlots() {
+      return _slots;
+    }
+
+    synchronized TState read(ByteBuffer key, long hash) {
+      ensureOpen();
+      if (SLOT_HEADER_SIZE + key.limit() > _slotSize) {
+        return null;
+      }
+      try {
+        long slot = find(_channel, _slots, key, hash, false);
+        if (slot < 0) {
+          return null;
+        }
+        // left in _slot by find
+        _slot.position(SLOT_HEADER_SIZE + key.limit());
+        return _stateCodec.read(_slot);
+      } catch (IOException e) {
+        throw new PassivationException(e);
+      }
+    }
+
+    synchronized void write(ByteBuffer key, long hash, TState state) {
+      ensureOpen();
+      if (SLOT_HEADER_SIZE + key.limit() + _stateCodec.sizeOf(state) > _slotSize) {
+        throw new PassivationException(StateMachineResources.PassivationRecordTooLarge);
+      }
+      try {
+        long slot = find(_channel, _slots, key, hash, false);
+        if (slot < 0) {
+          if ((_used + _removed + 1) * 2 > _slots) {
+            rebuild(_used * 4 > _slots ? _slots * 2 : _slots);
+          }
+          slot = find(_channel, _slots, key, hash, true);
+          if (_slot.get(0) == REMOVED) {
+            _removed--;
+          }
+          _used++;
+        }
+        _slot.clear();
+        _slot.put(USED);
+        _slot.putShort((short) key.limit());
+        _slot.put(key.duplicate());
+        _stateCodec.write(state, _slot);
+        _slot.flip();
+        writeFully(_channel, _slot, position(slot));
+      } catch (IOException e) {
+        throw new PassivationException(e);
+      }
+    }
+
+    synchronized void remove(ByteBuffer key, long hash) {
+      ensureOpen();
+      if (SLOT_HEADER_SIZE + key.limit() > _slotSize) {
+        return;
+      }
+      try {
+        long slot = find(_channel, _slots, key, hash, false);
+        if (slot < 0) {
+          return;
+        }
+        // an empty slot would cut the probe sequences running through this one
+        _slot.clear();
+        _slot.put(REMOVED).flip();
+        writeFully(_channel, _slot, position(slot));
+        _used--;
+        _removed++;
+      } catch (IOException e) {
+        throw new PassivationException(e);
+      }
+    }
+
+    synchronized void flush() {
+      ensureOpen();
+      try {
+        _channel.force(false);
+      } catch (IOException e) {
+        throw new PassivationException(e);
+      }
+    }
+
+    synchronized void close() throws IOException {
+      if (_closed) {
+        return;
+      }
+      _closed = true;
+      try {
+        _channel.force(false);
+      } finally {
+        _raf.close();
+      }
+    }
+
+    void ensureOpen() {
+      if (_closed) {
+        throw new PassivationException(StateMachineResources.PassivationClosed);
+      }
+    }
+
+    /// <summary>
+    /// Probe for the key, leaving the slot found in _slot.
+    /// </summary>
+    /// <param name="free">True to stop at the first slot the key could be written to.</param>
+    /// <returns>The slot holding the key, or the first free one if asked for; -1 otherwise.</returns>
+    long find(FileChannel channel, long slots, ByteBuffer key, long hash, boolean free) throws IOException {
+      long mask = slots - 1;
+      long slot = hash & mask;
+      for (long probes = 0; probes < slots; probes++, slot = (slot + 1) & mask) {
+        _slot.clear();
+        readFully(channel, _slot, position(slot));
+        byte status = _slot.get(0);
+        if (free ? status != USED : status == EMPTY) {
+          return free ? slot : -1;
+        }
+        if (status == USED && matches(key)) {
+          return slot;
+        }
+      }
+      return -1;
+    }
+
+    boolean matches(ByteBuffer key) {
+      int length = _slot.getShort(1) & 0xffff;
+      if (length != key.limit()) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (_slot.get(SLOT_HEADER_SIZE + i) != key.get(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /// <summary>
+    /// Copy the keys to a new table of the given number of slots, dropping the removed slots,
+    /// and swap it in. If the swap fails, the original table is reopened.
+    /// </summary>
+    void rebuild(long slots) throws IOException {
+      File rebuilt = new File(_file.getPath() + ".rebuild");
+      RandomAccessFile raf = new RandomAccessFile(rebuilt, "rw");
+      FileChannel channel = raf.getChannel();
+      try {
+        channel.truncate(0);
+        writeHeader(channel, _slotSize, slots);
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE - SCAN_SIZE % _slotSize);
+        ByteBuffer key = ByteBuffer.allocate(_slotSize);
+        long position = HEADER_SIZE;
+        long end = position(_slots);
+        while (position < end) {
+          scan.clear();
+          scan.limit((int) Math.min(scan.capacity(), end - position));
+          readFully(_channel, scan, position);
+          for (int offset = 0; offset < scan.limit(); offset += _slotSize) {
+            if (scan.get(offset) != USED) {
+              continue;
+            }
+            int length = scan.getShort(offset + 1) & 0xffff;
+            key.clear();
+            for (int i = 0; i < length; i++) {
+              key.put(scan.get(offset + SLOT_HEADER_SIZE + i));
+            }
+            key.flip();
+            long slot = find(channel, slots, key, hash(key), true);
+            ByteBuffer copy = scan.duplicate();
+            copy.limit(offset + _slotSize).position(offset);
+            writeFully(channel, copy, position(slot));
+          }
+          position += scan.limit();
+        }
+        channel.force(false);
+      } catch (IOException e) {
+        raf.close();
+        rebuilt.delete();
+        throw e;
+      }
+      raf.close();
+      // the file cannot be replaced while it is open on some platforms
+      _raf.close();
+      try {
+        Files.move(rebuilt.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        rebuilt.delete();
+        try {
+          reopen();
+        } catch (IOException reopen) {
+          e.addSuppressed(reopen);
+        }
+        throw e;
+      }
+      reopen();
+      _slots = slots;
+      _removed = 0;
+    }
+
+    void reopen() throws IOException {
+      try {
+        _raf = new RandomAccessFile(_file, "rw");
+      } catch (IOException e) {
+        _closed = true;
+        throw e;
+      }
+      _channel = _raf.getChannel();
+    }
+
+    void count() throws IOException {
+      ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE - SCAN_SIZE % _slotSize);
+      long position = HEADER_SIZE;
+      long end = position(_slots);
+      if (_channel.size() < end) {
+        // slots past the end of a sparse file read as empty
+        _channel.write(ByteBuffer.allocate(1), end - 1);
+      }
+      while (position < end) {
+        scan.clear();
+        scan.limit((int) Math.min(scan.capacity(), end - position));
+        readFully(_channel, scan, position);
+        for (int offset = 0; offset < scan.limit(); offset += _slotSize) {
+          byte status = scan.get(offset);
+          if (status == USED) {
+            _used++;
+          } else if (status == REMOVED) {
+            _removed++;
+          }
+        }
+        position += scan.limit();
+      }
+    }
+
+    long position(long slot) {
+      return HEADER_SIZE + slot * _slotSize;
+    }
+  }
+
+  static void writeHeader(FileChannel channel, int slotSize, long slots) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(slotSize).putLong(slots).flip();
+    writeFully(channel, header, 0);
+    // extend the file to hold every slot, zeroed, hence empty
+    channel.write(ByteBuffer.allocate(1), HEADER_SIZE + slots * slotSize - 1);
+  }
+
+  static long hash(ByteBuffer key) {
+    // FNV-1a, then a finalising mix so that the low bits depend on every byte
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.limit(); i++) {
+      h = (h ^ (key.get(i) & 0xff)) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  static File[] files(File directory) {
+    File[] files = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        return name.endsWith(SUFFIX);
+      }
+    });
+    if (files == null) {
+      return new File[0];
+    }
+    Arrays.sort(files);
+    return files;
+  }
+
+  static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        // past the end of the file: zeroes, as in a sparse file
+        while (buffer.hasRemaining()) {
+          buffer.put((byte) 0);
+        }
+        break;
+      }
+      position += read;
+    }
+  }
+
+  static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+}
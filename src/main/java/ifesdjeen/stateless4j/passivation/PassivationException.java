@@ -0,0 +1,15 @@
+package ifesdjeen.stateless4j.passivation;
+
+/// <summary>
+/// Thrown when a state could not be written to, or read from, a passivation store.
+/// Unchecked, as it surfaces from Fire.
+/// </summary>
+public class PassivationException extends RuntimeException {
+  public PassivationException(String message) {
+    super(message);
+  }
+
+  public PassivationException(Throwable cause) {
+    super(cause);
+  }
+}
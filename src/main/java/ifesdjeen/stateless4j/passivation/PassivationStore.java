@@ -0,0 +1,34 @@
+package ifesdjeen.stateless4j.passivation;
+
+import java.io.Closeable;
+
+/// <summary>
+/// Holds the states of keys evicted from a <see cref="ifesdjeen.stateless4j.StateMachineRegistry"/>
+/// until they are fired again.
+/// </summary>
+/// <remarks>
+/// Implementations must be thread-safe; they are only called for keys that are not in memory,
+/// on evictions and on the first fire or read after one. Failures are reported as
+/// <see cref="PassivationException"/>.
+/// </remarks>
+/// <typeparam name="K">The type of the keys.</typeparam>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+public interface PassivationStore<K, TState> extends Closeable {
+  /// <returns>The state written for the key, or null if there is none.</returns>
+  TState read(K key);
+
+  /// <summary>
+  /// Record the state of the key, replacing any previous one.
+  /// </summary>
+  void write(K key, TState state);
+
+  /// <summary>
+  /// Forget the key.
+  /// </summary>
+  void remove(K key);
+
+  /// <summary>
+  /// The number of keys with a state.
+  /// </summary>
+  long size();
+}
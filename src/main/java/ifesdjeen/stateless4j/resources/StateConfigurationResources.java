@@ -3,5 +3,6 @@ package ifesdjeen.stateless4j.resources;
 public class StateConfigurationResources {
 
   public static final String SelfTransitionsEitherIgnoredOrReentrant = "SelfTransitionsEitherIgnoredOrReentrant";
+  public static final String TimeoutDelayNegative = "TimeoutDelayNegative";
 
 }
@@ -5,5 +5,25 @@ public class StateMachineResources {
 
   public static final String CannotReconfigureParameters = "CannotReconfigureParameters";
   public static final String NoTransitionsPermitted = "NoTransitionsPermitted";
+  public static final String DefinitionFrozen = "DefinitionFrozen";
+  public static final String CompiledModeRequiresEnums = "CompiledModeRequiresEnums";
+  public static final String CompiledHandlesCollectNoMetrics = "CompiledHandlesCollectNoMetrics";
+  public static final String JournalClosed = "JournalClosed";
+  public static final String JournalRecordTooLarge = "JournalRecordTooLarge";
+  public static final String SnapshotCorrupt = "SnapshotCorrupt";
+  public static final String SnapshotRecordTooLarge = "SnapshotRecordTooLarge";
+  public static final String StoreFireInProgress = "StoreFireInProgress";
+  public static final String StoreTimeoutsUnsupported = "StoreTimeoutsUnsupported";
+  public static final String TimerClosed = "TimerClosed";
+  public static final String TimeoutsRequireExecutor = "TimeoutsRequireExecutor";
+  public static final String DispatcherForeignMachine = "DispatcherForeignMachine";
+  public static final String TimeoutAlreadyScheduled = "TimeoutAlreadyScheduled";
+  public static final String RegistryFireInProgress = "RegistryFireInProgress";
+  public static final String RegistryTimeoutsUnsupported = "RegistryTimeoutsUnsupported";
+  public static final String RegistryMaxResidentBelowStripes = "RegistryMaxResidentBelowStripes";
+  public static final String PassivationClosed = "PassivationClosed";
+  public static final String PassivationCorrupt = "PassivationCorrupt";
+  public static final String PassivationRecordTooLarge = "PassivationRecordTooLarge";
+  public static final String PassivationLayoutInvalid = "PassivationLayoutInvalid";
 
 }
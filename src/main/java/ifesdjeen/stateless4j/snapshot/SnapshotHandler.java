@@ -0,0 +1,11 @@
+package ifesdjeen.stateless4j.snapshot;
+
+/// <summary>
+/// Receives the states read from a snapshot, in the order they were written.
+/// </summary>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+public interface SnapshotHandler<TState> {
+  /// <param name="index">The position of the machine in the snapshot, from 0.</param>
+  /// <param name="state">The state the machine was in.</param>
+  void onState(long index, TState state);
+}
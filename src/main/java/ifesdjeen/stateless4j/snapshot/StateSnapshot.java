@@ -0,0 +1,250 @@
+package ifesdjeen.stateless4j.snapshot;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import ifesdjeen.stateless4j.StateMachine;
+import ifesdjeen.stateless4j.StateMachineDefinition;
+import ifesdjeen.stateless4j.codec.Codec;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// Writes the current states of a population of machines to a file, and recreates the
+/// machines from it.
+/// </summary>
+/// <remarks>
+/// A snapshot is a small header followed by one record per machine, in iteration order.
+/// With an <see cref="EnumCodec"/> each record is the ordinal of the state, in one byte when
+/// the enum has at most 256 constants and two bytes otherwise; with any other codec it is
+/// the encoded state prefixed by its length. Records are staged in a direct buffer and
+/// written to, or read from, the file channel a megabyte at a time.
+/// <para/>
+/// Restoring creates each machine directly in its recorded state: no trigger is fired and
+/// no entry action runs. Machines are identified by their position only; callers keeping
+/// machines by key should write the keys in the same order alongside.
+/// <para/>
+/// A snapshot instance holds no state between calls and may be shared.
+/// </remarks>
+/// <typeparam name="TState">The type used to represent the states.</typeparam>
+public class StateSnapshot<TState> {
+  static final int MAGIC = 0x534d5331; // "SMS1"
+  static final int HEADER_SIZE = 4 + 1 + 8; // magic, encoding, count
+  static final int BUFFER_SIZE = 1 << 20;
+  static final int MAX_RECORD_SIZE = 0xffff;
+
+  static final byte CODEC = 0;
+  static final byte BYTE_ORDINALS = 1;
+  static final byte SHORT_ORDINALS = 2;
+
+  final Codec<TState> _codec;
+  final TState[] _constants; // null unless the codec is an EnumCodec
+  final byte _encoding;
+
+  /// <summary>
+  /// Create a snapshot writer and reader encoding states with the codec.
+  /// </summary>
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public StateSnapshot(@Nonnull Codec<TState> codec) {
+    _codec = codec;
+    if (codec instanceof EnumCodec) {
+      _constants = (TState[]) ((EnumCodec) codec).getConstants();
+      _encoding = _constants.length <= 256 ? BYTE_ORDINALS : SHORT_ORDINALS;
+    } else {
+      _constants = null;
+      _encoding = CODEC;
+    }
+  }
+
+  /// <summary>
+  /// Write the states of the machines to the file, replacing its contents, and force it
+  /// to disk.
+  /// </summary>
+  /// <returns>The number of machines written.</returns>
+  public long write(@Nonnull File file, @Nonnull Iterable<? extends StateMachine<TState, ?>> machines) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    RandomAccessFile output = new RandomAccessFile(file, "rw");
+    try {
+      FileChannel channel = output.getChannel();
+      channel.truncate(0);
+      // room for the header, written once the count is known
+      buffer.position(HEADER_SIZE);
+
+      long count = 0;
+      for (StateMachine<TState, ?> machine : machines) {
+        TState state = machine.getState();
+        switch (_encoding) {
+          case BYTE_ORDINALS:
+            if (!buffer.hasRemaining()) {
+              drain(channel, buffer);
+            }
+            buffer.put((byte) ((Enum<?>) state).ordinal());
+            break;
+          case SHORT_ORDINALS:
+            if (buffer.remaining() < 2) {
+              drain(channel, buffer);
+            }
+            buffer.putShort((short) ((Enum<?>) state).ordinal());
+            break;
+          default:
+            int size = _codec.sizeOf(state);
+            if (size > MAX_RECORD_SIZE) {
+              throw new IllegalArgumentException(StateMachineResources.SnapshotRecordTooLarge);
+            }
+            if (buffer.remaining() < 2 + size) {
+              drain(channel, buffer);
+            }
+            buffer.putShort((short) size);
+            _codec.write(state, buffer);
+        }
+        count++;
+      }
+      drain(channel, buffer);
+
+      buffer.putInt(MAGIC).put(_encoding).putLong(count).flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, buffer.position());
+      }
+      channel.force(true);
+      return count;
+    } finally {
+      output.close();
+    }
+  }
+
+  /// <summary>
+  /// The number of machines recorded in the snapshot file.
+  /// </summary>
+  public long count(@Nonnull File file) throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+      buffer.limit(0);
+      return readHeader(input.getChannel(), buffer);
+    } finally {
+      input.close();
+    }
+  }
+
+  /// <summary>
+  /// Read the snapshot file, passing each recorded state to the handler in order.
+  /// </summary>
+  /// <returns>The number of states read.</returns>
+  public long read(@Nonnull File file, @Nonnull SnapshotHandler<TState> handler) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    buffer.limit(0);
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      long count = readHeader(channel, buffer);
+      for (long i = 0; i < count; i++) {
+        TState state;
+        switch (_encoding) {
+          case BYTE_ORDINALS:
+            fill(channel, buffer, 1);
+            state = constant(buffer.get() & 0xff);
+            break;
+          case SHORT_ORDINALS:
+            fill(channel, buffer, 2);
+            state = constant(buffer.getShort());
+            break;
+          default:
+            fill(channel, buffer, 2);
+            int size = buffer.getShort() & 0xffff;
+            fill(channel, buffer, size);
+            int end = buffer.position() + size;
+            state = _codec.read(buffer);
+            if (buffer.position() != end) {
+              throw new IOException(StateMachineResources.SnapshotCorrupt);
+            }
+        }
+        handler.onState(i, state);
+      }
+      return count;
+    } finally {
+      input.close();
+    }
+  }
+
+  /// <summary>
+  /// Recreate the machines recorded in the snapshot file, in the order they were written,
+  /// each in its recorded state. No entry action runs.
+  /// </summary>
+  /// <param name="definition">The definition the machines share; frozen if it was not already.</param>
+  public <TTrigger> List<StateMachine<TState, TTrigger>> restore(@Nonnull File file,
+                                                                 @Nonnull final StateMachineDefinition<TState, TTrigger> definition) throws IOException {
+    return restore(file, definition, null);
+  }
+
+  /// <summary>
+  /// Recreate the machines recorded in the snapshot file, in the order they were written,
+  /// each in its recorded state with the timeouts of that state armed afresh. No entry
+  /// action runs.
+  /// </summary>
+  /// <param name="definition">The definition the machines share; frozen if it was not already.</param>
+  /// <param name="timeoutExecutor">Fires the triggers of expired timeouts for every restored
+  /// machine. Required if the definition declares timeouts.</param>
+  public <TTrigger> List<StateMachine<TState, TTrigger>> restore(@Nonnull File file,
+                                                                 @Nonnull final StateMachineDefinition<TState, TTrigger> definition,
+                                                                 final Executor timeoutExecutor) throws IOException {
+    definition.freeze();
+    final List<StateMachine<TState, TTrigger>> machines = new ArrayList<StateMachine<TState, TTrigger>>((int) Math.min(count(file), Integer.MAX_VALUE - 8));
+    read(file, new SnapshotHandler<TState>() {
+      public void onState(long index, TState state) {
+        machines.add(definition.CreateMachine(state, timeoutExecutor));
+      }
+    });
+    return machines;
+  }
+
+  long readHeader(FileChannel channel, ByteBuffer buffer) throws IOException {
+    fill(channel, buffer, HEADER_SIZE);
+    if (buffer.getInt() != MAGIC || buffer.get() != _encoding) {
+      throw new IOException(StateMachineResources.SnapshotCorrupt);
+    }
+    long count = buffer.getLong();
+    if (count < 0) {
+      throw new IOException(StateMachineResources.SnapshotCorrupt);
+    }
+    return count;
+  }
+
+  TState constant(int ordinal) throws IOException {
+    if (ordinal < 0 || ordinal >= _constants.length) {
+      throw new IOException(StateMachineResources.SnapshotCorrupt);
+    }
+    return _constants[ordinal];
+  }
+
+  static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  // ensure at least needed bytes are readable, reading more of the file if necessary
+  static void fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+    if (buffer.remaining() >= needed) {
+      return;
+    }
+    buffer.compact();
+    while (buffer.position() < needed) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException(StateMachineResources.SnapshotCorrupt);
+      }
+    }
+    buffer.flip();
+  }
+}
@@ -0,0 +1,263 @@
+package ifesdjeen.stateless4j.timer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import ifesdjeen.stateless4j.metrics.StripedCounter;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// Runs large numbers of timeouts at a coarse, fixed resolution.
+/// </summary>
+/// <remarks>
+/// Time is cut into ticks of a fixed duration, and timeouts are hashed by the tick at which
+/// they expire into a wheel of buckets, one per tick, wrapping around. Scheduling pushes the
+/// timeout onto a lock-free stack and cancelling flips its state, both in constant time from
+/// any thread; the thread advancing the timer moves the scheduled timeouts into the wheel and,
+/// on each tick, walks one bucket, expiring what is due and dropping what was cancelled.
+/// A timeout therefore expires up to one tick after its delay, never before.
+/// <para/>
+/// A timer either advances itself on a background thread, following the system clock, or is
+/// advanced by calling <see cref="advance"/>, following the supplied clock; the latter, with
+/// a <see cref="VirtualClock"/>, makes timeouts deterministic in tests.
+/// </remarks>
+public class HashedWheelTimer implements Closeable {
+  public static final long DEFAULT_TICK_MILLIS = 10;
+  public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  static final TimerClock SYSTEM_CLOCK = new TimerClock() {
+    public long nanoTime() {
+      return System.nanoTime();
+    }
+  };
+
+  final TimerClock _clock;
+  final long _origin;
+  final long _tickNanos;
+  final Timeout[] _wheel; // bucket heads
+  final int _mask;
+
+  final AtomicReference<Timeout> _incoming = new AtomicReference<Timeout>();
+  final StripedCounter _pending = new StripedCounter();
+
+  volatile long _tick; // the last tick processed, written under this
+  volatile boolean _closed;
+  final Thread _worker; // null when advanced by the caller
+
+  /// <summary>
+  /// Create a timer advancing itself every 10 milliseconds, on a wheel of 512 ticks.
+  /// </summary>
+  public HashedWheelTimer() {
+    this(DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, DEFAULT_TICKS_PER_WHEEL);
+  }
+
+  /// <summary>
+  /// Create a timer advancing itself on a background thread.
+  /// </summary>
+  /// <param name="tickDuration">The resolution of the timer: shorter ticks expire timeouts
+  /// closer to their deadline, at the cost of waking up more often.</param>
+  /// <param name="ticksPerWheel">The number of buckets, rounded up to a power of two. Timeouts
+  /// further away than a whole turn of the wheel are visited once per turn until due.</param>
+  public HashedWheelTimer(long tickDuration, @Nonnull TimeUnit unit, int ticksPerWheel) {
+    this(SYSTEM_CLOCK, tickDuration, unit, ticksPerWheel, true);
+  }
+
+  /// <summary>
+  /// Create a timer following the clock, advanced only by calls to <see cref="advance"/>.
+  /// </summary>
+  public HashedWheelTimer(@Nonnull TimerClock clock, long tickDuration, @Nonnull TimeUnit unit, int ticksPerWheel) {
+    this(clock, tickDuration, unit, ticksPerWheel, false);
+  }
+
+  HashedWheelTimer(TimerClock clock, long tickDuration, TimeUnit unit, int ticksPerWheel, boolean background) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("tickDuration");
+    }
+    if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+      throw new IllegalArgumentException("ticksPerWheel");
+    }
+    int buckets = 1;
+    while (buckets < ticksPerWheel) {
+      buckets <<= 1;
+    }
+    _clock = clock;
+    _origin = clock.nanoTime();
+    _tickNanos = unit.toNanos(tickDuration);
+    _wheel = new Timeout[buckets];
+    _mask = buckets - 1;
+
+    if (background) {
+      _worker = new Thread(new Runnable() {
+        public void run() {
+          tickLoop();
+        }
+      }, "hashed-wheel-timer");
+      _worker.setDaemon(true);
+      _worker.start();
+    } else {
+      _worker = null;
+    }
+  }
+
+  /// <summary>
+  /// A timer with the default settings, advancing itself, shared by the definitions that
+  /// were not given one of their own. It must not be closed.
+  /// </summary>
+  public static HashedWheelTimer shared() {
+    return Shared.TIMER;
+  }
+
+  static final class Shared {
+    static final HashedWheelTimer TIMER = new HashedWheelTimer();
+  }
+
+  /// <summary>
+  /// Expire the timeout once the delay has elapsed.
+  /// </summary>
+  /// <param name="timeout">A timeout never scheduled before.</param>
+  /// <returns>The timeout.</returns>
+  public <T extends Timeout> T schedule(@Nonnull T timeout, long delay, @Nonnull TimeUnit unit) {
+    if (_closed) {
+      throw new IllegalStateException(StateMachineResources.TimerClosed);
+    }
+    if (!Timeout.STATE.compareAndSet(timeout, Timeout.NEW, Timeout.SCHEDULED)) {
+      throw new IllegalStateException(StateMachineResources.TimeoutAlreadyScheduled);
+    }
+    long elapsed = _clock.nanoTime() - _origin;
+    long delayNanos = Math.max(0, unit.toNanos(delay));
+    long deadline = delayNanos > Long.MAX_VALUE - elapsed ? Long.MAX_VALUE : elapsed + delayNanos;
+    timeout._timer = this;
+    timeout._deadline = deadline / _tickNanos + (deadline % _tickNanos != 0 ? 1 : 0);
+    _pending.increment();
+
+    Timeout head;
+    do {
+      head = _incoming.get();
+      timeout._next = head;
+    } while (!_incoming.compareAndSet(head, timeout));
+    return timeout;
+  }
+
+  /// <summary>
+  /// Process every tick elapsed according to the clock, running the timeouts due on the
+  /// calling thread. Only needed for timers created with a clock.
+  /// </summary>
+  /// <returns>The number of timeouts expired.</returns>
+  public synchronized int advance() {
+    long now = (_clock.nanoTime() - _origin) / _tickNanos;
+    if (_pending.sum() == 0 && _incoming.get() == null) {
+      // nothing to expire: what is left in the wheel has been cancelled
+      _tick = Math.max(_tick, now);
+      return 0;
+    }
+    int expired = 0;
+    for (long tick = _tick + 1; tick <= now; tick++) {
+      _tick = tick;
+      transferIncoming();
+      expired += expireBucket(tick);
+    }
+    return expired;
+  }
+
+  void transferIncoming() {
+    Timeout timeout = _incoming.getAndSet(null);
+    while (timeout != null) {
+      Timeout next = timeout._next;
+      if (timeout._state == Timeout.SCHEDULED) {
+        // already due: expire on the tick being processed
+        int bucket = (int) (Math.max(timeout._deadline, _tick) & _mask);
+        Timeout head = _wheel[bucket];
+        timeout._previous = null;
+        timeout._next = head;
+        if (head != null) {
+          head._previous = timeout;
+        }
+        _wheel[bucket] = timeout;
+      } else {
+        timeout._next = null;
+      }
+      timeout = next;
+    }
+  }
+
+  int expireBucket(long tick) {
+    int bucket = (int) (tick & _mask);
+    int expired = 0;
+    Timeout timeout = _wheel[bucket];
+    while (timeout != null) {
+      Timeout next = timeout._next;
+      if (timeout._state == Timeout.CANCELLED) {
+        unlink(bucket, timeout);
+      } else if (timeout._deadline <= tick) {
+        unlink(bucket, timeout);
+        if (timeout.expire()) {
+          expired++;
+          try {
+            timeout.expired();
+          } catch (RuntimeException e) {
+            // a failing timeout must not prevent the others from expiring
+          }
+        }
+      }
+      timeout = next;
+    }
+    return expired;
+  }
+
+  void unlink(int bucket, Timeout timeout) {
+    if (timeout._previous != null) {
+      timeout._previous._next = timeout._next;
+    } else {
+      _wheel[bucket] = timeout._next;
+    }
+    if (timeout._next != null) {
+      timeout._next._previous = timeout._previous;
+    }
+    timeout._previous = null;
+    timeout._next = null;
+  }
+
+  void tickLoop() {
+    while (!_closed) {
+      long wait = _origin + (_tick + 1) * _tickNanos - _clock.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(this, wait);
+      } else {
+        advance();
+      }
+    }
+  }
+
+  /// <summary>
+  /// The number of timeouts scheduled and neither expired nor cancelled.
+  /// </summary>
+  public long getPending() {
+    return _pending.sum();
+  }
+
+  /// <summary>
+  /// The duration of a tick.
+  /// </summary>
+  public long getTickDuration(@Nonnull TimeUnit unit) {
+    return unit.convert(_tickNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /// <summary>
+  /// Stop the timer. Pending timeouts never expire and no more can be scheduled.
+  /// </summary>
+  public void close() {
+    _closed = true;
+    if (_worker != null && _worker != Thread.currentThread()) {
+      LockSupport.unpark(_worker);
+      try {
+        _worker.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package ifesdjeen.stateless4j.timer;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/// <summary>
+/// A task run once by a <see cref="HashedWheelTimer"/> after a delay, unless cancelled.
+/// </summary>
+/// <remarks>
+/// The timeout is itself the node the timer links into its wheel, so a pending timeout costs
+/// one object, its subclass' fields included. It can be scheduled once.
+/// </remarks>
+public abstract class Timeout {
+  static final int NEW = 0;
+  static final int SCHEDULED = 1;
+  static final int EXPIRED = 2;
+  static final int CANCELLED = 3;
+
+  static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "_state");
+
+  volatile int _state;
+  HashedWheelTimer _timer;
+  long _deadline; // tick at which it expires
+
+  // links in the incoming stack, then in the bucket, owned by the timer
+  Timeout _previous;
+  Timeout _next;
+
+  /// <summary>
+  /// Run on the thread advancing the timer once the delay has elapsed.
+  /// </summary>
+  protected abstract void expired();
+
+  /// <summary>
+  /// Prevent the timeout from expiring. The timer drops it the next time it visits
+  /// its bucket.
+  /// </summary>
+  /// <returns>True if it was pending; false if it had already expired or been cancelled.</returns>
+  public boolean cancel() {
+    if (!STATE.compareAndSet(this, SCHEDULED, CANCELLED)) {
+      return false;
+    }
+    _timer._pending.add(-1);
+    return true;
+  }
+
+  public boolean isCancelled() {
+    return _state == CANCELLED;
+  }
+
+  public boolean isExpired() {
+    return _state == EXPIRED;
+  }
+
+  boolean expire() {
+    if (!STATE.compareAndSet(this, SCHEDULED, EXPIRED)) {
+      return false;
+    }
+    _timer._pending.add(-1);
+    return true;
+  }
+}
@@ -0,0 +1,11 @@
+package ifesdjeen.stateless4j.timer;
+
+/// <summary>
+/// The time source of a <see cref="HashedWheelTimer"/>.
+/// </summary>
+public interface TimerClock {
+  /// <summary>
+  /// The current time in nanoseconds, from an arbitrary origin; only differences matter.
+  /// </summary>
+  long nanoTime();
+}
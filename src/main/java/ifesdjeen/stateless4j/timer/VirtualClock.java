@@ -0,0 +1,27 @@
+package ifesdjeen.stateless4j.timer;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/// <summary>
+/// A clock that only moves when told to, for driving a <see cref="HashedWheelTimer"/>
+/// deterministically, typically in tests.
+/// </summary>
+public class VirtualClock implements TimerClock {
+  volatile long _now;
+
+  public long nanoTime() {
+    return _now;
+  }
+
+  /// <summary>
+  /// Move the clock forward.
+  /// </summary>
+  public void advance(long duration, @Nonnull TimeUnit unit) {
+    if (duration < 0) {
+      throw new IllegalArgumentException("duration");
+    }
+    _now += unit.toNanos(duration);
+  }
+}
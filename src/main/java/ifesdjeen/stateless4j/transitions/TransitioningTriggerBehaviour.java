@@ -11,6 +11,10 @@ public class TransitioningTriggerBehaviour<TState, TTrigger> extends TriggerBeha
     _destination = destination;
   }
 
+  public TState getDestination() {
+    return _destination;
+  }
+
   public TState ResultsInTransitionFrom(TState source, Object... args) {
     return _destination;
   }
@@ -0,0 +1,16 @@
+package ifesdjeen.stateless4j.triggers;
+
+import ifesdjeen.stateless4j.delegates.Func;
+
+/// <summary>
+/// A dynamic transition whose destination is selected from the primitive argument of a
+/// <see cref="TriggerWithPrimitiveParameter"/>, passed as the bits of a <c>long</c>.
+/// </summary>
+public abstract class PrimitiveDynamicTriggerBehaviour<TState, TTrigger> extends TriggerBehaviour<TState, TTrigger> {
+
+  protected PrimitiveDynamicTriggerBehaviour(TTrigger trigger, Func<Boolean> guard) {
+    super(trigger, guard);
+  }
+
+  public abstract TState ResultsInTransitionFrom(TState source, long bits);
+}
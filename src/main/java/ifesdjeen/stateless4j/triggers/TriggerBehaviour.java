@@ -17,6 +17,10 @@ public abstract class TriggerBehaviour<TState, TTrigger> {
     return _trigger;
   }
 
+  public Func<Boolean> getGuard() {
+    return _guard;
+  }
+
   public Boolean isGuardConditionMet() {
     return _guard.call();
   }
@@ -0,0 +1,15 @@
+package ifesdjeen.stateless4j.triggers;
+
+public class TriggerWithDoubleParameter<TState, TTrigger> extends TriggerWithPrimitiveParameter<TState, TTrigger> {
+  /// <summary>
+  /// Create a configured trigger.
+  /// </summary>
+  /// <param name="underlyingTrigger">Trigger represented by this trigger configuration.</param>
+  public TriggerWithDoubleParameter(TTrigger underlyingTrigger) {
+    super(underlyingTrigger, Double.class);
+  }
+
+  public Object box(long bits) {
+    return Double.longBitsToDouble(bits);
+  }
+}
@@ -0,0 +1,15 @@
+package ifesdjeen.stateless4j.triggers;
+
+public class TriggerWithLongParameter<TState, TTrigger> extends TriggerWithPrimitiveParameter<TState, TTrigger> {
+  /// <summary>
+  /// Create a configured trigger.
+  /// </summary>
+  /// <param name="underlyingTrigger">Trigger represented by this trigger configuration.</param>
+  public TriggerWithLongParameter(TTrigger underlyingTrigger) {
+    super(underlyingTrigger, Long.class);
+  }
+
+  public Object box(long bits) {
+    return bits;
+  }
+}
@@ -9,6 +9,9 @@ import javax.annotation.Nonnull;
 public abstract class TriggerWithParameters<TState, TTrigger> {
   final TTrigger underlyingTrigger;
   final Class<?>[] argumentTypes;
+  // per position, the runtime class of the last argument accepted there; written without
+  // synchronisation, as any class seen by another thread has been validated
+  final Class<?>[] acceptedTypes;
 
   /// <summary>
   /// Create a configured trigger.
@@ -18,6 +21,7 @@ public abstract class TriggerWithParameters<TState, TTrigger> {
   public TriggerWithParameters(@Nonnull TTrigger underlyingTrigger, Class<?>... argumentTypes) {
     this.underlyingTrigger = underlyingTrigger;
     this.argumentTypes = argumentTypes;
+    this.acceptedTypes = new Class<?>[argumentTypes.length];
   }
 
   /// <summary>
@@ -32,7 +36,31 @@ public abstract class TriggerWithParameters<TState, TTrigger> {
   /// trigger.
   /// </summary>
   /// <param name="args"></param>
+  /// <remarks>
+  /// Arguments of the same runtime classes as the last accepted ones are accepted
+  /// without consulting the configured types again.
+  /// </remarks>
   public void ValidateParameters(@Nonnull Object[] args) throws StateMachineConfigurationException {
+    if (isAccepted(args)) {
+      return;
+    }
     ParameterConversion.Validate(args, argumentTypes);
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] != null) {
+        acceptedTypes[i] = args[i].getClass();
+      }
+    }
+  }
+
+  boolean isAccepted(Object[] args) {
+    if (args.length != acceptedTypes.length) {
+      return false;
+    }
+    for (int i = 0; i < args.length; i++) {
+      if (args[i] != null && args[i].getClass() != acceptedTypes[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 }
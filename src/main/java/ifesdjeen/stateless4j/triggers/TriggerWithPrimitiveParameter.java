@@ -0,0 +1,22 @@
+package ifesdjeen.stateless4j.triggers;
+
+/// <summary>
+/// A trigger taking a single primitive argument, fired without boxing it or allocating an
+/// argument array. The argument is carried as the bits of a <c>long</c>.
+/// </summary>
+public abstract class TriggerWithPrimitiveParameter<TState, TTrigger> extends TriggerWithParameters<TState, TTrigger> {
+  /// <summary>
+  /// Create a configured trigger.
+  /// </summary>
+  /// <param name="underlyingTrigger">Trigger represented by this trigger configuration.</param>
+  /// <param name="boxedType">The wrapper type of the argument, accepted when the trigger
+  /// is fired with untyped arguments.</param>
+  protected TriggerWithPrimitiveParameter(TTrigger underlyingTrigger, Class<?> boxedType) {
+    super(underlyingTrigger, boxedType);
+  }
+
+  /// <summary>
+  /// The argument carried by the bits, boxed, for the paths that need an argument array.
+  /// </summary>
+  public abstract Object box(long bits);
+}
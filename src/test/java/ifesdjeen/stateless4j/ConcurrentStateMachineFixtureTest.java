@@ -0,0 +1,165 @@
+package ifesdjeen.stateless4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action2;
+
+
+public class ConcurrentStateMachineFixtureTest {
+  static final int THREADS = 4;
+  static final int FIRES_PER_THREAD = 20000;
+
+  final AtomicInteger entries = new AtomicInteger();
+  final AtomicInteger rejected = new AtomicInteger();
+  final AtomicBoolean inAction = new AtomicBoolean();
+  final AtomicBoolean overlapped = new AtomicBoolean();
+
+  final Action enter = new Action() {
+    public void doIt() {
+      if (!inAction.compareAndSet(false, true)) {
+        overlapped.set(true);
+      }
+      entries.incrementAndGet();
+      inAction.set(false);
+    }
+  };
+
+  ConcurrentStateMachine<State, Trigger> CreateMachine(ConcurrentFirePolicy policy) throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+
+    definition.Configure(State.A)
+            .OnEntry(enter)
+            .Permit(Trigger.X, State.B);
+
+    definition.Configure(State.B)
+            .OnEntry(enter)
+            .Permit(Trigger.X, State.A);
+
+    ConcurrentStateMachine<State, Trigger> sm = new ConcurrentStateMachine<State, Trigger>(State.A, definition, policy);
+    sm.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+        rejected.incrementAndGet();
+      }
+    });
+    return sm;
+  }
+
+  void FireFromManyThreads(final StateMachine<State, Trigger> sm) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread[] threads = new Thread[THREADS];
+    for (int i = 0; i < THREADS; i++) {
+      threads[i] = new Thread() {
+        public void run() {
+          try {
+            start.await();
+            for (int j = 0; j < FIRES_PER_THREAD; j++) {
+              sm.Fire(Trigger.X);
+            }
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      };
+      threads[i].start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  @Test
+  public void WithRetry_EveryFireCommitsExactlyOneTransition() throws Exception {
+    ConcurrentStateMachine<State, Trigger> sm = CreateMachine(ConcurrentFirePolicy.Retry);
+
+    FireFromManyThreads(sm);
+
+    Assert.assertEquals(THREADS * FIRES_PER_THREAD, entries.get());
+    Assert.assertEquals(0, rejected.get());
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test
+  public void WithReject_LosingFiresAreReportedAsUnhandled() throws Exception {
+    ConcurrentStateMachine<State, Trigger> sm = CreateMachine(ConcurrentFirePolicy.Reject);
+
+    FireFromManyThreads(sm);
+
+    Assert.assertEquals(THREADS * FIRES_PER_THREAD, entries.get() + rejected.get());
+    Assert.assertEquals(entries.get() % 2 == 0 ? State.A : State.B, sm.getState());
+  }
+
+  @Test
+  public void WithQueue_TransitionsNeverOverlap() throws Exception {
+    ConcurrentStateMachine<State, Trigger> sm = CreateMachine(ConcurrentFirePolicy.Queue);
+
+    FireFromManyThreads(sm);
+
+    Assert.assertEquals(THREADS * FIRES_PER_THREAD, entries.get());
+    Assert.assertFalse(overlapped.get());
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test
+  public void WithQueue_FailingUnhandledActionsDoNotStopTheMachine() throws Exception {
+    ConcurrentStateMachine<State, Trigger> sm = CreateMachine(ConcurrentFirePolicy.Queue);
+    sm.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+        throw new IllegalStateException("unhandled");
+      }
+    });
+
+    try {
+      sm.Fire(Trigger.Y);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      Assert.assertEquals("unhandled", e.getMessage());
+    }
+
+    Assert.assertEquals(FireAllResult.TRANSITIONED, sm.FireValidated(null, Trigger.X, StateMachine.NoArguments));
+    Assert.assertEquals(State.B, sm.getState());
+  }
+
+  @Test
+  public void WithQueue_FireFromAnActionRunsAfterTheCurrentTransition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    final StringBuilder order = new StringBuilder();
+    final StateMachine<State, Trigger>[] machine = new StateMachine[1];
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                order.append("enterB ");
+                try {
+                  machine[0].Fire(Trigger.Y);
+                } catch (Exception e) {
+                  throw new RuntimeException(e);
+                }
+                order.append("enteredB ");
+              }
+            })
+            .Permit(Trigger.Y, State.C);
+
+    definition.Configure(State.C)
+            .OnEntry(new Action() {
+              public void doIt() {
+                order.append("enterC ");
+              }
+            });
+
+    machine[0] = new ConcurrentStateMachine<State, Trigger>(State.A, definition, ConcurrentFirePolicy.Queue);
+    machine[0].Fire(Trigger.X);
+
+    Assert.assertEquals("enterB enteredB enterC ", order.toString());
+    Assert.assertEquals(State.C, machine[0].getState());
+  }
+}
@@ -0,0 +1,100 @@
+package ifesdjeen.stateless4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Func;
+
+
+public class EnumTransitionTableFixtureTest {
+
+  Boolean guard = false;
+
+  final Func<Boolean> guardAccessor = new Func<Boolean>() {
+    public Boolean call() {
+      return guard;
+    }
+  };
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    definition.Configure(State.B)
+            .SubstateOf(State.C)
+            .PermitIf(Trigger.Y, State.C, guardAccessor);
+
+    definition.Configure(State.C)
+            .Permit(Trigger.Y, State.A)
+            .Permit(Trigger.Z, State.A)
+            .Ignore(Trigger.X);
+
+    return definition;
+  }
+
+  @Test
+  public void CompilingFreezesTheDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition().compile(State.class, Trigger.class);
+
+    Assert.assertTrue(definition.isFrozen());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void OnlyEnumsCanBeCompiled() throws Exception {
+    new StateMachineDefinition<String, String>().compile(String.class, String.class);
+  }
+
+  @Test
+  public void UnguardedTransitionIsTaken() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.A);
+
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(State.B, sm.getState());
+  }
+
+  @Test
+  public void SuperstateHandlerIsInherited() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.B);
+
+    Assert.assertTrue(sm.CanFire(Trigger.Z));
+    sm.Fire(Trigger.Z);
+
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test
+  public void SuperstateIgnoreIsInherited() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.B);
+
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(State.B, sm.getState());
+  }
+
+  @Test
+  public void GuardsAreEvaluatedWhenFired() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.B);
+
+    guard = true;
+    sm.Fire(Trigger.Y);
+    Assert.assertEquals(State.C, sm.getState());
+
+    sm = CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.B);
+    guard = false;
+    sm.Fire(Trigger.Y);
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test
+  public void UnhandledTriggerCannotBeFired() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.A);
+
+    Assert.assertFalse(sm.CanFire(Trigger.Y));
+    sm.Fire(Trigger.Y);
+
+    Assert.assertEquals(State.A, sm.getState());
+  }
+}
@@ -0,0 +1,91 @@
+package ifesdjeen.stateless4j;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.exceptions.StateMachineConfigurationException;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+
+
+public class FireAllFixtureTest {
+
+  @Test
+  public void FiresEachTriggerInOrder() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm.Configure(State.A).Permit(Trigger.X, State.B);
+    sm.Configure(State.B).Permit(Trigger.Y, State.C);
+    sm.Configure(State.C).Permit(Trigger.Z, State.A);
+
+    FireAllResult result = sm.FireAll(Arrays.asList(Trigger.X, Trigger.Y, Trigger.Z, Trigger.X));
+
+    Assert.assertEquals(State.B, sm.getState());
+    Assert.assertEquals(4, result.getTransitioned());
+  }
+
+  @Test
+  public void CountsIgnoredAndUnhandledTriggers() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm.Configure(State.A).Permit(Trigger.X, State.B);
+    sm.Configure(State.B).Ignore(Trigger.X);
+
+    FireAllResult result = sm.FireAll(new Trigger[]{Trigger.X, Trigger.X, Trigger.Y}, null);
+
+    Assert.assertEquals(State.B, sm.getState());
+    Assert.assertEquals(1, result.getTransitioned());
+    Assert.assertEquals(1, result.getIgnored());
+    Assert.assertEquals(1, result.getUnhandled());
+  }
+
+  @Test
+  public void PassesArgumentsOfEachTrigger() throws Exception {
+    final StringBuilder entered = new StringBuilder();
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    TriggerWithParameters1<String, State, Trigger> x = sm.SetTriggerParameters(Trigger.X, String.class);
+    sm.Configure(State.A)
+            .PermitReentry(Trigger.X)
+            .OnEntryFrom(x, new Action1<String>() {
+              public void doIt(String arg) {
+                entered.append(arg);
+              }
+            }, String.class);
+
+    FireAllResult result = sm.FireAll(new Trigger[]{Trigger.X, Trigger.X, Trigger.X},
+                                      new Object[][]{{"a"}, {"b"}, {"c"}});
+
+    Assert.assertEquals("abc", entered.toString());
+    Assert.assertEquals(3, result.getTransitioned());
+  }
+
+  @Test
+  public void InvalidArgumentsStopTheBatchAfterEarlierTriggers() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm.SetTriggerParameters(Trigger.Y, String.class);
+    sm.Configure(State.A).Permit(Trigger.X, State.B);
+    sm.Configure(State.B).Permit(Trigger.Y, State.C);
+
+    try {
+      sm.FireAll(new Trigger[]{Trigger.X, Trigger.Y}, new Object[][]{null, {1}});
+      Assert.fail();
+    } catch (StateMachineConfigurationException e) {
+      Assert.assertEquals(State.B, sm.getState());
+    }
+  }
+
+  @Test
+  public void ConcurrentMachineReportsOutcomes() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A).Permit(Trigger.X, State.B);
+    definition.Configure(State.B).Ignore(Trigger.X);
+
+    StateMachine<State, Trigger> sm = new ConcurrentStateMachine<State, Trigger>(State.A, definition, ConcurrentFirePolicy.Retry);
+    FireAllResult result = sm.FireAll(Arrays.asList(Trigger.X, Trigger.X, Trigger.Z));
+
+    Assert.assertEquals(State.B, sm.getState());
+    Assert.assertEquals(1, result.getTransitioned());
+    Assert.assertEquals(1, result.getIgnored());
+    Assert.assertEquals(1, result.getUnhandled());
+  }
+}
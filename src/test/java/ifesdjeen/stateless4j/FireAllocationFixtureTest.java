@@ -0,0 +1,136 @@
+package ifesdjeen.stateless4j;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.delegates.LongAction1;
+import ifesdjeen.stateless4j.delegates.LongFunc2;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
+
+
+public class FireAllocationFixtureTest {
+  static final int FIRES = 10000;
+
+  com.sun.management.ThreadMXBean threads;
+  int entered;
+  long sequence;
+  boolean open = true;
+
+  @Before
+  public void SetUp() {
+    Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  // B is a substate of A; A ignores Z, which B inherits
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B)
+            .Ignore(Trigger.Z)
+            .OnEntry(new Action() {
+              public void doIt() {
+                entered++;
+              }
+            });
+    definition.Configure(State.B)
+            .SubstateOf(State.A)
+            .PermitIf(Trigger.Y, State.C, new Func<Boolean>() {
+              public Boolean call() {
+                return open;
+              }
+            });
+    definition.Configure(State.C)
+            .Permit(Trigger.X, State.A);
+    return definition;
+  }
+
+  long AllocatedBytesFiring(StateMachine<State, Trigger> sm) throws Exception {
+    long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    for (int i = 0; i < FIRES; i++) {
+      sm.Fire(Trigger.X);  // A -> B, or C -> A
+      sm.Fire(Trigger.Z);  // ignored
+      sm.Fire(Trigger.Y);  // guarded B -> C, unhandled in A
+    }
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+  }
+
+  void AssertFireDoesNotAllocate(StateMachine<State, Trigger> sm) throws Exception {
+    AllocatedBytesFiring(sm); // warm up: builds transition paths and loads classes
+    long allocated = AllocatedBytesFiring(sm);
+
+    // allow for the odd allocation by the bean itself, but not one per fire
+    Assert.assertTrue("allocated " + allocated + " bytes", allocated < FIRES);
+    Assert.assertTrue(entered > 0);
+  }
+
+  @Test
+  public void FireOnFrozenDefinitionDoesNotAllocate() throws Exception {
+    AssertFireDoesNotAllocate(CreateDefinition().CreateMachine(State.A));
+  }
+
+  @Test
+  public void FireOnCompiledDefinitionDoesNotAllocate() throws Exception {
+    AssertFireDoesNotAllocate(CreateDefinition().compile(State.class, Trigger.class).CreateMachine(State.A));
+  }
+
+  @Test
+  public void FireNotifyingListenersDoesNotAllocate() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.AddTransitionListener(new TransitionListener<State, Trigger>() {
+      public void onTransitioned(Transition<State, Trigger> transition) {
+        sequence++;
+      }
+
+      public void onUnhandled(State state, Trigger trigger) {
+        sequence--;
+      }
+    });
+
+    AssertFireDoesNotAllocate(definition.CreateMachine(State.A));
+    Assert.assertTrue(sequence > 0);
+  }
+
+  @Test
+  public void FireWithPrimitiveArgumentDoesNotAllocate() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    final TriggerWithLongParameter<State, Trigger> next = definition.SetLongTriggerParameter(Trigger.X);
+    definition.Configure(State.A)
+            .PermitDynamic(next, new LongFunc2<State>() {
+              public State call(long arg0) {
+                return arg0 % 2 == 0 ? State.A : State.B;
+              }
+            })
+            .OnEntryFrom(next, new LongAction1() {
+              public void doIt(long arg1) {
+                sequence = arg1;
+                entered++;
+              }
+            });
+    definition.Configure(State.B)
+            .Permit(Trigger.X, State.A);
+    final StateMachine<State, Trigger> sm = definition.CreateMachine(State.A);
+
+    // values outside the Long cache would allocate if boxed
+    long before = 0;
+    for (int round = 0; round < 2; round++) {
+      before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+      for (long i = 1000; i < 1000 + FIRES; i++) {
+        sm.Fire(next, i);
+      }
+    }
+    long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+
+    Assert.assertTrue("allocated " + allocated + " bytes", allocated < FIRES);
+    Assert.assertEquals(1000 + FIRES - 2, sequence);
+  }
+}
@@ -0,0 +1,164 @@
+package ifesdjeen.stateless4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action2;
+
+
+public class FiringModeFixtureTest {
+  final StringBuilder order = new StringBuilder();
+  StateMachine<State, Trigger> sm;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition(FiringMode firingMode) throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setFiringMode(firingMode);
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                order.append("enterB ");
+                fire(Trigger.Y);
+                order.append("enteredB ");
+              }
+            })
+            .OnExit(new Action() {
+              public void doIt() {
+                order.append("exitB ");
+              }
+            })
+            .Permit(Trigger.Y, State.C);
+
+    definition.Configure(State.C)
+            .OnEntry(new Action() {
+              public void doIt() {
+                order.append("enterC ");
+              }
+            });
+
+    return definition;
+  }
+
+  void fire(Trigger trigger) {
+    try {
+      sm.Fire(trigger);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Test
+  public void DefaultFiringModeIsImmediate() {
+    Assert.assertEquals(FiringMode.Immediate, new StateMachineDefinition<State, Trigger>().getFiringMode());
+  }
+
+  @Test
+  public void ImmediateModeRunsNestedTransitionInsideTheCurrentOne() throws Exception {
+    sm = CreateDefinition(FiringMode.Immediate).CreateMachine(State.A);
+
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals("enterB exitB enterC enteredB ", order.toString());
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void QueuedModeRunsNestedTransitionAfterTheCurrentOne() throws Exception {
+    sm = CreateDefinition(FiringMode.Queued).CreateMachine(State.A);
+
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals("enterB enteredB exitB enterC ", order.toString());
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void QueuedModeRunsLongChainsWithoutGrowingTheStack() throws Exception {
+    final int[] remaining = {200000};
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setFiringMode(FiringMode.Queued);
+
+    definition.Configure(State.A)
+            .OnEntry(new Action() {
+              public void doIt() {
+                if (--remaining[0] > 0) {
+                  fire(Trigger.X);
+                }
+              }
+            })
+            .PermitReentry(Trigger.X);
+
+    sm = definition.CreateMachine(State.A);
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(0, remaining[0]);
+  }
+
+  @Test
+  public void QueuedModeRunsTheRemainingTriggersWhenOneThrows() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setFiringMode(FiringMode.Queued);
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                // Z is unhandled in B
+                fire(Trigger.Z);
+                fire(Trigger.Y);
+              }
+            })
+            .Permit(Trigger.Y, State.C);
+    definition.Configure(State.C)
+            .Permit(Trigger.X, State.A);
+    definition.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+        throw new IllegalStateException(trigger.toString());
+      }
+    });
+
+    sm = definition.CreateMachine(State.A);
+    try {
+      sm.Fire(Trigger.X);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+    }
+    Assert.assertEquals(State.C, sm.getState());
+
+    // nothing is left queued to run after the next trigger
+    sm.Fire(Trigger.X);
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test
+  public void QueuedModeKeepsManyPendingTriggersInOrder() throws Exception {
+    final int[] entries = {0};
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setFiringMode(FiringMode.Queued);
+
+    definition.Configure(State.A)
+            .OnEntry(new Action() {
+              public void doIt() {
+                if (entries[0]++ == 0) {
+                  for (int i = 0; i < 10; i++) {
+                    fire(Trigger.Y);
+                  }
+                  fire(Trigger.X);
+                }
+              }
+            })
+            .PermitReentry(Trigger.Y)
+            .Permit(Trigger.X, State.B);
+
+    sm = definition.CreateMachine(State.A);
+    sm.Fire(Trigger.Y);
+
+    Assert.assertEquals(11, entries[0]);
+    Assert.assertEquals(State.B, sm.getState());
+  }
+}
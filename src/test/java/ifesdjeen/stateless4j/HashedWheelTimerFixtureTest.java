@@ -0,0 +1,96 @@
+package ifesdjeen.stateless4j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
+import ifesdjeen.stateless4j.timer.Timeout;
+import ifesdjeen.stateless4j.timer.VirtualClock;
+
+
+public class HashedWheelTimerFixtureTest {
+  final VirtualClock clock = new VirtualClock();
+  final HashedWheelTimer timer = new HashedWheelTimer(clock, 10, TimeUnit.MILLISECONDS, 8);
+
+  static class CountingTimeout extends Timeout {
+    int expirations;
+
+    protected void expired() {
+      expirations++;
+    }
+  }
+
+  @Test
+  public void TimeoutExpiresOnceItsDelayHasElapsed() {
+    CountingTimeout timeout = timer.schedule(new CountingTimeout(), 25, TimeUnit.MILLISECONDS);
+
+    clock.advance(20, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(0, timer.advance());
+    clock.advance(10, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(1, timer.advance());
+    clock.advance(100, TimeUnit.MILLISECONDS);
+    timer.advance();
+
+    Assert.assertEquals(1, timeout.expirations);
+    Assert.assertTrue(timeout.isExpired());
+    Assert.assertEquals(0, timer.getPending());
+  }
+
+  @Test
+  public void TimeoutBeyondOneTurnOfTheWheelWaitsForItsRound() {
+    CountingTimeout timeout = timer.schedule(new CountingTimeout(), 250, TimeUnit.MILLISECONDS);
+
+    clock.advance(240, TimeUnit.MILLISECONDS);
+    timer.advance();
+    Assert.assertEquals(0, timeout.expirations);
+
+    clock.advance(10, TimeUnit.MILLISECONDS);
+    timer.advance();
+    Assert.assertEquals(1, timeout.expirations);
+  }
+
+  @Test
+  public void CancelledTimeoutNeverExpires() {
+    CountingTimeout cancelled = timer.schedule(new CountingTimeout(), 10, TimeUnit.MILLISECONDS);
+    CountingTimeout kept = timer.schedule(new CountingTimeout(), 10, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(2, timer.getPending());
+
+    Assert.assertTrue(cancelled.cancel());
+    Assert.assertFalse(cancelled.cancel());
+    Assert.assertEquals(1, timer.getPending());
+
+    clock.advance(10, TimeUnit.MILLISECONDS);
+    timer.advance();
+
+    Assert.assertEquals(0, cancelled.expirations);
+    Assert.assertEquals(1, kept.expirations);
+    Assert.assertFalse(kept.cancel());
+  }
+
+  @Test
+  public void TimeoutScheduledFromAnExpiringOneRunsOnALaterTick() {
+    final CountingTimeout second = new CountingTimeout();
+    timer.schedule(new Timeout() {
+      protected void expired() {
+        timer.schedule(second, 0, TimeUnit.MILLISECONDS);
+      }
+    }, 10, TimeUnit.MILLISECONDS);
+
+    clock.advance(10, TimeUnit.MILLISECONDS);
+    timer.advance();
+    Assert.assertEquals(0, second.expirations);
+
+    clock.advance(10, TimeUnit.MILLISECONDS);
+    timer.advance();
+    Assert.assertEquals(1, second.expirations);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void TimeoutCannotBeScheduledTwice() {
+    CountingTimeout timeout = timer.schedule(new CountingTimeout(), 10, TimeUnit.MILLISECONDS);
+
+    timer.schedule(timeout, 10, TimeUnit.MILLISECONDS);
+  }
+}
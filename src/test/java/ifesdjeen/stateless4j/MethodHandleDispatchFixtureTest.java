@@ -0,0 +1,221 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+
+
+public class MethodHandleDispatchFixtureTest {
+
+  boolean left;
+  boolean right;
+  boolean failing;
+
+  final Func<Boolean> leftGuard = new Func<Boolean>() {
+    public Boolean call() {
+      return left;
+    }
+  };
+
+  final Func<Boolean> rightGuard = new Func<Boolean>() {
+    public Boolean call() {
+      return right;
+    }
+  };
+
+  TriggerWithParameters1<Integer, State, Trigger> z;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition(final List<String> log) throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    z = definition.SetTriggerParameters(Trigger.Z, Integer.class);
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B)
+            .PermitIf(Trigger.Y, State.C, leftGuard)
+            .PermitIf(Trigger.Y, State.B, rightGuard)
+            .PermitDynamic(Trigger.Z, new Func<State>() {
+              public State call() {
+                return left ? State.B : State.C;
+              }
+            })
+            .OnEntry(new Action1<Transition<State, Trigger>>() {
+              public void doIt(Transition<State, Trigger> transition) {
+                log.add("enter A from " + transition.getSource());
+              }
+            })
+            .OnExit(new Action() {
+              public void doIt() {
+                log.add("exit A");
+              }
+            });
+
+    definition.Configure(State.B)
+            .SubstateOf(State.C)
+            .PermitReentryIf(Trigger.X, rightGuard)
+            .PermitIf(Trigger.Z, State.A, leftGuard)
+            .OnEntry(new Action() {
+              public void doIt() {
+                log.add("enter B");
+              }
+            })
+            .OnEntryFrom(z, new Action1<Integer>() {
+              public void doIt(Integer value) {
+                log.add("enter B with " + value);
+              }
+            }, Integer.class)
+            .OnExit(new Action() {
+              public void doIt() {
+                log.add("exit B");
+              }
+            });
+
+    definition.Configure(State.C)
+            .Permit(Trigger.Y, State.A)
+            .Permit(Trigger.Z, State.A)
+            .Ignore(Trigger.X)
+            .OnEntry(new Action() {
+              public void doIt() {
+                log.add("enter C");
+                if (failing) {
+                  throw new IllegalStateException("failing");
+                }
+              }
+            })
+            .OnExit(new Action() {
+              public void doIt() {
+                log.add("exit C");
+              }
+            });
+
+    definition.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+        log.add("unhandled " + trigger + " in " + state);
+      }
+    });
+    definition.AddTransitionListener(new TransitionListener<State, Trigger>() {
+      public void onTransitioned(Transition<State, Trigger> transition) {
+        log.add("transitioned " + transition.getSource() + "->" + transition.getDestination());
+      }
+
+      public void onUnhandled(State state, Trigger trigger) {
+      }
+    });
+    return definition;
+  }
+
+  @Test
+  public void CompilingToHandlesFreezesTheDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition(new ArrayList<String>()).compileHandles(State.class, Trigger.class);
+
+    Assert.assertTrue(definition.isFrozen());
+    Assert.assertNotNull(definition._handles);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void OnlyEnumsCanBeCompiledToHandles() throws Exception {
+    new StateMachineDefinition<String, String>().compileHandles(String.class, String.class);
+  }
+
+  @Test
+  public void DynamicDestinationsAreInterpreted() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition(new ArrayList<String>()).compileHandles(State.class, Trigger.class);
+
+    Assert.assertNull(definition._handles.HandleFor(State.A, Trigger.Z));
+    Assert.assertNotNull(definition._handles.HandleFor(State.A, Trigger.X));
+    Assert.assertNotNull(definition._handles.HandleFor(State.B, Trigger.Z));
+  }
+
+  @Test
+  public void DefinitionsCollectingMetricsAreRejected() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition(new ArrayList<String>());
+    definition.setMetricsEnabled(true);
+
+    try {
+      definition.compileHandles(State.class, Trigger.class);
+      Assert.fail();
+    } catch (IllegalStateException e) {
+      Assert.assertEquals(StateMachineResources.CompiledHandlesCollectNoMetrics, e.getMessage());
+    }
+    Assert.assertNull(definition._handles);
+    Assert.assertFalse(definition.isFrozen());
+  }
+
+  @Test
+  public void CompiledMachineBehavesAsTheInterpretedOne() throws Exception {
+    List<String> compiledLog = new ArrayList<String>();
+    List<String> interpretedLog = new ArrayList<String>();
+    StateMachineDefinition<State, Trigger> compiled = CreateDefinition(compiledLog).compileHandles(State.class, Trigger.class);
+    TriggerWithParameters1<Integer, State, Trigger> compiledZ = z;
+    StateMachineDefinition<State, Trigger> interpreted = CreateDefinition(interpretedLog);
+    TriggerWithParameters1<Integer, State, Trigger> interpretedZ = z;
+    Random random = new Random(42);
+
+    for (State initial : State.values()) {
+      StateMachine<State, Trigger> compiledMachine = compiled.CreateMachine(initial);
+      StateMachine<State, Trigger> interpretedMachine = interpreted.CreateMachine(initial);
+
+      for (int step = 0; step < 1000; step++) {
+        left = random.nextBoolean();
+        right = random.nextBoolean();
+        failing = random.nextInt(4) == 0;
+        Trigger trigger = Trigger.values()[random.nextInt(Trigger.values().length)];
+
+        if (trigger == Trigger.Z) {
+          compiledMachine.Fire(compiledZ, step);
+          interpretedMachine.Fire(interpretedZ, step);
+        } else {
+          compiledMachine.Fire(trigger);
+          interpretedMachine.Fire(trigger);
+        }
+
+        String at = initial + ", step " + step + ", " + trigger;
+        Assert.assertEquals(at, interpretedMachine.getState(), compiledMachine.getState());
+        Assert.assertEquals(at, interpretedLog, compiledLog);
+      }
+    }
+  }
+
+  @Test
+  public void FailingActionsAreReported() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition(new ArrayList<String>())
+            .compileHandles(State.class, Trigger.class)
+            .CreateMachine(State.B);
+    left = true;
+    failing = true;
+
+    FireAllResult result = sm.FireAll(Collections.singletonList(Trigger.X));
+
+    Assert.assertEquals(1, result.getIgnored());
+    result = sm.FireAll(Arrays.asList(Trigger.Y, Trigger.Y));
+    Assert.assertEquals(1, result.getFailed());
+    Assert.assertEquals(1, result.getTransitioned());
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void ListenerExceptionsAreNotCaught() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition(new ArrayList<String>());
+    definition.AddTransitionListener(new TransitionListener<State, Trigger>() {
+      public void onTransitioned(Transition<State, Trigger> transition) {
+        throw new IllegalStateException("listener");
+      }
+
+      public void onUnhandled(State state, Trigger trigger) {
+      }
+    });
+    definition.compileHandles(State.class, Trigger.class).CreateMachine(State.A).Fire(Trigger.X);
+  }
+}
@@ -0,0 +1,137 @@
+package ifesdjeen.stateless4j;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+
+
+public class OffHeapStateStoreFixtureTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  int entered;
+  TriggerWithIntParameter<State, Trigger> z;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    z = definition.SetIntTriggerParameter(Trigger.Z);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .OnEntry(new Action1<Transition<State, Trigger>>() {
+              public void doIt(Transition<State, Trigger> transition) {
+                entered++;
+              }
+            })
+            .Permit(Trigger.Y, State.A)
+            .Permit(Trigger.Z, State.C);
+    return definition;
+  }
+
+  @Test
+  public void EntitiesHaveIndependentStates() throws Exception {
+    OffHeapStateStore<State, Trigger> store = new OffHeapStateStore<State, Trigger>(CreateDefinition(), State.class, 1000, State.A);
+
+    store.Fire(3, Trigger.X);
+    store.Fire(999, Trigger.X);
+    store.Fire(999, z, 42);
+
+    Assert.assertEquals(State.A, store.getState(0));
+    Assert.assertEquals(State.B, store.getState(3));
+    Assert.assertEquals(State.C, store.getState(999));
+    Assert.assertEquals(2, entered);
+    Assert.assertTrue(store.getPermittedTriggers(3).contains(Trigger.Y));
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void EntityIdsAreBoundedByCapacity() throws Exception {
+    new OffHeapStateStore<State, Trigger>(CreateDefinition(), State.class, 10, State.A).Fire(10, Trigger.X);
+  }
+
+  @Test
+  public void UnhandledTriggersLeaveTheEntityInItsState() throws Exception {
+    OffHeapStateStore<State, Trigger> store = new OffHeapStateStore<State, Trigger>(CreateDefinition(), State.class, 10, State.A);
+    final State[] unhandled = {null};
+    store.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+        unhandled[0] = state;
+      }
+    });
+
+    store.Fire(1, Trigger.Y);
+
+    Assert.assertEquals(State.A, unhandled[0]);
+    Assert.assertEquals(State.A, store.getState(1));
+  }
+
+  @Test
+  public void ActionsMayFireForTheEntityBeingFired() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition().setFiringMode(FiringMode.Queued);
+    final OffHeapStateStore<State, Trigger>[] store = new OffHeapStateStore[1];
+    definition.Configure(State.A)
+            .OnExit(new Action1<Transition<State, Trigger>>() {
+              public void doIt(Transition<State, Trigger> transition) {
+                try {
+                  store[0].Fire(5, Trigger.Y);
+                } catch (Exception e) {
+                  throw new RuntimeException(e);
+                }
+              }
+            });
+    store[0] = new OffHeapStateStore<State, Trigger>(definition, State.class, 10, State.A);
+
+    store[0].Fire(5, Trigger.X);
+
+    // X took the entity to B, then the queued Y took it back to A
+    Assert.assertEquals(State.A, store[0].getState(5));
+    Assert.assertEquals(1, entered);
+  }
+
+  @Test
+  public void ActionsMayNotFireForOtherEntities() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    final OffHeapStateStore<State, Trigger>[] store = new OffHeapStateStore[1];
+    final Exception[] rejected = {null};
+    definition.Configure(State.A)
+            .OnExit(new Action1<Transition<State, Trigger>>() {
+              public void doIt(Transition<State, Trigger> transition) {
+                try {
+                  store[0].Fire(6, Trigger.X);
+                } catch (Exception e) {
+                  rejected[0] = e;
+                }
+              }
+            });
+    store[0] = new OffHeapStateStore<State, Trigger>(definition, State.class, 10, State.A);
+
+    store[0].Fire(5, Trigger.X);
+
+    Assert.assertTrue(rejected[0] instanceof IllegalStateException);
+    Assert.assertEquals(State.B, store[0].getState(5));
+    Assert.assertEquals(State.A, store[0].getState(6));
+  }
+
+  @Test
+  public void MappedStoreKeepsStatesAcrossInstances() throws Exception {
+    File file = new File(folder.getRoot(), "states");
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    OffHeapStateStore<State, Trigger> store = new OffHeapStateStore<State, Trigger>(definition, State.class, 100, State.B, file);
+    store.Fire(7, Trigger.Y);
+    store.force();
+
+    OffHeapStateStore<State, Trigger> reopened = new OffHeapStateStore<State, Trigger>(definition, State.class, 200, State.C, file);
+
+    Assert.assertEquals(State.A, reopened.getState(7));
+    Assert.assertEquals(State.B, reopened.getState(99));
+    Assert.assertEquals(State.C, reopened.getState(100));
+    Assert.assertEquals(State.C, reopened.getState(199));
+  }
+}
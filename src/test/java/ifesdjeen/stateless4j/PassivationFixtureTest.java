@@ -0,0 +1,327 @@
+package ifesdjeen.stateless4j;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ifesdjeen.stateless4j.codec.Codec;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action2;
+import ifesdjeen.stateless4j.passivation.EvictionPolicy;
+import ifesdjeen.stateless4j.passivation.FilePassivationStore;
+import ifesdjeen.stateless4j.passivation.PassivationException;
+import ifesdjeen.stateless4j.resources.StateMachineResources;
+import ifesdjeen.stateless4j.timer.VirtualClock;
+
+
+public class PassivationFixtureTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  static final Codec<Long> LONG_CODEC = new Codec<Long>() {
+    public int sizeOf(Long value) {
+      return 8;
+    }
+
+    public void write(Long value, ByteBuffer buffer) {
+      buffer.putLong(value);
+    }
+
+    public Long read(ByteBuffer buffer) {
+      return buffer.getLong();
+    }
+  };
+
+  int entered;
+  FilePassivationStore<Long, State> store;
+  StateMachineRegistry<Long, State, Trigger> registry;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .Permit(Trigger.Y, State.C)
+            .OnEntry(new Action() {
+              public void doIt() {
+                entered++;
+              }
+            });
+    definition.Configure(State.C)
+            .Permit(Trigger.Z, State.A);
+    return definition;
+  }
+
+  FilePassivationStore<Long, State> Open(File directory, int initialSlots) throws Exception {
+    return new FilePassivationStore<Long, State>(directory,
+                                                 LONG_CODEC,
+                                                 new EnumCodec<State>(State.class),
+                                                 FilePassivationStore.DEFAULT_SLOT_SIZE,
+                                                 initialSlots);
+  }
+
+  StateMachineRegistry<Long, State, Trigger> CreateRegistry(EvictionPolicy policy) throws Exception {
+    store = Open(new File(folder.getRoot(), "states"), 16);
+    return new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 1, store, policy);
+  }
+
+  @After
+  public void Close() throws Exception {
+    if (store != null) {
+      store.close();
+    }
+  }
+
+  @Test
+  public void LeastRecentlyFiredKeysArePassivated() throws Exception {
+    registry = CreateRegistry(EvictionPolicy.lru(4));
+
+    for (long key = 0; key < 10; key++) {
+      registry.Fire(key, Trigger.X);
+    }
+    registry.Fire(0L, Trigger.Y);
+
+    Assert.assertEquals(4, registry.getResident());
+    Assert.assertEquals(10, registry.size());
+    Assert.assertEquals(6, store.size());
+    Assert.assertEquals(State.B, store.read(1L));
+    Assert.assertNull(store.read(0L));
+    Assert.assertNull(store.read(9L));
+    Assert.assertEquals(State.B, registry.getState(1L));
+    Assert.assertEquals(State.C, registry.getState(0L));
+    Assert.assertTrue(registry.contains(1L));
+    Assert.assertFalse(registry.contains(10L));
+  }
+
+  @Test
+  public void RehydratedKeysDoNotEnterTheirStateAgain() throws Exception {
+    registry = CreateRegistry(EvictionPolicy.lru(1));
+    registry.Fire(1L, Trigger.X);
+    registry.Fire(2L, Trigger.X);
+    Assert.assertEquals(State.B, store.read(1L));
+
+    registry.Fire(1L, Trigger.Y);
+
+    Assert.assertEquals(2, entered);
+    Assert.assertEquals(State.C, registry.getState(1L));
+    Assert.assertNull(store.read(1L));
+    Assert.assertEquals(State.B, store.read(2L));
+    Assert.assertEquals(2, registry.size());
+  }
+
+  @Test
+  public void UnhandledFiresKeepRehydratedKeysInMemory() throws Exception {
+    registry = CreateRegistry(EvictionPolicy.lru(1));
+    registry.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+      }
+    });
+    registry.Fire(1L, Trigger.X);
+    registry.Fire(2L, Trigger.X);
+
+    registry.Fire(1L, Trigger.X);
+
+    Assert.assertEquals(State.B, registry.getState(1L));
+    Assert.assertEquals(1, store.size());
+    Assert.assertEquals(2, registry.size());
+  }
+
+  @Test
+  public void IdleKeysArePassivated() throws Exception {
+    VirtualClock clock = new VirtualClock();
+    registry = CreateRegistry(EvictionPolicy.idle(1, TimeUnit.MINUTES).withClock(clock));
+    registry.Fire(1L, Trigger.X);
+    registry.Fire(2L, Trigger.X);
+    clock.advance(30, TimeUnit.SECONDS);
+    registry.Fire(2L, Trigger.Y);
+    clock.advance(45, TimeUnit.SECONDS);
+
+    registry.Fire(3L, Trigger.X);
+
+    Assert.assertEquals(2, registry.getResident());
+    Assert.assertEquals(State.B, store.read(1L));
+
+    clock.advance(1, TimeUnit.MINUTES);
+    Assert.assertEquals(2, registry.evict());
+    Assert.assertEquals(0, registry.getResident());
+    Assert.assertEquals(State.C, registry.getState(2L));
+    Assert.assertEquals(3, registry.size());
+  }
+
+  @Test
+  public void RemovingForgetsPassivatedKeys() throws Exception {
+    registry = CreateRegistry(EvictionPolicy.lru(1));
+    registry.Fire(1L, Trigger.X);
+    registry.Fire(2L, Trigger.X);
+
+    Assert.assertEquals(State.B, registry.remove(1L));
+    Assert.assertEquals(State.B, registry.remove(2L));
+
+    Assert.assertEquals(0, registry.size());
+    Assert.assertEquals(State.A, registry.getState(1L));
+    Assert.assertNull(registry.remove(1L));
+  }
+
+  @Test
+  public void SettingTheStateOfAPassivatedKeyReplacesIt() throws Exception {
+    registry = CreateRegistry(EvictionPolicy.lru(1));
+    registry.Fire(1L, Trigger.X);
+    registry.Fire(2L, Trigger.X);
+
+    registry.setState(1L, State.C);
+
+    Assert.assertEquals(State.C, registry.getState(1L));
+    Assert.assertEquals(State.B, store.read(2L));
+    Assert.assertEquals(2, registry.size());
+  }
+
+  @Test
+  public void PassivatedStatesOutliveTheRegistry() throws Exception {
+    registry = CreateRegistry(EvictionPolicy.lru(100));
+    for (long key = 0; key < 10; key++) {
+      registry.Fire(key, Trigger.X);
+    }
+    Assert.assertEquals(10, registry.passivateAll());
+    store.close();
+
+    store = Open(new File(folder.getRoot(), "states"), 16);
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 4, store, EvictionPolicy.lru(100));
+
+    Assert.assertEquals(10, registry.size());
+    registry.Fire(3L, Trigger.Y);
+    Assert.assertEquals(State.C, registry.getState(3L));
+    Assert.assertEquals(State.B, registry.getState(4L));
+    Assert.assertEquals(10, entered);
+  }
+
+  @Test
+  public void ConcurrentFiresKeepEveryKey() throws Exception {
+    store = Open(new File(folder.getRoot(), "states"), 16);
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 4, store, EvictionPolicy.lru(8));
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      final long first = t * 16;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            for (int round = 0; round < 200; round++) {
+              for (long key = first; key < first + 16; key++) {
+                registry.Fire(key, Trigger.X);
+                registry.Fire(key, Trigger.Y);
+                registry.Fire(key, Trigger.Z);
+              }
+            }
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(64, registry.size());
+    Assert.assertTrue(registry.getResident() <= 8);
+    for (long key = 0; key < 64; key++) {
+      Assert.assertEquals(State.A, registry.getState(key));
+    }
+  }
+
+  @Test
+  public void TheResidentBoundHoldsAcrossStripes() throws Exception {
+    store = Open(new File(folder.getRoot(), "states"), 16);
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 4, store, EvictionPolicy.lru(6));
+
+    for (long key = 0; key < 100; key++) {
+      registry.Fire(key, Trigger.X);
+    }
+
+    Assert.assertEquals(6, registry.getResident());
+    Assert.assertEquals(94, store.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void ResidentBoundsBelowTheNumberOfStripesAreRejected() throws Exception {
+    store = Open(new File(folder.getRoot(), "states"), 16);
+    new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 4, store, EvictionPolicy.lru(3));
+  }
+
+  @Test
+  public void FileStoreGrowsAndDropsRemovedSlots() throws Exception {
+    store = Open(folder.newFolder(), 4);
+
+    for (long key = 0; key < 1000; key++) {
+      store.write(key * 7919, State.values()[(int) (key % 3)]);
+    }
+    for (long key = 0; key < 1000; key += 2) {
+      store.remove(key * 7919);
+    }
+    store.write(7919L, State.A);
+
+    Assert.assertEquals(500, store.size());
+    Assert.assertTrue(store.getSlots() >= 1000);
+    for (long key = 0; key < 1000; key++) {
+      State expected = key % 2 == 0 ? null : key == 1 ? State.A : State.values()[(int) (key % 3)];
+      Assert.assertEquals(expected, store.read(key * 7919));
+    }
+  }
+
+  @Test(expected = PassivationException.class)
+  public void ForeignFilesAreRejected() throws Exception {
+    File directory = folder.newFolder();
+    FileOutputStream out = new FileOutputStream(new File(directory, "0000.slots"));
+    out.write(new byte[64]);
+    out.close();
+
+    Open(directory, 16);
+  }
+
+  @Test
+  public void TheSegmentsOfAnExistingStoreWin() throws Exception {
+    File directory = folder.newFolder();
+    store = new FilePassivationStore<Long, State>(directory, LONG_CODEC, new EnumCodec<State>(State.class), 16, 16, 4);
+    for (long key = 0; key < 100; key++) {
+      store.write(key, State.values()[(int) (key % 3)]);
+    }
+    store.close();
+
+    store = Open(directory, 16);
+    Assert.assertEquals(4, store.getSegments());
+    Assert.assertEquals(100, store.size());
+    for (long key = 0; key < 100; key++) {
+      Assert.assertEquals(State.values()[(int) (key % 3)], store.read(key));
+    }
+  }
+
+  @Test(expected = PassivationException.class)
+  public void StatesLargerThanASlotAreRejected() throws Exception {
+    store = new FilePassivationStore<Long, State>(folder.newFolder(), LONG_CODEC, new EnumCodec<State>(State.class), 10, 16);
+
+    store.write(1L, State.A);
+  }
+
+  @Test
+  public void SlotsTooSmallForAKeyAndStateAreRejected() throws Exception {
+    try {
+      new FilePassivationStore<Long, State>(folder.newFolder(), LONG_CODEC, new EnumCodec<State>(State.class), 1, 16);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(StateMachineResources.PassivationLayoutInvalid, e.getMessage());
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void StoreAndPolicyGoTogether() throws Exception {
+    new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 1, null, EvictionPolicy.lru(1));
+  }
+}
@@ -0,0 +1,115 @@
+package ifesdjeen.stateless4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.DoubleAction1;
+import ifesdjeen.stateless4j.delegates.IntAction2;
+import ifesdjeen.stateless4j.delegates.LongFunc2;
+import ifesdjeen.stateless4j.exceptions.WrongArgType;
+import ifesdjeen.stateless4j.transitions.Transition;
+import ifesdjeen.stateless4j.triggers.TriggerWithDoubleParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithIntParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
+
+
+public class PrimitiveTriggerFixtureTest {
+  int received;
+  double total;
+
+  StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+  TriggerWithIntParameter<State, Trigger> x;
+  TriggerWithLongParameter<State, Trigger> y;
+  TriggerWithDoubleParameter<State, Trigger> z;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    x = definition.SetIntTriggerParameter(Trigger.X);
+    y = definition.SetLongTriggerParameter(Trigger.Y);
+    z = definition.SetDoubleTriggerParameter(Trigger.Z);
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B)
+            .PermitDynamic(y, new LongFunc2<State>() {
+              public State call(long arg0) {
+                return arg0 > Integer.MAX_VALUE ? State.C : State.B;
+              }
+            });
+
+    definition.Configure(State.B)
+            .OnEntryFrom(x, new IntAction2<Transition<State, Trigger>>() {
+              public void doIt(int arg1, Transition<State, Trigger> arg2) {
+                received = arg1;
+              }
+            })
+            .PermitReentry(Trigger.Z)
+            .OnEntryFrom(z, new DoubleAction1() {
+              public void doIt(double arg1) {
+                total += arg1;
+              }
+            });
+
+    return definition;
+  }
+
+  @Test
+  public void IntArgumentIsPassedToEntryAction() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().CreateMachine(State.A);
+
+    sm.Fire(x, 42);
+
+    Assert.assertEquals(State.B, sm.getState());
+    Assert.assertEquals(42, received);
+  }
+
+  @Test
+  public void LongArgumentSelectsDynamicDestination() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+
+    StateMachine<State, Trigger> high = definition.CreateMachine(State.A);
+    high.Fire(y, 1L << 40);
+    StateMachine<State, Trigger> low = definition.CreateMachine(State.A);
+    low.Fire(y, 7L);
+
+    Assert.assertEquals(State.C, high.getState());
+    Assert.assertEquals(State.B, low.getState());
+  }
+
+  @Test
+  public void DoubleArgumentIsPassedToEntryActionOnReentry() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().CreateMachine(State.B);
+
+    sm.Fire(z, 1.5);
+    sm.Fire(z, -0.25);
+
+    Assert.assertEquals(1.25, total, 0);
+  }
+
+  @Test
+  public void UnfrozenDefinitionPassesBoxedArgument() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    definition = sm._definition;
+    CreateDefinition();
+
+    sm.Fire(x, 7);
+    sm.Fire(z, 0.5);
+
+    Assert.assertEquals(7, received);
+    Assert.assertEquals(0.5, total, 0);
+  }
+
+  @Test
+  public void UntypedFireAcceptsBoxedArgument() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().CreateMachine(State.A);
+
+    sm.publicFire(Trigger.X, 9);
+
+    Assert.assertEquals(9, received);
+  }
+
+  @Test(expected = WrongArgType.class)
+  public void TriggerOfAnotherTypeIsRejected() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().CreateMachine(State.A);
+
+    sm.Fire(new TriggerWithDoubleParameter<State, Trigger>(Trigger.X), 1.0);
+  }
+}
@@ -0,0 +1,150 @@
+package ifesdjeen.stateless4j;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.exceptions.WrongArgType;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+
+
+public class StateMachineDefinitionFixtureTest {
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    definition.Configure(State.B)
+            .Permit(Trigger.Y, State.A);
+
+    return definition;
+  }
+
+  @Test
+  public void MachinesSharingADefinitionHaveIndependentState() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+
+    StateMachine<State, Trigger> first = definition.CreateMachine(State.A);
+    StateMachine<State, Trigger> second = definition.CreateMachine(State.A);
+
+    first.Fire(Trigger.X);
+
+    Assert.assertEquals(State.B, first.getState());
+    Assert.assertEquals(State.A, second.getState());
+    Assert.assertSame(definition, second.getDefinition());
+  }
+
+  @Test
+  public void CreatingAMachineFreezesTheDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    Assert.assertFalse(definition.isFrozen());
+
+    new StateMachine<State, Trigger>(State.A, definition);
+
+    Assert.assertTrue(definition.isFrozen());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void FrozenDefinitionCannotBeConfigured() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition().freeze();
+
+    definition.Configure(State.C);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void ConfigurationObtainedBeforeFreezingCannotModifyDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateConfiguration<State, Trigger> configuration = definition.Configure(State.A);
+
+    definition.freeze();
+
+    configuration.Permit(Trigger.Z, State.C);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void SharedMachineCannotBeConfigured() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().CreateMachine(State.A);
+
+    sm.Configure(State.A);
+  }
+
+  @Test
+  public void UnconfiguredStateIsNotRecordedInFrozenDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.C);
+
+    Assert.assertEquals(0, sm.getPermittedTriggers().size());
+    Assert.assertFalse(definition._stateConfiguration.containsKey(State.C));
+  }
+
+  @Test
+  public void FrozenDefinitionReusesUnguardedPermittedTriggers() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.Configure(State.C)
+            .SubstateOf(State.A)
+            .Permit(Trigger.Z, State.B);
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.C);
+
+    List<Trigger> permitted = sm.getPermittedTriggers();
+
+    Assert.assertEquals(2, permitted.size());
+    Assert.assertTrue(permitted.contains(Trigger.X));
+    Assert.assertTrue(permitted.contains(Trigger.Z));
+    Assert.assertSame(permitted, sm.getPermittedTriggers());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void PermittedTriggersOfFrozenDefinitionAreUnmodifiable() throws Exception {
+    StateMachine<State, Trigger> sm = CreateDefinition().CreateMachine(State.A);
+
+    sm.getPermittedTriggers().add(Trigger.Z);
+  }
+
+  @Test
+  public void GuardsAreEvaluatedWhenPermittedTriggersAreRequested() throws Exception {
+    final boolean[] open = {false};
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.Configure(State.A)
+            .PermitIf(Trigger.Y, State.C, new Func<Boolean>() {
+              public Boolean call() {
+                return open[0];
+              }
+            });
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.A);
+
+    Assert.assertFalse(sm.getPermittedTriggers().contains(Trigger.Y));
+    open[0] = true;
+    Assert.assertTrue(sm.getPermittedTriggers().contains(Trigger.Y));
+    Assert.assertTrue(sm.getPermittedTriggers().contains(Trigger.X));
+  }
+
+  @Test
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  public void TrustedParametersAreNotValidated() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setTrustedParameters(true);
+    TriggerWithParameters1 x = definition.SetTriggerParameters(Trigger.X, String.class);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.A);
+
+    sm.Fire(x, 123); // only possible through a raw type
+
+    Assert.assertEquals(State.B, sm.getState());
+  }
+
+  @Test(expected = WrongArgType.class)
+  public void UntypedFireIsValidatedWhenParametersAreTrusted() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setTrustedParameters(true);
+    definition.SetTriggerParameters(Trigger.X, String.class);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    definition.CreateMachine(State.A).publicFire(Trigger.X, 123);
+  }
+}
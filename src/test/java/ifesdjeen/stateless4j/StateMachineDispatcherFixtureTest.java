@@ -0,0 +1,158 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+
+
+public class StateMachineDispatcherFixtureTest {
+  static final int MACHINES = 50;
+  static final int FIRES_PER_MACHINE = 500;
+
+  final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void TriggersForOneMachineRunSeriallyInSubmissionOrder() throws Exception {
+    final List<List<Integer>> received = new ArrayList<List<Integer>>();
+    final AtomicBoolean[] running = new AtomicBoolean[MACHINES];
+    final AtomicBoolean overlapped = new AtomicBoolean();
+    for (int m = 0; m < MACHINES; m++) {
+      received.add(new ArrayList<Integer>());
+      running[m] = new AtomicBoolean();
+    }
+
+    // the machines share one definition, so each argument packs the machine index
+    // together with the sequence number
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    TriggerWithParameters1<Integer, State, Trigger> indexed = definition.SetTriggerParameters(Trigger.X, Integer.class);
+    definition.Configure(State.A)
+            .OnEntryFrom(indexed, new Action1<Integer>() {
+              public void doIt(Integer packed) {
+                int machine = packed / FIRES_PER_MACHINE;
+                if (!running[machine].compareAndSet(false, true)) {
+                  overlapped.set(true);
+                }
+                received.get(machine).add(packed % FIRES_PER_MACHINE);
+                running[machine].set(false);
+              }
+            }, Integer.class)
+            .PermitReentry(Trigger.X);
+
+    List<StateMachine<State, Trigger>> machines = new ArrayList<StateMachine<State, Trigger>>();
+    for (int m = 0; m < MACHINES; m++) {
+      machines.add(definition.CreateMachine(State.A));
+    }
+
+    StateMachineDispatcher dispatcher = new StateMachineDispatcher(executor, 8);
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+    for (int i = 0; i < FIRES_PER_MACHINE; i++) {
+      for (int m = 0; m < MACHINES; m++) {
+        futures.add(dispatcher.Fire(machines.get(m), indexed, m * FIRES_PER_MACHINE + i));
+      }
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+
+    Assert.assertFalse(overlapped.get());
+    for (int m = 0; m < MACHINES; m++) {
+      List<Integer> order = received.get(m);
+      Assert.assertEquals(FIRES_PER_MACHINE, order.size());
+      for (int i = 0; i < FIRES_PER_MACHINE; i++) {
+        Assert.assertEquals(Integer.valueOf(i), order.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void FutureCompletesAfterTheTransition() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    new StateMachineDispatcher(executor).Fire(sm, Trigger.X).get();
+
+    Assert.assertEquals(State.B, sm.getState());
+  }
+
+  @Test
+  public void InvalidArgumentsFailTheFuture() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm.SetTriggerParameters(Trigger.X, Integer.class);
+    sm.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    try {
+      new StateMachineDispatcher(executor).Submit(sm, Trigger.X, "not an integer").get();
+      Assert.fail();
+    } catch (ExecutionException e) {
+    }
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test
+  public void RejectedMailboxesFailTheirTriggersAndAreScheduledAgain() throws Exception {
+    final List<Runnable> scheduled = new ArrayList<Runnable>();
+    final AtomicBoolean rejecting = new AtomicBoolean(true);
+    StateMachineDispatcher dispatcher = new StateMachineDispatcher(new Executor() {
+      public void execute(Runnable command) {
+        if (rejecting.get()) {
+          throw new RejectedExecutionException();
+        }
+        scheduled.add(command);
+      }
+    }, 1);
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    sm.Configure(State.B)
+            .Permit(Trigger.Y, State.A);
+
+    AssertRejected(dispatcher.Fire(sm, Trigger.X));
+
+    rejecting.set(false);
+    Future<Void> first = dispatcher.Fire(sm, Trigger.X);
+    Future<Void> second = dispatcher.Fire(sm, Trigger.Y);
+    Assert.assertEquals(1, scheduled.size());
+
+    // the mailbox yields after one trigger, and cannot be scheduled again
+    rejecting.set(true);
+    scheduled.remove(0).run();
+    first.get();
+    AssertRejected(second);
+    Assert.assertEquals(State.B, sm.getState());
+
+    rejecting.set(false);
+    Future<Void> third = dispatcher.Fire(sm, Trigger.Y);
+    scheduled.remove(0).run();
+    third.get();
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  static void AssertRejected(Future<Void> future) throws Exception {
+    try {
+      future.get();
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+    }
+  }
+}
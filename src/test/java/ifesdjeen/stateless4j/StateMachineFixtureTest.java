@@ -8,6 +8,7 @@ import org.junit.Test;
 
 import ifesdjeen.stateless4j.StateMachine;
 import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action2;
 import ifesdjeen.stateless4j.delegates.Func;
 
 
@@ -226,6 +227,44 @@ public class StateMachineFixtureTest {
     }
   }
 
+  State unhandledState = null;
+  Trigger unhandledTrigger = null;
+
+  @Test
+  public void WhenAnUnhandledTriggerIsFired_TheProvidedHandlerIsCalledWithStateAndTrigger() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.B);
+
+    sm.OnUnhandledTrigger(new Action2<State, Trigger>() {
+      public void doIt(State state, Trigger trigger) {
+        unhandledState = state;
+        unhandledTrigger = trigger;
+      }
+    });
+
+    sm.Fire(Trigger.Z);
+
+    Assert.assertEquals(State.B, unhandledState);
+    Assert.assertEquals(Trigger.Z, unhandledTrigger);
+  }
+
+  @Test
+  public void WhenInSubstate_TriggerPermittedInSuperstate_Transitions() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.B);
+
+    sm.Configure(State.B)
+            .SubstateOf(State.C);
+
+    sm.Configure(State.C)
+            .Permit(Trigger.X, State.A);
+
+    Assert.assertTrue(sm.CanFire(Trigger.X));
+    Assert.assertFalse(sm.CanFire(Trigger.Y));
+
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
   String entryArgS = null;
   int entryArgI = 0;
 
@@ -0,0 +1,224 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Action1;
+import ifesdjeen.stateless4j.exceptions.WrongArgType;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
+
+
+public class StateMachineRegistryFixtureTest {
+  final List<String> entered = new ArrayList<String>();
+  TriggerWithParameters1<String, State, Trigger> z;
+  StateMachineRegistry<Long, State, Trigger> registry;
+  // incremented on entering B, without and with synchronisation of their own
+  int counted;
+  final AtomicInteger entries = new AtomicInteger();
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    z = definition.SetTriggerParameters(Trigger.Z, String.class);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B)
+            .Permit(Trigger.Z, State.C);
+    definition.Configure(State.B)
+            .Permit(Trigger.Y, State.A)
+            .OnEntry(new Action() {
+              public void doIt() {
+                counted++;
+                entries.incrementAndGet();
+              }
+            });
+    definition.Configure(State.C)
+            .Permit(Trigger.Y, State.A)
+            .OnEntryFrom(z, new Action1<String>() {
+              public void doIt(String value) {
+                entered.add(value);
+              }
+            }, String.class);
+    return definition;
+  }
+
+  @Test
+  public void KeysStartInTheInitialState() throws Exception {
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A);
+
+    Assert.assertEquals(State.A, registry.getState(1L));
+    Assert.assertFalse(registry.contains(1L));
+    Assert.assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void FiringMovesOnlyTheKeyFired() throws Exception {
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 1);
+
+    registry.Fire(1L, Trigger.X);
+
+    Assert.assertEquals(State.B, registry.getState(1L));
+    Assert.assertEquals(State.A, registry.getState(2L));
+    Assert.assertTrue(registry.contains(1L));
+    Assert.assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void ArgumentsReachTheEntryActions() throws Exception {
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A);
+
+    registry.Fire(1L, z, "typed");
+    registry.Fire(1L, Trigger.Y);
+    registry.Fire(1L, Trigger.Z, "untyped");
+
+    Assert.assertEquals(State.C, registry.getState(1L));
+    Assert.assertEquals(2, entered.size());
+    Assert.assertEquals("untyped", entered.get(1));
+  }
+
+  @Test(expected = WrongArgType.class)
+  public void UntypedArgumentsAreValidated() throws Exception {
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A);
+
+    registry.Fire(1L, Trigger.Z, 42);
+  }
+
+  @Test
+  public void RemovedKeysStartAgain() throws Exception {
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A);
+    registry.Fire(1L, Trigger.X);
+
+    Assert.assertEquals(State.B, registry.remove(1L));
+
+    Assert.assertEquals(State.A, registry.getState(1L));
+    Assert.assertFalse(registry.contains(1L));
+  }
+
+  @Test
+  public void ActionsMayFireTheKeyBeingFired() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                try {
+                  Assert.assertEquals(State.B, registry.getState(1L));
+                  registry.Fire(1L, Trigger.Y);
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              }
+            });
+    registry = new StateMachineRegistry<Long, State, Trigger>(definition, State.A);
+
+    registry.Fire(1L, Trigger.X);
+
+    Assert.assertEquals(State.A, registry.getState(1L));
+  }
+
+  @Test
+  public void ActionsMayNotFireOtherKeys() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    final List<Exception> failures = new ArrayList<Exception>();
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                try {
+                  registry.Fire(2L, Trigger.X);
+                } catch (Exception e) {
+                  failures.add(e);
+                }
+              }
+            });
+    registry = new StateMachineRegistry<Long, State, Trigger>(definition, State.A, 1);
+
+    registry.Fire(1L, Trigger.X);
+
+    Assert.assertEquals(1, failures.size());
+    Assert.assertTrue(failures.get(0) instanceof IllegalStateException);
+    Assert.assertEquals(State.B, registry.getState(1L));
+    Assert.assertEquals(State.A, registry.getState(2L));
+  }
+
+  @Test
+  public void ActionsMayNotFireKeysOfOtherStripes() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    final List<Exception> failures = new ArrayList<Exception>();
+    final long[] other = new long[1];
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                try {
+                  registry.Fire(other[0], Trigger.X);
+                } catch (Exception e) {
+                  failures.add(e);
+                }
+                try {
+                  registry.setState(other[0], State.C);
+                } catch (Exception e) {
+                  failures.add(e);
+                }
+              }
+            });
+    registry = new StateMachineRegistry<Long, State, Trigger>(definition, State.A, 16);
+    other[0] = 2;
+    while (registry.StripeOf(other[0]) == registry.StripeOf(1L)) {
+      other[0]++;
+    }
+
+    registry.Fire(1L, Trigger.X);
+
+    Assert.assertEquals(2, failures.size());
+    Assert.assertTrue(failures.get(0) instanceof IllegalStateException);
+    Assert.assertTrue(failures.get(1) instanceof IllegalStateException);
+    Assert.assertEquals(State.A, registry.getState(other[0]));
+
+    // the fire is over
+    registry.Fire(other[0], z, "z");
+    Assert.assertEquals(State.C, registry.getState(other[0]));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void TimedDefinitionsAreRejected() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.Configure(State.B).FireAfter(1, TimeUnit.SECONDS, Trigger.Y);
+
+    new StateMachineRegistry<Long, State, Trigger>(definition, State.A);
+  }
+
+  @Test
+  public void FiresForTheSameKeyAreSerialised() throws Exception {
+    registry = new StateMachineRegistry<Long, State, Trigger>(CreateDefinition(), State.A, 2);
+    final int rounds = 20000;
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          try {
+            for (int i = 0; i < rounds; i++) {
+              registry.Fire(0L, Trigger.X);
+              registry.Fire(0L, Trigger.Y);
+              registry.Fire(2L, Trigger.X);
+              registry.Fire(2L, Trigger.Y);
+            }
+          } catch (Exception e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // 0 and 2 share a stripe, so no increment of either is lost
+    Assert.assertTrue(counted > 0);
+    Assert.assertEquals(entries.get(), counted);
+    Assert.assertEquals(State.A, registry.getState(0L));
+    Assert.assertEquals(State.A, registry.getState(2L));
+  }
+}
@@ -9,6 +9,7 @@ import ifesdjeen.stateless4j.delegates.Action2;
 import ifesdjeen.stateless4j.transitions.Transition;
 import ifesdjeen.stateless4j.triggers.IgnoredTriggerBehaviour;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -133,6 +134,34 @@ public class StateRepresentationFixtureTest {
     Assert.assertTrue(stateRepresentation.IsIncludedIn(State.C));
   }
 
+  @Test
+  public void FrozenRepresentationsIncludeTransitiveSubstates() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.B).SubstateOf(State.A);
+    definition.Configure(State.C).SubstateOf(State.B);
+    definition.freeze();
+
+    StateRepresentation<State, Trigger> a = definition.GetRepresentation(State.A);
+    StateRepresentation<State, Trigger> c = definition.GetRepresentation(State.C);
+
+    Assert.assertTrue(a.Includes(State.A));
+    Assert.assertTrue(a.Includes(State.C));
+    Assert.assertFalse(c.Includes(State.A));
+    Assert.assertTrue(c.IsIncludedIn(State.A));
+    Assert.assertTrue(c.IsIncludedIn(State.C));
+    Assert.assertFalse(a.IsIncludedIn(State.B));
+  }
+
+  @Test
+  public void FrozenRepresentationDoesNotIncludeUnconfiguredState() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.B).SubstateOf(State.A);
+    definition.freeze();
+
+    Assert.assertFalse(definition.GetRepresentation(State.A).Includes(State.C));
+    Assert.assertFalse(definition.GetRepresentation(State.B).IsIncludedIn(State.C));
+  }
+
   Boolean executed = false;
 
   @Test
@@ -278,6 +307,37 @@ public class StateRepresentationFixtureTest {
     Assert.assertEquals(1, actual.get(1).intValue());
   }
 
+  Action2<Transition<State, Trigger>, Object[]> Appending(final List<Integer> actual, final int value) {
+    return new Action2<Transition<State, Trigger>, Object[]>() {
+      public void doIt(Transition<State, Trigger> arg1, Object[] arg2) {
+        actual.add(value);
+      }
+    };
+  }
+
+  @Test
+  public void TriggerSpecificEntryActionsKeepRegistrationOrder() throws Exception {
+    final List<Integer> actual = new ArrayList<Integer>();
+
+    StateRepresentation<State, Trigger> rep = CreateRepresentation(State.B);
+    rep.AddEntryAction(Appending(actual, 0));
+    rep.AddEntryAction(Trigger.X, Appending(actual, 1));
+    rep.AddEntryAction(Trigger.Y, Appending(actual, 2));
+    rep.AddEntryAction(Appending(actual, 3));
+    rep.AddEntryAction(Trigger.X, Appending(actual, 4));
+
+    rep.Enter(new Transition<State, Trigger>(State.A, State.B, Trigger.X));
+    Assert.assertEquals(Arrays.asList(0, 1, 3, 4), actual);
+
+    actual.clear();
+    rep.Enter(new Transition<State, Trigger>(State.A, State.B, Trigger.Y));
+    Assert.assertEquals(Arrays.asList(0, 2, 3), actual);
+
+    actual.clear();
+    rep.Enter(new Transition<State, Trigger>(State.A, State.B, Trigger.Z));
+    Assert.assertEquals(Arrays.asList(0, 3), actual);
+  }
+
   @Test
   public void ExitActionsExecuteInOrder() throws Exception {
     final List<Integer> actual = new ArrayList<Integer>();
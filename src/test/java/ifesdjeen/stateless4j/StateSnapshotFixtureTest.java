@@ -0,0 +1,186 @@
+package ifesdjeen.stateless4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ifesdjeen.stateless4j.codec.Codec;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.snapshot.SnapshotHandler;
+import ifesdjeen.stateless4j.snapshot.StateSnapshot;
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
+import ifesdjeen.stateless4j.timer.VirtualClock;
+
+
+public class StateSnapshotFixtureTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  int entered;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                entered++;
+              }
+            });
+    return definition;
+  }
+
+  // not an EnumCodec, so snapshots take the generic, length-prefixed path
+  static class NameCodec implements Codec<State> {
+    public int sizeOf(State value) {
+      return value.name().length();
+    }
+
+    public void write(State value, ByteBuffer buffer) {
+      for (char c : value.name().toCharArray()) {
+        buffer.put((byte) c);
+      }
+    }
+
+    public State read(ByteBuffer buffer) {
+      return State.valueOf(String.valueOf((char) buffer.get()));
+    }
+  }
+
+  void AssertRestores(StateSnapshot<State> snapshot) throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    List<StateMachine<State, Trigger>> machines = Arrays.asList(definition.CreateMachine(State.A),
+                                                                definition.CreateMachine(State.B),
+                                                                definition.CreateMachine(State.C),
+                                                                definition.CreateMachine(State.B));
+    File file = folder.newFile();
+
+    Assert.assertEquals(4, snapshot.write(file, machines));
+    List<StateMachine<State, Trigger>> restored = snapshot.restore(file, definition);
+
+    Assert.assertEquals(4, restored.size());
+    for (int i = 0; i < machines.size(); i++) {
+      Assert.assertEquals(machines.get(i).getState(), restored.get(i).getState());
+      Assert.assertSame(definition, restored.get(i).getDefinition());
+    }
+    Assert.assertEquals(0, entered);
+  }
+
+  @Test
+  public void RestoresEnumStatesWithoutRunningEntryActions() throws Exception {
+    AssertRestores(new StateSnapshot<State>(new EnumCodec<State>(State.class)));
+  }
+
+  @Test
+  public void RestoresStatesEncodedByAnyCodec() throws Exception {
+    AssertRestores(new StateSnapshot<State>(new NameCodec()));
+  }
+
+  @Test
+  public void RestoredMachinesArmTheTimeoutsOfTheirState() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    File file = folder.newFile();
+    StateSnapshot<State> snapshot = new StateSnapshot<State>(new EnumCodec<State>(State.class));
+    snapshot.write(file, Arrays.asList(definition.CreateMachine(State.A), definition.CreateMachine(State.B)));
+
+    VirtualClock clock = new VirtualClock();
+    HashedWheelTimer timer = new HashedWheelTimer(clock, 100, TimeUnit.MILLISECONDS, 64);
+    StateMachineDefinition<State, Trigger> timed = new StateMachineDefinition<State, Trigger>().setTimer(timer);
+    timed.Configure(State.B)
+            .FireAfter(5, TimeUnit.SECONDS, Trigger.X)
+            .Permit(Trigger.X, State.C);
+    List<StateMachine<State, Trigger>> restored = snapshot.restore(file, timed, StateTimeoutFixtureTest.SAME_THREAD);
+
+    clock.advance(5, TimeUnit.SECONDS);
+    timer.advance();
+    Assert.assertEquals(State.A, restored.get(0).getState());
+    Assert.assertEquals(State.C, restored.get(1).getState());
+  }
+
+  @Test
+  public void EnumStatesTakeOneByteEach() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    File file = folder.newFile();
+
+    new StateSnapshot<State>(new EnumCodec<State>(State.class))
+            .write(file, Arrays.asList(definition.CreateMachine(State.A), definition.CreateMachine(State.C)));
+
+    Assert.assertEquals(13 + 2, file.length());
+  }
+
+  @Test
+  public void ReadsSnapshotsLargerThanTheBuffer() throws Exception {
+    final int count = 3 << 20;
+    final StateMachine<State, Trigger> machine = CreateDefinition().CreateMachine(State.A);
+    // one machine, yielded over and over in a different state each time
+    Iterable<StateMachine<State, Trigger>> machines = new Iterable<StateMachine<State, Trigger>>() {
+      public Iterator<StateMachine<State, Trigger>> iterator() {
+        return new Iterator<StateMachine<State, Trigger>>() {
+          int i;
+
+          public boolean hasNext() {
+            return i < count;
+          }
+
+          public StateMachine<State, Trigger> next() {
+            machine.setState(State.values()[i++ % 3]);
+            return machine;
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+    StateSnapshot<State> snapshot = new StateSnapshot<State>(new NameCodec());
+    File file = folder.newFile();
+
+    snapshot.write(file, machines);
+    final long[] read = {0};
+    long total = snapshot.read(file, new SnapshotHandler<State>() {
+      public void onState(long index, State state) {
+        Assert.assertEquals(State.values()[(int) (index % 3)], state);
+        read[0]++;
+      }
+    });
+
+    Assert.assertEquals(count, total);
+    Assert.assertEquals(count, read[0]);
+  }
+
+  @Test(expected = IOException.class)
+  public void TruncatedSnapshotIsRejected() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateSnapshot<State> snapshot = new StateSnapshot<State>(new EnumCodec<State>(State.class));
+    File file = folder.newFile();
+    snapshot.write(file, Arrays.asList(definition.CreateMachine(State.A), definition.CreateMachine(State.B)));
+
+    RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+    truncated.setLength(file.length() - 1);
+    truncated.close();
+
+    snapshot.restore(file, definition);
+  }
+
+  @Test(expected = IOException.class)
+  public void SnapshotWrittenWithAnotherCodecIsRejected() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    File file = folder.newFile();
+    new StateSnapshot<State>(new NameCodec()).write(file, Arrays.asList(definition.CreateMachine(State.A)));
+
+    new StateSnapshot<State>(new EnumCodec<State>(State.class)).restore(file, definition);
+  }
+}
@@ -0,0 +1,249 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.resources.StateConfigurationResources;
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
+import ifesdjeen.stateless4j.timer.VirtualClock;
+
+
+public class StateTimeoutFixtureTest {
+  final VirtualClock clock = new VirtualClock();
+  final HashedWheelTimer timer = new HashedWheelTimer(clock, 100, TimeUnit.MILLISECONDS, 64);
+  StateMachine<State, Trigger> machine;
+
+  // the tests fire the machines on the thread advancing the timer
+  static final Executor SAME_THREAD = new Executor() {
+    public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setTimer(timer);
+    definition.Configure(State.A)
+            .FireAfter(5, TimeUnit.SECONDS, Trigger.X)
+            .Permit(Trigger.X, State.C)
+            .Permit(Trigger.Y, State.B)
+            .PermitReentry(Trigger.Z);
+    definition.Configure(State.B)
+            .SubstateOf(State.A)
+            .Permit(Trigger.Y, State.A);
+    definition.Configure(State.C)
+            .Permit(Trigger.Y, State.A)
+            .Permit(Trigger.Z, State.B);
+    return definition;
+  }
+
+  StateMachine<State, Trigger> CreateMachine(State initialState) throws Exception {
+    return CreateDefinition().CreateMachine(initialState, SAME_THREAD);
+  }
+
+  void Elapse(long seconds) {
+    clock.advance(seconds, TimeUnit.SECONDS);
+    timer.advance();
+  }
+
+  @Test
+  public void TriggerIsFiredOnceTheDelayHasElapsedInTheState() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.C);
+    sm.Fire(Trigger.Y);
+
+    Elapse(4);
+    Assert.assertEquals(State.A, sm.getState());
+    Elapse(1);
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void LeavingTheStateCancelsTheTimeout() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.C);
+    sm.Fire(Trigger.Y);
+    sm.Fire(Trigger.X);
+    Assert.assertEquals(0, timer.getPending());
+
+    sm.Fire(Trigger.Z);
+    Assert.assertEquals(1, timer.getPending());
+    sm.Fire(Trigger.Y);
+    sm.Fire(Trigger.X);
+    Elapse(10);
+
+    Assert.assertEquals(State.C, sm.getState());
+    Assert.assertEquals(0, timer.getPending());
+  }
+
+  @Test
+  public void MovingBetweenSubstatesKeepsTheTimeoutOfTheSuperstate() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.C);
+    sm.Fire(Trigger.Y);
+
+    Elapse(2);
+    sm.Fire(Trigger.Y);
+    Elapse(2);
+    sm.Fire(Trigger.Y);
+    Assert.assertEquals(State.A, sm.getState());
+
+    Elapse(1);
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void ReentryRestartsTheTimeout() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.C);
+    sm.Fire(Trigger.Y);
+
+    Elapse(3);
+    sm.Fire(Trigger.Z);
+    Elapse(3);
+    Assert.assertEquals(State.A, sm.getState());
+    Assert.assertEquals(1, timer.getPending());
+
+    Elapse(2);
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void TimeoutsOfTheInitialStateAreArmedOnConstruction() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.B);
+    Assert.assertEquals(1, timer.getPending());
+
+    Elapse(5);
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void RestartingTimeoutsArmsThemAfresh() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.B);
+    Elapse(3);
+
+    sm.RestartTimeouts();
+    Assert.assertEquals(1, timer.getPending());
+    Elapse(3);
+    Assert.assertEquals(State.B, sm.getState());
+    Elapse(2);
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void MachinesWithTimeoutsRequireATimeoutExecutor() throws Exception {
+    CreateDefinition().CreateMachine(State.A);
+  }
+
+  @Test
+  public void ConcurrentMachinesFireTimeoutsOnTheTimerThread() throws Exception {
+    StateMachine<State, Trigger> sm = new ConcurrentStateMachine<State, Trigger>(State.A, CreateDefinition(), ConcurrentFirePolicy.Retry);
+
+    Elapse(5);
+    Assert.assertEquals(State.C, sm.getState());
+  }
+
+  @Test
+  public void DispatchedMachinesFireTimeoutsThroughTheirMailbox() throws Exception {
+    final Queue<Runnable> scheduled = new ArrayDeque<Runnable>();
+    StateMachineDispatcher dispatcher = new StateMachineDispatcher(new Executor() {
+      public void execute(Runnable command) {
+        scheduled.add(command);
+      }
+    });
+    StateMachine<State, Trigger> sm = dispatcher.CreateMachine(State.A, CreateDefinition());
+
+    Elapse(5);
+    Assert.assertEquals(State.A, sm.getState());
+    Assert.assertEquals(1, scheduled.size());
+
+    scheduled.poll().run();
+    Assert.assertEquals(State.C, sm.getState());
+    Assert.assertTrue(scheduled.isEmpty());
+  }
+
+  @Test
+  public void NegativeDelaysAreRejected() throws Exception {
+    try {
+      new StateMachineDefinition<State, Trigger>().Configure(State.A).FireAfter(-1, TimeUnit.SECONDS, Trigger.X);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals(StateConfigurationResources.TimeoutDelayNegative, e.getMessage());
+    }
+  }
+
+  @Test
+  public void ReleasedDispatchedMachinesKeepTheirMailbox() throws Exception {
+    final Queue<Runnable> scheduled = new ArrayDeque<Runnable>();
+    StateMachineDispatcher dispatcher = new StateMachineDispatcher(new Executor() {
+      public void execute(Runnable command) {
+        scheduled.add(command);
+      }
+    });
+    StateMachine<State, Trigger> sm = dispatcher.CreateMachine(State.C, CreateDefinition());
+    dispatcher.Release(sm);
+
+    dispatcher.Fire(sm, Trigger.Y);
+    scheduled.poll().run();
+    Elapse(5);
+    // the timeout is queued behind the trigger, in the mailbox already scheduled
+    Future<Void> fired = dispatcher.Fire(sm, Trigger.Y);
+    Assert.assertEquals(1, scheduled.size());
+
+    scheduled.poll().run();
+    fired.get();
+    Assert.assertEquals(State.A, sm.getState());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void DispatchedMachinesAreOnlyFiredThroughTheirDispatcher() throws Exception {
+    StateMachine<State, Trigger> sm = new StateMachineDispatcher(SAME_THREAD).CreateMachine(State.C, CreateDefinition());
+
+    new StateMachineDispatcher(SAME_THREAD).Fire(sm, Trigger.Y);
+  }
+
+  @Test
+  public void StatesEnteredByEntryActionsKeepTheirTimeout() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setTimer(timer);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .Permit(Trigger.Y, State.C)
+            .OnEntry(new Action() {
+              public void doIt() {
+                try {
+                  machine.Fire(Trigger.Y);
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              }
+            });
+    definition.Configure(State.C)
+            .FireAfter(5, TimeUnit.SECONDS, Trigger.Z)
+            .Permit(Trigger.Z, State.A);
+    machine = definition.CreateMachine(State.A, SAME_THREAD);
+
+    machine.Fire(Trigger.X);
+    Assert.assertEquals(State.C, machine.getState());
+    Assert.assertEquals(1, timer.getPending());
+
+    Elapse(5);
+    Assert.assertEquals(State.A, machine.getState());
+  }
+
+  @Test
+  public void CancelledTimeoutsDoNotFire() throws Exception {
+    StateMachine<State, Trigger> sm = CreateMachine(State.C);
+    sm.Fire(Trigger.Y);
+
+    sm.CancelTimeouts();
+    Elapse(5);
+
+    Assert.assertEquals(State.A, sm.getState());
+    Assert.assertEquals(0, timer.getPending());
+  }
+}
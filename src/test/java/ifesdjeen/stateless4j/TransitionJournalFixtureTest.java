@@ -0,0 +1,249 @@
+package ifesdjeen.stateless4j;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ifesdjeen.stateless4j.codec.ArgumentsCodec;
+import ifesdjeen.stateless4j.codec.EnumCodec;
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.journal.JournalRecordHandler;
+import ifesdjeen.stateless4j.journal.TransitionJournal;
+import ifesdjeen.stateless4j.timer.HashedWheelTimer;
+import ifesdjeen.stateless4j.timer.VirtualClock;
+import ifesdjeen.stateless4j.triggers.TriggerWithLongParameter;
+import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
+
+
+public class TransitionJournalFixtureTest {
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  int entered;
+  StateMachine<State, Trigger> machine;
+  TriggerWithParameters2<String, Integer, State, Trigger> y;
+  TriggerWithLongParameter<State, Trigger> z;
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    y = definition.SetTriggerParameters(Trigger.Y, String.class, Integer.class);
+    z = definition.SetLongTriggerParameter(Trigger.Z);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                entered++;
+              }
+            })
+            .Permit(Trigger.Y, State.C);
+    definition.Configure(State.C)
+            .Permit(Trigger.Z, State.A);
+    return definition;
+  }
+
+  TransitionJournal<State, Trigger> Open(File directory, int segmentSize) throws Exception {
+    return new TransitionJournal<State, Trigger>(directory,
+                                                 new EnumCodec<State>(State.class),
+                                                 new EnumCodec<Trigger>(Trigger.class),
+                                                 new ArgumentsCodec(),
+                                                 segmentSize,
+                                                 TransitionJournal.DEFAULT_FLUSH_INTERVAL_MILLIS);
+  }
+
+  @Test
+  public void RecordsTransitionsWithArguments() throws Exception {
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    StateMachine<State, Trigger> sm = new JournaledStateMachine<State, Trigger>(7, journal, State.A, CreateDefinition(), true);
+
+    sm.Fire(Trigger.X);
+    sm.Fire(y, "two", 2);
+    sm.Fire(z, 1L << 40);
+
+    final List<String> records = new ArrayList<String>();
+    journal.replay(new JournalRecordHandler<State, Trigger>() {
+      public void onRecord(long machineId, long timestamp, State source, State destination, Trigger trigger, Object[] args) {
+        records.add(machineId + " " + source + "->" + destination + " " + trigger + " " + Arrays.toString(args));
+      }
+    });
+    journal.close();
+
+    Assert.assertEquals(Arrays.asList("7 A->B X []",
+                                      "7 B->C Y [two, 2]",
+                                      "7 C->A Z [1099511627776]"), records);
+  }
+
+  @Test
+  public void RestoresMachinesWithoutRunningActions() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    new JournaledStateMachine<State, Trigger>(1, journal, State.A, definition).Fire(Trigger.X);
+    JournaledStateMachine<State, Trigger> second = new JournaledStateMachine<State, Trigger>(2, journal, State.A, definition);
+    second.Fire(Trigger.X);
+    second.Fire(y, "c", 3);
+    journal.close();
+    entered = 0;
+
+    TransitionJournal<State, Trigger> reopened = Open(folder.getRoot(), 4096);
+    Map<Long, JournaledStateMachine<State, Trigger>> machines = JournaledStateMachine.restore(reopened, definition, false);
+
+    Assert.assertEquals(2, machines.size());
+    Assert.assertEquals(State.B, machines.get(1L).getState());
+    Assert.assertEquals(State.C, machines.get(2L).getState());
+    Assert.assertEquals(0, entered);
+
+    // restored machines keep appending after the existing records
+    machines.get(2L).Fire(z, 5);
+    Assert.assertEquals(State.A, reopened.replayStates().get(2L));
+    reopened.close();
+  }
+
+  @Test
+  public void RestoredMachinesArmTheTimeoutsOfTheirState() throws Exception {
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    new JournaledStateMachine<State, Trigger>(1, journal, State.A, CreateDefinition()).Fire(Trigger.X);
+    journal.close();
+
+    VirtualClock clock = new VirtualClock();
+    HashedWheelTimer timer = new HashedWheelTimer(clock, 100, TimeUnit.MILLISECONDS, 64);
+    StateMachineDefinition<State, Trigger> timed = new StateMachineDefinition<State, Trigger>().setTimer(timer);
+    timed.Configure(State.B)
+            .FireAfter(5, TimeUnit.SECONDS, Trigger.X)
+            .Permit(Trigger.X, State.C);
+    TransitionJournal<State, Trigger> reopened = Open(folder.getRoot(), 4096);
+    Map<Long, JournaledStateMachine<State, Trigger>> machines = JournaledStateMachine.restore(reopened, timed, false, StateTimeoutFixtureTest.SAME_THREAD);
+
+    clock.advance(5, TimeUnit.SECONDS);
+    timer.advance();
+    Assert.assertEquals(State.C, machines.get(1L).getState());
+    Assert.assertEquals(State.C, reopened.replayStates().get(1L));
+    reopened.close();
+  }
+
+  @Test
+  public void TransitionsFiredByEntryActionsAreRecordedAfterTheirCause() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .Permit(Trigger.Y, State.C)
+            .OnEntry(new Action() {
+              public void doIt() {
+                try {
+                  machine.Fire(Trigger.Y);
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              }
+            });
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    machine = new JournaledStateMachine<State, Trigger>(1, journal, State.A, definition);
+
+    machine.Fire(Trigger.X);
+
+    Assert.assertEquals(State.C, machine.getState());
+    Assert.assertEquals(State.C, journal.replayStates().get(1L));
+    journal.close();
+  }
+
+  @Test
+  public void TransitionsWhoseEntryActionsFailAreRecorded() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                throw new IllegalStateException("failing");
+              }
+            });
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    StateMachine<State, Trigger> sm = new JournaledStateMachine<State, Trigger>(1, journal, State.A, definition);
+
+    FireAllResult result = sm.FireAll(Arrays.asList(Trigger.X));
+
+    Assert.assertEquals(1, result.getFailed());
+    Assert.assertEquals(State.B, sm.getState());
+    Assert.assertEquals(State.B, journal.replayStates().get(1L));
+    journal.close();
+  }
+
+  @Test
+  public void CompiledMachinesAreRecordedBeforeEntering() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition().compileHandles(State.class, Trigger.class);
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    StateMachine<State, Trigger> sm = new JournaledStateMachine<State, Trigger>(1, journal, State.A, definition);
+
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(1, entered);
+    Assert.assertEquals(State.B, journal.replayStates().get(1L));
+    journal.close();
+  }
+
+  @Test
+  public void ReplayStopsAtTheFirstTornRecord() throws Exception {
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 4096);
+    StateMachine<State, Trigger> sm = new JournaledStateMachine<State, Trigger>(1, journal, State.A, CreateDefinition());
+    sm.Fire(Trigger.X);
+    sm.Fire(y, "two", 2);
+    sm.Fire(z, 3);
+    journal.close();
+
+    // as if the body of the second record had not reached the disk before a crash
+    File segment = folder.getRoot().listFiles()[0];
+    RandomAccessFile file = new RandomAccessFile(segment, "rw");
+    int second = 4 + 4 + file.readInt();
+    file.seek(second + 4 + 4 + 8);
+    file.writeLong(0); // its timestamp
+    file.close();
+
+    TransitionJournal<State, Trigger> reopened = Open(folder.getRoot(), 4096);
+    final List<State> destinations = new ArrayList<State>();
+    reopened.replay(new JournalRecordHandler<State, Trigger>() {
+      public void onRecord(long machineId, long timestamp, State source, State destination, Trigger trigger, Object[] args) {
+        destinations.add(destination);
+      }
+    });
+    Assert.assertEquals(Arrays.asList(State.B), destinations);
+    Assert.assertEquals(State.B, reopened.replayStates().get(1L));
+
+    // appending resumes over the torn record
+    new JournaledStateMachine<State, Trigger>(1, reopened, State.B, CreateDefinition()).Fire(y, "again", 4);
+    Assert.assertEquals(State.C, reopened.replayStates().get(1L));
+    reopened.close();
+  }
+
+  @Test
+  public void RollsOverToNewSegments() throws Exception {
+    TransitionJournal<State, Trigger> journal = Open(folder.getRoot(), 128);
+    StateMachine<State, Trigger> sm = new JournaledStateMachine<State, Trigger>(3, journal, State.A, CreateDefinition());
+
+    for (int i = 0; i < 30; i++) {
+      sm.Fire(Trigger.X);
+      sm.Fire(y, "x", i);
+      sm.Fire(z, i);
+    }
+    journal.sync();
+
+    final int[] count = {0};
+    journal.replay(new JournalRecordHandler<State, Trigger>() {
+      public void onRecord(long machineId, long timestamp, State source, State destination, Trigger trigger, Object[] args) {
+        count[0]++;
+      }
+    });
+    journal.close();
+
+    Assert.assertEquals(90, count[0]);
+    Assert.assertTrue(folder.getRoot().list().length > 1);
+  }
+}
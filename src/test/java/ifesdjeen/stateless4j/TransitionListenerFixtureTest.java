@@ -0,0 +1,93 @@
+package ifesdjeen.stateless4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.transitions.Transition;
+
+
+public class TransitionListenerFixtureTest {
+  final List<String> events = new ArrayList<String>();
+
+  class RecordingListener implements TransitionListener<State, Trigger> {
+    final String _name;
+
+    RecordingListener(String name) {
+      _name = name;
+    }
+
+    public void onTransitioned(Transition<State, Trigger> transition) {
+      events.add(_name + " " + transition.getSource() + "->" + transition.getDestination());
+    }
+
+    public void onUnhandled(State state, Trigger trigger) {
+      events.add(_name + " unhandled " + trigger + " in " + state);
+    }
+  }
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B)
+            .Ignore(Trigger.Z);
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+                events.add("entered B");
+              }
+            })
+            .Permit(Trigger.Y, State.A);
+    return definition;
+  }
+
+  @Test
+  public void ListenersSeeEveryMachineOfTheDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateMachine<State, Trigger> first = definition.CreateMachine(State.A);
+    StateMachine<State, Trigger> second = definition.CreateMachine(State.B);
+    first.AddTransitionListener(new RecordingListener("l"));
+
+    first.Fire(Trigger.X);
+    second.Fire(Trigger.Y);
+    second.Fire(Trigger.Z); // ignored: not reported
+    second.Fire(Trigger.Y);
+
+    Assert.assertEquals(Arrays.asList("entered B", "l A->B", "l B->A", "l unhandled Y in A"), events);
+  }
+
+  @Test
+  public void ListenersRunInRegistrationOrderAndCanBeRemoved() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.A);
+    RecordingListener first = new RecordingListener("1");
+    RecordingListener second = new RecordingListener("2");
+    definition.AddTransitionListener(first);
+    definition.AddTransitionListener(second);
+
+    sm.Fire(Trigger.X);
+    Assert.assertTrue(definition.RemoveTransitionListener(first));
+    Assert.assertFalse(definition.RemoveTransitionListener(first));
+    sm.Fire(Trigger.Y);
+    Assert.assertTrue(definition.RemoveTransitionListener(second));
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(Arrays.asList("entered B", "1 A->B", "2 A->B", "2 B->A", "entered B"), events);
+  }
+
+  @Test
+  public void ConcurrentMachinesNotifyListeners() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateMachine<State, Trigger> sm = new ConcurrentStateMachine<State, Trigger>(State.A, definition, ConcurrentFirePolicy.Retry);
+    sm.AddTransitionListener(new RecordingListener("c"));
+
+    sm.Fire(Trigger.X);
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(Arrays.asList("entered B", "c A->B", "c unhandled X in B"), events);
+  }
+}
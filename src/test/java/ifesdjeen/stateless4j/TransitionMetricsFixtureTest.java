@@ -0,0 +1,130 @@
+package ifesdjeen.stateless4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+import ifesdjeen.stateless4j.delegates.Func;
+import ifesdjeen.stateless4j.metrics.MetricsSnapshot;
+import ifesdjeen.stateless4j.metrics.TransitionMetrics;
+
+
+public class TransitionMetricsFixtureTest {
+
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setMetricsEnabled(true);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B)
+            .PermitIf(Trigger.Y, State.C, new Func<Boolean>() {
+              public Boolean call() {
+                return false;
+              }
+            })
+            .Ignore(Trigger.Z);
+    definition.Configure(State.B)
+            .OnEntry(new Action() {
+              public void doIt() {
+              }
+            })
+            .Permit(Trigger.X, State.A)
+            .Permit(Trigger.Y, State.C);
+    definition.Configure(State.C)
+            .OnEntry(new Action() {
+              public void doIt() {
+                throw new IllegalStateException();
+              }
+            });
+    return definition;
+  }
+
+  @Test
+  public void MetricsAreOffByDefault() throws Exception {
+    Assert.assertNull(new StateMachineDefinition<State, Trigger>().getMetrics());
+  }
+
+  @Test
+  public void CountsFiresTransitionsAndMisses() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.A);
+
+    sm.Fire(Trigger.X); // A -> B
+    sm.Fire(Trigger.X); // B -> A
+    sm.Fire(Trigger.X); // A -> B
+    sm.Fire(Trigger.Y); // B -> C, entry action throws
+    sm.Fire(Trigger.X); // unhandled in C
+    definition.CreateMachine(State.A).Fire(Trigger.Y); // guard rejected
+    definition.CreateMachine(State.A).Fire(Trigger.Z); // ignored
+
+    MetricsSnapshot<State, Trigger> snapshot = definition.getMetrics().snapshot();
+    Assert.assertEquals(Long.valueOf(2), snapshot.getFires().get(State.A).get(Trigger.X));
+    Assert.assertEquals(Long.valueOf(1), snapshot.getFires().get(State.B).get(Trigger.X));
+    Assert.assertEquals(Long.valueOf(2), snapshot.getTransitions().get(State.A).get(State.B));
+    Assert.assertEquals(Long.valueOf(1), snapshot.getTransitions().get(State.B).get(State.A));
+    Assert.assertNull(snapshot.getTransitions().get(State.B).get(State.C));
+    Assert.assertEquals(Long.valueOf(1), snapshot.getFailures().get(State.B));
+    Assert.assertEquals(Long.valueOf(1), snapshot.getUnhandled().get(State.C));
+    Assert.assertEquals(Long.valueOf(0), snapshot.getUnhandled().get(State.A));
+    Assert.assertEquals(Long.valueOf(1), snapshot.getGuardRejections().get(State.A));
+    Assert.assertEquals(Long.valueOf(1), snapshot.getIgnored().get(State.A));
+    // latencies are sampled: only the first transition of the machine is timed
+    Assert.assertEquals(1, snapshot.getExitLatency().get(State.A).getCount());
+    Assert.assertEquals(1, snapshot.getEntryLatency().get(State.B).getCount());
+    Assert.assertEquals(0, snapshot.getExitLatency().get(State.B).getCount());
+  }
+
+  @Test
+  public void UnconfiguredStatesAreCounted() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>()
+            .setMetricsEnabled(true);
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+
+    StateMachine<State, Trigger> sm = definition.CreateMachine(State.C);
+    sm.Fire(Trigger.X);
+
+    Assert.assertEquals(Long.valueOf(1), definition.getMetrics().snapshot().getUnhandled().get(State.C));
+  }
+
+  @Test
+  public void ConcurrentMachinesAreCounted() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    StateMachine<State, Trigger> sm = new ConcurrentStateMachine<State, Trigger>(State.A, definition, ConcurrentFirePolicy.Retry);
+
+    sm.Fire(Trigger.X);
+    sm.Fire(Trigger.Z); // unhandled in B
+
+    TransitionMetrics<State, Trigger> metrics = definition.getMetrics();
+    Assert.assertEquals(2, metrics.getFires());
+    Assert.assertEquals(1, metrics.getTransitions());
+    Assert.assertEquals(1, metrics.getUnhandled());
+  }
+
+  @Test
+  public void MetricsAreExposedThroughJmx() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.CreateMachine(State.A).Fire(Trigger.X);
+    ObjectName name = new ObjectName("ifesdjeen.stateless4j:type=TransitionMetrics,name=test");
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    definition.getMetrics().register(name);
+    try {
+      Assert.assertEquals(1L, server.getAttribute(name, "Fires"));
+      Assert.assertEquals(1L, server.getAttribute(name, "Transitions"));
+      Assert.assertNotNull(server.getAttribute(name, "TransitionsByEdge"));
+    } finally {
+      definition.getMetrics().unregister(name);
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void MetricsCannotBeEnabledOnFrozenDefinition() throws Exception {
+    new StateMachineDefinition<State, Trigger>().freeze().setMetricsEnabled(true);
+  }
+}
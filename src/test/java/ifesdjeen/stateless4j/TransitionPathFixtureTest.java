@@ -0,0 +1,124 @@
+package ifesdjeen.stateless4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ifesdjeen.stateless4j.delegates.Action;
+
+
+public class TransitionPathFixtureTest {
+  final StringBuilder order = new StringBuilder();
+
+  // C is a substate of B, itself a substate of A
+  StateMachineDefinition<State, Trigger> CreateDefinition() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    for (final State state : State.values()) {
+      definition.Configure(state)
+              .OnEntry(new Action() {
+                public void doIt() {
+                  order.append("enter").append(state).append(' ');
+                }
+              })
+              .OnExit(new Action() {
+                public void doIt() {
+                  order.append("exit").append(state).append(' ');
+                }
+              });
+    }
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.C)
+            .PermitReentry(Trigger.Z);
+    definition.Configure(State.B)
+            .SubstateOf(State.A);
+    definition.Configure(State.C)
+            .SubstateOf(State.B)
+            .Permit(Trigger.Y, State.A);
+    return definition;
+  }
+
+  String Run(StateMachine<State, Trigger> sm, Trigger... triggers) throws Exception {
+    order.setLength(0);
+    for (Trigger trigger : triggers) {
+      sm.Fire(trigger);
+      order.append("| ");
+    }
+    return order.toString();
+  }
+
+  @Test
+  public void FrozenPathRunsTheSameActionsAsTheHierarchyWalk() throws Exception {
+    String expected = Run(unfrozenMachine(CreateDefinition()), Trigger.X, Trigger.Y, Trigger.Z, Trigger.X, Trigger.Y);
+
+    String actual = Run(CreateDefinition().CreateMachine(State.A), Trigger.X, Trigger.Y, Trigger.Z, Trigger.X, Trigger.Y);
+
+    Assert.assertEquals("enterB enterC | exitC exitB | exitA enterA | enterB enterC | exitC exitB | ", expected);
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void PathIsBuiltOnceAndReused() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition().freeze();
+    StateRepresentation<State, Trigger> a = definition.GetRepresentation(State.A);
+    StateRepresentation<State, Trigger> c = definition.GetRepresentation(State.C);
+
+    TransitionPath<State, Trigger> path = a.PathTo(c);
+
+    Assert.assertSame(path, a.PathTo(c));
+    Assert.assertEquals(0, path._exitActions.length);
+    Assert.assertEquals(2, path._entryActions.length);
+  }
+
+  @Test
+  public void PathIndexesEntryActionsByTrigger() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+    definition.Configure(State.C)
+            .OnEntryFrom(Trigger.X, new Action() {
+              public void doIt() {
+                order.append("enterCfromX ");
+              }
+            });
+    definition.Configure(State.B)
+            .OnEntryFrom(Trigger.Z, new Action() {
+              public void doIt() {
+                order.append("enterBfromZ ");
+              }
+            });
+    definition.freeze();
+
+    TransitionPath<State, Trigger> path = definition.GetRepresentation(State.A).PathTo(definition.GetRepresentation(State.C));
+
+    Assert.assertEquals(2, path._entryActions.length);
+    Assert.assertEquals(3, path.EntryActionsFor(Trigger.X).length);
+    Assert.assertEquals(3, path.EntryActionsFor(Trigger.Z).length);
+    Assert.assertSame(path._entryActions, path.EntryActionsFor(Trigger.Y));
+    Assert.assertEquals("enterB enterC enterCfromX | ", Run(definition.CreateMachine(State.A), Trigger.X));
+  }
+
+  @Test
+  public void DestinationsNeverConfiguredAreFrozenWithTheRest() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = new StateMachineDefinition<State, Trigger>();
+    definition.Configure(State.A)
+            .Permit(Trigger.X, State.B);
+    definition.freeze();
+
+    StateRepresentation<State, Trigger> b = definition.GetRepresentation(State.B);
+
+    Assert.assertSame(b, definition.GetRepresentation(State.B));
+    Assert.assertTrue(b.IsIncludedIn(State.B));
+    Assert.assertNotNull(definition.GetRepresentation(State.A).PathTo(b));
+  }
+
+  @Test
+  public void UnfrozenRepresentationHasNoPath() throws Exception {
+    StateMachineDefinition<State, Trigger> definition = CreateDefinition();
+
+    Assert.assertNull(definition.GetRepresentation(State.A).PathTo(definition.GetRepresentation(State.C)));
+  }
+
+  // a machine running the definition without freezing it
+  StateMachine<State, Trigger> unfrozenMachine(StateMachineDefinition<State, Trigger> definition) {
+    StateMachine<State, Trigger> sm = new StateMachine<State, Trigger>(State.A);
+    sm._definition._stateConfiguration.putAll(definition._stateConfiguration);
+    return sm;
+  }
+}
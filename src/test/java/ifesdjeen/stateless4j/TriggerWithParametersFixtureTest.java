@@ -4,6 +4,8 @@ import junit.framework.Assert;
 
 import org.junit.Test;
 
+import ifesdjeen.stateless4j.exceptions.ArgOfTypeRequiredInPosition;
+import ifesdjeen.stateless4j.exceptions.WrongArgType;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters1;
 import ifesdjeen.stateless4j.triggers.TriggerWithParameters2;
 
@@ -56,4 +58,36 @@ public class TriggerWithParametersFixtureTest {
     } catch (Exception e) {
     }
   }
+
+  @Test
+  public void AcceptedTypeDoesNotAcceptIncompatibleParameters() throws Exception {
+    TriggerWithParameters1<String, State, Trigger> twp = new TriggerWithParameters1<String, State, Trigger>(Trigger.X, String.class);
+    twp.ValidateParameters(new Object[]{"arg"});
+    try {
+      twp.ValidateParameters(new Object[]{123});
+      Assert.fail();
+    } catch (WrongArgType e) {
+    }
+    twp.ValidateParameters(new Object[]{"again"});
+  }
+
+  @Test
+  public void SubtypesAreAcceptedAfterAnotherSubtype() throws Exception {
+    TriggerWithParameters1<Number, State, Trigger> twp = new TriggerWithParameters1<Number, State, Trigger>(Trigger.X, Number.class);
+    twp.ValidateParameters(new Object[]{1});
+    twp.ValidateParameters(new Object[]{1L});
+    twp.ValidateParameters(new Object[]{null});
+    twp.ValidateParameters(new Object[]{1});
+  }
+
+  @Test
+  public void AcceptedTypesDoNotAcceptTooFewParameters() throws Exception {
+    TriggerWithParameters2<String, String, State, Trigger> twp = new TriggerWithParameters2<String, String, State, Trigger>(Trigger.X, String.class, String.class);
+    twp.ValidateParameters(new Object[]{"a", "b"});
+    try {
+      twp.ValidateParameters(new Object[]{"a"});
+      Assert.fail();
+    } catch (ArgOfTypeRequiredInPosition e) {
+    }
+  }
 }